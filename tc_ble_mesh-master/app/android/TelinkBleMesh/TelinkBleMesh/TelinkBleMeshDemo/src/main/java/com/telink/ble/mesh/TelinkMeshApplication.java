@@ -37,6 +37,7 @@ import com.telink.ble.mesh.core.message.lighting.LightnessStatusMessage;
 import com.telink.ble.mesh.core.message.sensor.SensorStatusMessage;
 import com.telink.ble.mesh.entity.OnlineStatusInfo;
 import com.telink.ble.mesh.foundation.MeshApplication;
+import com.telink.ble.mesh.foundation.MeshMessageQueue;
 import com.telink.ble.mesh.foundation.MeshService;
 import com.telink.ble.mesh.foundation.event.MeshEvent;
 import com.telink.ble.mesh.foundation.event.NetworkInfoUpdateEvent;
@@ -45,7 +46,9 @@ import com.telink.ble.mesh.foundation.event.StatusNotificationEvent;
 import com.telink.ble.mesh.model.AppSettings;
 import com.telink.ble.mesh.model.MeshInfo;
 import com.telink.ble.mesh.model.NodeInfo;
+import com.telink.ble.mesh.model.NodeStatusBatchEvent;
 import com.telink.ble.mesh.model.NodeStatusChangedEvent;
+import com.telink.ble.mesh.model.NodeStatusCoalescer;
 import com.telink.ble.mesh.model.OnlineState;
 import com.telink.ble.mesh.model.UnitConvert;
 import com.telink.ble.mesh.model.db.MeshInfoService;
@@ -72,6 +75,22 @@ public class TelinkMeshApplication extends MeshApplication {
 
     private Handler mOfflineCheckHandler;
 
+    private NodeStatusCoalescer mNodeStatusCoalescer;
+
+    /**
+     * queued messages to nodes with opcodes aggregator server are aggregated
+     */
+    private final MeshMessageQueue.AggregatorSupport mAggregatorSupport = new MeshMessageQueue.AggregatorSupport() {
+        @Override
+        public int getAggregatorServerAddress(int elementAddress) {
+            MeshInfo mesh = meshInfo;
+            NodeInfo node = mesh == null ? null : mesh.getDeviceByElementAddress(elementAddress);
+            if (node == null || node.compositionData == null) return 0;
+            int offset = node.compositionData.getElementOffset(MeshSigModel.SIG_MD_CFG_OP_AGG_S.modelId);
+            return offset < 0 ? 0 : node.meshAddress + offset;
+        }
+    };
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -79,11 +98,21 @@ public class TelinkMeshApplication extends MeshApplication {
         HandlerThread offlineCheckThread = new HandlerThread("offline check thread");
         offlineCheckThread.start();
         mOfflineCheckHandler = new Handler(offlineCheckThread.getLooper());
+        mNodeStatusCoalescer = new NodeStatusCoalescer();
         MeshLogger.enableRecord(SharedPreferenceHelper.isLogEnable(this));
         AppCrashHandler.init(this);
         closePErrorDialog();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_UI_HIDDEN && meshInfo != null) {
+            // app may be killed in background, write pending changes
+            MeshInfoService.getInstance().getWriter().flushAsync();
+        }
+    }
+
     /**
      * check and load database
      * 1. init local storage service;
@@ -147,6 +176,7 @@ public class TelinkMeshApplication extends MeshApplication {
         }
         this.meshInfo = mesh;
         MeshService.getInstance().setupMeshNetwork(mesh.convertToConfiguration());
+        MeshService.getInstance().setOpcodeAggregation(mAggregatorSupport, MeshMessageQueue.DEFAULT_AGGREGATION_WINDOW);
         dispatchEvent(new MeshEvent(this, MeshEvent.EVENT_TYPE_MESH_RESET, "mesh reset"));
     }
 
@@ -196,24 +226,21 @@ public class TelinkMeshApplication extends MeshApplication {
             if (message.getStatusMessage() instanceof OnOffStatusMessage) {
                 OnOffStatusMessage onOffStatusMessage = (OnOffStatusMessage) statusMessage;
                 int onOff = onOffStatusMessage.isComplete() ? onOffStatusMessage.getTargetOnOff() : onOffStatusMessage.getPresentOnOff();
-                for (NodeInfo nodeInfo : meshInfo.nodes) {
-                    if (nodeInfo.meshAddress == message.getSrc()) {
-                        if (nodeInfo.getOnlineState().st != onOff) {
-                            statusChangedNode = nodeInfo;
-                        }
-                        nodeInfo.setOnlineState(OnlineState.getBySt(onOff));
-                        break;
+                NodeInfo nodeInfo = meshInfo.getDeviceByMeshAddress(message.getSrc());
+                if (nodeInfo != null) {
+                    if (nodeInfo.getOnlineState().st != onOff) {
+                        statusChangedNode = nodeInfo;
                     }
+                    nodeInfo.setOnlineState(OnlineState.getBySt(onOff));
                 }
             } else if (message.getStatusMessage() instanceof LevelStatusMessage) {
                 LevelStatusMessage levelStatusMessage = (LevelStatusMessage) statusMessage;
                 int srcAdr = message.getSrc();
                 int level = levelStatusMessage.isComplete() ? levelStatusMessage.getTargetLevel() : levelStatusMessage.getPresentLevel();
                 int tarVal = UnitConvert.level2lum((short) level);
-                for (NodeInfo onlineDevice : meshInfo.nodes) {
-                    if (onlineDevice.compositionData == null) {
-                        continue;
-                    }
+                // only the node owning the source element is checked
+                NodeInfo onlineDevice = meshInfo.getDeviceByElementAddress(srcAdr);
+                if (onlineDevice != null && onlineDevice.compositionData != null) {
                     int lightnessEleAdr = onlineDevice.getTargetEleAdr(MeshSigModel.SIG_MD_LIGHTNESS_S.modelId);
                     if (lightnessEleAdr == srcAdr) {
                         if (onLumStatus(onlineDevice, tarVal)) {
@@ -234,53 +261,45 @@ public class TelinkMeshApplication extends MeshApplication {
                 CtlStatusMessage ctlStatusMessage = (CtlStatusMessage) statusMessage;
                 MeshLogger.d("ctl : " + ctlStatusMessage.toString());
                 int srcAdr = message.getSrc();
-                for (NodeInfo onlineDevice : meshInfo.nodes) {
-                    if (onlineDevice.meshAddress == srcAdr) {
-                        int lum = ctlStatusMessage.isComplete() ? ctlStatusMessage.getTargetLightness() : ctlStatusMessage.getPresentLightness();
-                        if (onLumStatus(onlineDevice, UnitConvert.lightness2lum(lum))) {
-                            statusChangedNode = onlineDevice;
-                        }
+                NodeInfo onlineDevice = meshInfo.getDeviceByMeshAddress(srcAdr);
+                if (onlineDevice != null) {
+                    int lum = ctlStatusMessage.isComplete() ? ctlStatusMessage.getTargetLightness() : ctlStatusMessage.getPresentLightness();
+                    if (onLumStatus(onlineDevice, UnitConvert.lightness2lum(lum))) {
+                        statusChangedNode = onlineDevice;
+                    }
 
-                        int temp = ctlStatusMessage.isComplete() ? ctlStatusMessage.getTargetTemperature() : ctlStatusMessage.getPresentTemperature();
-                        if (onTempStatus(onlineDevice, UnitConvert.tempToTemp100(temp))) {
-                            statusChangedNode = onlineDevice;
-                        }
-                        break;
+                    int temp = ctlStatusMessage.isComplete() ? ctlStatusMessage.getTargetTemperature() : ctlStatusMessage.getPresentTemperature();
+                    if (onTempStatus(onlineDevice, UnitConvert.tempToTemp100(temp))) {
+                        statusChangedNode = onlineDevice;
                     }
                 }
             } else if (message.getStatusMessage() instanceof LightnessStatusMessage) {
                 LightnessStatusMessage lightnessStatusMessage = (LightnessStatusMessage) statusMessage;
                 int srcAdr = message.getSrc();
-                for (NodeInfo onlineDevice : meshInfo.nodes) {
-                    if (onlineDevice.meshAddress == srcAdr) {
-                        int lum = lightnessStatusMessage.isComplete() ? lightnessStatusMessage.getTargetLightness() : lightnessStatusMessage.getPresentLightness();
-                        if (onLumStatus(onlineDevice, UnitConvert.lightness2lum(lum))) {
-                            statusChangedNode = onlineDevice;
-                        }
-                        break;
+                NodeInfo onlineDevice = meshInfo.getDeviceByMeshAddress(srcAdr);
+                if (onlineDevice != null) {
+                    int lum = lightnessStatusMessage.isComplete() ? lightnessStatusMessage.getTargetLightness() : lightnessStatusMessage.getPresentLightness();
+                    if (onLumStatus(onlineDevice, UnitConvert.lightness2lum(lum))) {
+                        statusChangedNode = onlineDevice;
                     }
                 }
             } else if (message.getStatusMessage() instanceof CtlTemperatureStatusMessage) {
                 CtlTemperatureStatusMessage ctlTemp = (CtlTemperatureStatusMessage) statusMessage;
                 int srcAdr = message.getSrc();
-                for (NodeInfo onlineDevice : meshInfo.nodes) {
-                    if (onlineDevice.meshAddress == srcAdr) {
-                        int temp = ctlTemp.isComplete() ? ctlTemp.getTargetTemperature() : ctlTemp.getPresentTemperature();
-                        if (onTempStatus(onlineDevice, UnitConvert.lightness2lum(temp))) {
-                            statusChangedNode = onlineDevice;
-                        }
-                        break;
+                NodeInfo onlineDevice = meshInfo.getDeviceByMeshAddress(srcAdr);
+                if (onlineDevice != null) {
+                    int temp = ctlTemp.isComplete() ? ctlTemp.getTargetTemperature() : ctlTemp.getPresentTemperature();
+                    if (onTempStatus(onlineDevice, UnitConvert.lightness2lum(temp))) {
+                        statusChangedNode = onlineDevice;
                     }
                 }
             } else if (message.getStatusMessage() instanceof SensorStatusMessage) {
                 SensorStatusMessage sensorStatus = (SensorStatusMessage) statusMessage;
                 int srcAdr = message.getSrc();
-                for (NodeInfo onlineDevice : meshInfo.nodes) {
-                    if (onlineDevice.meshAddress == srcAdr) {
-                        if (onlineDevice.updateSensorState(sensorStatus.sensorData)) {
-                            statusChangedNode = onlineDevice;
-                        }
-                        break;
+                NodeInfo onlineDevice = meshInfo.getDeviceByMeshAddress(srcAdr);
+                if (onlineDevice != null) {
+                    if (onlineDevice.updateSensorState(sensorStatus.sensorData)) {
+                        statusChangedNode = onlineDevice;
                     }
                 }
             }
@@ -317,9 +336,11 @@ public class TelinkMeshApplication extends MeshApplication {
 
 
     /**
-     * node info status changed for UI refresh
+     * node info status changed for UI refresh,
+     * node list refreshes by {@link NodeStatusBatchEvent} dispatched once in each coalescing interval
      */
-    private void onNodeInfoStatusChanged(NodeInfo nodeInfo) {
+    public void onNodeInfoStatusChanged(NodeInfo nodeInfo) {
+        mNodeStatusCoalescer.add(nodeInfo.meshAddress);
         dispatchEvent(new NodeStatusChangedEvent(this, NodeStatusChangedEvent.EVENT_TYPE_NODE_STATUS_CHANGED, nodeInfo));
     }
 
@@ -358,6 +379,10 @@ public class TelinkMeshApplication extends MeshApplication {
                     statusChangedNode = deviceInfo;
                     deviceInfo.temp = onlineStatusInfo.status[1];
                 }
+                if (statusChangedNode == deviceInfo) {
+                    // each changed node in online status list is refreshed by batch event
+                    mNodeStatusCoalescer.add(deviceInfo.meshAddress);
+                }
             }
             if (statusChangedNode != null) {
                 onNodeInfoStatusChanged(statusChangedNode);
@@ -372,9 +397,9 @@ public class TelinkMeshApplication extends MeshApplication {
         MeshLogger.d(String.format("mesh info update from local sequenceNumber-%06X ivIndex-%08X to sequenceNumber-%06X ivIndex-%08X",
                 meshInfo.sequenceNumber, meshInfo.ivIndex,
                 networkInfoUpdateEvent.getSequenceNumber(), networkInfoUpdateEvent.getIvIndex()));
-        this.meshInfo.ivIndex = networkInfoUpdateEvent.getIvIndex();
-        this.meshInfo.sequenceNumber = networkInfoUpdateEvent.getSequenceNumber();
-        MeshInfoService.getInstance().updateMeshInfo(this.meshInfo);
+        // written only when reserved sequence number block runs low
+        MeshInfoService.getInstance().updateNetworkInfo(this.meshInfo,
+                networkInfoUpdateEvent.getSequenceNumber(), networkInfoUpdateEvent.getIvIndex());
 //        this.meshInfo.saveOrUpdate(this);
     }
 
@@ -105,6 +105,11 @@ public class MeshInfo implements Serializable, Cloneable {
      */
     public ToMany<NodeInfo> nodes;
 
+    /**
+     * index of {@link #nodes}, not saved
+     */
+    private transient NodeIndex nodeIndex;
+
     /**
      * network key and network key index
      */
@@ -190,37 +195,50 @@ public class MeshInfo implements Serializable, Cloneable {
         return appKeyList.get(0).index;
     }
 
+    /**
+     * get node index, rebuilt when nodes are replaced
+     */
+    public NodeIndex getNodeIndex() {
+        NodeIndex index = this.nodeIndex;
+        if (index == null || nodes == null || index.size() != nodes.size()) {
+            index = new NodeIndex();
+            index.build(nodes);
+            this.nodeIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * rebuild node index at next access, called after nodes replaced
+     */
+    public void invalidateNodeIndex() {
+        this.nodeIndex = null;
+    }
+
+    /**
+     * called after {@link NodeInfo#subList} changed
+     */
+    public void onNodeGroupChanged(NodeInfo node) {
+        getNodeIndex().updateGroups(node);
+    }
+
     public NodeInfo getDeviceByMeshAddress(int meshAddress) {
         if (this.nodes == null)
             return null;
-
-        for (NodeInfo info : nodes) {
-            if (info.meshAddress == meshAddress)
-                return info;
-        }
-        return null;
+        return getNodeIndex().getByMeshAddress(meshAddress);
     }
 
     public NodeInfo getDeviceByElementAddress(int elementAddress) {
         if (this.nodes == null)
             return null;
-
-        for (NodeInfo info : nodes) {
-            if (elementAddress >= info.meshAddress && elementAddress < info.meshAddress + info.elementCnt)
-                return info;
-        }
-        return null;
+        return getNodeIndex().getByElementAddress(elementAddress);
     }
 
     /**
      * @param deviceUUID 16 bytes uuid
      */
     public NodeInfo getDeviceByUUID(@NonNull byte[] deviceUUID) {
-        for (NodeInfo info : nodes) {
-            if (Arrays.equals(deviceUUID, info.deviceUUID))
-                return info;
-        }
-        return null;
+        return getNodeIndex().getByUUID(deviceUUID);
     }
 
     public void insertDevice(NodeInfo deviceInfo, boolean updatePvIndex) {
@@ -228,11 +246,14 @@ public class MeshInfo implements Serializable, Cloneable {
         if (local != null) {
             this.removeDeviceByUUID(deviceInfo.deviceUUID);
         }
+        // index is taken before nodes changed, otherwise it is rebuilt for size mismatch
+        NodeIndex index = getNodeIndex();
         nodes.add(deviceInfo);
+        index.add(deviceInfo);
         if (updatePvIndex) {
             increaseProvisionIndex(deviceInfo.elementCnt);
         } else {
-            saveOrUpdate();
+            saveOrUpdateNow();
         }
     }
 
@@ -244,18 +265,22 @@ public class MeshInfo implements Serializable, Cloneable {
                 MeshInfoService.getInstance().updateScene(scene);
             }
         }
+        NodeIndex index = getNodeIndex();
         this.nodes.remove(node);
+        index.remove(node);
         MeshInfoService.getInstance().removeNodeInfo(node);
-        saveOrUpdate();
+        saveOrUpdateNow();
     }
 
     public boolean removeDeviceByUUID(byte[] deviceUUID) {
         if (this.nodes == null || this.nodes.size() == 0) return false;
+        NodeIndex index = getNodeIndex();
         Iterator<NodeInfo> iterator = nodes.iterator();
         while (iterator.hasNext()) {
             NodeInfo deviceInfo = iterator.next();
             if (Arrays.equals(deviceUUID, deviceInfo.deviceUUID)) {
                 iterator.remove();
+                index.remove(deviceInfo);
                 MeshInfoService.getInstance().removeNodeInfo(deviceInfo);
                 return true;
             }
@@ -271,15 +296,7 @@ public class MeshInfo implements Serializable, Cloneable {
         if (nodes == null || nodes.size() == 0) {
             return 0;
         }
-
-        int result = 0;
-        for (NodeInfo device : nodes) {
-            if (!device.isOffline()) {
-                result++;
-            }
-        }
-
-        return result;
+        return getNodeIndex().getOnlineCount();
     }
 
     /**
@@ -291,19 +308,7 @@ public class MeshInfo implements Serializable, Cloneable {
         if (nodes == null || nodes.size() == 0) {
             return 0;
         }
-        int result = 0;
-        for (NodeInfo device : nodes) {
-            if (!device.isOffline()) {
-                for (String addr : device.subList) {
-                    if (MeshUtils.hexToIntB(addr) == groupAddress) {
-                        result++;
-                        break;
-                    }
-                }
-            }
-        }
-
-        return result;
+        return getNodeIndex().getOnlineCountInGroup(groupAddress);
     }
 
     public Scene getSceneById(int id) {
@@ -346,6 +351,11 @@ public class MeshInfo implements Serializable, Cloneable {
         MeshInfoService.getInstance().updateMeshInfo(this);
     }
 
+    // write at once instead of behind, used when nodes or provision index changed
+    public void saveOrUpdateNow() {
+        MeshInfoService.getInstance().updateMeshInfoNow(this);
+    }
+
 
     @Override
     public String toString() {
@@ -397,7 +407,7 @@ public class MeshInfo implements Serializable, Cloneable {
             this.unicastRange.add(new AddressRange(low, high));
             this.addressTopLimit = high;
         }
-        saveOrUpdate();
+        saveOrUpdateNow();
     }
 
     public void resetProvisionIndex(int index) {
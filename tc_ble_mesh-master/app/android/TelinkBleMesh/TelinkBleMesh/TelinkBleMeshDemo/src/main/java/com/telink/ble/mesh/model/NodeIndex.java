@@ -0,0 +1,189 @@
+/********************************************************************************************************
+ * @file NodeIndex.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.model;
+
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.telink.ble.mesh.core.MeshUtils;
+import com.telink.ble.mesh.util.Arrays;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * in-memory index of nodes in mesh network,
+ * nodes are indexed by element address and uuid,
+ * subscribed groups are parsed once from {@link NodeInfo#subList},
+ * online count in all and in each group are updated when node online state changed,
+ * online state may be changed by offline check thread, so access is synchronized
+ */
+public class NodeIndex {
+
+    private static final int[] NO_GROUPS = new int[0];
+
+    /**
+     * node by each element address
+     */
+    private final SparseArray<NodeInfo> elementMap = new SparseArray<>();
+
+    private final Map<String, NodeInfo> uuidMap = new HashMap<>();
+
+    /**
+     * subscribed group addresses by node address
+     */
+    private final SparseArray<int[]> groupMap = new SparseArray<>();
+
+    /**
+     * online node count by group address
+     */
+    private final SparseIntArray groupOnlineCount = new SparseIntArray();
+
+    private int onlineCount = 0;
+
+    private int size = 0;
+
+    synchronized void build(List<NodeInfo> nodes) {
+        clear();
+        if (nodes == null) return;
+        for (NodeInfo node : nodes) {
+            add(node);
+        }
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < elementMap.size(); i++) {
+            elementMap.valueAt(i).setNodeIndex(null);
+        }
+        elementMap.clear();
+        uuidMap.clear();
+        groupMap.clear();
+        groupOnlineCount.clear();
+        onlineCount = 0;
+        size = 0;
+    }
+
+    synchronized void add(NodeInfo node) {
+        int elementCnt = Math.max(1, node.elementCnt);
+        for (int i = 0; i < elementCnt; i++) {
+            elementMap.put(node.meshAddress + i, node);
+        }
+        if (node.deviceUUID != null) {
+            uuidMap.put(Arrays.bytesToHexString(node.deviceUUID), node);
+        }
+        int[] groups = parseGroups(node.subList);
+        groupMap.put(node.meshAddress, groups);
+        if (!node.isOffline()) {
+            updateOnlineCount(groups, 1);
+        }
+        node.setNodeIndex(this);
+        size++;
+    }
+
+    synchronized void remove(NodeInfo node) {
+        if (elementMap.get(node.meshAddress) != node) return;
+        int elementCnt = Math.max(1, node.elementCnt);
+        for (int i = 0; i < elementCnt; i++) {
+            elementMap.remove(node.meshAddress + i);
+        }
+        if (node.deviceUUID != null) {
+            uuidMap.remove(Arrays.bytesToHexString(node.deviceUUID));
+        }
+        if (!node.isOffline()) {
+            updateOnlineCount(groupMap.get(node.meshAddress), -1);
+        }
+        groupMap.remove(node.meshAddress);
+        node.setNodeIndex(null);
+        size--;
+    }
+
+    /**
+     * re-parse subscribed groups after {@link NodeInfo#subList} changed
+     */
+    synchronized void updateGroups(NodeInfo node) {
+        if (elementMap.get(node.meshAddress) != node) return;
+        boolean online = !node.isOffline();
+        if (online) {
+            updateOnlineCount(groupMap.get(node.meshAddress), -1);
+        }
+        int[] groups = parseGroups(node.subList);
+        groupMap.put(node.meshAddress, groups);
+        if (online) {
+            updateOnlineCount(groups, 1);
+        }
+    }
+
+    /**
+     * called by node when online state changed
+     *
+     * @param wasOnline online before state changed
+     */
+    synchronized void onOnlineStateChanged(NodeInfo node, boolean wasOnline) {
+        boolean online = !node.isOffline();
+        if (online == wasOnline) return;
+        updateOnlineCount(groupMap.get(node.meshAddress), online ? 1 : -1);
+    }
+
+    public synchronized NodeInfo getByMeshAddress(int meshAddress) {
+        NodeInfo node = elementMap.get(meshAddress);
+        return node != null && node.meshAddress == meshAddress ? node : null;
+    }
+
+    public synchronized NodeInfo getByElementAddress(int elementAddress) {
+        return elementMap.get(elementAddress);
+    }
+
+    public synchronized NodeInfo getByUUID(byte[] deviceUUID) {
+        return uuidMap.get(Arrays.bytesToHexString(deviceUUID));
+    }
+
+    public synchronized int getOnlineCount() {
+        return onlineCount;
+    }
+
+    public synchronized int getOnlineCountInGroup(int groupAddress) {
+        return groupOnlineCount.get(groupAddress);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void updateOnlineCount(int[] groups, int delta) {
+        onlineCount += delta;
+        if (groups == null) return;
+        for (int group : groups) {
+            groupOnlineCount.put(group, groupOnlineCount.get(group) + delta);
+        }
+    }
+
+    private static int[] parseGroups(List<String> subList) {
+        if (subList == null || subList.size() == 0) return NO_GROUPS;
+        int[] groups = new int[subList.size()];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = MeshUtils.hexToIntB(subList.get(i));
+        }
+        return groups;
+    }
+}
@@ -211,11 +211,20 @@ public class NodeInfo implements Serializable {
     public ToMany<NodeSensorState> sensorStateList;
 
 
+    /**
+     * index of mesh info this node belongs to, notified when online state changed
+     */
+    private transient NodeIndex nodeIndex;
+
     @Transient
     private OfflineCheckTask offlineCheckTask = (OfflineCheckTask) () -> {
+        boolean wasOnline = !isOffline();
         onlineState = OnlineState.OFFLINE;
+        if (nodeIndex != null) {
+            nodeIndex.onOnlineStateChanged(NodeInfo.this, wasOnline);
+        }
         MeshLogger.log("offline check task running");
-        TelinkMeshApplication.getInstance().dispatchEvent(new NodeStatusChangedEvent(TelinkMeshApplication.getInstance(), NodeStatusChangedEvent.EVENT_TYPE_NODE_STATUS_CHANGED, NodeInfo.this));
+        TelinkMeshApplication.getInstance().onNodeInfoStatusChanged(NodeInfo.this);
     };
 
     public OnlineState getOnlineState() {
@@ -223,7 +232,11 @@ public class NodeInfo implements Serializable {
     }
 
     public void setOnlineState(OnlineState onlineState) {
+        boolean wasOnline = !isOffline();
         this.onlineState = onlineState;
+        if (nodeIndex != null) {
+            nodeIndex.onOnlineStateChanged(this, wasOnline);
+        }
         if (isSensor()) return;
         PublishModel pm = publishModel.getTarget();
         if (pm != null) {
@@ -236,6 +249,10 @@ public class NodeInfo implements Serializable {
         }
     }
 
+    void setNodeIndex(NodeIndex nodeIndex) {
+        this.nodeIndex = nodeIndex;
+    }
+
     public boolean isPubSet() {
         return publishModel.getTarget() != null;
     }
@@ -246,7 +263,7 @@ public class NodeInfo implements Serializable {
 
     public void updateName(String newName) {
         this.name = newName;
-        TelinkMeshApplication.getInstance().dispatchEvent(new NodeStatusChangedEvent(TelinkMeshApplication.getInstance(), NodeStatusChangedEvent.EVENT_TYPE_NODE_STATUS_CHANGED, NodeInfo.this));
+        TelinkMeshApplication.getInstance().onNodeInfoStatusChanged(NodeInfo.this);
     }
 
     /**
@@ -0,0 +1,77 @@
+/********************************************************************************************************
+ * @file NodeStatusBatchEvent.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.model;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.telink.ble.mesh.foundation.Event;
+
+/**
+ * node status changes coalesced in one interval
+ *
+ * @see NodeStatusCoalescer
+ */
+public class NodeStatusBatchEvent extends Event<String> implements Parcelable {
+    public static final String EVENT_TYPE_NODE_STATUS_BATCH = "com.telink.ble.mesh.EVENT_TYPE_NODE_STATUS_BATCH";
+
+    /**
+     * mesh address of changed nodes, no duplicates
+     */
+    private int[] addresses;
+
+    public NodeStatusBatchEvent(Object sender, String type, int[] addresses) {
+        super(sender, type);
+        this.addresses = addresses;
+    }
+
+    protected NodeStatusBatchEvent(Parcel in) {
+        addresses = in.createIntArray();
+    }
+
+    public static final Creator<NodeStatusBatchEvent> CREATOR = new Creator<NodeStatusBatchEvent>() {
+        @Override
+        public NodeStatusBatchEvent createFromParcel(Parcel in) {
+            return new NodeStatusBatchEvent(in);
+        }
+
+        @Override
+        public NodeStatusBatchEvent[] newArray(int size) {
+            return new NodeStatusBatchEvent[size];
+        }
+    };
+
+    public int[] getAddresses() {
+        return addresses;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeIntArray(addresses);
+    }
+}
@@ -0,0 +1,90 @@
+/********************************************************************************************************
+ * @file NodeStatusCoalescer.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.model;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseBooleanArray;
+
+import com.telink.ble.mesh.TelinkMeshApplication;
+
+/**
+ * coalesce node status changes in one interval into a single {@link NodeStatusBatchEvent},
+ * so that a burst of status messages, such as responses of a group on/off, refreshes node list once
+ */
+public class NodeStatusCoalescer {
+
+    /**
+     * a few frames, long enough to collect a burst of status
+     */
+    public static final long DEFAULT_INTERVAL = 100;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final SparseBooleanArray pending = new SparseBooleanArray();
+
+    private long interval = DEFAULT_INTERVAL;
+
+    private boolean scheduled = false;
+
+    private final Runnable flushTask = this::flush;
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * mark node status changed, batch event is dispatched at the end of current interval
+     */
+    public void add(int meshAddress) {
+        synchronized (pending) {
+            pending.put(meshAddress, true);
+            if (scheduled) return;
+            scheduled = true;
+        }
+        handler.postDelayed(flushTask, interval);
+    }
+
+    public void clear() {
+        handler.removeCallbacks(flushTask);
+        synchronized (pending) {
+            pending.clear();
+            scheduled = false;
+        }
+    }
+
+    private void flush() {
+        int[] addresses;
+        synchronized (pending) {
+            scheduled = false;
+            if (pending.size() == 0) return;
+            addresses = new int[pending.size()];
+            for (int i = 0; i < addresses.length; i++) {
+                addresses[i] = pending.keyAt(i);
+            }
+            pending.clear();
+        }
+        TelinkMeshApplication app = TelinkMeshApplication.getInstance();
+        app.dispatchEvent(new NodeStatusBatchEvent(app, NodeStatusBatchEvent.EVENT_TYPE_NODE_STATUS_BATCH, addresses));
+    }
+}
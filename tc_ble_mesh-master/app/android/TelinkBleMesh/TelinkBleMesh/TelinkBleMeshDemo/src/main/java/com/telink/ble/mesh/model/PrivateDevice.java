@@ -22,8 +22,11 @@
  *******************************************************************************************************/
 package com.telink.ble.mesh.model;
 
+import com.telink.ble.mesh.core.MeshUtils;
 import com.telink.ble.mesh.entity.BindingDevice;
 
+import java.nio.ByteOrder;
+
 /**
  * used in default-bind and fast-provision mode
  * vid , pid and composition raw data
@@ -112,6 +115,30 @@ public enum PrivateDevice {
         return cpsData;
     }
 
+    /**
+     * telink company id, telink device uuid starts with composition data page 0 head: cid, pid, vid
+     */
+    private static final int TELINK_CID = 0x0211;
+
+    /**
+     * set product info parsed from telink device uuid,
+     * composition data get is skipped when binding if composition data of the same cid, pid and vid is cached.
+     * the uuid head is decoded the same way as composition data {@link com.telink.ble.mesh.entity.CompositionData#from(byte[])},
+     * so the values are compared with the ones of cached composition data
+     *
+     * @see com.telink.ble.mesh.core.access.CompositionDataCache
+     */
+    public static void setProduct(BindingDevice bindingDevice) {
+        byte[] deviceUUID = bindingDevice.getDeviceUUID();
+        if (deviceUUID == null || deviceUUID.length < 6) return;
+        int cid = (deviceUUID[0] & 0xFF) | ((deviceUUID[1] & 0xFF) << 8);
+        int pid = (deviceUUID[2] & 0xFF) | ((deviceUUID[3] & 0xFF) << 8);
+        int vid = MeshUtils.bytes2Integer(deviceUUID, 4, 2, ByteOrder.BIG_ENDIAN);
+        if (cid == TELINK_CID) {
+            bindingDevice.setProduct(cid, pid, vid);
+        }
+    }
+
     /**
      * check private device
      *
@@ -40,6 +40,13 @@ import io.objectbox.query.Query;
 import io.objectbox.query.QueryBuilder;
 
 public class MeshInfoService {
+
+    /**
+     * sequence numbers reserved ahead in db,
+     * sequence number saved is never less than the one in use, even if the last flush is lost
+     */
+    public static final int DEFAULT_SEQUENCE_RESERVE_BLOCK = 0x1000;
+
     private static MeshInfoService instance = new MeshInfoService();
     private Box<MeshInfo> meshInfoBox;
     private Box<NodeInfo> nodeInfoBox;
@@ -49,6 +56,8 @@ public class MeshInfoService {
     private Box<OobInfo> oobInfoBox;
     private Query<MeshInfo> meshInfoQuery;
     private Query<OobInfo> oobInfoQuery;
+    private MeshInfoWriter writer;
+    private int sequenceReserveBlock = DEFAULT_SEQUENCE_RESERVE_BLOCK;
 
     private MeshInfoService() {
     }
@@ -66,14 +75,24 @@ public class MeshInfoService {
         nodeLcPropsBox = store.boxFor(NodeLcProps.class);
         groupInfoBox = store.boxFor(GroupInfo.class);
         oobInfoQuery = oobInfoBox.query().build();
+        writer = new MeshInfoWriter(store, meshInfoBox, nodeInfoBox);
+    }
+
+    /**
+     * write-behind of mesh info and node info, also provides persist latency and batch size
+     */
+    public MeshInfoWriter getWriter() {
+        return writer;
     }
 
     public MeshInfo getById(long id) {
+        writer.flush();
         return meshInfoBox.get(id);
     }
 
 
     public MeshInfo getByUuid(String meshUUID) {
+        writer.flush();
         Query<MeshInfo> query = meshInfoBox.query().equal(MeshInfo_.meshUUID, meshUUID, QueryBuilder.StringOrder.CASE_INSENSITIVE).build();
         return query.findFirst();
     }
@@ -82,12 +101,45 @@ public class MeshInfoService {
      * @return all mesh info in db
      */
     public List<MeshInfo> getAll() {
+        writer.flush();
         return meshInfoBox.getAll();
     }
 
 
+    /**
+     * mesh info is put later in a batch on main thread
+     */
     public void updateMeshInfo(MeshInfo meshInfo) {
-        meshInfoBox.put(meshInfo);
+        writer.markDirty(meshInfo);
+    }
+
+    /**
+     * mesh info is put at once on caller thread, together with pending writes,
+     * for node list, provision index and device keys, which can not be restored if lost
+     */
+    public void updateMeshInfoNow(MeshInfo meshInfo) {
+        writer.markDirty(meshInfo);
+        writer.flush();
+    }
+
+    public void setSequenceReserveBlock(int sequenceReserveBlock) {
+        this.sequenceReserveBlock = sequenceReserveBlock;
+    }
+
+    /**
+     * save network info by reservation:
+     * {@link MeshInfo#sequenceNumber} is set to a block ahead of the sequence number in use,
+     * and written only when less than half of the block is left or iv index changed
+     */
+    public void updateNetworkInfo(MeshInfo meshInfo, int sequenceNumber, int ivIndex) {
+        if (ivIndex == meshInfo.ivIndex && sequenceNumber + sequenceReserveBlock / 2 <= meshInfo.sequenceNumber) {
+            return;
+        }
+        meshInfo.ivIndex = ivIndex;
+        meshInfo.sequenceNumber = sequenceNumber + sequenceReserveBlock;
+        writer.markDirty(meshInfo);
+        // not delayed, the reserved block covers the write
+        writer.flushAsync();
     }
 
     /**
@@ -102,16 +154,18 @@ public class MeshInfoService {
      * remove mesh info
      */
     public void removeMeshInfo(MeshInfo meshInfo) {
+        writer.forget(meshInfo);
         meshInfoBox.remove(meshInfo);
     }
 
     public void removeAllMesh() {
+        writer.flush();
         meshInfoBox.removeAll();
     }
 
     public void updateNodeInfo(NodeInfo node) {
         MeshLogger.d("updateNodeInfo - " + node.id);
-        nodeInfoBox.put(node);
+        writer.markDirty(node);
     }
 
     public void updateNodeLcProps(NodeLcProps props) {
@@ -169,10 +223,14 @@ public class MeshInfoService {
     }
 
     public void removeNodeInfo(NodeInfo nodeInfo) {
+        writer.forget(nodeInfo);
         nodeInfoBox.remove(nodeInfo);
     }
 
     public void removeNodes(List<NodeInfo> nodes) {
+        for (NodeInfo node : nodes) {
+            writer.forget(node);
+        }
         nodeInfoBox.remove(nodes);
     }
 }
@@ -0,0 +1,220 @@
+/********************************************************************************************************
+ * @file MeshInfoWriter.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.model.db;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.telink.ble.mesh.model.MeshInfo;
+import com.telink.ble.mesh.model.NodeInfo;
+import com.telink.ble.mesh.util.MeshLogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import io.objectbox.Box;
+import io.objectbox.BoxStore;
+
+/**
+ * write-behind for mesh info and node info,
+ * entities marked dirty are coalesced and put in one transaction on main thread after {@link #flushDelay}.
+ * Entities are put on main thread, where they are modified, so a put never sees a half-modified entity.
+ */
+public class MeshInfoWriter {
+
+    public static final long DEFAULT_FLUSH_DELAY = 1000;
+
+    private final BoxStore store;
+
+    private final Box<MeshInfo> meshInfoBox;
+
+    private final Box<NodeInfo> nodeInfoBox;
+
+    private final Handler handler;
+
+    private final Set<MeshInfo> dirtyMeshes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Set<NodeInfo> dirtyNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private long flushDelay = DEFAULT_FLUSH_DELAY;
+
+    private boolean scheduled = false;
+
+    /**
+     * time of first dirty mark since last flush
+     */
+    private long dirtySince = 0;
+
+    // metrics
+    private int flushCount = 0;
+    private long lastLatency = 0;
+    private long maxLatency = 0;
+    private long totalLatency = 0;
+    private int lastBatchSize = 0;
+    private int maxBatchSize = 0;
+    private long totalBatchSize = 0;
+
+    private final Runnable flushTask = this::flush;
+
+    MeshInfoWriter(BoxStore store, Box<MeshInfo> meshInfoBox, Box<NodeInfo> nodeInfoBox) {
+        this.store = store;
+        this.meshInfoBox = meshInfoBox;
+        this.nodeInfoBox = nodeInfoBox;
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    public void setFlushDelay(long flushDelay) {
+        this.flushDelay = flushDelay;
+    }
+
+    public synchronized void markDirty(MeshInfo meshInfo) {
+        dirtyMeshes.add(meshInfo);
+        schedule(flushDelay);
+    }
+
+    public synchronized void markDirty(NodeInfo nodeInfo) {
+        dirtyNodes.add(nodeInfo);
+        schedule(flushDelay);
+    }
+
+    /**
+     * drop pending write of removed entity
+     */
+    public synchronized void forget(MeshInfo meshInfo) {
+        dirtyMeshes.remove(meshInfo);
+        onForgot();
+    }
+
+    public synchronized void forget(NodeInfo nodeInfo) {
+        dirtyNodes.remove(nodeInfo);
+        onForgot();
+    }
+
+    /**
+     * flush pending writes on main thread without waiting for delay
+     */
+    public synchronized void flushAsync() {
+        if (dirtyMeshes.isEmpty() && dirtyNodes.isEmpty()) return;
+        handler.removeCallbacks(flushTask);
+        scheduled = false;
+        schedule(0);
+    }
+
+    /**
+     * flush pending writes on caller thread, used before reading from db
+     */
+    public void flush() {
+        List<MeshInfo> meshes;
+        List<NodeInfo> nodes;
+        long since;
+        synchronized (this) {
+            handler.removeCallbacks(flushTask);
+            scheduled = false;
+            if (dirtyMeshes.isEmpty() && dirtyNodes.isEmpty()) return;
+            meshes = new ArrayList<>(dirtyMeshes);
+            nodes = new ArrayList<>(dirtyNodes);
+            dirtyMeshes.clear();
+            dirtyNodes.clear();
+            since = dirtySince;
+            dirtySince = 0;
+        }
+        store.runInTx(() -> {
+            if (nodes.size() != 0) {
+                nodeInfoBox.put(nodes);
+            }
+            if (meshes.size() != 0) {
+                meshInfoBox.put(meshes);
+            }
+        });
+        onFlushed(meshes.size() + nodes.size(), SystemClock.uptimeMillis() - since);
+    }
+
+    public synchronized int getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * @return time from first dirty mark to commit of last flush, in milliseconds
+     */
+    public synchronized long getLastLatency() {
+        return lastLatency;
+    }
+
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public synchronized long getAverageLatency() {
+        return flushCount == 0 ? 0 : totalLatency / flushCount;
+    }
+
+    /**
+     * @return entity count put in last flush
+     */
+    public synchronized int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public synchronized int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public synchronized float getAverageBatchSize() {
+        return flushCount == 0 ? 0 : (float) totalBatchSize / flushCount;
+    }
+
+    private void schedule(long delay) {
+        if (dirtySince == 0) {
+            dirtySince = SystemClock.uptimeMillis();
+        }
+        if (scheduled) return;
+        scheduled = true;
+        handler.postDelayed(flushTask, delay);
+    }
+
+    /**
+     * nothing pending, the next dirty mark starts latency measurement again
+     */
+    private void onForgot() {
+        if (dirtyMeshes.isEmpty() && dirtyNodes.isEmpty()) {
+            handler.removeCallbacks(flushTask);
+            scheduled = false;
+            dirtySince = 0;
+        }
+    }
+
+    private synchronized void onFlushed(int batchSize, long latency) {
+        flushCount++;
+        lastLatency = latency;
+        maxLatency = Math.max(maxLatency, latency);
+        totalLatency += latency;
+        lastBatchSize = batchSize;
+        maxBatchSize = Math.max(maxBatchSize, batchSize);
+        totalBatchSize += batchSize;
+        MeshLogger.d("mesh info flushed: batch - " + batchSize + " latency - " + latency);
+    }
+}
@@ -160,6 +160,7 @@ public class MeshStorageService {
 //            localMesh.nodes = targetMesh.nodes;
             localMesh.nodes.clear();
             localMesh.nodes.addAll(targetMesh.nodes);
+            localMesh.invalidateNodeIndex();
 
 //            localMesh.groups = targetMesh.groups;
             localMesh.groups.clear();
@@ -705,6 +706,7 @@ public class MeshStorageService {
                 }
             }
         }
+        mesh.invalidateNodeIndex();
 
         mesh.scenes.clear();// = new ArrayList<>();
         if (meshStorage.scenes != null && meshStorage.scenes.size() != 0) {
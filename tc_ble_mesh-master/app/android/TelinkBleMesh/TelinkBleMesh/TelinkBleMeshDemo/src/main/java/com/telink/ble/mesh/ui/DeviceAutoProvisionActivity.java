@@ -329,6 +329,7 @@ public class DeviceAutoProvisionActivity extends BaseActivity implements View.On
         BindingDevice bindingDevice = new BindingDevice(nodeInfo.meshAddress, nodeInfo.deviceUUID, appKeyIndex);
         bindingDevice.setDefaultBound(defaultBound);
         bindingDevice.setBearer(BindingBearer.GattOnly);
+        PrivateDevice.setProduct(bindingDevice);
 //        bindingDevice.setDefaultBound(false);
         MeshService.getInstance().startBinding(new BindingParameters(bindingDevice));
     }
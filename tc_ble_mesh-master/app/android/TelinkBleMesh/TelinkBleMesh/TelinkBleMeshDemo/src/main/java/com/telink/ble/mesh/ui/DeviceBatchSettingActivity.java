@@ -111,7 +111,7 @@ public class DeviceBatchSettingActivity extends BaseActivity implements View.OnC
         deviceSelectAdapter.notifyDataSetChanged();
         delayHandler.removeCallbacksAndMessages(null);
         if (kickingNode != null) {
-            MeshService.getInstance().removeDevice(kickingNode.meshAddress);
+            MeshService.getInstance().removeDevice(kickingNode.meshAddress, kickingNode.elementCnt);
             TelinkMeshApplication.getInstance().getMeshInfo().removeNode(kickingNode);
             kickingNode = null;
         }
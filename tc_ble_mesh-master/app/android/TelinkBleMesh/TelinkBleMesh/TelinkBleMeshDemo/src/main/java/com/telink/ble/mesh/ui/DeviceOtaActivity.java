@@ -44,11 +44,11 @@ import com.telink.ble.mesh.foundation.parameter.GattOtaParameters;
 import com.telink.ble.mesh.model.NodeInfo;
 import com.telink.ble.mesh.ui.file.FileSelectActivity;
 import com.telink.ble.mesh.util.Arrays;
+import com.telink.ble.mesh.util.FirmwareSource;
 import com.telink.ble.mesh.util.MeshLogger;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteOrder;
 
 /**
@@ -61,7 +61,7 @@ public class DeviceOtaActivity extends BaseActivity implements View.OnClickListe
     private TextView tv_select_file, tv_log, tv_progress, tv_version_info, tv_info;
     private Button btn_start_ota;
     private CheckBox cb_update;
-    private byte[] mFirmware;
+    private FirmwareSource mFirmware;
     private NodeInfo mNodeInfo;
     private int binPid;
     private final static int REQUEST_CODE_GET_FILE = 1;
@@ -204,18 +204,14 @@ public class DeviceOtaActivity extends BaseActivity implements View.OnClickListe
 
     private void readFirmware(String fileName) {
         try {
-            InputStream stream = new FileInputStream(fileName);
-            int length = stream.available();
-            mFirmware = new byte[length];
-            stream.read(mFirmware);
-            stream.close();
-
-            byte[] pid = new byte[2];
-            byte[] vid = new byte[2];
-            System.arraycopy(mFirmware, 2, pid, 0, 2);
-            this.binPid = MeshUtils.bytes2Integer(pid, ByteOrder.LITTLE_ENDIAN);
+            if (mFirmware != null) {
+                mFirmware.close();
+            }
+            mFirmware = FirmwareSource.open(new File(fileName));
 
-            System.arraycopy(mFirmware, 4, vid, 0, 2);
+            byte[] pid = mFirmware.read(2, 2);
+            byte[] vid = mFirmware.read(4, 2);
+            this.binPid = MeshUtils.bytes2Integer(pid, ByteOrder.LITTLE_ENDIAN);
 
             String pidInfo = Arrays.bytesToHexString(pid, ":");
             String vidInfo = Arrays.bytesToHexString(vid, ":");
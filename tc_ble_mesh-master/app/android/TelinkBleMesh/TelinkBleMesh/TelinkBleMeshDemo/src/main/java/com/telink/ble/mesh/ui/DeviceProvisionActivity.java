@@ -480,6 +480,7 @@ public class DeviceProvisionActivity extends BaseActivity implements View.OnClic
         BindingDevice bindingDevice = new BindingDevice(nodeInfo.meshAddress, nodeInfo.deviceUUID, appKeyIndex);
         bindingDevice.setDefaultBound(defaultBound);
         bindingDevice.setBearer(BindingBearer.GattOnly);
+        PrivateDevice.setProduct(bindingDevice);
 //        bindingDevice.setDefaultBound(false);
         MeshService.getInstance().startBinding(new BindingParameters(bindingDevice));
 //        final boolean dfBond = defaultBound;
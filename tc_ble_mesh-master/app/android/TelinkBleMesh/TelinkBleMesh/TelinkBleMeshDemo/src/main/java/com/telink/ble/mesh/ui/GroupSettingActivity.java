@@ -50,7 +50,7 @@ import com.telink.ble.mesh.model.AppSettings;
 import com.telink.ble.mesh.model.GroupInfo;
 import com.telink.ble.mesh.model.MeshInfo;
 import com.telink.ble.mesh.model.NodeInfo;
-import com.telink.ble.mesh.model.NodeStatusChangedEvent;
+import com.telink.ble.mesh.model.NodeStatusBatchEvent;
 import com.telink.ble.mesh.model.UnitConvert;
 import com.telink.ble.mesh.ui.adapter.OnlineDeviceListAdapter;
 import com.telink.ble.mesh.util.MeshLogger;
@@ -197,7 +197,7 @@ public class GroupSettingActivity extends BaseActivity implements EventListener<
 
         temp.setOnSeekBarChangeListener(this.onProgressChangeListener);
 
-        TelinkMeshApplication.getInstance().addEventListener(NodeStatusChangedEvent.EVENT_TYPE_NODE_STATUS_CHANGED, this);
+        TelinkMeshApplication.getInstance().addEventListener(NodeStatusBatchEvent.EVENT_TYPE_NODE_STATUS_BATCH, this);
         TelinkMeshApplication.getInstance().addEventListener(MeshEvent.EVENT_TYPE_DISCONNECTED, this);
         initLevelView();
     }
@@ -281,9 +281,11 @@ public class GroupSettingActivity extends BaseActivity implements EventListener<
 
     @Override
     public void performed(Event<String> event) {
-        if (event.getType().equals(MeshEvent.EVENT_TYPE_DISCONNECTED)
-                || event.getType().equals(NodeStatusChangedEvent.EVENT_TYPE_NODE_STATUS_CHANGED)) {
+        if (event.getType().equals(MeshEvent.EVENT_TYPE_DISCONNECTED)) {
             refreshUI();
+        } else if (event.getType().equals(NodeStatusBatchEvent.EVENT_TYPE_NODE_STATUS_BATCH)) {
+            int[] addresses = ((NodeStatusBatchEvent) event).getAddresses();
+            runOnUiThread(() -> mAdapter.notifyNodesChanged(addresses));
         }
     }
 
@@ -198,7 +198,7 @@ public class KeyBindActivity extends BaseActivity implements View.OnClickListene
 
     private void onKickOutFinish() {
         handler.removeCallbacksAndMessages(null);
-        MeshService.getInstance().removeDevice(targetDevice.meshAddress);
+        MeshService.getInstance().removeDevice(targetDevice.meshAddress, targetDevice.elementCnt);
         TelinkMeshApplication.getInstance().getMeshInfo().removeNode(targetDevice);
 //        TelinkMeshApplication.getInstance().getMeshInfo().saveOrUpdate(getApplicationContext());
         dismissWaitingDialog();
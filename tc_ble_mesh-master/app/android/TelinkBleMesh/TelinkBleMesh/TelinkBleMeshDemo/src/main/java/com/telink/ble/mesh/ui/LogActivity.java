@@ -49,7 +49,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -59,6 +61,7 @@ import java.util.Locale;
 public class LogActivity extends BaseActivity {
     private AlertDialog dialog;
     private LogInfoAdapter adapter;
+    private List<LogInfo> logInfoList = new ArrayList<>();
     private Handler mHandler = new Handler();
     private static final String LOG_FILE_PATH = "TelinkBleMesh";
     private SimpleDateFormat dateFormat = new SimpleDateFormat("YYYY_MMdd_HHmmss", Locale.CHINA);
@@ -71,7 +74,8 @@ public class LogActivity extends BaseActivity {
         }
         setContentView(R.layout.activity_log_info);
         RecyclerView recyclerView = findViewById(R.id.rv_log);
-        adapter = new LogInfoAdapter(this, MeshLogger.logInfoList);
+        logInfoList.addAll(MeshLogger.getLogInfoList());
+        adapter = new LogInfoAdapter(this, logInfoList);
         enableBackNav(true);
         setTitle("Log");
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
@@ -79,11 +83,14 @@ public class LogActivity extends BaseActivity {
     }
 
     public void clear(View view) {
-        MeshLogger.logInfoList.clear();
+        MeshLogger.clearLogInfo();
+        logInfoList.clear();
         adapter.notifyDataSetChanged();
     }
 
     public void refresh(View view) {
+        logInfoList.clear();
+        logInfoList.addAll(MeshLogger.getLogInfoList());
         adapter.notifyDataSetChanged();
     }
 
@@ -126,7 +133,7 @@ public class LogActivity extends BaseActivity {
         new Thread(() -> {
             SimpleDateFormat mDateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault());
 
-            final LogInfo[] logs = MeshLogger.logInfoList.toArray(new LogInfo[]{});
+            final List<LogInfo> logs = MeshLogger.getLogInfoList();
             File root = Environment.getExternalStorageDirectory();
             File dir = new File(root.getAbsolutePath() + File.separator + LOG_FILE_PATH);
 
@@ -183,7 +183,7 @@ public class LpnSettingActivity extends BaseActivity implements EventListener<St
 
     private void onKickOutFinish() {
         delayHandler.removeCallbacksAndMessages(null);
-        MeshService.getInstance().removeDevice(deviceInfo.meshAddress);
+        MeshService.getInstance().removeDevice(deviceInfo.meshAddress, deviceInfo.elementCnt);
         TelinkMeshApplication.getInstance().getMeshInfo().removeNode(deviceInfo);
 //        TelinkMeshApplication.getInstance().getMeshInfo().saveOrUpdate(getApplicationContext());
         dismissWaitingDialog();
@@ -265,6 +265,7 @@ public class RemoteProvisionActivity extends BaseActivity implements EventListen
         int appKeyIndex = meshInfo.getDefaultAppKeyIndex();
         BindingDevice bindingDevice = new BindingDevice(networkingDevice.nodeInfo.meshAddress, networkingDevice.nodeInfo.deviceUUID, appKeyIndex);
         bindingDevice.setDefaultBound(defaultBound);
+        PrivateDevice.setProduct(bindingDevice);
         MeshService.getInstance().startBinding(new BindingParameters(bindingDevice));
     }
 
@@ -557,6 +558,7 @@ public class RemoteProvisionActivity extends BaseActivity implements EventListen
         int appKeyIndex = meshInfo.getDefaultAppKeyIndex();
         final BindingDevice bindingDevice = new BindingDevice(networkingDevice.nodeInfo.meshAddress, networkingDevice.nodeInfo.deviceUUID, appKeyIndex);
         bindingDevice.setBearer(BindingBearer.Any);
+        PrivateDevice.setProduct(bindingDevice);
         delayHandler.removeCallbacksAndMessages(null);
         delayHandler.postDelayed(() -> MeshService.getInstance().startBinding(new BindingParameters(bindingDevice)), 3000);
 
@@ -23,12 +23,14 @@
 package com.telink.ble.mesh.ui.adapter;
 
 import android.content.Context;
+import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.telink.ble.mesh.core.DeviceProperty;
@@ -47,6 +49,12 @@ import java.util.List;
  * Created by Administrator on 2016/10/25.
  */
 public class OnlineDeviceListAdapter extends BaseRecyclerViewAdapter<OnlineDeviceListAdapter.ViewHolder> {
+
+    /**
+     * payload of node status change, click listeners and text colors are not rebound
+     */
+    private static final Object PAYLOAD_STATUS = new Object();
+
     List<NodeInfo> mDevices;
     Context mContext;
 
@@ -60,6 +68,26 @@ public class OnlineDeviceListAdapter extends BaseRecyclerViewAdapter<OnlineDevic
         notifyDataSetChanged();
     }
 
+    /**
+     * refresh rows of changed nodes only
+     *
+     * @param addresses mesh address of changed nodes
+     */
+    public void notifyNodesChanged(int[] addresses) {
+        if (mDevices == null || addresses == null) return;
+        // position is looked up once for each batch, list may be sorted between batches
+        SparseIntArray positions = new SparseIntArray(mDevices.size());
+        for (int i = 0; i < mDevices.size(); i++) {
+            positions.put(mDevices.get(i).meshAddress, i);
+        }
+        for (int address : addresses) {
+            int position = positions.get(address, -1);
+            if (position != -1) {
+                notifyItemChanged(position, PAYLOAD_STATUS);
+            }
+        }
+    }
+
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View itemView = LayoutInflater.from(mContext).inflate(R.layout.item_online_device, null, false);
@@ -75,6 +103,18 @@ public class OnlineDeviceListAdapter extends BaseRecyclerViewAdapter<OnlineDevic
         return mDevices == null ? 0 : mDevices.size();
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.contains(PAYLOAD_STATUS)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        NodeInfo device = mDevices.get(position);
+        holder.img_icon.setImageResource(IconGenerator.getIcon(device));
+        holder.tv_name.setText(device.getName());
+        holder.tv_pid.setText(getDeviceInfo(device));
+    }
+
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
         super.onBindViewHolder(holder, position);
@@ -90,6 +130,10 @@ public class OnlineDeviceListAdapter extends BaseRecyclerViewAdapter<OnlineDevic
             holder.tv_pid.setTextColor(mContext.getResources().getColor(R.color.black));
             holder.tv_name.setTextColor(mContext.getResources().getColor(R.color.black));
         }
+        holder.tv_pid.setText(getDeviceInfo(device));
+    }
+
+    private String getDeviceInfo(NodeInfo device) {
         boolean isSensor = device.isSensor();
         String info;
         if (device.meshAddress <= 0xFF) {
@@ -119,7 +163,7 @@ public class OnlineDeviceListAdapter extends BaseRecyclerViewAdapter<OnlineDevic
         } else {
             info += "(unbound)";
         }
-        holder.tv_pid.setText(info);
+        return info;
     }
 
     class ViewHolder extends RecyclerView.ViewHolder {
@@ -54,7 +54,7 @@ import com.telink.ble.mesh.foundation.event.StatusNotificationEvent;
 import com.telink.ble.mesh.model.AppSettings;
 import com.telink.ble.mesh.model.MeshInfo;
 import com.telink.ble.mesh.model.NodeInfo;
-import com.telink.ble.mesh.model.NodeStatusChangedEvent;
+import com.telink.ble.mesh.model.NodeStatusBatchEvent;
 import com.telink.ble.mesh.model.OnlineState;
 import com.telink.ble.mesh.ui.BaseActivity;
 import com.telink.ble.mesh.ui.CmdActivity;
@@ -220,7 +220,7 @@ public class DeviceFragment extends BaseFragment implements View.OnClickListener
         TelinkMeshApplication.getInstance().addEventListener(MeshEvent.EVENT_TYPE_DISCONNECTED, this);
         TelinkMeshApplication.getInstance().addEventListener(AutoConnectEvent.EVENT_TYPE_AUTO_CONNECT_LOGIN, this);
         TelinkMeshApplication.getInstance().addEventListener(MeshEvent.EVENT_TYPE_MESH_RESET, this);
-        TelinkMeshApplication.getInstance().addEventListener(NodeStatusChangedEvent.EVENT_TYPE_NODE_STATUS_CHANGED, this);
+        TelinkMeshApplication.getInstance().addEventListener(NodeStatusBatchEvent.EVENT_TYPE_NODE_STATUS_BATCH, this);
         TelinkMeshApplication.getInstance().addEventListener(CompositionDataStatusMessage.class.getName(), this);
     }
 
@@ -414,9 +414,11 @@ public class DeviceFragment extends BaseFragment implements View.OnClickListener
         String eventType = event.getType();
         if (eventType.equals(MeshEvent.EVENT_TYPE_DISCONNECTED)
                 || eventType.equals(MeshEvent.EVENT_TYPE_MESH_RESET)
-                || eventType.equals(NodeStatusChangedEvent.EVENT_TYPE_NODE_STATUS_CHANGED)
                 || eventType.equals(AutoConnectEvent.EVENT_TYPE_AUTO_CONNECT_LOGIN)) {
             refreshUI();
+        } else if (eventType.equals(NodeStatusBatchEvent.EVENT_TYPE_NODE_STATUS_BATCH)) {
+            int[] addresses = ((NodeStatusBatchEvent) event).getAddresses();
+            getActivity().runOnUiThread(() -> mAdapter.notifyNodesChanged(addresses));
         } else if (eventType.equals(CompositionDataStatusMessage.class.getName())) {
             StatusNotificationEvent notificationEvent = (StatusNotificationEvent) event;
             CompositionDataStatusMessage statusMessage = (CompositionDataStatusMessage) notificationEvent.getNotificationMessage().getStatusMessage();
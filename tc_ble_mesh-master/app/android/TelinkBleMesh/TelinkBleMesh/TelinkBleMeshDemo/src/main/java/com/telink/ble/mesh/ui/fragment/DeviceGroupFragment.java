@@ -143,6 +143,7 @@ public class DeviceGroupFragment extends BaseFragment implements EventListener<S
             } else {
                 deviceInfo.subList.remove(MeshUtils.intToHex(opGroupAdr));
             }
+            TelinkMeshApplication.getInstance().getMeshInfo().onNodeGroupChanged(deviceInfo);
             deviceInfo.save();
             getActivity().runOnUiThread(() -> {
                 getLocalDeviceGroupInfo();
@@ -229,7 +229,7 @@ public class DeviceSettingFragment extends BaseFragment implements View.OnClickL
 
     private void onKickOutFinish() {
         delayHandler.removeCallbacksAndMessages(null);
-        MeshService.getInstance().removeDevice(deviceInfo.meshAddress);
+        MeshService.getInstance().removeDevice(deviceInfo.meshAddress, deviceInfo.elementCnt);
         TelinkMeshApplication.getInstance().getMeshInfo().removeNode(deviceInfo);
 //        TelinkMeshApplication.getInstance().getMeshInfo().saveOrUpdate(getActivity().getApplicationContext());
         dismissWaitingDialog();
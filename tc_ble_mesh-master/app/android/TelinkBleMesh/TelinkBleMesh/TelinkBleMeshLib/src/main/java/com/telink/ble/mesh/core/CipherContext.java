@@ -0,0 +1,254 @@
+/********************************************************************************************************
+ * @file CipherContext.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core;
+
+import org.spongycastle.crypto.engines.AESEngine;
+import org.spongycastle.crypto.macs.CMac;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * AES context holding the expanded key, used by {@link Encipher#aes}, {@link Encipher#ccm} and {@link Encipher#aesCmac}
+ * <p>
+ * contexts are cached per thread and per key, so the key schedule of network keys, app keys and device keys
+ * is computed once instead of on every pdu.
+ * CCM (no additional data) is implemented on the cached engine,
+ * as spongycastle CCMBlockCipher re-initializes the engine on every packet.
+ * A context is only used by the thread that created it.
+ */
+final class CipherContext {
+
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * max cached keys per thread
+     */
+    private static final int CACHE_CAPACITY = 16;
+
+    private static final int RECENT_SIZE = 4;
+
+    private static final ThreadLocal<ContextCache> CACHE = new ThreadLocal<ContextCache>() {
+        @Override
+        protected ContextCache initialValue() {
+            return new ContextCache();
+        }
+    };
+
+    private final byte[] key;
+
+    private final AESEngine engine;
+
+    private CMac cMac;
+
+    // work buffers
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] mac = new byte[BLOCK_SIZE];
+    private final byte[] stream = new byte[BLOCK_SIZE];
+    private final byte[] tag = new byte[BLOCK_SIZE];
+
+    private CipherContext(byte[] key) {
+        this.key = key;
+        this.engine = new AESEngine();
+        this.engine.init(true, new KeyParameter(key));
+    }
+
+    /**
+     * get cached context of current thread
+     *
+     * @param key 128-bit key
+     * @return context
+     */
+    static CipherContext get(byte[] key) {
+        return CACHE.get().get(key);
+    }
+
+    /**
+     * encrypt one block
+     */
+    void aes(byte[] in, int inOff, byte[] out, int outOff) {
+        engine.processBlock(in, inOff, out, outOff);
+    }
+
+    /**
+     * aes-cmac, the mac is reset after doFinal and reused with the same key
+     */
+    byte[] cmac(byte[] content) {
+        if (cMac == null) {
+            cMac = new CMac(new AESEngine());
+            cMac.init(new KeyParameter(key));
+        }
+        cMac.update(content, 0, content.length);
+        byte[] re = new byte[BLOCK_SIZE];
+        cMac.doFinal(re, 0);
+        return re;
+    }
+
+    /**
+     * AES-CCM without additional data
+     *
+     * @param in      input, plain text when encrypting, cipher text with mic when decrypting
+     * @param inOff   input offset
+     * @param inLen   input length
+     * @param nonce   7 to 13 bytes
+     * @param micSize mic size in bytes, 4 to 16 and even
+     * @param encrypt true: encryption, false: decryption
+     * @param out     output, in-place processing (same array and offset) is supported
+     * @param outOff  output offset
+     * @return output length, or -1 if mic check failed
+     */
+    int ccm(byte[] in, int inOff, int inLen, byte[] nonce, int micSize, boolean encrypt, byte[] out, int outOff) {
+        if (nonce.length < 7 || nonce.length > 13) {
+            throw new IllegalArgumentException("nonce must have length from 7 to 13 octets");
+        }
+        if (micSize < 4 || micSize > 16 || (micSize & 1) != 0) {
+            throw new IllegalArgumentException("invalid mic size");
+        }
+        final int msgLen = encrypt ? inLen : inLen - micSize;
+        if (msgLen < 0) {
+            return -1;
+        }
+        if (encrypt) {
+            calculateMac(in, inOff, msgLen, nonce, micSize);
+            ctr(in, inOff, msgLen, nonce, out, outOff);
+            counterBlock(nonce, 0);
+            engine.processBlock(block, 0, stream, 0);
+            for (int i = 0; i < micSize; i++) {
+                out[outOff + msgLen + i] = (byte) (mac[i] ^ stream[i]);
+            }
+            return msgLen + micSize;
+        } else {
+            counterBlock(nonce, 0);
+            engine.processBlock(block, 0, stream, 0);
+            // keep received mic before output written
+            for (int i = 0; i < micSize; i++) {
+                tag[i] = (byte) (in[inOff + msgLen + i] ^ stream[i]);
+            }
+            ctr(in, inOff, msgLen, nonce, out, outOff);
+            calculateMac(out, outOff, msgLen, nonce, micSize);
+            int diff = 0;
+            for (int i = 0; i < micSize; i++) {
+                diff |= mac[i] ^ tag[i];
+            }
+            if (diff != 0) {
+                Arrays.fill(out, outOff, outOff + msgLen, (byte) 0);
+                return -1;
+            }
+            return msgLen;
+        }
+    }
+
+    /**
+     * CBC-MAC of B0 and message, result in {@link #mac}
+     */
+    private void calculateMac(byte[] msg, int off, int len, byte[] nonce, int micSize) {
+        final int l = 15 - nonce.length;
+        mac[0] = (byte) ((((micSize - 2) / 2) << 3) | (l - 1));
+        System.arraycopy(nonce, 0, mac, 1, nonce.length);
+        int q = len;
+        for (int i = BLOCK_SIZE - 1; i > nonce.length; i--) {
+            mac[i] = (byte) q;
+            q >>>= 8;
+        }
+        engine.processBlock(mac, 0, mac, 0);
+        for (int pos = 0; pos < len; pos += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, len - pos);
+            for (int i = 0; i < n; i++) {
+                mac[i] ^= msg[off + pos + i];
+            }
+            engine.processBlock(mac, 0, mac, 0);
+        }
+    }
+
+    /**
+     * counter mode from counter 1
+     */
+    private void ctr(byte[] in, int inOff, int len, byte[] nonce, byte[] out, int outOff) {
+        int counter = 1;
+        for (int pos = 0; pos < len; pos += BLOCK_SIZE) {
+            counterBlock(nonce, counter++);
+            engine.processBlock(block, 0, stream, 0);
+            int n = Math.min(BLOCK_SIZE, len - pos);
+            for (int i = 0; i < n; i++) {
+                out[outOff + pos + i] = (byte) (in[inOff + pos + i] ^ stream[i]);
+            }
+        }
+    }
+
+    /**
+     * counter block Ai in {@link #block}
+     */
+    private void counterBlock(byte[] nonce, int counter) {
+        final int l = 15 - nonce.length;
+        block[0] = (byte) (l - 1);
+        System.arraycopy(nonce, 0, block, 1, nonce.length);
+        for (int i = BLOCK_SIZE - 1; i > nonce.length; i--) {
+            block[i] = (byte) counter;
+            counter >>>= 8;
+        }
+    }
+
+    /**
+     * LRU contexts of one thread
+     */
+    private static class ContextCache {
+
+        /**
+         * recently used contexts, checked before map lookup,
+         * as network and upper transport keys are used alternately on receive path
+         */
+        private final CipherContext[] recent = new CipherContext[RECENT_SIZE];
+
+        private int recentIndex = 0;
+
+        private final Map<ByteBuffer, CipherContext> contexts =
+                new LinkedHashMap<ByteBuffer, CipherContext>(CACHE_CAPACITY, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CipherContext> eldest) {
+                        return size() > CACHE_CAPACITY;
+                    }
+                };
+
+        CipherContext get(byte[] key) {
+            CipherContext context;
+            for (int i = 0; i < RECENT_SIZE; i++) {
+                context = recent[i];
+                if (context != null && Arrays.equals(context.key, key)) {
+                    return context;
+                }
+            }
+            context = contexts.get(ByteBuffer.wrap(key));
+            if (context == null) {
+                byte[] keyCopy = key.clone();
+                context = new CipherContext(keyCopy);
+                contexts.put(ByteBuffer.wrap(keyCopy), context);
+            }
+            recent[recentIndex] = context;
+            recentIndex = (recentIndex + 1) % RECENT_SIZE;
+            return context;
+        }
+    }
+}
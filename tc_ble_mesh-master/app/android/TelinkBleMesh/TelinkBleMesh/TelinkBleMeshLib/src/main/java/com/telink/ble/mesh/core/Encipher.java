@@ -25,15 +25,6 @@ package com.telink.ble.mesh.core;
 import com.telink.ble.mesh.util.Arrays;
 import com.telink.ble.mesh.util.MeshLogger;
 
-import org.spongycastle.crypto.BlockCipher;
-import org.spongycastle.crypto.CipherParameters;
-import org.spongycastle.crypto.InvalidCipherTextException;
-import org.spongycastle.crypto.engines.AESEngine;
-import org.spongycastle.crypto.engines.AESLightEngine;
-import org.spongycastle.crypto.macs.CMac;
-import org.spongycastle.crypto.modes.CCMBlockCipher;
-import org.spongycastle.crypto.params.AEADParameters;
-import org.spongycastle.crypto.params.KeyParameter;
 import org.spongycastle.jcajce.provider.digest.SHA256;
 import org.spongycastle.jce.ECNamedCurveTable;
 import org.spongycastle.jce.interfaces.ECPublicKey;
@@ -180,15 +171,7 @@ public final class Encipher {
      * m is the variable length data to be authenticated
      */
     public static byte[] aesCmac(byte[] content, byte[] key) {
-        CipherParameters cipherParameters = new KeyParameter(key);
-        BlockCipher blockCipher = new AESEngine();
-        CMac mac = new CMac(blockCipher);
-
-        mac.init(cipherParameters);
-        mac.update(content, 0, content.length);
-        byte[] re = new byte[16];
-        mac.doFinal(re, 0);
-        return re;
+        return CipherContext.get(key).cmac(content);
     }
 
     /**
@@ -230,17 +213,32 @@ The output of the key generation function k1 is as follows: k1(N, SALT, P) = AES
      * @return result
      */
     public static byte[] ccm(byte[] data, byte[] k, byte[] n, int micSize, boolean encrypt) {
-        byte[] result = new byte[data.length + (encrypt ? micSize : (-micSize))];
-        CCMBlockCipher ccmBlockCipher = new CCMBlockCipher(new AESEngine());
-        AEADParameters aeadParameters = new AEADParameters(new KeyParameter(k), micSize * 8, n);
-        ccmBlockCipher.init(encrypt, aeadParameters);
-        ccmBlockCipher.processBytes(data, 0, data.length, result, data.length);
-        try {
-            ccmBlockCipher.doFinal(result, 0);
-            return result;
-        } catch (InvalidCipherTextException e) {
+        int resultLen = data.length + (encrypt ? micSize : (-micSize));
+        if (resultLen < 0) {
             return null;
         }
+        byte[] result = new byte[resultLen];
+        return ccm(data, 0, data.length, k, n, micSize, encrypt, result, 0) < 0 ? null : result;
+    }
+
+    /**
+     * ccm into output buffer, no allocation when key context cached
+     *
+     * @param data       target data
+     * @param dataOffset data offset
+     * @param dataLen    data length, including mic when decrypting
+     * @param k          key
+     * @param n          nonce
+     * @param micSize    mic
+     * @param encrypt    true: encryption, false: decryption
+     * @param out        output buffer, can be the same as data with the same offset
+     * @param outOffset  output offset
+     * @return output length: dataLen + micSize when encrypting, dataLen - micSize when decrypting;
+     * -1 if decryption mic check failed
+     */
+    public static int ccm(byte[] data, int dataOffset, int dataLen, byte[] k, byte[] n, int micSize, boolean encrypt,
+                          byte[] out, int outOffset) {
+        return CipherContext.get(k).ccm(data, dataOffset, dataLen, n, micSize, encrypt, out, outOffset);
     }
 
     /**
@@ -252,14 +250,23 @@ The output of the key generation function k1 is as follows: k1(N, SALT, P) = AES
      */
     public static byte[] aes(byte[] data, byte[] key) {
         final byte[] encrypted = new byte[data.length];
-        final CipherParameters cipherParameters = new KeyParameter(key);
-        final AESLightEngine engine = new AESLightEngine();
-        engine.init(true, cipherParameters);
-        engine.processBlock(data, 0, encrypted, 0);
-
+        aes(data, 0, key, encrypted, 0);
         return encrypted;
     }
 
+    /**
+     * encrypt one 16-byte block into output buffer, no allocation when key context cached
+     *
+     * @param data       text
+     * @param dataOffset text offset
+     * @param key        key
+     * @param out        output buffer, can be the same as data
+     * @param outOffset  output offset
+     */
+    public static void aes(byte[] data, int dataOffset, byte[] key, byte[] out, int outOffset) {
+        CipherContext.get(key).aes(data, dataOffset, out, outOffset);
+    }
+
     /**
      * k1
      *
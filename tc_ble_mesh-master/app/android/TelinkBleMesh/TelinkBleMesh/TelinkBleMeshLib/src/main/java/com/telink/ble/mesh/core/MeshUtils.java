@@ -34,7 +34,6 @@ import com.telink.ble.mesh.core.message.MeshMessage;
 import com.telink.ble.mesh.core.message.StatusMessage;
 import com.telink.ble.mesh.core.message.aggregator.AggregatorItem;
 import com.telink.ble.mesh.core.message.aggregator.OpcodeAggregatorStatusMessage;
-import com.telink.ble.mesh.core.networking.AccessLayerPDU;
 import com.telink.ble.mesh.util.Arrays;
 
 import java.nio.ByteBuffer;
@@ -544,31 +543,20 @@ public final class MeshUtils {
      * @return a byte array containing the aggregated messages.
      */
     public static byte[] aggregateMessages(int elementAddress, List<MeshMessage> meshMessages) {
-
-        byte[] result = MeshUtils.integer2Bytes(elementAddress, 2, ByteOrder.LITTLE_ENDIAN);
-        int len;
-        boolean isLong;
-        int bufLen;
-        byte[] accessPdu;
+        List<byte[]> items = new ArrayList<>(meshMessages.size());
+        int len = 2;
+        byte[] item;
         for (MeshMessage msg : meshMessages) {
-            accessPdu = new AccessLayerPDU(msg.getOpcode(), msg.getParams()).toByteArray();
-            len = accessPdu.length;
-            isLong = len > 127;
-            bufLen = (isLong ? 2 : 1) + len + result.length;
-
-            ByteBuffer buffer = ByteBuffer.allocate(bufLen).order(ByteOrder.LITTLE_ENDIAN)
-                    .put(result);
-
-            len <<= 1 | (isLong ? 1 : 0);
-            if (isLong) {
-                buffer.putShort((short) len);
-            } else {
-                buffer.put((byte) len);
-            }
-            buffer.put(accessPdu);
-            result = buffer.array();
+            item = new AggregatorItem(msg.getOpcode(), msg.getParams()).toBytes();
+            items.add(item);
+            len += item.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN)
+                .putShort((short) elementAddress);
+        for (byte[] itemBytes : items) {
+            buffer.put(itemBytes);
         }
-        return result;
+        return buffer.array();
     }
 
     /**
@@ -126,6 +126,15 @@ public class BindingController {
 
     private static final long BINDING_TIMEOUT_ADV = 60 * 1000;
 
+    private int timeoutScale = 1;
+
+    private CompositionDataCache compositionDataCache;
+
+    /**
+     * binding by composition data in cache, composition data get is skipped
+     */
+    private boolean cpsFromCache = false;
+
     public BindingController(HandlerThread handlerThread) {
         this.delayHandler = new Handler(handlerThread.getLooper());
     }
@@ -134,6 +143,20 @@ public class BindingController {
         this.accessBridge = accessBridge;
     }
 
+    /**
+     * @param timeoutScale binding timeout is scaled when several devices are bound over one bearer
+     */
+    public void setTimeoutScale(int timeoutScale) {
+        this.timeoutScale = Math.max(1, timeoutScale);
+    }
+
+    /**
+     * @param compositionDataCache cache for composition data of known products, nullable
+     */
+    public void setCompositionDataCache(CompositionDataCache compositionDataCache) {
+        this.compositionDataCache = compositionDataCache;
+    }
+
     public BindingDevice getBindingDevice() {
         return bindingDevice;
     }
@@ -144,13 +167,19 @@ public class BindingController {
         this.appKey = appKey;
         this.bindingModels.clear();
         this.modelIndex = 0;
+        this.cpsFromCache = false;
 
         delayHandler.removeCallbacks(bindingTimeoutTask);
         delayHandler.postDelayed(bindingTimeoutTask,
-                isGattBearer() ? BINDING_TIMEOUT_GATT : BINDING_TIMEOUT_ADV);
+                (isGattBearer() ? BINDING_TIMEOUT_GATT : BINDING_TIMEOUT_ADV) * timeoutScale);
 
         log("binding begin: defaultBound? " + device.isDefaultBound());
-        if (bindingDevice.getCompositionData() == null) {
+        CompositionData cachedCps = getCachedCompositionData();
+        if (cachedCps != null) {
+            log("composition data found in cache");
+            cpsFromCache = true;
+            onCompositionDataReceived(cachedCps);
+        } else if (bindingDevice.getCompositionData() == null) {
             this.getCompositionData();
         } else {
             if (bindingDevice.isDefaultBound()) {
@@ -170,6 +199,32 @@ public class BindingController {
         this.bindingModels.clear();
     }
 
+    private CompositionData getCachedCompositionData() {
+        if (compositionDataCache == null || bindingDevice.getCompositionData() != null
+                || bindingDevice.isDefaultBound() || !bindingDevice.isProductKnown()) {
+            return null;
+        }
+        return compositionDataCache.get(bindingDevice.getCid(), bindingDevice.getPid(), bindingDevice.getVid());
+    }
+
+    /**
+     * composition data in cache may be outdated if firmware changed,
+     * remove it and get composition data from node
+     *
+     * @return true if composition data get started
+     */
+    private boolean retryWithoutCache(String desc) {
+        if (!cpsFromCache) return false;
+        cpsFromCache = false;
+        log("cached composition data invalid: " + desc);
+        compositionDataCache.remove(bindingDevice.getCid(), bindingDevice.getPid());
+        bindingDevice.setCompositionData(null);
+        this.bindingModels.clear();
+        this.modelIndex = 0;
+        getCompositionData();
+        return true;
+    }
+
     private boolean isGattBearer() {
         return bindingDevice != null && bindingDevice.getBearer() == BindingBearer.GattOnly;
     }
@@ -249,7 +304,9 @@ public class BindingController {
         }
 
         if (this.bindingModels.size() == 0) {
-            onBindFail("no target models found");
+            if (!retryWithoutCache("no target models found")) {
+                onBindFail("no target models found");
+            }
         } else {
             log("models prepared: " + this.bindingModels.size());
             bindingDevice.setCompositionData(compositionData);
@@ -336,6 +393,9 @@ public class BindingController {
                     return;
                 }
                 CompositionData compositionData = ((CompositionDataStatusMessage) message.getStatusMessage()).getCompositionData();
+                if (compositionDataCache != null && compositionDataCache.put(compositionData)) {
+                    log("composition data cached");
+                }
                 onCompositionDataReceived(compositionData);
                 break;
 
@@ -392,7 +452,9 @@ public class BindingController {
                         if (!isSig || appStatus.getStatus() == 0) {
                             log(String.format("model bind success (op agg) modelId-%06X isSig-%b", modelId, isSig));
                         } else {
-                            onBindFail("mode app status error (op agg)");
+                            if (!retryWithoutCache("mode app status error (op agg)")) {
+                                onBindFail("mode app status error (op agg)");
+                            }
                             return;
                         }
                     }
@@ -438,7 +500,7 @@ public class BindingController {
                 if (!sig || appStatus.getStatus() == 0) {
                     modelIndex++;
                     bindNextModel();
-                } else {
+                } else if (!retryWithoutCache("mode app status error")) {
                     onBindFail("mode app status error");
                 }
             } else {
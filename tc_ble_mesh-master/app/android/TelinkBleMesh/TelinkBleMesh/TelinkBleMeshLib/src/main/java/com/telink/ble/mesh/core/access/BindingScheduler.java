@@ -0,0 +1,375 @@
+/********************************************************************************************************
+ * @file BindingScheduler.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.access;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.SparseArray;
+
+import com.telink.ble.mesh.core.message.MeshMessage;
+import com.telink.ble.mesh.core.message.NotificationMessage;
+import com.telink.ble.mesh.entity.BindingDevice;
+import com.telink.ble.mesh.util.MeshLogger;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * binding for several devices over the current proxy connection, several devices are bound concurrently
+ * <p>
+ * each device has its own {@link BindingController}, which uses opcode aggregator when supported by the node.
+ * Config messages are sent to and answered by the primary element,
+ * so messages are routed to devices by node address.
+ * Messages of all devices share one network, the bridge should queue them
+ * instead of failing when the networking layer is busy.
+ */
+public class BindingScheduler {
+    private final String LOG_TAG = "BindingScheduler";
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    public static final int MAX_CONCURRENCY = 8;
+
+    /**
+     * a device complete, obj is {@link Progress}
+     */
+    public static final int STATE_PROGRESS = 0x10;
+
+    /**
+     * all devices complete, obj is {@link Progress}
+     */
+    public static final int STATE_COMPLETE = 0x11;
+
+    private final HandlerThread handlerThread;
+
+    private final Handler delayHandler;
+
+    private AccessBridge accessBridge;
+
+    private CompositionDataCache compositionDataCache;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    private final LinkedList<BindingDevice> waitingDevices = new LinkedList<>();
+
+    /**
+     * active jobs, key: node address
+     */
+    private final SparseArray<Job> jobs = new SparseArray<>();
+
+    /**
+     * app keys by app key index
+     */
+    private SparseArray<byte[]> appKeyMap;
+
+    private boolean running = false;
+
+    private int totalCount = 0;
+
+    private int successCount = 0;
+
+    private int failCount = 0;
+
+    private long startTime = 0;
+
+    public BindingScheduler(HandlerThread handlerThread) {
+        this.handlerThread = handlerThread;
+        this.delayHandler = new Handler(handlerThread.getLooper());
+    }
+
+    public void register(AccessBridge accessBridge) {
+        this.accessBridge = accessBridge;
+    }
+
+    /**
+     * @param compositionDataCache shared by all jobs, nullable
+     */
+    public void setCompositionDataCache(CompositionDataCache compositionDataCache) {
+        this.compositionDataCache = compositionDataCache;
+    }
+
+    /**
+     * @param concurrency max count of devices bound at the same time
+     */
+    public synchronized void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, Math.min(MAX_CONCURRENCY, concurrency));
+    }
+
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param devices   target devices with valid net key index
+     * @param appKeyMap app keys by app key index
+     */
+    public void begin(List<BindingDevice> devices, SparseArray<byte[]> appKeyMap) {
+        synchronized (this) {
+            clearJobs();
+            waitingDevices.clear();
+            waitingDevices.addAll(devices);
+            this.appKeyMap = appKeyMap;
+            totalCount = devices.size();
+            successCount = 0;
+            failCount = 0;
+            startTime = System.currentTimeMillis();
+            running = true;
+        }
+        log("binding schedule begin: " + devices.size() + " concurrency: " + concurrency);
+        if (devices.size() == 0) {
+            synchronized (this) {
+                running = false;
+            }
+            onStateChanged(STATE_COMPLETE, "no device", getProgress());
+            return;
+        }
+        schedule();
+    }
+
+    /**
+     * route notification to the job of source node
+     */
+    public void onMessageNotification(NotificationMessage message) {
+        Job job;
+        synchronized (this) {
+            job = jobs.get(message.getSrc());
+        }
+        if (job != null) {
+            job.controller.onMessageNotification(message);
+        }
+    }
+
+    /**
+     * route command complete to the job of destination node
+     */
+    public void onCommandComplete(MeshMessage meshMessage, boolean success, int rspCount) {
+        Job job;
+        synchronized (this) {
+            job = jobs.get(meshMessage.getDestinationAddress());
+        }
+        if (job != null) {
+            job.controller.onBindingCommandComplete(success, meshMessage.getOpcode(), meshMessage.getResponseMax(), rspCount);
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * stop all jobs and drop waiting devices
+     */
+    public void clear() {
+        synchronized (this) {
+            running = false;
+            waitingDevices.clear();
+            clearJobs();
+        }
+        delayHandler.removeCallbacksAndMessages(null);
+    }
+
+    public synchronized Progress getProgress() {
+        return new Progress(totalCount, successCount, failCount, jobs.size(), waitingDevices.size(),
+                startTime == 0 ? 0 : System.currentTimeMillis() - startTime);
+    }
+
+    private void clearJobs() {
+        for (int i = 0; i < jobs.size(); i++) {
+            jobs.valueAt(i).controller.clear();
+        }
+        jobs.clear();
+    }
+
+    private final Runnable scheduleTask = new Runnable() {
+        @Override
+        public void run() {
+            schedule();
+        }
+    };
+
+    /**
+     * start jobs for waiting devices until concurrency reached
+     */
+    private void schedule() {
+        List<Job> startingJobs = new ArrayList<>();
+        List<BindingDevice> invalidDevices = new ArrayList<>();
+        synchronized (this) {
+            if (!running) return;
+            while (jobs.size() < concurrency && waitingDevices.size() != 0) {
+                BindingDevice device = waitingDevices.poll();
+                byte[] appKey = appKeyMap == null ? null : appKeyMap.get(device.getAppKeyIndex());
+                if (appKey == null || jobs.get(device.getMeshAddress()) != null) {
+                    invalidDevices.add(device);
+                    continue;
+                }
+                Job job = new Job(device, appKey);
+                jobs.put(device.getMeshAddress(), job);
+                startingJobs.add(job);
+            }
+        }
+        for (BindingDevice device : invalidDevices) {
+            onDeviceComplete(null, device, BindingController.STATE_FAIL, "app key not found or node address duplicated");
+        }
+        for (Job job : startingJobs) {
+            log(String.format("job start: node -- %04X", job.device.getMeshAddress()));
+            job.controller.begin(job.device.getNetKeyIndex(), job.appKey, job.device);
+        }
+    }
+
+    private void onJobStateChanged(Job job, int state, String desc) {
+        if (state != BindingController.STATE_SUCCESS && state != BindingController.STATE_FAIL) {
+            return;
+        }
+        synchronized (this) {
+            int address = job.device.getMeshAddress();
+            if (jobs.get(address) != job) return;
+            jobs.remove(address);
+        }
+        onDeviceComplete(job, job.device, state, desc);
+    }
+
+    /**
+     * @param job null if device not started
+     */
+    private void onDeviceComplete(Job job, BindingDevice device, int state, String desc) {
+        boolean allComplete;
+        synchronized (this) {
+            if (!running) return;
+            if (state == BindingController.STATE_SUCCESS) {
+                successCount++;
+            } else {
+                failCount++;
+            }
+            allComplete = jobs.size() == 0 && waitingDevices.size() == 0;
+            if (allComplete) {
+                running = false;
+            }
+        }
+        if (job != null) {
+            job.controller.clear();
+        }
+        onStateChanged(state, desc, device);
+        Progress progress = getProgress();
+        log("binding progress: " + progress);
+        onStateChanged(STATE_PROGRESS, "binding progress", progress);
+        if (allComplete) {
+            onStateChanged(STATE_COMPLETE, "binding complete", progress);
+        } else {
+            delayHandler.post(scheduleTask);
+        }
+    }
+
+    private void onStateChanged(int state, String desc, Object obj) {
+        if (accessBridge != null) {
+            accessBridge.onAccessStateChanged(state, desc, AccessBridge.MODE_BINDING, obj);
+        }
+    }
+
+    private void log(String logMessage) {
+        MeshLogger.log(logMessage, LOG_TAG, MeshLogger.LEVEL_DEBUG);
+    }
+
+    /**
+     * binding one device
+     */
+    private class Job implements AccessBridge {
+        private final BindingDevice device;
+
+        private final byte[] appKey;
+
+        private final BindingController controller;
+
+        Job(BindingDevice device, byte[] appKey) {
+            this.device = device;
+            this.appKey = appKey;
+            this.controller = new BindingController(handlerThread);
+            this.controller.register(this);
+            // messages of all jobs are transmitted in turn
+            this.controller.setTimeoutScale(concurrency);
+            this.controller.setCompositionDataCache(compositionDataCache);
+        }
+
+        @Override
+        public boolean onAccessMessagePrepared(MeshMessage meshMessage, int mode) {
+            return accessBridge != null && accessBridge.onAccessMessagePrepared(meshMessage, AccessBridge.MODE_BINDING);
+        }
+
+        @Override
+        public void onAccessStateChanged(int state, String desc, int mode, Object obj) {
+            onJobStateChanged(this, state, desc);
+        }
+    }
+
+    /**
+     * binding progress of all devices
+     */
+    public static final class Progress {
+        public final int total;
+
+        public final int success;
+
+        public final int fail;
+
+        /**
+         * count of devices being bound
+         */
+        public final int active;
+
+        public final int waiting;
+
+        /**
+         * milliseconds since begin
+         */
+        public final long elapsed;
+
+        public Progress(int total, int success, int fail, int active, int waiting, long elapsed) {
+            this.total = total;
+            this.success = success;
+            this.fail = fail;
+            this.active = active;
+            this.waiting = waiting;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * @return completed devices per minute
+         */
+        public float getThroughput() {
+            return elapsed == 0 ? 0 : (success + fail) * 60000f / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{" +
+                    "total=" + total +
+                    ", success=" + success +
+                    ", fail=" + fail +
+                    ", active=" + active +
+                    ", waiting=" + waiting +
+                    ", elapsed=" + elapsed +
+                    ", throughput=" + getThroughput() +
+                    '}';
+        }
+    }
+}
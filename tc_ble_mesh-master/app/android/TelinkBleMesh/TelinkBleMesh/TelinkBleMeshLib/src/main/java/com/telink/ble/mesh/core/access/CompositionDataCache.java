@@ -0,0 +1,226 @@
+/********************************************************************************************************
+ * @file CompositionDataCache.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.access;
+
+import com.telink.ble.mesh.entity.CompositionData;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * composition data of known products, nodes of the same product share the same composition data,
+ * so the composition data get can be skipped when binding
+ * <p>
+ * entries are keyed by company id and product id, and the version id (firmware version) is kept in entry.
+ * A fetched composition data with different version id replaces the cached one.
+ * Composition data is validated by parsing before cached.
+ */
+public class CompositionDataCache {
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static final byte SNAPSHOT_VERSION = 0x01;
+
+    /**
+     * cid(2) + pid(2) + vid(2) + crpl(2) + features(2)
+     */
+    private static final int HEADER_LEN = 10;
+
+    private final int capacity;
+
+    private final Map<Integer, CompositionData> entries;
+
+    private int hitCount = 0;
+
+    private int missCount = 0;
+
+    /**
+     * changed since last snapshot
+     */
+    private boolean dirty = false;
+
+    public CompositionDataCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CompositionDataCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.entries = new LinkedHashMap<Integer, CompositionData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CompositionData> eldest) {
+                return size() > CompositionDataCache.this.capacity;
+            }
+        };
+    }
+
+    private static int key(int cid, int pid) {
+        return ((cid & 0xFFFF) << 16) | (pid & 0xFFFF);
+    }
+
+    /**
+     * @return copy of cached composition data of product at any version, or null
+     * @see #get(int, int, int)
+     */
+    public synchronized CompositionData get(int cid, int pid) {
+        return count(entries.get(key(cid, pid)));
+    }
+
+    /**
+     * @param vid expected version id
+     * @return copy of cached composition data of product at version, or null
+     */
+    public synchronized CompositionData get(int cid, int pid, int vid) {
+        CompositionData compositionData = entries.get(key(cid, pid));
+        return count(compositionData != null && compositionData.vid == vid ? compositionData : null);
+    }
+
+    private CompositionData count(CompositionData compositionData) {
+        if (compositionData == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        // each node holds its own instance
+        return CompositionData.from(compositionData.raw.clone());
+    }
+
+    /**
+     * cache composition data fetched from node,
+     * entry of the same product is replaced if version id or content changed
+     *
+     * @return true if cache updated
+     */
+    public synchronized boolean put(CompositionData compositionData) {
+        CompositionData valid = validate(compositionData == null ? null : compositionData.toBytes());
+        if (valid == null) return false;
+        int key = key(valid.cid, valid.pid);
+        CompositionData cached = entries.get(key);
+        if (cached != null && Arrays.equals(cached.raw, valid.raw)) {
+            return false;
+        }
+        entries.put(key, valid);
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * remove entry, for example when binding by cached composition data failed
+     *
+     * @return true if entry removed
+     */
+    public synchronized boolean remove(int cid, int pid) {
+        boolean removed = entries.remove(key(cid, pid)) != null;
+        dirty |= removed;
+        return removed;
+    }
+
+    public synchronized void clear() {
+        dirty |= entries.size() != 0;
+        entries.clear();
+    }
+
+    /**
+     * @return true if changed since last {@link #snapshot()}
+     */
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return snapshot: version(1 byte) + entries, entry: raw length(2 bytes) + raw composition data
+     * @see #restore(byte[])
+     */
+    public synchronized byte[] snapshot() {
+        dirty = false;
+        int len = 1;
+        for (CompositionData compositionData : entries.values()) {
+            len += 2 + compositionData.raw.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(len);
+        buffer.put(SNAPSHOT_VERSION);
+        for (CompositionData compositionData : entries.values()) {
+            buffer.putShort((short) compositionData.raw.length);
+            buffer.put(compositionData.raw);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * merge snapshot into cache, invalid entries are skipped
+     *
+     * @param snapshot created by {@link #snapshot()}
+     * @return false if snapshot format error
+     */
+    public synchronized boolean restore(byte[] snapshot) {
+        if (snapshot == null || snapshot.length == 0 || snapshot[0] != SNAPSHOT_VERSION) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(snapshot, 1, snapshot.length - 1);
+        while (buffer.remaining() >= 2) {
+            int len = buffer.getShort() & 0xFFFF;
+            if (len > buffer.remaining()) {
+                return false;
+            }
+            byte[] raw = new byte[len];
+            buffer.get(raw);
+            CompositionData compositionData = validate(raw);
+            if (compositionData != null) {
+                entries.put(key(compositionData.cid, compositionData.pid), compositionData);
+            }
+        }
+        return !buffer.hasRemaining();
+    }
+
+    /**
+     * parse raw data, it is valid if all elements are complete and at least one element exists
+     *
+     * @return parsed composition data, or null if invalid
+     */
+    static CompositionData validate(byte[] raw) {
+        if (raw == null || raw.length <= HEADER_LEN) return null;
+        // check element lengths before parsing
+        int index = HEADER_LEN;
+        while (index < raw.length) {
+            if (index + 4 > raw.length) return null;
+            int sigNum = raw[index + 2] & 0xFF;
+            int vendorNum = raw[index + 3] & 0xFF;
+            index += 4 + sigNum * 2 + vendorNum * 4;
+        }
+        if (index != raw.length) return null;
+        return CompositionData.from(raw.clone());
+    }
+}
@@ -22,6 +22,7 @@
  *******************************************************************************************************/
 package com.telink.ble.mesh.core.access;
 
+import com.telink.ble.mesh.util.FirmwareSource;
 import com.telink.ble.mesh.util.MeshLogger;
 
 import java.util.zip.CRC32;
@@ -38,7 +39,7 @@ public class MeshFirmwareParser {
 
     private static final int DEFAULT_CHUNK_SIZE = 256;
 
-    private byte[] firmwareData;
+    private FirmwareSource firmwareSource;
 
 //    private long objectId = DEFAULT_OBJECT_ID;
 
@@ -58,10 +59,28 @@ public class MeshFirmwareParser {
 
     private int progress = -1;
 
+    private final CRC32 crc32 = new CRC32();
+
+    /**
+     * block index of cached checksum
+     */
+    private int checksumBlockIndex = -1;
+
+    private int blockChecksum;
+
     public void reset(byte[] data) {
-        this.firmwareData = data;
-        this.objectSize = data.length;
+        reset(FirmwareSource.wrap(data));
+    }
 
+    public void reset(byte[] data, int blockSize, int chunkSize) {
+        reset(FirmwareSource.wrap(data), blockSize, chunkSize);
+    }
+
+    public void reset(FirmwareSource source) {
+        this.firmwareSource = source;
+        this.objectSize = source.size();
+
+        this.checksumBlockIndex = -1;
         this.curBlockIndex = -1;
         this.curChunkIndex = -1;
         progress = -1;
@@ -69,10 +88,10 @@ public class MeshFirmwareParser {
         totalChunkNumber = (int) Math.ceil(((double) objectSize) / mChunkSize);
     }
 
-    public void reset(byte[] data, int blockSize, int chunkSize) {
+    public void reset(FirmwareSource source, int blockSize, int chunkSize) {
         this.mBlockSize = blockSize;
         this.mChunkSize = chunkSize;
-        this.reset(data);
+        this.reset(source);
     }
 
 
@@ -158,12 +177,8 @@ public class MeshFirmwareParser {
                 chunkSize = (int) (blockSize % mChunkSize);
             }
 
-            byte[] chunkData = new byte[chunkSize];
             int offset = curBlockIndex * mBlockSize + curChunkIndex * mChunkSize;
-            System.arraycopy(firmwareData, offset, chunkData, 0, chunkSize);
-
-
-            return chunkData;
+            return firmwareSource.read(offset, chunkSize);
         } else {
             return null;
         }
@@ -186,11 +201,8 @@ public class MeshFirmwareParser {
             chunkSize = (int) (blockSize % mChunkSize);
         }
 
-        byte[] chunkData = new byte[chunkSize];
         int offset = curBlockIndex * mBlockSize + chunkIndex * mChunkSize;
-        System.arraycopy(firmwareData, offset, chunkData, 0, chunkSize);
-
-        return chunkData;
+        return firmwareSource.read(offset, chunkSize);
 
     }
 
@@ -215,14 +227,15 @@ public class MeshFirmwareParser {
     }
 
     /**
-     * get current block checksum
+     * get current block checksum, computed once for each block without copying the block
      */
     public int getBlockChecksum() {
-        int blockSize = getCurBlockSize();
-        byte[] blockData = new byte[blockSize];
-        System.arraycopy(firmwareData, curBlockIndex * mBlockSize, blockData, 0, blockSize);
-        CRC32 crc32 = new CRC32();
-        crc32.update(blockData);
-        return (int) crc32.getValue();
+        if (checksumBlockIndex != curBlockIndex) {
+            crc32.reset();
+            firmwareSource.update(crc32, curBlockIndex * mBlockSize, getCurBlockSize());
+            blockChecksum = (int) crc32.getValue();
+            checksumBlockIndex = curBlockIndex;
+        }
+        return blockChecksum;
     }
 }
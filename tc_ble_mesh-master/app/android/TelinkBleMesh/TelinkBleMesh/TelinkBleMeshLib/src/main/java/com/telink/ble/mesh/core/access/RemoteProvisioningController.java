@@ -96,7 +96,12 @@ public class RemoteProvisioningController implements ProvisioningBridge {
 
     private Handler delayHandler;
 
-    private static final long OUTBOUND_WAITING_TIMEOUT = 500;
+    /**
+     * provisioning pdu is resent if outbound report not received in this time
+     */
+    public static final long DEFAULT_OUTBOUND_TIMEOUT = 2 * 1000;
+
+    private long outboundTimeout = DEFAULT_OUTBOUND_TIMEOUT;
 
     public RemoteProvisioningController(HandlerThread handlerThread) {
         delayHandler = new Handler(handlerThread.getLooper());
@@ -124,6 +129,14 @@ public class RemoteProvisioningController implements ProvisioningBridge {
         linkOpen();
     }
 
+    /**
+     * @param outboundTimeout milliseconds waiting for outbound report before resending provisioning pdu,
+     *                        should be longer when several links share the network
+     */
+    public void setOutboundTimeout(long outboundTimeout) {
+        this.outboundTimeout = outboundTimeout;
+    }
+
     public void continueProvision(int address) {
         provisioningController.continueProvision(address);
     }
@@ -200,7 +213,7 @@ public class RemoteProvisioningController implements ProvisioningBridge {
 
     private void resendProvisionPdu() {
         delayHandler.removeCallbacks(resendProvisionPduTask);
-        delayHandler.postDelayed(resendProvisionPduTask, 2 * 1000);
+        delayHandler.postDelayed(resendProvisionPduTask, outboundTimeout);
     }
 
     private void onOutboundReport(ProvisioningPDUOutboundReportMessage outboundReportMessage) {
@@ -0,0 +1,363 @@
+/********************************************************************************************************
+ * @file RemoteProvisioningScheduler.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.access;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.SparseArray;
+
+import com.telink.ble.mesh.core.message.MeshMessage;
+import com.telink.ble.mesh.core.message.NotificationMessage;
+import com.telink.ble.mesh.core.provisioning.ProvisionerKeyPairPool;
+import com.telink.ble.mesh.core.provisioning.ProvisioningController;
+import com.telink.ble.mesh.entity.RemoteProvisioningDevice;
+import com.telink.ble.mesh.util.Arrays;
+import com.telink.ble.mesh.util.MeshLogger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * remote provisioning for several devices, links through different remote provisioning servers run concurrently
+ * <p>
+ * each link has its own {@link RemoteProvisioningController} and {@link ProvisioningController}.
+ * A remote provisioning server supports one link at a time, and its reports do not carry link information,
+ * so at most one link is opened through each server, and messages are routed to links by server address.
+ * Messages of all links share one network, the bridge should queue them
+ * instead of failing when the networking layer is busy.
+ */
+public class RemoteProvisioningScheduler {
+    private final String LOG_TAG = "RemotePvScheduler";
+
+    public static final int DEFAULT_CONCURRENCY = 3;
+
+    public static final int MAX_CONCURRENCY = 8;
+
+    /**
+     * a device complete, obj is {@link Progress}
+     */
+    public static final int STATE_PROGRESS = 0x10;
+
+    /**
+     * all devices complete, obj is {@link Progress}
+     */
+    public static final int STATE_COMPLETE = 0x11;
+
+    private final HandlerThread handlerThread;
+
+    private final Handler delayHandler;
+
+    private final ProvisionerKeyPairPool keyPairPool;
+
+    private AccessBridge accessBridge;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    private final LinkedList<RemoteProvisioningDevice> waitingDevices = new LinkedList<>();
+
+    /**
+     * active links, key: server address
+     */
+    private final SparseArray<Link> links = new SparseArray<>();
+
+    private boolean running = false;
+
+    private int totalCount = 0;
+
+    private int successCount = 0;
+
+    private int failCount = 0;
+
+    private long startTime = 0;
+
+    /**
+     * @param keyPairPool provisioner key pairs shared by links
+     */
+    public RemoteProvisioningScheduler(HandlerThread handlerThread, ProvisionerKeyPairPool keyPairPool) {
+        this.handlerThread = handlerThread;
+        this.delayHandler = new Handler(handlerThread.getLooper());
+        this.keyPairPool = keyPairPool;
+    }
+
+    public void register(AccessBridge accessBridge) {
+        this.accessBridge = accessBridge;
+    }
+
+    /**
+     * @param concurrency max count of concurrent links, each through a different server
+     */
+    public synchronized void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, Math.min(MAX_CONCURRENCY, concurrency));
+    }
+
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param devices target devices with server address and allocated unicast address
+     */
+    public void begin(List<RemoteProvisioningDevice> devices) {
+        synchronized (this) {
+            clearLinks();
+            waitingDevices.clear();
+            waitingDevices.addAll(devices);
+            totalCount = devices.size();
+            successCount = 0;
+            failCount = 0;
+            startTime = System.currentTimeMillis();
+            running = true;
+        }
+        log("remote provisioning schedule begin: " + devices.size() + " concurrency: " + concurrency);
+        if (devices.size() == 0) {
+            onStateChanged(STATE_COMPLETE, "no device", getProgress());
+            return;
+        }
+        schedule();
+    }
+
+    /**
+     * continue provisioning a device waiting after capability received
+     */
+    public void continueProvision(RemoteProvisioningDevice device, int address) {
+        Link link;
+        synchronized (this) {
+            link = links.get(device.getServerAddress());
+        }
+        if (link != null && link.device == device) {
+            link.controller.continueProvision(address);
+        }
+    }
+
+    /**
+     * route notification to the link through source server
+     */
+    public void onMessageNotification(NotificationMessage message) {
+        Link link;
+        synchronized (this) {
+            link = links.get(message.getSrc());
+        }
+        if (link != null) {
+            link.controller.onMessageNotification(message);
+        }
+    }
+
+    /**
+     * route command complete to the link through destination server
+     */
+    public void onCommandComplete(MeshMessage meshMessage, boolean success, int rspCount) {
+        Link link;
+        synchronized (this) {
+            link = links.get(meshMessage.getDestinationAddress());
+        }
+        if (link != null) {
+            link.controller.onRemoteProvisioningCommandComplete(success, meshMessage.getOpcode(), meshMessage.getResponseMax(), rspCount);
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * stop all links and drop waiting devices
+     */
+    public void clear() {
+        synchronized (this) {
+            running = false;
+            waitingDevices.clear();
+            clearLinks();
+        }
+        delayHandler.removeCallbacksAndMessages(null);
+    }
+
+    public synchronized Progress getProgress() {
+        return new Progress(totalCount, successCount, failCount, links.size(), waitingDevices.size(),
+                startTime == 0 ? 0 : System.currentTimeMillis() - startTime);
+    }
+
+    private void clearLinks() {
+        for (int i = 0; i < links.size(); i++) {
+            links.valueAt(i).clear();
+        }
+        links.clear();
+    }
+
+    private final Runnable scheduleTask = new Runnable() {
+        @Override
+        public void run() {
+            schedule();
+        }
+    };
+
+    /**
+     * open links for waiting devices whose server is free, until concurrency reached
+     */
+    private void schedule() {
+        List<Link> startingLinks = new ArrayList<>();
+        synchronized (this) {
+            if (!running) return;
+            Iterator<RemoteProvisioningDevice> iterator = waitingDevices.iterator();
+            while (links.size() < concurrency && iterator.hasNext()) {
+                RemoteProvisioningDevice device = iterator.next();
+                if (links.get(device.getServerAddress()) != null) continue;
+                iterator.remove();
+                Link link = new Link(device);
+                links.put(device.getServerAddress(), link);
+                startingLinks.add(link);
+            }
+        }
+        for (Link link : startingLinks) {
+            log(String.format("link start: server -- %04X uuid -- %s", link.device.getServerAddress(),
+                    Arrays.bytesToHexString(link.device.getUuid())));
+            link.controller.begin(link.provisioningController, link.device);
+        }
+    }
+
+    private void onLinkStateChanged(Link link, int state, String desc) {
+        if (state == RemoteProvisioningController.STATE_CAPABILITY_RECEIVED) {
+            onStateChanged(state, desc, link.device);
+            return;
+        }
+        if (state != RemoteProvisioningController.STATE_PROVISION_SUCCESS
+                && state != RemoteProvisioningController.STATE_PROVISION_FAIL) {
+            return;
+        }
+        boolean allComplete;
+        synchronized (this) {
+            int serverAddress = link.device.getServerAddress();
+            if (links.get(serverAddress) != link) return;
+            links.remove(serverAddress);
+            if (state == RemoteProvisioningController.STATE_PROVISION_SUCCESS) {
+                successCount++;
+            } else {
+                failCount++;
+            }
+            allComplete = running && links.size() == 0 && waitingDevices.size() == 0;
+            if (allComplete) {
+                running = false;
+            }
+        }
+        link.clear();
+        onStateChanged(state, desc, link.device);
+        Progress progress = getProgress();
+        log("remote provisioning progress: " + progress);
+        onStateChanged(STATE_PROGRESS, "remote provisioning progress", progress);
+        if (allComplete) {
+            onStateChanged(STATE_COMPLETE, "remote provisioning complete", progress);
+        } else {
+            delayHandler.post(scheduleTask);
+        }
+    }
+
+    private void onStateChanged(int state, String desc, Object obj) {
+        if (accessBridge != null) {
+            accessBridge.onAccessStateChanged(state, desc, AccessBridge.MODE_REMOTE_PROVISIONING, obj);
+        }
+    }
+
+    private void log(String logMessage) {
+        MeshLogger.log(logMessage, LOG_TAG, MeshLogger.LEVEL_DEBUG);
+    }
+
+    /**
+     * one link through a remote provisioning server
+     */
+    private class Link implements AccessBridge {
+        private final RemoteProvisioningDevice device;
+
+        private final RemoteProvisioningController controller;
+
+        private final ProvisioningController provisioningController;
+
+        Link(RemoteProvisioningDevice device) {
+            this.device = device;
+            this.provisioningController = new ProvisioningController(handlerThread, keyPairPool);
+            this.controller = new RemoteProvisioningController(handlerThread);
+            this.controller.register(this);
+            // provisioning pdus of all links are transmitted in turn
+            this.controller.setOutboundTimeout(RemoteProvisioningController.DEFAULT_OUTBOUND_TIMEOUT * concurrency);
+        }
+
+        void clear() {
+            provisioningController.clear();
+            controller.clear();
+        }
+
+        @Override
+        public boolean onAccessMessagePrepared(MeshMessage meshMessage, int mode) {
+            return accessBridge != null && accessBridge.onAccessMessagePrepared(meshMessage, AccessBridge.MODE_REMOTE_PROVISIONING);
+        }
+
+        @Override
+        public void onAccessStateChanged(int state, String desc, int mode, Object obj) {
+            onLinkStateChanged(this, state, desc);
+        }
+    }
+
+    /**
+     * remote provisioning progress of all devices
+     */
+    public static final class Progress {
+        public final int total;
+
+        public final int success;
+
+        public final int fail;
+
+        /**
+         * count of active links
+         */
+        public final int active;
+
+        public final int waiting;
+
+        /**
+         * milliseconds since begin
+         */
+        public final long elapsed;
+
+        public Progress(int total, int success, int fail, int active, int waiting, long elapsed) {
+            this.total = total;
+            this.success = success;
+            this.fail = fail;
+            this.active = active;
+            this.waiting = waiting;
+            this.elapsed = elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{" +
+                    "total=" + total +
+                    ", success=" + success +
+                    ", fail=" + fail +
+                    ", active=" + active +
+                    ", waiting=" + waiting +
+                    ", elapsed=" + elapsed +
+                    '}';
+        }
+    }
+}
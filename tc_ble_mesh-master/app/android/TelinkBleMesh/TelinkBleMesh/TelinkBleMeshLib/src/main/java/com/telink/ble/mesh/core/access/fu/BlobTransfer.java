@@ -48,9 +48,11 @@ import com.telink.ble.mesh.core.networking.ExtendBearerMode;
 import com.telink.ble.mesh.core.networking.NetworkingController;
 import com.telink.ble.mesh.entity.FirmwareUpdateConfiguration;
 import com.telink.ble.mesh.entity.MeshUpdatingDevice;
+import com.telink.ble.mesh.util.FirmwareSource;
 import com.telink.ble.mesh.util.MeshLogger;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -69,6 +71,12 @@ class BlobTransfer {
     // PTS BV6 need to be more than 67.
     private static final long PARTIAL_WAITING_TIMEOUT = 68 * 1000;
 
+    /**
+     * max unsegmented chunks sent in one pump, used in GATT transfer,
+     * then the pump is posted to handler so that notifications can be handled between windows
+     */
+    private static final int CHUNK_WINDOW = 16;
+
     /**
      * blob transfer get
      */
@@ -114,9 +122,9 @@ class BlobTransfer {
     private int nodeIndex;
 
     /**
-     * received missing chunk number
+     * received missing chunk number, mixed by all nodes
      */
-    private ArrayList<Integer> missingChunks = new ArrayList<>();
+    private final BitSet missingChunks = new BitSet();
 
     /**
      * direction of blob sending
@@ -132,10 +140,10 @@ class BlobTransfer {
      */
     List<TargetDevice> targetDevices = new ArrayList<>();
     //    List<MeshUpdatingDevice> deviceList;
-    byte[] firmwareData;
+    FirmwareSource firmwareSource;
 
     /**
-     * sending missing chunk
+     * chunk number from which next missing chunk is searched
      */
     private int missingChunkIndex = 0;
 
@@ -177,7 +185,7 @@ class BlobTransfer {
      *                      otherwise not used
      */
     public void resetParams(FirmwareUpdateConfiguration configuration, BlobTransferType type, int directAddress) {
-        this.firmwareData = configuration.getFirmwareData();
+        this.firmwareSource = configuration.getFirmwareSource();
         this.extendBearerMode = configuration.getExtendBearerMode();
         this.blobId = configuration.getBlobId();
         this.appKeyIndex = configuration.getAppKeyIndex();
@@ -371,12 +379,12 @@ class BlobTransfer {
                 break;
             case BlobBlockStatusMessage.FORMAT_SOME_CHUNKS_MISSING:
             case BlobBlockStatusMessage.FORMAT_ENCODED_MISSING_CHUNKS:
-                if (missingChunks.size() == 0) {
+                if (missingChunks.isEmpty()) {
                     log("get blob block complete -> missing chunks size 0", MeshLogger.LEVEL_WARN);
                     blockSendComplete = true;
                 } else {
                     // resend missing chunks
-                    log("get blob block complete -> resend missing chunks , size=" + missingChunks.size(), MeshLogger.LEVEL_WARN);
+                    log("get blob block complete -> resend missing chunks , size=" + missingChunks.cardinality(), MeshLogger.LEVEL_WARN);
                     printMissingChunkNumber("mixed missing chunks : ", missingChunks);
                     missingChunkIndex = 0;
                     sendMissingChunks();
@@ -399,6 +407,14 @@ class BlobTransfer {
         log(str.toString(), MeshLogger.LEVEL_WARN);
     }
 
+    private void printMissingChunkNumber(String preDesc, BitSet chunks) {
+        StringBuilder str = new StringBuilder(preDesc);
+        for (int chunkNumber = chunks.nextSetBit(0); chunkNumber >= 0; chunkNumber = chunks.nextSetBit(chunkNumber + 1)) {
+            str.append(String.format("%04X  ", chunkNumber));
+        }
+        log(str.toString(), MeshLogger.LEVEL_WARN);
+    }
+
     private void removeFailedDevices() {
         Iterator<TargetDevice> iterator = targetDevices.iterator();
         TargetDevice updatingNode;
@@ -533,32 +549,45 @@ class BlobTransfer {
         }
     }
 
+    /**
+     * send chunks at current block,
+     * GATT transfer: unsegmented chunks are sent in windows of {@link #CHUNK_WINDOW} without delay,
+     * and a segmented chunk waits for segment complete {@link #onTransferSegmentComplete(boolean)}
+     * LOCAL or MESH transfer: one chunk is sent by timer
+     */
     private void sendChunks() {
-        byte[] chunkData = firmwareParser.nextChunk();
-        final int chunkIndex = firmwareParser.currentChunkIndex();
-        if (chunkData != null) {
+        final boolean gattTransfer = transferType == BlobTransferType.GATT_INIT || transferType == BlobTransferType.GATT_DIST;
+        final int segmentLen = gattTransfer ? getSegmentLen() : 0;
+        for (int sent = 0; ; ) {
+            byte[] chunkData = firmwareParser.nextChunk();
+            if (chunkData == null) {
+                log("chunks sent complete at: block -- " + firmwareParser.currentBlockIndex()
+                        + " chunk -- " + firmwareParser.currentChunkIndex());
+                checkMissingChunks();
+                return;
+            }
+            final int chunkIndex = firmwareParser.currentChunkIndex();
             validateUpdatingProgress();
             BlobChunkTransferMessage blobChunkTransferMessage = generateChunkTransferMessage(chunkIndex, chunkData);
             log("next chunk transfer msg: " + blobChunkTransferMessage.toString() + " - extendBearerMode - " + extendBearerMode);
             onTransferMessagePrepared(blobChunkTransferMessage);
-            if (transferType == BlobTransferType.GATT_INIT || transferType == BlobTransferType.GATT_DIST) {
-
-                int len = chunkData.length + 3;
-                boolean isSegment = len > getSegmentLen();
-                if (!isSegment) {
-                    // if not segmented message, send next
-                    sendChunks();
-//                    delayHandler.postDelayed(chunkSendingTask, 100); // for test
-                }
-                // else , waiting for segment block ack complete
-            } else {
+            if (step != STEP_BLOB_CHUNK_SENDING) {
+                // transfer complete by send error
+                return;
+            }
+            if (!gattTransfer) {
                 // for LOCAL or MESH type, send chunk by timer
                 delayHandler.postDelayed(chunkSendingTask, getChunkSendingInterval());
+                return;
+            }
+            if (chunkData.length + 3 > segmentLen) {
+                // waiting for segment block ack complete
+                return;
+            }
+            if (++sent == CHUNK_WINDOW) {
+                delayHandler.post(chunkSendingTask);
+                return;
             }
-        } else {
-            log("chunks sent complete at: block -- " + firmwareParser.currentBlockIndex()
-                    + " chunk -- " + firmwareParser.currentChunkIndex());
-            checkMissingChunks();
         }
     }
 
@@ -608,16 +637,17 @@ class BlobTransfer {
 
 
     private void sendMissingChunks() {
-        if (missingChunkIndex >= missingChunks.size()) {
+        int chunkNumber = missingChunks.nextSetBit(missingChunkIndex);
+        if (chunkNumber < 0) {
             // all missing chunk sent
-            log("all missing chunks sent complete: " + missingChunkIndex);
+            log("all missing chunks sent complete: " + missingChunks.cardinality());
             if (transferMode == TransferMode.PUSH) {
                 checkMissingChunks();
             }
 
             // if pull mode, check
         } else {
-            int chunkNumber = missingChunks.get(missingChunkIndex);
+            missingChunkIndex = chunkNumber;
             log("send missing chunk at : " + firmwareParser.currentBlockIndex() + " - " + chunkNumber);
             byte[] chunkData = firmwareParser.chunkAt(chunkNumber);
             if (chunkData == null) {
@@ -646,9 +676,7 @@ class BlobTransfer {
         if (this.mixFormat == BlobBlockStatusMessage.FORMAT_ALL_CHUNKS_MISSING) return;
         if (chunks != null) {
             for (int chunkNumber : chunks) {
-                if (!missingChunks.contains(chunkNumber)) {
-                    missingChunks.add(chunkNumber);
-                }
+                missingChunks.set(chunkNumber);
             }
         }
     }
@@ -828,7 +856,10 @@ class BlobTransfer {
             }
             log("PartialBlockReport " + firmwareParser.currentBlockIndex() + " - " + encodedMissingChunks.size() + " - " + missingDesc);
             delayHandler.removeCallbacks(missingChunkSendingTask);
-            this.missingChunks = encodedMissingChunks;
+            this.missingChunks.clear();
+            for (int chunkNumber : encodedMissingChunks) {
+                this.missingChunks.set(chunkNumber);
+            }
             this.missingChunkIndex = 0;
             this.mixFormat = BlobBlockStatusMessage.FORMAT_ENCODED_MISSING_CHUNKS;
             sendMissingChunks();
@@ -872,7 +903,7 @@ class BlobTransfer {
             chunkSize = 208;
         }
         log("chunk size : " + chunkSize + " block size: " + blockSize);
-        this.firmwareParser.reset(firmwareData, blockSize, chunkSize);
+        this.firmwareParser.reset(firmwareSource, blockSize, chunkSize);
         nodeIndex++;
         nextAction();
     }
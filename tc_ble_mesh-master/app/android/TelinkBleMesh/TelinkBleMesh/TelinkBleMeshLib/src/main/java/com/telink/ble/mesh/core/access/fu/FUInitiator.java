@@ -183,7 +183,7 @@ class FUInitiator implements BlobTransferCallback {
         this.appKeyIndex = configuration.getAppKeyIndex();
         this.blobId = configuration.getBlobId();
         if (!configuration.isContinue()) {
-            this.firmwareSize = configuration.getFirmwareData().length;
+            this.firmwareSize = configuration.getFirmwareSource().size();
         }
 
         this.firmwareId = configuration.getFirmwareId();
@@ -37,6 +37,7 @@ import android.os.Looper;
 import androidx.annotation.NonNull;
 
 import com.telink.ble.mesh.core.proxy.ProxyPDU;
+import com.telink.ble.mesh.core.proxy.ProxySarReassembler;
 import com.telink.ble.mesh.util.Arrays;
 import com.telink.ble.mesh.util.MeshLogger;
 
@@ -110,7 +111,10 @@ public class GattConnection extends BluetoothGattCallback {
 
     private ConnectionCallback mConnectionCallback;
 
-    private byte[] proxyNotificationSegBuffer;
+    /**
+     * reassembles segmented notifications of proxy and provisioning pdu
+     */
+    private final ProxySarReassembler mProxySarReassembler = new ProxySarReassembler();
 
     public static int mtu = 23;
 
@@ -221,7 +225,9 @@ public class GattConnection extends BluetoothGattCallback {
                     pkt[0] = oct0;
                     System.arraycopy(data, (segMtu - 1) * i, pkt, 1, restSize);
                 }
-                log("send segment pkt: " + Arrays.bytesToHexString(pkt, ":"));
+                if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                    log("send segment pkt: " + Arrays.bytesToHexString(pkt, ":"));
+                }
                 if (isProvisioningPdu) {
                     sendPvRequest(pkt);
                 } else {
@@ -232,7 +238,9 @@ public class GattConnection extends BluetoothGattCallback {
             byte[] proxyData = new byte[data.length + 1];
             proxyData[0] = type;
             System.arraycopy(data, 0, proxyData, 1, data.length);
-            log("send unsegment pkt: " + Arrays.bytesToHexString(proxyData, ":"));
+            if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                log("send unsegment pkt: " + Arrays.bytesToHexString(proxyData, ":"));
+            }
             if (isProvisioningPdu) {
                 sendPvRequest(proxyData);
             } else {
@@ -486,6 +494,7 @@ public class GattConnection extends BluetoothGattCallback {
         this.mGattRequestQueue.clear();
         this.isRequestProcessing = false;
         this.mHandler.removeCallbacksAndMessages(null);
+        this.mProxySarReassembler.clear();
     }
 
     private void onConnected() {
@@ -678,7 +687,9 @@ public class GattConnection extends BluetoothGattCallback {
             }
             return;
         }
-        log("on notify -- " + Arrays.bytesToHexString(data, ":"), MeshLogger.LEVEL_VERBOSE);
+        if (isLoggable(MeshLogger.LEVEL_VERBOSE)) {
+            log("on notify -- " + Arrays.bytesToHexString(data, ":"), MeshLogger.LEVEL_VERBOSE);
+        }
 
         if (data == null || data.length == 0) {
             log("empty packet received!", MeshLogger.LEVEL_WARN);
@@ -689,7 +700,9 @@ public class GattConnection extends BluetoothGattCallback {
             log("waiting for segment pkt", MeshLogger.LEVEL_VERBOSE);
             return;
         }
-        log("completed notification data: " + Arrays.bytesToHexString(completePacket, ":"));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log("completed notification data: " + Arrays.bytesToHexString(completePacket, ":"));
+        }
         if (completePacket.length <= 1) {
             log("complete notification length err", MeshLogger.LEVEL_WARN);
             return;
@@ -700,44 +713,19 @@ public class GattConnection extends BluetoothGattCallback {
     }
 
     private byte[] getCompletePacket(byte[] data) {
-        byte sar = (byte) (data[0] & ProxyPDU.MASK_SAR);
-        switch (sar) {
-            case ProxyPDU.SAR_COMPLETE:
-                return data;
-
-            case ProxyPDU.SAR_SEG_FIRST:
-                data[0] = (byte) (data[0] & ProxyPDU.MASK_TYPE);
-                proxyNotificationSegBuffer = data;
-                return null;
-
-            case ProxyPDU.SAR_SEG_CONTINUE:
-            case ProxyPDU.SAR_SEG_LAST:
-                if (proxyNotificationSegBuffer != null) {
-                    int segType = proxyNotificationSegBuffer[0] & ProxyPDU.MASK_TYPE;
-                    int dataType = data[0] & ProxyPDU.MASK_TYPE;
-
-                    // check if pkt typeValue equals
-                    if (segType == dataType && data.length > 1) {
-                        byte[] tempBuffer = new byte[proxyNotificationSegBuffer.length + data.length - 1];
-                        System.arraycopy(proxyNotificationSegBuffer, 0, tempBuffer, 0, proxyNotificationSegBuffer.length);
-                        System.arraycopy(data, 1, tempBuffer, proxyNotificationSegBuffer.length, data.length - 1);
-                        if (sar == ProxyPDU.SAR_SEG_CONTINUE) {
-                            proxyNotificationSegBuffer = tempBuffer;
-                            return null;
-                        } else {
-                            proxyNotificationSegBuffer = null;
-                            return tempBuffer;
-                        }
-                    } else {
-                        log("other segment ", MeshLogger.LEVEL_WARN);
-                    }
-                } else {
-                    log("segment first pkt no found", MeshLogger.LEVEL_WARN);
-                }
-
-            default:
-                return null;
+        final int droppedCount = mProxySarReassembler.getDroppedCount();
+        final byte[] completePacket = mProxySarReassembler.onSegmentReceived(data);
+        if (mProxySarReassembler.getDroppedCount() != droppedCount) {
+            log("segment dropped, total: " + mProxySarReassembler.getDroppedCount(), MeshLogger.LEVEL_WARN);
         }
+        return completePacket;
+    }
+
+    /**
+     * @return proxy segment reassembler, for complete, dropped, interleaved and timeout counters
+     */
+    public ProxySarReassembler getProxySarReassembler() {
+        return mProxySarReassembler;
     }
 
     private void onRequestError(String errorMsg) {
@@ -1118,7 +1106,9 @@ public class GattConnection extends BluetoothGattCallback {
     @Override
     public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
         super.onPhyUpdate(gatt, txPhy, rxPhy, status);
-        log(String.format(Locale.getDefault(), "onPhyUpdate txPhy-%d rxPhy-%d status-%d", txPhy, rxPhy, status));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format(Locale.getDefault(), "onPhyUpdate txPhy-%d rxPhy-%d status-%d", txPhy, rxPhy, status));
+        }
     }
 
     /**
@@ -1411,4 +1401,14 @@ public class GattConnection extends BluetoothGattCallback {
     private void log(String logMessage, int level) {
         MeshLogger.log(logMessage, LOG_TAG, level);
     }
+
+    /**
+     * check before building log message with hex string or format
+     *
+     * @param level log level
+     * @return if log enabled
+     */
+    private boolean isLoggable(int level) {
+        return MeshLogger.isLoggable(LOG_TAG, level);
+    }
 }
@@ -25,6 +25,7 @@ package com.telink.ble.mesh.core.ble;
 import android.os.Build;
 import android.os.Handler;
 
+import com.telink.ble.mesh.util.FirmwareSource;
 import com.telink.ble.mesh.util.MeshLogger;
 import com.telink.ble.mesh.util.OtaPacketParser;
 
@@ -45,6 +46,12 @@ public class GattOtaController {
     private static final int OTA_PREPARE = 0xFF00;
     private static final int OTA_START = 0xFF01;
     private static final int OTA_END = 0xFF02;
+    private static final int OTA_START_EXT = 0xFF03;
+
+    /**
+     * att write header: opcode(1 byte) + handle(2 bytes)
+     */
+    private static final int ATT_WRITE_HEADER = 3;
 
     private static final int TAG_OTA_WRITE = 1;
     private static final int TAG_OTA_READ = 2;
@@ -70,6 +77,10 @@ public class GattOtaController {
 
     private static final int DEFAULT_READ_INTERVAL = 8;
 
+    /**
+     * read back interval in legacy packets(16 bytes),
+     * with extend packets a read is sent when each {@link #readInterval} * 16 bytes sent
+     */
     private int readInterval = DEFAULT_READ_INTERVAL;
 
 
@@ -88,13 +99,46 @@ public class GattOtaController {
 
 
     public void begin(byte[] firmware, int readInterval) {
-        log("Start OTA");
+        begin(firmware, readInterval, false);
+    }
+
+    /**
+     * @param extendEnabled if true, packet data length is chosen by current MTU,
+     *                      and ota start extend command is sent instead of ota start command
+     */
+    public void begin(byte[] firmware, boolean extendEnabled) {
+        begin(firmware, DEFAULT_READ_INTERVAL, extendEnabled);
+    }
+
+    public void begin(byte[] firmware, int readInterval, boolean extendEnabled) {
+        begin(FirmwareSource.wrap(firmware), readInterval, extendEnabled);
+    }
+
+    public void begin(FirmwareSource firmware, boolean extendEnabled) {
+        begin(firmware, DEFAULT_READ_INTERVAL, extendEnabled);
+    }
+
+    /**
+     * @param firmware firmware source, packets are read from source while sending
+     */
+    public void begin(FirmwareSource firmware, int readInterval, boolean extendEnabled) {
+        int pduLength = extendEnabled ? getExtendPduLength(mConnection == null ? GattConnection.mtu : mConnection.getMtu())
+                : OtaPacketParser.UNIT_SIZE;
+        log("Start OTA: pdu length - " + pduLength);
         this.clear();
-        this.mOtaParser.set(firmware);
+        this.mOtaParser.set(firmware, pduLength);
         this.readInterval = readInterval;
         this.sendOTAPrepareCommand();
     }
 
+    /**
+     * @return max multiple of 16 fits in one att write: mtu - att header - index(2 bytes) - crc(2 bytes)
+     */
+    static int getExtendPduLength(int mtu) {
+        int pduLength = (mtu - ATT_WRITE_HEADER - 4) / OtaPacketParser.UNIT_SIZE * OtaPacketParser.UNIT_SIZE;
+        return Math.max(OtaPacketParser.UNIT_SIZE, Math.min(OtaPacketParser.MAX_PDU_LENGTH, pduLength));
+    }
+
     private void clear() {
         this.readCnt = 0;
         this.mOtaParser.clear();
@@ -154,7 +198,19 @@ public class GattOtaController {
 
     // send ota start command
     private void sendOtaStartCommand() {
-        otaWriteData(new byte[]{OTA_START & 0xFF, (byte) (OTA_START >> 8 & 0xFF)}, TAG_OTA_START);
+        int pduLength = mOtaParser.getPduLength();
+        if (pduLength == OtaPacketParser.UNIT_SIZE) {
+            // legacy packet, compatible with devices not supporting extend start
+            otaWriteData(new byte[]{OTA_START & 0xFF, (byte) (OTA_START >> 8 & 0xFF)}, TAG_OTA_START);
+        } else {
+            // opcode(2 bytes) + pdu length(1 byte) + version compare(1 byte) + reserved(12 bytes)
+            byte[] data = new byte[16];
+            data[0] = OTA_START_EXT & 0xFF;
+            data[1] = (byte) (OTA_START_EXT >> 8 & 0xFF);
+            data[2] = (byte) pduLength;
+            data[3] = 0;
+            otaWriteData(data, TAG_OTA_START);
+        }
     }
 
     // send ota read command between start-command and first packet
@@ -200,10 +256,12 @@ public class GattOtaController {
         /*
          * read
          */
-        int sectionSize = 16 * readInterval;
-        int sendTotal = this.mOtaParser.getNextPacketIndex() * 16;
+        int sectionSize = OtaPacketParser.UNIT_SIZE * readInterval;
+        int pduLength = mOtaParser.getPduLength();
+        int sendTotal = this.mOtaParser.getNextPacketIndex() * pduLength;
 //        logMessage("ota onCommandSampled byte length : " + sendTotal);
-        if (sendTotal > 0 && sendTotal % sectionSize == 0) {
+        // read when a section boundary is crossed
+        if (sendTotal > 0 && sendTotal / sectionSize != (sendTotal - pduLength) / sectionSize) {
             log("onCommandSampled ota read packet " + mOtaParser.getNextPacketIndex(), MeshLogger.LEVEL_VERBOSE);
             GattRequest cmd = GattRequest.newInstance();
             cmd.serviceUUID = UUIDInfo.SERVICE_UUID_OTA;
@@ -123,9 +123,14 @@ public class MeshScanRecord {
         return mServiceData.get(serviceDataUuid);
     }
 
-    private ParcelUuid PROV_SERVICE_UUID = ParcelUuid.fromString(UUIDInfo.SERVICE_PROXY.toString());
+    private static final ParcelUuid PROV_SERVICE_UUID = ParcelUuid.fromString(UUIDInfo.SERVICE_PROXY.toString());
 
-    private ParcelUuid PROXY_SERVICE_UUID = ParcelUuid.fromString(UUIDInfo.SERVICE_PROXY.toString());
+    private static final ParcelUuid PROXY_SERVICE_UUID = ParcelUuid.fromString(UUIDInfo.SERVICE_PROXY.toString());
+
+    /**
+     * 16-bit uuid of mesh proxy service
+     */
+    public static final int SERVICE_UUID_16_PROXY = 0x1828;
 
     public byte[] getProvServiceData() {
         return getServiceData(PROV_SERVICE_UUID);
@@ -269,6 +274,36 @@ public class MeshScanRecord {
     }
 
 
+    /**
+     * find service data of 16-bit service uuid in a single pass, without building a full record
+     *
+     * @param scanRecord raw scan record
+     * @param uuid16     16-bit service uuid, such as {@link #SERVICE_UUID_16_PROXY}
+     * @return service data without uuid, null if not found or record is invalid
+     */
+    @Nullable
+    public static byte[] findServiceData(byte[] scanRecord, int uuid16) {
+        if (scanRecord == null) {
+            return null;
+        }
+        int currentPos = 0;
+        while (currentPos < scanRecord.length) {
+            int length = scanRecord[currentPos] & 0xFF;
+            if (length == 0 || currentPos + 1 + length > scanRecord.length) {
+                break;
+            }
+            int fieldType = scanRecord[currentPos + 1] & 0xFF;
+            if (fieldType == DATA_TYPE_SERVICE_DATA && length >= 3) {
+                int uuid = (scanRecord[currentPos + 2] & 0xFF) | ((scanRecord[currentPos + 3] & 0xFF) << 8);
+                if (uuid == uuid16) {
+                    return extractBytes(scanRecord, currentPos + 4, length - 3);
+                }
+            }
+            currentPos += length + 1;
+        }
+        return null;
+    }
+
     private static int parseServiceUuid(byte[] scanRecord, int currentPos, int dataLength,
                                         int uuidLength, List<ParcelUuid> serviceUuids) {
         while (dataLength > 0) {
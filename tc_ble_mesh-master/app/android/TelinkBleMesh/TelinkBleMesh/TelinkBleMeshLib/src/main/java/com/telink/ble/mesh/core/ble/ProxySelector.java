@@ -0,0 +1,244 @@
+/********************************************************************************************************
+ * @file ProxySelector.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.ble;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * selects proxy node to connect when auto connect
+ * <p>
+ * proxy advertisements are validated once for each advertiser and service data,
+ * repeated advertisements only update the rssi history.
+ * Matched proxies are collected in a selecting window,
+ * and the one with the strongest and most stable rssi is chosen:
+ * score = average rssi - average rssi deviation
+ */
+public class ProxySelector {
+
+    /**
+     * default selecting window in milliseconds
+     */
+    public static final long DEFAULT_WINDOW = 1000;
+
+    /**
+     * advertisement does not match current network
+     */
+    public static final int ADDRESS_INVALID = -1;
+
+    /**
+     * network id or private network id matches, node address is unknown before connected
+     */
+    public static final int ADDRESS_UNKNOWN = 0;
+
+    private static final int MAX_ADVERTISERS = 256;
+
+    /**
+     * rssi deviation of advertiser with only one sample, in dBm
+     */
+    private static final double INITIAL_DEVIATION = 6;
+
+    /**
+     * weight of new sample in rssi average
+     */
+    private static final double RSSI_WEIGHT = 0.25;
+
+    private final Map<String, Advertiser> advertisers = new HashMap<>();
+
+    private boolean windowOpened = false;
+
+    private int validationCount = 0;
+
+    private int duplicateCount = 0;
+
+    /**
+     * clear advertisers and close window, called when scan started
+     */
+    public synchronized void reset() {
+        advertisers.clear();
+        windowOpened = false;
+    }
+
+    /**
+     * @return advertiser validated with the same service data, null if validation is required
+     */
+    public synchronized Advertiser find(String mac, byte[] serviceData) {
+        Advertiser advertiser = advertisers.get(mac);
+        if (advertiser != null && Arrays.equals(advertiser.serviceData, serviceData)) {
+            duplicateCount++;
+            return advertiser;
+        }
+        return null;
+    }
+
+    /**
+     * save validation result, rssi history is kept if advertiser service data changed
+     *
+     * @param proxyAddress {@link #ADDRESS_INVALID}, {@link #ADDRESS_UNKNOWN} or node address
+     */
+    public synchronized Advertiser put(String mac, BluetoothDevice device, byte[] serviceData, int proxyAddress) {
+        validationCount++;
+        Advertiser advertiser = advertisers.get(mac);
+        if (advertiser == null) {
+            if (advertisers.size() >= MAX_ADVERTISERS) {
+                removeInvalid();
+            }
+            advertiser = new Advertiser(mac);
+            if (advertisers.size() < MAX_ADVERTISERS) {
+                advertisers.put(mac, advertiser);
+            }
+        }
+        advertiser.device = device;
+        advertiser.serviceData = serviceData;
+        advertiser.proxyAddress = proxyAddress;
+        return advertiser;
+    }
+
+    /**
+     * @return true if it is the first matched sample, and the selecting window should be started
+     */
+    public synchronized boolean onRssi(Advertiser advertiser, int rssi) {
+        if (advertiser.sampleCount == 0) {
+            advertiser.rssiAverage = rssi;
+            advertiser.rssiDeviation = INITIAL_DEVIATION;
+        } else {
+            double deviation = Math.abs(rssi - advertiser.rssiAverage);
+            advertiser.rssiAverage += (rssi - advertiser.rssiAverage) * RSSI_WEIGHT;
+            advertiser.rssiDeviation += (deviation - advertiser.rssiDeviation) * RSSI_WEIGHT;
+        }
+        advertiser.sampleCount++;
+        if (!advertiser.isMatched() || windowOpened) {
+            return false;
+        }
+        windowOpened = true;
+        return true;
+    }
+
+    /**
+     * @return matched advertiser with the highest score, null if no one matched
+     */
+    public synchronized Advertiser select() {
+        Advertiser selected = null;
+        for (Advertiser advertiser : advertisers.values()) {
+            if (!advertiser.isMatched() || advertiser.sampleCount == 0) continue;
+            if (selected == null || advertiser.getScore() > selected.getScore()) {
+                selected = advertiser;
+            }
+        }
+        return selected;
+    }
+
+    public synchronized int getValidationCount() {
+        return validationCount;
+    }
+
+    /**
+     * @return count of repeated advertisements skipped validation
+     */
+    public synchronized int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    private void removeInvalid() {
+        Iterator<Advertiser> iterator = advertisers.values().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().isMatched()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * advertising proxy node
+     */
+    public static class Advertiser {
+
+        private final String mac;
+
+        private BluetoothDevice device;
+
+        private byte[] serviceData;
+
+        private int proxyAddress = ADDRESS_INVALID;
+
+        private double rssiAverage;
+
+        private double rssiDeviation;
+
+        private int sampleCount = 0;
+
+        Advertiser(String mac) {
+            this.mac = mac;
+        }
+
+        public String getMac() {
+            return mac;
+        }
+
+        public BluetoothDevice getDevice() {
+            return device;
+        }
+
+        /**
+         * @return {@link #ADDRESS_INVALID}, {@link #ADDRESS_UNKNOWN} or node address
+         */
+        public int getProxyAddress() {
+            return proxyAddress;
+        }
+
+        public boolean isMatched() {
+            return proxyAddress != ADDRESS_INVALID;
+        }
+
+        public double getRssiAverage() {
+            return rssiAverage;
+        }
+
+        public double getRssiDeviation() {
+            return rssiDeviation;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        public double getScore() {
+            return rssiAverage - rssiDeviation;
+        }
+
+        @Override
+        public String toString() {
+            return "Advertiser{" +
+                    "mac='" + mac + '\'' +
+                    ", proxyAddress=" + proxyAddress +
+                    ", rssiAverage=" + rssiAverage +
+                    ", rssiDeviation=" + rssiDeviation +
+                    ", sampleCount=" + sampleCount +
+                    '}';
+        }
+    }
+}
@@ -100,9 +100,10 @@ import com.telink.ble.mesh.core.message.time.TimeStatusMessage;
  * <p>
  * This class also includes a nested class called Container, which is responsible for registering the opcode and the corresponding status message class.
  * The register method is used to register the opcode and the status message class.
- * The getMessageClass method is used to retrieve the status message class based on the opcode.
+ * Built-in status messages are registered with a {@link Factory}, such as a constructor reference,
+ * so no reflection is used when creating messages.
  * <p>
- * Note: All registered status messages should have an empty constructor for creating an instance of the message.
+ * Note: status messages registered by class should have an empty constructor for creating an instance of the message.
  * {@link StatusMessage#createByAccessMessage(int, byte[])}
  * Created by kee on 2019/9/3.
  */
@@ -140,91 +141,104 @@ public class MeshStatus {
         this.opcode = opcode;
     }
 
+    /**
+     * creates an empty status message, for example: {@code OnOffStatusMessage::new}
+     */
+    public interface Factory {
+        StatusMessage create();
+    }
+
     public static class Container {
 
-        private static SparseArray<Class> statusMap = new SparseArray<>();
+        private static SparseArray<Factory> statusMap = new SparseArray<>();
+
+        /**
+         * message class by opcode, resolved on register,
+         * so the class of a received message is known without parsing it
+         */
+        private static SparseArray<Class<? extends StatusMessage>> classMap = new SparseArray<>();
 
         static {
-            register(Opcode.COMPOSITION_DATA_STATUS.value, CompositionDataStatusMessage.class);
-            register(Opcode.MODE_APP_STATUS.value, ModelAppStatusMessage.class);
-            register(Opcode.APPKEY_STATUS.value, AppKeyStatusMessage.class);
-            register(Opcode.NODE_RESET_STATUS.value, NodeResetStatusMessage.class);
-            register(Opcode.CFG_MODEL_SUB_STATUS.value, ModelSubscriptionStatusMessage.class);
-            register(Opcode.CFG_MODEL_PUB_STATUS.value, ModelPublicationStatusMessage.class);
-            register(Opcode.NODE_ID_STATUS.value, NodeIdentityStatusMessage.class);
-            register(Opcode.NETKEY_STATUS.value, NetKeyStatusMessage.class);
-
-            register(Opcode.SUBNET_BRIDGE_STATUS.value, SubnetBridgeStatusMessage.class);
-            register(Opcode.BRIDGING_TABLE_STATUS.value, BridgingTableStatusMessage.class);
+            register(Opcode.COMPOSITION_DATA_STATUS.value, CompositionDataStatusMessage::new);
+            register(Opcode.MODE_APP_STATUS.value, ModelAppStatusMessage::new);
+            register(Opcode.APPKEY_STATUS.value, AppKeyStatusMessage::new);
+            register(Opcode.NODE_RESET_STATUS.value, NodeResetStatusMessage::new);
+            register(Opcode.CFG_MODEL_SUB_STATUS.value, ModelSubscriptionStatusMessage::new);
+            register(Opcode.CFG_MODEL_PUB_STATUS.value, ModelPublicationStatusMessage::new);
+            register(Opcode.NODE_ID_STATUS.value, NodeIdentityStatusMessage::new);
+            register(Opcode.NETKEY_STATUS.value, NetKeyStatusMessage::new);
+
+            register(Opcode.SUBNET_BRIDGE_STATUS.value, SubnetBridgeStatusMessage::new);
+            register(Opcode.BRIDGING_TABLE_STATUS.value, BridgingTableStatusMessage::new);
 
             /// configs
-            register(Opcode.CFG_NW_TRANSMIT_STATUS.value, NetworkTransmitStatusMessage.class);
-            register(Opcode.CFG_BEACON_STATUS.value, BeaconStatusMessage.class);
-            register(Opcode.CFG_DEFAULT_TTL_STATUS.value, DefaultTTLStatusMessage.class);
-            register(Opcode.CFG_RELAY_STATUS.value, RelayStatusMessage.class);
+            register(Opcode.CFG_NW_TRANSMIT_STATUS.value, NetworkTransmitStatusMessage::new);
+            register(Opcode.CFG_BEACON_STATUS.value, BeaconStatusMessage::new);
+            register(Opcode.CFG_DEFAULT_TTL_STATUS.value, DefaultTTLStatusMessage::new);
+            register(Opcode.CFG_RELAY_STATUS.value, RelayStatusMessage::new);
 
-            register(Opcode.CFG_FRIEND_STATUS.value, FriendStatusMessage.class);
-            register(Opcode.CFG_GATT_PROXY_STATUS.value, GattProxyStatusMessage.class);
-            register(Opcode.CFG_KEY_REFRESH_PHASE_STATUS.value, KeyRefreshPhaseStatusMessage.class);
+            register(Opcode.CFG_FRIEND_STATUS.value, FriendStatusMessage::new);
+            register(Opcode.CFG_GATT_PROXY_STATUS.value, GattProxyStatusMessage::new);
+            register(Opcode.CFG_KEY_REFRESH_PHASE_STATUS.value, KeyRefreshPhaseStatusMessage::new);
 
             // private beacon
-            register(Opcode.PRIVATE_BEACON_STATUS.value, PrivateBeaconStatusMessage.class);
-            register(Opcode.PRIVATE_NODE_IDENTITY_STATUS.value, PrivateNodeIdentityStatusMessage.class);
-            register(Opcode.PRIVATE_GATT_PROXY_STATUS.value, PrivateGattProxyStatusMessage.class);
+            register(Opcode.PRIVATE_BEACON_STATUS.value, PrivateBeaconStatusMessage::new);
+            register(Opcode.PRIVATE_NODE_IDENTITY_STATUS.value, PrivateNodeIdentityStatusMessage::new);
+            register(Opcode.PRIVATE_GATT_PROXY_STATUS.value, PrivateGattProxyStatusMessage::new);
 
             // generic
-            register(Opcode.G_ONOFF_STATUS.value, OnOffStatusMessage.class);
-            register(Opcode.G_LEVEL_STATUS.value, LevelStatusMessage.class);
+            register(Opcode.G_ONOFF_STATUS.value, OnOffStatusMessage::new);
+            register(Opcode.G_LEVEL_STATUS.value, LevelStatusMessage::new);
 
             // lighting
-            register(Opcode.LIGHTNESS_STATUS.value, LightnessStatusMessage.class);
-            register(Opcode.LIGHT_CTL_TEMP_STATUS.value, CtlTemperatureStatusMessage.class);
-            register(Opcode.LIGHT_CTL_STATUS.value, CtlStatusMessage.class);
+            register(Opcode.LIGHTNESS_STATUS.value, LightnessStatusMessage::new);
+            register(Opcode.LIGHT_CTL_TEMP_STATUS.value, CtlTemperatureStatusMessage::new);
+            register(Opcode.LIGHT_CTL_STATUS.value, CtlStatusMessage::new);
 
-            register(Opcode.LIGHT_HSL_STATUS.value, HslStatusMessage.class);
-            register(Opcode.LIGHT_HSL_TARGET_STATUS.value, HslTargetStatusMessage.class);
+            register(Opcode.LIGHT_HSL_STATUS.value, HslStatusMessage::new);
+            register(Opcode.LIGHT_HSL_TARGET_STATUS.value, HslTargetStatusMessage::new);
 
-            register(Opcode.LIGHT_LC_MODE_STATUS.value, LcModeStatusMessage.class);
-            register(Opcode.LIGHT_LC_OM_STATUS.value, LcOmStatusMessage.class);
-            register(Opcode.LIGHT_LC_ONOFF_STATUS.value, LcLightOnOffStatusMessage.class);
-            register(Opcode.LIGHT_LC_PROPERTY_STATUS.value, LcPropertyStatusMessage.class);
+            register(Opcode.LIGHT_LC_MODE_STATUS.value, LcModeStatusMessage::new);
+            register(Opcode.LIGHT_LC_OM_STATUS.value, LcOmStatusMessage::new);
+            register(Opcode.LIGHT_LC_ONOFF_STATUS.value, LcLightOnOffStatusMessage::new);
+            register(Opcode.LIGHT_LC_PROPERTY_STATUS.value, LcPropertyStatusMessage::new);
 
 
             // sensor
-            register(Opcode.SENSOR_CANDECE_STATUS.value, SensorCadenceStatusMessage.class);
-            register(Opcode.SENSOR_STATUS.value, SensorStatusMessage.class);
-            register(Opcode.SENSOR_DESCRIP_STATUS.value, SensorDescriptorStatusMessage.class);
+            register(Opcode.SENSOR_CANDECE_STATUS.value, SensorCadenceStatusMessage::new);
+            register(Opcode.SENSOR_STATUS.value, SensorStatusMessage::new);
+            register(Opcode.SENSOR_DESCRIP_STATUS.value, SensorDescriptorStatusMessage::new);
 
             // time
-            register(Opcode.TIME_STATUS.value, TimeStatusMessage.class);
+            register(Opcode.TIME_STATUS.value, TimeStatusMessage::new);
 
             // scene
-            register(Opcode.SCENE_STATUS.value, SceneStatusMessage.class);
-            register(Opcode.SCENE_REG_STATUS.value, SceneRegisterStatusMessage.class);
+            register(Opcode.SCENE_STATUS.value, SceneStatusMessage::new);
+            register(Opcode.SCENE_REG_STATUS.value, SceneRegisterStatusMessage::new);
 
             // scheduler status
-            register(Opcode.SCHD_STATUS.value, SchedulerStatusMessage.class);
-            register(Opcode.SCHD_ACTION_STATUS.value, SchedulerActionStatusMessage.class);
+            register(Opcode.SCHD_STATUS.value, SchedulerStatusMessage::new);
+            register(Opcode.SCHD_ACTION_STATUS.value, SchedulerActionStatusMessage::new);
 
 
             // mesh firmware update
-            register(Opcode.FIRMWARE_UPDATE_INFORMATION_STATUS.value, FirmwareUpdateInfoStatusMessage.class);
-            register(Opcode.FIRMWARE_UPDATE_FIRMWARE_METADATA_STATUS.value, FirmwareMetadataStatusMessage.class);
-            register(Opcode.FIRMWARE_UPDATE_STATUS.value, FirmwareUpdateStatusMessage.class);
+            register(Opcode.FIRMWARE_UPDATE_INFORMATION_STATUS.value, FirmwareUpdateInfoStatusMessage::new);
+            register(Opcode.FIRMWARE_UPDATE_FIRMWARE_METADATA_STATUS.value, FirmwareMetadataStatusMessage::new);
+            register(Opcode.FIRMWARE_UPDATE_STATUS.value, FirmwareUpdateStatusMessage::new);
 
             // mesh firmware distribution
-            register(Opcode.FD_STATUS.value, FDStatusMessage.class);
-            register(Opcode.FD_CAPABILITIES_STATUS.value, FDCapabilitiesStatusMessage.class);
-            register(Opcode.FD_RECEIVERS_STATUS.value, FDReceiversStatusMessage.class);
-            register(Opcode.FD_RECEIVERS_LIST.value, FDReceiversListMessage.class);
-            register(Opcode.FD_UPLOAD_STATUS.value, FDUploadStatusMessage.class);
-            register(Opcode.FD_FIRMWARE_STATUS.value, FDFirmwareStatusMessage.class);
+            register(Opcode.FD_STATUS.value, FDStatusMessage::new);
+            register(Opcode.FD_CAPABILITIES_STATUS.value, FDCapabilitiesStatusMessage::new);
+            register(Opcode.FD_RECEIVERS_STATUS.value, FDReceiversStatusMessage::new);
+            register(Opcode.FD_RECEIVERS_LIST.value, FDReceiversListMessage::new);
+            register(Opcode.FD_UPLOAD_STATUS.value, FDUploadStatusMessage::new);
+            register(Opcode.FD_FIRMWARE_STATUS.value, FDFirmwareStatusMessage::new);
 
             /// blob transfer
-            register(Opcode.BLOB_BLOCK_STATUS.value, BlobBlockStatusMessage.class);
-            register(Opcode.BLOB_INFORMATION_STATUS.value, BlobInfoStatusMessage.class);
-            register(Opcode.BLOB_TRANSFER_STATUS.value, BlobTransferStatusMessage.class);
-            register(Opcode.BLOB_PARTIAL_BLOCK_REPORT.value, BlobPartialBlockReportMessage.class);
+            register(Opcode.BLOB_BLOCK_STATUS.value, BlobBlockStatusMessage::new);
+            register(Opcode.BLOB_INFORMATION_STATUS.value, BlobInfoStatusMessage::new);
+            register(Opcode.BLOB_TRANSFER_STATUS.value, BlobTransferStatusMessage::new);
+            register(Opcode.BLOB_PARTIAL_BLOCK_REPORT.value, BlobPartialBlockReportMessage::new);
             /*register(Opcode.FW_INFO_STATUS.value, FirmwareInfoStatusMessage.class);
             register(Opcode.FW_DISTRIBUT_STATUS.value, FirmwareDistributionStatusMessage.class);
             register(Opcode.FW_UPDATE_STATUS.value, FirmwareUpdateStatusMessage.class);
@@ -234,45 +248,100 @@ public class MeshStatus {
             register(Opcode.OBJ_TRANSFER_STATUS.value, ObjectTransferStatusMessage.class);*/
 
             // remote provision
-            register(Opcode.REMOTE_PROV_SCAN_STS.value, ScanStatusMessage.class);
-            register(Opcode.REMOTE_PROV_SCAN_REPORT.value, ScanReportStatusMessage.class);
-            register(Opcode.REMOTE_PROV_LINK_STS.value, LinkStatusMessage.class);
-            register(Opcode.REMOTE_PROV_PDU_REPORT.value, ProvisioningPDUReportMessage.class);
-            register(Opcode.REMOTE_PROV_PDU_OUTBOUND_REPORT.value, ProvisioningPDUOutboundReportMessage.class);
+            register(Opcode.REMOTE_PROV_SCAN_STS.value, ScanStatusMessage::new);
+            register(Opcode.REMOTE_PROV_SCAN_REPORT.value, ScanReportStatusMessage::new);
+            register(Opcode.REMOTE_PROV_LINK_STS.value, LinkStatusMessage::new);
+            register(Opcode.REMOTE_PROV_PDU_REPORT.value, ProvisioningPDUReportMessage::new);
+            register(Opcode.REMOTE_PROV_PDU_OUTBOUND_REPORT.value, ProvisioningPDUOutboundReportMessage::new);
 //            register(Opcode.REMOTE_PROV_SCAN_CAPA_STS.value, ObjectTransferStatusMessage.class);
 
             // fast provision [vendor]
-            register(Opcode.VD_MESH_ADDR_GET_STS.value, MeshAddressStatusMessage.class);
+            register(Opcode.VD_MESH_ADDR_GET_STS.value, MeshAddressStatusMessage::new);
 
             // opcode aggregator
-            register(Opcode.CFG_OP_AGG_STATUS.value, OpcodeAggregatorStatusMessage.class);
+            register(Opcode.CFG_OP_AGG_STATUS.value, OpcodeAggregatorStatusMessage::new);
 
             // direct forwarding table
-            register(Opcode.FORWARDING_TABLE_STATUS.value, ForwardingTableStatusMessage.class);
-            register(Opcode.DIRECTED_CONTROL_STATUS.value, DirectedControlStatusMessage.class);
+            register(Opcode.FORWARDING_TABLE_STATUS.value, ForwardingTableStatusMessage::new);
+            register(Opcode.DIRECTED_CONTROL_STATUS.value, DirectedControlStatusMessage::new);
 
             // enhanced features
-            register(Opcode.CFG_SAR_TRANSMITTER_STATUS.value, SarTransmitStatusMessage.class);
-            register(Opcode.CFG_SAR_RECEIVER_STATUS.value, SarReceiverStatusMessage.class);
-            register(Opcode.CFG_ON_DEMAND_PROXY_STATUS.value, OnDemandPrivateProxyStatusMessage.class);
-            register(Opcode.LARGE_CPS_STATUS.value, LargeCompositionDataStatusMessage.class);
+            register(Opcode.CFG_SAR_TRANSMITTER_STATUS.value, SarTransmitStatusMessage::new);
+            register(Opcode.CFG_SAR_RECEIVER_STATUS.value, SarReceiverStatusMessage::new);
+            register(Opcode.CFG_ON_DEMAND_PROXY_STATUS.value, OnDemandPrivateProxyStatusMessage::new);
+            register(Opcode.LARGE_CPS_STATUS.value, LargeCompositionDataStatusMessage::new);
 //            register(Opcode.MODELS_METADATA_STATUS.value, ModeMeta.class);
-            register(Opcode.SOLI_PDU_RPL_ITEM_STATUS.value, SolicitationItemsStatusMessage.class);
+            register(Opcode.SOLI_PDU_RPL_ITEM_STATUS.value, SolicitationItemsStatusMessage::new);
 
         }
 
         public static void register(MeshStatus status) {
-            statusMap.put(status.opcode, status.statusMessageCls);
+            register(status.opcode, status.statusMessageCls);
         }
 
+        /**
+         * register by class, the instance is created by reflection,
+         * {@link #register(int, Factory)} is suggested
+         */
         public static void register(int opcode, Class statusMessageCls) {
-            statusMap.put(opcode, statusMessageCls);
+            statusMap.put(opcode, new ClassFactory(statusMessageCls));
+            if (statusMessageCls != null && StatusMessage.class.isAssignableFrom(statusMessageCls)) {
+                classMap.put(opcode, ((Class<?>) statusMessageCls).asSubclass(StatusMessage.class));
+            } else {
+                classMap.remove(opcode);
+            }
         }
 
-        public static Class getMessageClass(int opcode) {
+        public static void register(int opcode, Factory factory) {
+            statusMap.put(opcode, factory);
+            // an empty message is created once to get the class
+            StatusMessage message = factory.create();
+            if (message != null) {
+                classMap.put(opcode, message.getClass());
+            } else {
+                classMap.remove(opcode);
+            }
+        }
+
+        /**
+         * @return factory registered by opcode, null if not registered
+         */
+        public static Factory getFactory(int opcode) {
             return statusMap.get(opcode);
         }
 
+        /**
+         * @return class of the message registered by opcode, null if not registered,
+         * no message is created or parsed
+         */
+        public static Class<? extends StatusMessage> getMessageClass(int opcode) {
+            return classMap.get(opcode);
+        }
+
 
     }
+
+    /**
+     * factory for status message registered by class
+     */
+    private static class ClassFactory implements Factory {
+        private final Class<?> messageClass;
+
+        ClassFactory(Class<?> messageClass) {
+            this.messageClass = messageClass;
+        }
+
+        @Override
+        public StatusMessage create() {
+            try {
+                Object message = messageClass.newInstance();
+                if (message instanceof StatusMessage) {
+                    return (StatusMessage) message;
+                }
+            } catch (InstantiationException | IllegalAccessException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+    }
 }
@@ -32,6 +32,7 @@ import android.os.Parcelable;
  * The statusMessage field stores the parsed message based on the opcode and parameters.
  * If the opcode is registered in the MeshStatus.Container class, the statusMessage will be populated.
  * Otherwise, it will be null.
+ * If lazy parse is enabled by {@link #setLazyParse(boolean)}, the statusMessage is parsed on first {@link #getStatusMessage()}.
  * <p>
  * This class implements the Parcelable interface to allow for easy serialization and deserialization.
  * <p>
@@ -51,6 +52,27 @@ public class NotificationMessage implements Parcelable {
      */
     private StatusMessage statusMessage;
 
+    /**
+     * if {@link #statusMessage} is parsed
+     */
+    private boolean parsed = false;
+
+    /**
+     * parse status message on first access, instead of when message received
+     */
+    private static volatile boolean lazyParse = false;
+
+    /**
+     * @param lazy true: status message is parsed on first {@link #getStatusMessage()},
+     *             saves parsing of messages no listener cares about,
+     *             event type is taken from the class registered by opcode,
+     *             so {@link #getStatusMessage()} may return null for malformed params;
+     *             false (default): parsed when message received
+     */
+    public static void setLazyParse(boolean lazy) {
+        lazyParse = lazy;
+    }
+
     /**
      * Constructs a new NotificationMessage with the specified source, destination, opcode, and parameters.
      *
@@ -64,11 +86,27 @@ public class NotificationMessage implements Parcelable {
         this.dst = dst;
         this.opcode = opcode;
         this.params = params;
-        parseStatusMessage();
+        if (!lazyParse) {
+            parseStatusMessage();
+        }
     }
 
     private void parseStatusMessage() {
         this.statusMessage = StatusMessage.createByAccessMessage(opcode, params);
+        this.parsed = true;
+    }
+
+    /**
+     * @return class of the status message without parsing it:
+     * the parsed message class if already parsed, otherwise the class registered by opcode,
+     * null if opcode is not registered
+     * @see MeshStatus.Container#getMessageClass(int)
+     */
+    public synchronized Class<? extends StatusMessage> getStatusMessageClass() {
+        if (parsed) {
+            return statusMessage == null ? null : statusMessage.getClass();
+        }
+        return MeshStatus.Container.getMessageClass(opcode);
     }
 
     /**
@@ -82,6 +120,7 @@ public class NotificationMessage implements Parcelable {
         opcode = in.readInt();
         params = in.createByteArray();
         statusMessage = in.readParcelable(StatusMessage.class.getClassLoader());
+        parsed = true;
     }
 
     /**
@@ -122,7 +161,7 @@ public class NotificationMessage implements Parcelable {
         dest.writeInt(dst);
         dest.writeInt(opcode);
         dest.writeByteArray(params);
-        dest.writeParcelable(statusMessage, flags);
+        dest.writeParcelable(getStatusMessage(), flags);
     }
 
     /**
@@ -202,7 +241,10 @@ public class NotificationMessage implements Parcelable {
      *
      * @return the parsed status message
      */
-    public StatusMessage getStatusMessage() {
+    public synchronized StatusMessage getStatusMessage() {
+        if (!parsed) {
+            parseStatusMessage();
+        }
         return statusMessage;
     }
 
@@ -211,7 +253,8 @@ public class NotificationMessage implements Parcelable {
      *
      * @param statusMessage the parsed status message
      */
-    public void setStatusMessage(StatusMessage statusMessage) {
+    public synchronized void setStatusMessage(StatusMessage statusMessage) {
         this.statusMessage = statusMessage;
+        this.parsed = true;
     }
 }
@@ -51,8 +51,8 @@ public abstract class StatusMessage implements Parcelable {
 
     /**
      * This method creates a new StatusMessage object based on the given opcode and parameters.
-     * It checks if the opcode is registered in the MeshStatus.Container class and returns the corresponding message class.
-     * If the message class is an instance of StatusMessage, it creates a new instance of that class, parses the parameters, and returns the status message.
+     * It gets the factory registered by the opcode in the MeshStatus.Container class,
+     * creates a new instance by the factory, parses the parameters, and returns the status message.
      *
      * @param opcode The opcode of the message.
      * @param params The parameters used to create the status message.
@@ -62,28 +62,22 @@ public abstract class StatusMessage implements Parcelable {
      */
     public static StatusMessage createByAccessMessage(int opcode, byte[] params) {
 
-        Class messageClass = MeshStatus.Container.getMessageClass(opcode);
-        if (messageClass != null) {
-            Object msgClass = null;
+        MeshStatus.Factory factory = MeshStatus.Container.getFactory(opcode);
+        if (factory != null) {
             try {
-                msgClass = messageClass.newInstance();
-                if (msgClass instanceof StatusMessage) {
-                    StatusMessage statusMessage = (StatusMessage) msgClass;
-                    if (params != null) {
-                        statusMessage.parse(params);
-                    }
-                    return statusMessage;
+                StatusMessage statusMessage = factory.create();
+                if (statusMessage != null && params != null) {
+                    statusMessage.parse(params);
                 }
-            } catch (InstantiationException | IllegalAccessException | RuntimeException e) {
+                return statusMessage;
+            } catch (RuntimeException e) {
                 e.printStackTrace();
             }
-
         }
 
         return null;
     }
 
-
 }
 
 
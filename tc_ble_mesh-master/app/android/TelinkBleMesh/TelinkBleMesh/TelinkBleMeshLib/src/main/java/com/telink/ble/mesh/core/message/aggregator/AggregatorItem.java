@@ -109,6 +109,14 @@ public class AggregatorItem implements Parcelable {
         }
     };
 
+    /**
+     * @return length of opcode and parameters
+     */
+    public int getLength() {
+        int opcodeLen = OpcodeType.getByFirstByte((byte) opcode).length;
+        return parameters == null ? opcodeLen : (opcodeLen + parameters.length);
+    }
+
     /**
      * converts the AggregatorItem object to a byte array.
      *
@@ -116,11 +124,12 @@ public class AggregatorItem implements Parcelable {
      */
     public byte[] toBytes() {
         int opcodeLen = OpcodeType.getByFirstByte((byte) opcode).length;
-        int len = parameters == null ? opcodeLen : (opcodeLen + parameters.length);
+        int len = getLength();
         final boolean isLong = len > 127;
         int bufLen = (isLong ? 2 : 1) + len;
         ByteBuffer buffer = ByteBuffer.allocate(bufLen).order(ByteOrder.LITTLE_ENDIAN);
-        len <<= 1 | (isLong ? 1 : 0);
+        // bit0: length format
+        len = (len << 1) | (isLong ? LENGTH_LONG : LENGTH_SHORT);
         if (isLong) {
             buffer.putShort((short) len);
         } else {
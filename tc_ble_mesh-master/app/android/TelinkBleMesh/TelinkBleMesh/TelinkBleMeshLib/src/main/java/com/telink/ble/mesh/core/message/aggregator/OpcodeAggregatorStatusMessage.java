@@ -107,7 +107,7 @@ public class OpcodeAggregatorStatusMessage extends StatusMessage implements Parc
             int len;
             byte[] opAndParams;
             if (isLong) {
-                len = ((params[index + 1] & 0xFF) << 8) | ((params[index] & 0xFF) >> 1);
+                len = (((params[index + 1] & 0xFF) << 8) | (params[index] & 0xFF)) >> 1;
                 index += 2;
             } else {
                 len = (params[index] & 0xFF) >> 1;
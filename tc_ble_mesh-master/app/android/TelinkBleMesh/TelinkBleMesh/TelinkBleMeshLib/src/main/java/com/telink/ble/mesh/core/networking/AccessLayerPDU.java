@@ -77,16 +77,28 @@ public class AccessLayerPDU implements NetworkingPDU {
      * @return An AccessLayerPDU object representing the parsed payload.
      */
     public static AccessLayerPDU parse(byte[] payload) {
+        return parse(payload, 0, payload.length);
+    }
+
+    /**
+     * parse access pdu from part of buffer, only params are copied
+     *
+     * @param payload buffer containing access pdu
+     * @param offset  access pdu offset
+     * @param length  access pdu length
+     * @return access pdu
+     */
+    public static AccessLayerPDU parse(byte[] payload, int offset, int length) {
         AccessLayerPDU accessPDU = new AccessLayerPDU();
-        OpcodeType opType = OpcodeType.getByFirstByte(payload[0]);
+        OpcodeType opType = OpcodeType.getByFirstByte(payload[offset]);
 
         accessPDU.opcode = 0;
-        int index = 0;
+        int index = offset;
         for (int i = 0; i < opType.length; i++) {
             accessPDU.opcode |= (payload[index++] & 0xFF) << (8 * i);
         }
 
-        final int paramLen = payload.length - opType.length;
+        final int paramLen = length - opType.length;
         accessPDU.params = new byte[paramLen];
         System.arraycopy(payload, index, accessPDU.params, 0, paramLen);
         return accessPDU;
@@ -0,0 +1,239 @@
+/********************************************************************************************************
+ * @file AppKeyRing.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.networking;
+
+import android.util.SparseArray;
+
+import com.telink.ble.mesh.core.Encipher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * app keys with precomputed AID (k4), used by upper transport encryption and decryption
+ * <p>
+ * received access message carries 6-bit AID in lower transport header,
+ * only the keys with the same AID are tried when decrypting.
+ * The key last used by each source address is tried first, for example during key refresh.
+ */
+public class AppKeyRing {
+
+    /**
+     * key entries, replaced as a whole when keys updated
+     */
+    private volatile Entry[] entries = new Entry[0];
+
+    /**
+     * entry last used for decryption, index by source address
+     */
+    private final SparseArray<Entry> lastUsedEntries = new SparseArray<>();
+
+    /**
+     * reset all keys
+     *
+     * @param appKeyMap app key index and app key
+     */
+    public synchronized void setup(SparseArray<byte[]> appKeyMap) {
+        Entry[] newEntries;
+        if (appKeyMap == null) {
+            newEntries = new Entry[0];
+        } else {
+            newEntries = new Entry[appKeyMap.size()];
+            for (int i = 0; i < appKeyMap.size(); i++) {
+                newEntries[i] = createEntry(appKeyMap.keyAt(i), appKeyMap.valueAt(i));
+            }
+        }
+        this.entries = newEntries;
+        synchronized (lastUsedEntries) {
+            lastUsedEntries.clear();
+        }
+    }
+
+    /**
+     * add or replace app key
+     *
+     * @param appKeyIndex app key index
+     * @param appKey      app key
+     */
+    public synchronized void putKey(int appKeyIndex, byte[] appKey) {
+        Entry[] current = this.entries;
+        List<Entry> newEntries = new ArrayList<>(current.length + 1);
+        for (Entry entry : current) {
+            if (entry.index != appKeyIndex) {
+                newEntries.add(entry);
+            }
+        }
+        newEntries.add(createEntry(appKeyIndex, appKey));
+        this.entries = newEntries.toArray(new Entry[0]);
+    }
+
+    /**
+     * @param appKeyIndex app key index
+     */
+    public synchronized void removeKey(int appKeyIndex) {
+        Entry[] current = this.entries;
+        List<Entry> newEntries = new ArrayList<>(current.length);
+        for (Entry entry : current) {
+            if (entry.index != appKeyIndex) {
+                newEntries.add(entry);
+            }
+        }
+        this.entries = newEntries.toArray(new Entry[0]);
+        synchronized (lastUsedEntries) {
+            for (int i = lastUsedEntries.size() - 1; i >= 0; i--) {
+                if (lastUsedEntries.valueAt(i).index == appKeyIndex) {
+                    lastUsedEntries.removeAt(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return key count
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @param appKeyMap app key index and app key
+     * @return true if the ring holds the same indexes and keys as the map
+     */
+    public boolean contentEquals(SparseArray<byte[]> appKeyMap) {
+        final Entry[] entries = this.entries;
+        if (appKeyMap == null) {
+            return entries.length == 0;
+        }
+        if (appKeyMap.size() != entries.length) {
+            return false;
+        }
+        for (int i = 0; i < appKeyMap.size(); i++) {
+            if (!contains(entries, appKeyMap.keyAt(i), appKeyMap.valueAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param appKey app key
+     * @return AID of the key, computed by k4 if key not in ring
+     */
+    public byte getAid(byte[] appKey) {
+        for (Entry entry : entries) {
+            if (entry.key == appKey || Arrays.equals(entry.key, appKey)) {
+                return entry.aid;
+            }
+        }
+        return Encipher.k4(appKey);
+    }
+
+    /**
+     * get candidate keys for decryption
+     *
+     * @param aid AID in received lower transport pdu
+     * @param src source address
+     * @return keys with the same AID, the key last used by src first
+     */
+    public List<byte[]> getCandidateKeys(byte aid, int src) {
+        ParseContext context = ParseContext.get();
+        int count = getCandidateKeys(aid, src, context);
+        return new ArrayList<>(Arrays.asList(context.getCandidateKeys(count)).subList(0, count));
+    }
+
+    /**
+     * get candidate keys for decryption without allocation
+     *
+     * @param aid     AID in received lower transport pdu
+     * @param src     source address
+     * @param context parse context of current thread
+     * @return key count, keys are written to {@link ParseContext#getCandidateKeys(int)}, the key last used by src first
+     */
+    public int getCandidateKeys(byte aid, int src, ParseContext context) {
+        Entry lastUsed;
+        synchronized (lastUsedEntries) {
+            lastUsed = lastUsedEntries.get(src);
+        }
+        final Entry[] entries = this.entries;
+        byte[][] keys = context.getCandidateKeys(entries.length + 1);
+        int count = 0;
+        if (lastUsed != null && lastUsed.aid == aid) {
+            keys[count++] = lastUsed.key;
+        }
+        for (Entry entry : entries) {
+            if (entry.aid == aid && (lastUsed == null || entry.key != lastUsed.key)) {
+                keys[count++] = entry.key;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * record the key successfully used for decrypting message from src
+     *
+     * @param src    source address
+     * @param appKey app key
+     */
+    public void onKeyUsed(int src, byte[] appKey) {
+        synchronized (lastUsedEntries) {
+            Entry lastUsed = lastUsedEntries.get(src);
+            if (lastUsed != null && lastUsed.key == appKey) {
+                return;
+            }
+        }
+        for (Entry entry : entries) {
+            if (entry.key == appKey) {
+                synchronized (lastUsedEntries) {
+                    lastUsedEntries.put(src, entry);
+                }
+                return;
+            }
+        }
+    }
+
+    private static boolean contains(Entry[] entries, int appKeyIndex, byte[] appKey) {
+        for (Entry entry : entries) {
+            if (entry.index == appKeyIndex) {
+                return entry.key == appKey || Arrays.equals(entry.key, appKey);
+            }
+        }
+        return false;
+    }
+
+    private static Entry createEntry(int appKeyIndex, byte[] appKey) {
+        return new Entry(appKeyIndex, appKey, Encipher.k4(appKey));
+    }
+
+    private static class Entry {
+        private final int index;
+        private final byte[] key;
+        private final byte aid;
+
+        Entry(int index, byte[] key, byte aid) {
+            this.index = index;
+            this.key = key;
+            this.aid = aid;
+        }
+    }
+}
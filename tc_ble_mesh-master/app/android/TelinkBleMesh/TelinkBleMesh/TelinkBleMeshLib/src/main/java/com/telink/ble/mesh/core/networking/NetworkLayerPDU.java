@@ -33,6 +33,11 @@ import java.nio.ByteOrder;
 
 public class NetworkLayerPDU {
 
+    /**
+     * IVI || NID(1) + obfuscated header(6) + DST(2) + TransportPDU(at least 1) + NetMIC(at least 4)
+     */
+    private static final int MIN_PDU_LENGTH = 14;
+
     /**
      * Least significant bit of IV Index
      * 1 bit
@@ -237,6 +242,15 @@ public class NetworkLayerPDU {
         return NonceGenerator.generateNetworkNonce(ctlTTL, seqNo, src, this.encryptionSuite.ivIndex);
     }
 
+    /**
+     * write nonce into buffer, used when parsing
+     *
+     * @param out 13 bytes nonce buffer
+     */
+    protected void generateNonce(byte[] out) {
+        NonceGenerator.writeNetworkNonce(out, (byte) ((ctl << 7) | ttl), seq, src, this.encryptionSuite.ivIndex);
+    }
+
     /**
      * This method determines the MIC length based on the value of the CTL.
      * If the CTL is 0, the MIC length is 4; otherwise, it is 8.
@@ -279,7 +293,22 @@ public class NetworkLayerPDU {
      * @return parse result
      */
     public boolean parse(byte[] pduData) {
+        return parse(pduData, ParseContext.get());
+    }
 
+    /**
+     * parse pdu in the work buffers of context,
+     * only the lower transport pdu is allocated
+     *
+     * @param pduData data
+     * @param context parse context of current thread
+     * @return parse result
+     */
+    public boolean parse(byte[] pduData, ParseContext context) {
+        if (pduData.length < MIN_PDU_LENGTH) {
+            MeshLogger.i("network pdu length err: " + pduData.length);
+            return false;
+        }
         int iviNid = pduData[0] & 0xFF;
         int ivi = iviNid >> 7;
         int nid = iviNid & 0x7F;
@@ -290,42 +319,48 @@ public class NetworkLayerPDU {
             return false;
         }
 
-        byte[] originalHeader = this.parseObfuscatedNetworkHeader(pduData);
-        int ctlTtl = originalHeader[0];
-        int ctl = (ctlTtl >> 7) & 0x01;
-        int ttl = ctlTtl & 0x7F;
-        byte[] sequenceNumber = ByteBuffer.allocate(3).order(ByteOrder.BIG_ENDIAN).put(originalHeader, 1, 3).array();
-        int src = (((originalHeader[4] & 0xFF) << 8) + (originalHeader[5] & 0xFF));
+        // PECB = e (PrivacyKey, 0x0000000000 || IV Index || Privacy Random)
+        final byte[] pecbInput = context.pecbInput;
+        final int ivIndex = this.encryptionSuite.ivIndex;
+        for (int i = 0; i < 5; i++) {
+            pecbInput[i] = 0;
+        }
+        pecbInput[5] = (byte) (ivIndex >> 24);
+        pecbInput[6] = (byte) (ivIndex >> 16);
+        pecbInput[7] = (byte) (ivIndex >> 8);
+        pecbInput[8] = (byte) ivIndex;
+        System.arraycopy(pduData, 7, pecbInput, 9, 7);
+        final byte[] pecb = context.pecb;
+        Encipher.aes(pecbInput, 0, this.encryptionSuite.privacyKey, pecb, 0);
+
+        // de-obfuscate CTL || TTL || SEQ || SRC
+        int ctlTtl = (pduData[1] ^ pecb[0]) & 0xFF;
         this.setIvi((byte) ivi);
         this.setNid((byte) nid);
-        this.setCtl((byte) ctl);
-        this.setTtl((byte) ttl);
-        this.setSeq(MeshUtils.bytes2Integer(sequenceNumber, ByteOrder.BIG_ENDIAN));
-        this.setSrc(src);
+        this.setCtl((byte) ((ctlTtl >> 7) & 0x01));
+        this.setTtl((byte) (ctlTtl & 0x7F));
+        this.setSeq((((pduData[2] ^ pecb[1]) & 0xFF) << 16)
+                | (((pduData[3] ^ pecb[2]) & 0xFF) << 8)
+                | ((pduData[4] ^ pecb[3]) & 0xFF));
+        this.setSrc((((pduData[5] ^ pecb[4]) & 0xFF) << 8) | ((pduData[6] ^ pecb[5]) & 0xFF));
 
-        byte[] networkNonce = generateNonce();
-//        byte[] networkNonce = NonceGenerator.generateNetworkNonce((byte) ctlTtl, sequenceNumber, src, this.encryptionSuite.ivIndex);
-
-
-        final int dstTransportLen = pduData.length - (1 + originalHeader.length);
-
-        final byte[] dstTransportPayload = new byte[dstTransportLen];
-        System.arraycopy(pduData, 7, dstTransportPayload, 0, dstTransportLen);
+        generateNonce(context.networkNonce);
 
         // decrypted dest + transport(lower) payload
-        final byte[] decDstTransportPayload = Encipher.ccm(dstTransportPayload, this.encryptionSuite.encryptionKey, networkNonce, getMicLen(), false);
+        final int dstTransportLen = pduData.length - 7;
+        final byte[] decDstTransportPayload = context.getNetworkPayload(dstTransportLen);
+        final int decLen = Encipher.ccm(pduData, 7, dstTransportLen, this.encryptionSuite.encryptionKey,
+                context.networkNonce, getMicLen(), false, decDstTransportPayload, 0);
 
-        if (decDstTransportPayload == null) {
+        if (decLen <= 2) {
             MeshLogger.i("network layer decrypt err");
             return false;
         }
 
-        int dstAdr = ((decDstTransportPayload[0] & 0xFF) << 8) | (decDstTransportPayload[1] & 0xFF);
+        this.dst = ((decDstTransportPayload[0] & 0xFF) << 8) | (decDstTransportPayload[1] & 0xFF);
 
-        byte[] lowerTransportPdu = new byte[decDstTransportPayload.length - 2];
+        byte[] lowerTransportPdu = new byte[decLen - 2];
         System.arraycopy(decDstTransportPayload, 2, lowerTransportPdu, 0, lowerTransportPdu.length);
-
-        this.dst = dstAdr;
         this.setTransportPDU(lowerTransportPdu);
         return true;
     }
@@ -0,0 +1,279 @@
+/********************************************************************************************************
+ * @file NetworkPacer.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.networking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * adaptive pacing of network pdu sent to un-direct connected nodes (AIMD)
+ * <p>
+ * the sending interval starts at {@link NetworkingController#netPktSendInterval},
+ * decreases by {@link #decreaseStep} on every success outcome (response received, all segments acknowledged),
+ * and is doubled on every congestion outcome (reliable retry or timeout, block ack gap, block ack timeout),
+ * a complete block ack is taken as congestion if its latency exceeds {@link #LATENCY_FACTOR} times the baseline latency,
+ * the interval is kept in [{@link #minInterval}, {@link NetworkingController#netPktSendInterval}]
+ */
+public class NetworkPacer {
+
+    public static final long DEFAULT_MIN_INTERVAL = 80;
+
+    public static final long DEFAULT_DECREASE_STEP = 20;
+
+    private static final int HISTORY_CAPACITY = 32;
+
+    /**
+     * block ack latency above baseline * factor means queuing in relay nodes
+     */
+    private static final int LATENCY_FACTOR = 3;
+
+    /**
+     * interval reset to max, when network cache cleared
+     */
+    public static final int REASON_RESET = 0;
+
+    /**
+     * reliable message response received
+     */
+    public static final int REASON_RELIABLE_SUCCESS = 1;
+
+    /**
+     * block ack shows all segments received
+     */
+    public static final int REASON_SEGMENT_COMPLETE = 2;
+
+    /**
+     * reliable message retry
+     */
+    public static final int REASON_RELIABLE_RETRY = 3;
+
+    /**
+     * reliable message retry max
+     */
+    public static final int REASON_RELIABLE_TIMEOUT = 4;
+
+    /**
+     * block ack shows segments missing
+     */
+    public static final int REASON_SEGMENT_GAP = 5;
+
+    /**
+     * block ack not received
+     */
+    public static final int REASON_SEGMENT_TIMEOUT = 6;
+
+    /**
+     * block ack shows all segments received, but latency exceeds baseline
+     */
+    public static final int REASON_SEGMENT_LATENCY = 7;
+
+    private boolean enabled = false;
+
+    private long minInterval = DEFAULT_MIN_INTERVAL;
+
+    private long decreaseStep = DEFAULT_DECREASE_STEP;
+
+    /**
+     * current interval, 0 means max interval
+     */
+    private long interval = 0;
+
+    private int successCount = 0;
+
+    private int congestionCount = 0;
+
+    /**
+     * smoothed latency from segments sent to block ack received, 0 if not measured
+     */
+    private long segmentAckLatency = 0;
+
+    /**
+     * min latency, drifts up slowly to follow route changes, 0 if not measured
+     */
+    private long segmentAckLatencyBaseline = 0;
+
+    /**
+     * last block ack latency exceeds baseline, checked on segment complete
+     */
+    private boolean segmentAckLate = false;
+
+    private final Decision[] history = new Decision[HISTORY_CAPACITY];
+
+    private int historyIndex = 0;
+
+    /**
+     * @param enabled if false, interval is always {@link NetworkingController#netPktSendInterval}
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param minInterval  min sending interval in milliseconds
+     * @param decreaseStep interval decrease on every success outcome in milliseconds
+     */
+    public synchronized void setParams(long minInterval, long decreaseStep) {
+        this.minInterval = Math.max(0, minInterval);
+        this.decreaseStep = Math.max(1, decreaseStep);
+    }
+
+    /**
+     * @param maxInterval upper bound, {@link NetworkingController#netPktSendInterval}
+     * @return sending interval in milliseconds
+     */
+    public synchronized long getInterval(long maxInterval) {
+        if (!enabled || interval == 0 || interval > maxInterval) {
+            return maxInterval;
+        }
+        return interval;
+    }
+
+    /**
+     * @return current interval, 0 means max interval
+     */
+    public synchronized long getCurrentInterval() {
+        return interval;
+    }
+
+    public synchronized int getSuccessCount() {
+        return successCount;
+    }
+
+    public synchronized int getCongestionCount() {
+        return congestionCount;
+    }
+
+    public synchronized long getSegmentAckLatency() {
+        return segmentAckLatency;
+    }
+
+    public synchronized long getSegmentAckLatencyBaseline() {
+        return segmentAckLatencyBaseline;
+    }
+
+    /**
+     * @return recent pacing decisions, oldest first
+     */
+    public synchronized List<Decision> getDecisionHistory() {
+        List<Decision> decisions = new ArrayList<>(HISTORY_CAPACITY);
+        for (int i = 0; i < HISTORY_CAPACITY; i++) {
+            Decision decision = history[(historyIndex + i) % HISTORY_CAPACITY];
+            if (decision != null) {
+                decisions.add(decision);
+            }
+        }
+        return decisions;
+    }
+
+    synchronized void reset() {
+        this.interval = 0;
+        this.segmentAckLatencyBaseline = 0;
+        this.segmentAckLate = false;
+        record(REASON_RESET);
+    }
+
+    /**
+     * @param reason {@link #REASON_RELIABLE_SUCCESS} or {@link #REASON_SEGMENT_COMPLETE}
+     */
+    synchronized void onSuccess(int reason, long maxInterval) {
+        if (reason == REASON_SEGMENT_COMPLETE && segmentAckLate) {
+            onCongestion(REASON_SEGMENT_LATENCY, maxInterval);
+            return;
+        }
+        successCount++;
+        if (!enabled) return;
+        long current = getInterval(maxInterval);
+        interval = Math.max(minInterval, current - decreaseStep);
+        record(reason);
+    }
+
+    /**
+     * @param reason {@link #REASON_RELIABLE_RETRY} {@link #REASON_RELIABLE_TIMEOUT}
+     *               {@link #REASON_SEGMENT_GAP} {@link #REASON_SEGMENT_TIMEOUT} or {@link #REASON_SEGMENT_LATENCY}
+     */
+    synchronized void onCongestion(int reason, long maxInterval) {
+        congestionCount++;
+        segmentAckLate = false;
+        if (!enabled) return;
+        long current = getInterval(maxInterval);
+        interval = Math.min(maxInterval, current * 2);
+        record(reason);
+    }
+
+    /**
+     * @param latency milliseconds from segments sent to block ack received
+     */
+    synchronized void onSegmentAckLatency(long latency) {
+        latency = Math.max(1, latency);
+        segmentAckLatency = segmentAckLatency == 0 ? latency : (segmentAckLatency * 7 + latency) / 8;
+        if (segmentAckLatencyBaseline == 0 || latency <= segmentAckLatencyBaseline) {
+            segmentAckLatencyBaseline = latency;
+            segmentAckLate = false;
+        } else {
+            segmentAckLate = latency > segmentAckLatencyBaseline * LATENCY_FACTOR;
+            segmentAckLatencyBaseline += Math.max(1, (latency - segmentAckLatencyBaseline) / 16);
+        }
+    }
+
+    private void record(int reason) {
+        history[historyIndex] = new Decision(System.currentTimeMillis(), reason, interval);
+        historyIndex = (historyIndex + 1) % HISTORY_CAPACITY;
+    }
+
+    /**
+     * pacing decision
+     */
+    public static class Decision {
+
+        public final long millis;
+
+        /**
+         * {@link #REASON_RESET} ...
+         */
+        public final int reason;
+
+        /**
+         * interval after decision, 0 means max interval
+         */
+        public final long interval;
+
+        Decision(long millis, int reason, long interval) {
+            this.millis = millis;
+            this.reason = reason;
+            this.interval = interval;
+        }
+
+        @Override
+        public String toString() {
+            return "Decision{" +
+                    "millis=" + millis +
+                    ", reason=" + reason +
+                    ", interval=" + interval +
+                    '}';
+        }
+    }
+}
@@ -22,6 +22,7 @@
  *******************************************************************************************************/
 package com.telink.ble.mesh.core.networking;
 
+import com.telink.ble.mesh.core.message.MeshMessage;
 import com.telink.ble.mesh.core.proxy.ProxyPDU;
 
 /**
@@ -46,6 +47,14 @@ public interface NetworkingBridge {
      */
     void onNetworkInfoUpdate(int sequenceNumber, int ivIndex);
 
+    /**
+     * application layer should save replay protection list snapshot
+     * This method is called when the replay protection list is updated by step.
+     *
+     * @param replayProtectionList updated list, {@link ReplayProtectionList#snapshot()}
+     */
+    void onReplayProtectionListUpdate(ReplayProtectionList replayProtectionList);
+
     /**
      * mesh model message
      * This method is called when a mesh model message is received.
@@ -76,12 +85,13 @@ public interface NetworkingBridge {
     /**
      * This method is called when a reliable message is complete.
      *
-     * @param success  True if the response was received, false otherwise.
-     * @param opcode   The command opcode.
-     * @param rspMax   The maximum expected response count.
-     * @param rspCount The received response count.
+     * @param meshMessage The completed message, several reliable messages may be in flight.
+     * @param success     True if the response was received, false otherwise.
+     * @param opcode      The command opcode.
+     * @param rspMax      The maximum expected response count.
+     * @param rspCount    The received response count.
      */
-    void onReliableMessageComplete(boolean success, int opcode, int rspMax, int rspCount);
+    void onReliableMessageComplete(MeshMessage meshMessage, boolean success, int opcode, int rspMax, int rspCount);
 
     /**
      * This method is called when a segment message is complete.
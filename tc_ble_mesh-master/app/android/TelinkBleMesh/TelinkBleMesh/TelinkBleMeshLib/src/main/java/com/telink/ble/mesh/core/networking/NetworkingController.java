@@ -24,6 +24,7 @@ package com.telink.ble.mesh.core.networking;
 
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.util.LongSparseArray;
 import android.util.SparseArray;
 import android.util.SparseLongArray;
 
@@ -56,6 +57,7 @@ import com.telink.ble.mesh.util.MeshLogger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
@@ -154,19 +156,38 @@ public class NetworkingController {
     private SparseArray<byte[]> deviceKeyMap;
 
     /**
-     * 0x1122334400AABBCC
-     * ivIndex: 0x11223344
-     * sequenceNumber: 0xAABBCC
-     * save device sequence number(lower 24 bits) and ivIndex(higher 32 bits), compare with sequence number in received network pdu
+     * save device sequence number and ivIndex, compare with sequence number in received network pdu
      * if sequence number in network pud is not larger than saved sequence number, drop this pdu
+     * kept when {@link #clear()}, so that replayed pdu after reconnect are dropped
      */
-    private SparseLongArray deviceSequenceNumberMap = new SparseLongArray();
+    private final ReplayProtectionList mReplayProtectionList = new ReplayProtectionList();
+
+    /**
+     * replay protection list update count, saved by step {@link #mSnoUpdateStep}
+     */
+    private int rplUpdateCount = 0;
 
     /**
      * appKey and appKeyIndex map
      */
     private SparseArray<byte[]> appKeyMap;
 
+    /**
+     * app keys in {@link #appKeyMap} with precomputed AID, used for decryption
+     */
+    private final AppKeyRing mAppKeyRing = new AppKeyRing();
+
+    /**
+     * network encryption suites for receiving, index by IVI,
+     * replaced when IV index or network key changed
+     */
+    private final NetworkLayerPDU.NetworkEncryptionSuite[] rxNetworkSuites = new NetworkLayerPDU.NetworkEncryptionSuite[2];
+
+    /**
+     * upper transport encryption suites of {@link #mAppKeyRing} for receiving, index by IVI
+     */
+    private final UpperTransportAccessPDU.UpperTransportEncryptionSuite[] rxAppSuites = new UpperTransportAccessPDU.UpperTransportEncryptionSuite[2];
+
     /**
      * from mesh configuration
      */
@@ -200,9 +221,20 @@ public class NetworkingController {
     private static final int SEQ_ZERO_LIMIT = 0x1FFF;
 
     /**
-     * received segmented message buffer by notification
+     * default max count of segmented messages received at the same time
      */
-    private SparseArray<SegmentedAccessMessagePDU> receivedSegmentedMessageBuffer = new SparseArray<>();
+    public static final int DEFAULT_SEGMENTED_RX_CONCURRENCY = 8;
+
+    /**
+     * default max bytes of received segments buffered
+     */
+    public static final int DEFAULT_SEGMENTED_RX_MEMORY_BUDGET = 16 * 1024;
+
+    /**
+     * receiving segmented messages by notification, key: src
+     * one message is received from each src at the same time, a newer seqAuth replaces the incomplete one
+     */
+    private final SegmentedRxTable<SegmentedRxContext> segmentedRxContexts = new SegmentedRxTable<>();
 
 
     private static final int SEQ_AUTH_BUF_CAPACITY = 10;
@@ -222,23 +254,6 @@ public class NetworkingController {
      */
     private SparseArray<SegmentedAccessMessagePDU> sentSegmentedMessageBuffer = new SparseArray<>();
 
-//    private SparseArray<byte[]> receivedSegmentedMessageBuffer;
-
-    /**
-     * last seqAuth in segmented pdu
-     * 0: segment idle
-     * others: segment busy
-     */
-    private long lastSeqAuth = 0;
-
-    /**
-     * last seqAuth source address
-     */
-    private int lastSegSrc = 0;
-
-    // if last RX segment packets complete
-    private boolean lastSegComplete = true;
-
 
     private NetworkingBridge mNetworkingBridge;
 
@@ -246,8 +261,6 @@ public class NetworkingController {
 
     private Handler mDelayHandler;
 
-    private SegmentAckMessageSentTask mAccessSegCheckTask = new SegmentAckMessageSentTask();
-
     // waiting for segment ack message
     private SegmentBlockWaitingTask mSegmentBlockWaitingTask = new SegmentBlockWaitingTask();
 
@@ -258,20 +271,33 @@ public class NetworkingController {
     private Runnable segmentedMessageTimeoutTask = new SegmentedMessageTimeoutTask();
 
     /**
-     * sending message with ack
-     * only one reliable message can be sent at one time
+     * default count of reliable messages which can be sent at one time
+     */
+    public static final int DEFAULT_RELIABLE_MESSAGE_LIMIT = 1;
+
+    /**
+     * sending messages with ack, keyed by destination address and response opcode
+     * {@link #getReliableKey(int, int)}
      * <p>
-     * for reliable message,
+     * at most {@link #reliableMessageLimit} reliable messages can be sent at one time,
+     * each one has its own timeout, retry count and response set
      */
-    private MeshMessage mSendingReliableMessage;
+    private final LongSparseArray<ReliableTransaction> mReliableTransactions = new LongSparseArray<>();
 
-    private boolean reliableBusy = false;
+    /**
+     * max count of reliable messages in flight
+     */
+    private int reliableMessageLimit = DEFAULT_RELIABLE_MESSAGE_LIMIT;
+
+    /**
+     * reliable transaction of the segmented message being sent,
+     * its timeout check starts when all segments are acknowledged
+     */
+    private ReliableTransaction mSegmentedReliableTransaction;
 
     // reliable
     private final Object RELIABLE_SEGMENTED_LOCK = new Object();
 
-    private Set<Integer> mResponseMessageBuffer = new LinkedHashSet<>();
-
     private int[] whiteList;
 
     private int proxyFilterInitStep = 0;
@@ -302,6 +328,16 @@ public class NetworkingController {
      */
     public static long netPktSendInterval = NETWORK_INTERVAL_DEFAULT; // 240 ms // 320
 
+    /**
+     * adaptive sending interval, bounded by {@link #netPktSendInterval}
+     */
+    private final NetworkPacer mNetworkPacer = new NetworkPacer();
+
+    /**
+     * time when segmented messages sent, used to measure block ack latency
+     */
+    private long segmentSentTime = 0;
+
     /**
      * used as a lock object for synchronization purposes.
      */
@@ -344,6 +380,8 @@ public class NetworkingController {
      */
     public void setup(MeshConfiguration configuration) {
         this.clear();
+        this.mReplayProtectionList.clear();
+        this.rplUpdateCount = 0;
         this.resetDirectAddress();
         this.initIvIndex = configuration.ivIndex & MeshUtils.UNSIGNED_INTEGER_MAX;
         this.ivIndex = initIvIndex;
@@ -356,6 +394,7 @@ public class NetworkingController {
         this.privacyKey = k2Output[2];
         this.privateBeaconKey = Encipher.generatePrivateBeaconKey(configuration.networkKey);
         this.appKeyMap = configuration.appKeyMap;
+        this.mAppKeyRing.setup(configuration.appKeyMap);
         this.deviceKeyMap = configuration.deviceKeyMap;
 
         this.localAddress = configuration.localAddress;
@@ -373,20 +412,18 @@ public class NetworkingController {
 
         this.networkingBusy = false;
         this.segmentedBusy = false;
-        this.reliableBusy = false;
+        synchronized (RELIABLE_SEGMENTED_LOCK) {
+            this.mReliableTransactions.clear();
+            this.mSegmentedReliableTransaction = null;
+        }
         this.mNetworkingQueue.clear();
-        // last lastSeqAuth and lastSegComplete should keep to avoid the complete seqAuth not saved in completedSeqAuthBuffer
+        this.mNetworkPacer.reset();
+        // completed seqAuth buffer is kept, so that resent segments of completed message are acknowledged
         // for example , after key bind success, app send publish(segment packet) immediately,
         // if the device resend the aggregator segment packet, network
-//        this.lastSeqAuth = 0;
-//        this.lastSegSrc = 0;
-        this.lastSegComplete = true;
-        this.deviceSequenceNumberMap.clear();
-        this.receivedSegmentedMessageBuffer.clear();
+        this.segmentedRxContexts.clear();
         this.sentSegmentedMessageBuffer.clear();
-        this.mResponseMessageBuffer.clear();
         this.isIvUpdating = false;
-        this.lastSegComplete = true;
         this.privateBeaconReceived = false;
     }
 
@@ -436,6 +473,82 @@ public class NetworkingController {
         return extendBearerMode;
     }
 
+    /**
+     * Sets the max count of reliable messages which can be sent at one time.
+     * Messages in flight should have different destination address or response opcode.
+     *
+     * @param limit reliable message limit, at least 1
+     */
+    public void setReliableMessageLimit(int limit) {
+        log("setReliableMessageLimit: " + limit);
+        this.reliableMessageLimit = Math.max(1, limit);
+    }
+
+    /**
+     * Retrieves the max count of reliable messages which can be sent at one time.
+     *
+     * @return reliable message limit
+     */
+    public int getReliableMessageLimit() {
+        return reliableMessageLimit;
+    }
+
+    /**
+     * segmented messages from different nodes are received at the same time,
+     * busy ack is sent when limit reached
+     *
+     * @param concurrency  max count of segmented messages received at the same time
+     * @param memoryBudget max bytes of received segments buffered
+     */
+    public void setSegmentedRxLimits(int concurrency, int memoryBudget) {
+        segmentedRxContexts.setLimits(concurrency, memoryBudget);
+    }
+
+    /**
+     * @return true if no segmented message is being received
+     */
+    private boolean isSegmentedRxIdle() {
+        return segmentedRxContexts.size() == 0;
+    }
+
+    /**
+     * @param enabled if true, network pdu sending interval adapts to observed congestion,
+     *                else {@link #netPktSendInterval} is used
+     */
+    public void setAdaptivePacingEnabled(boolean enabled) {
+        mNetworkPacer.setEnabled(enabled);
+    }
+
+    /**
+     * @return pacer holding current sending interval and decision history
+     */
+    public NetworkPacer getNetworkPacer() {
+        return mNetworkPacer;
+    }
+
+    /**
+     * @return replay protection list, with rejected pdu count
+     */
+    public ReplayProtectionList getReplayProtectionList() {
+        return mReplayProtectionList;
+    }
+
+    /**
+     * @return interval between network pdu sent to un-direct connected nodes
+     */
+    private long getNetworkInterval() {
+        return mNetworkPacer.getInterval(netPktSendInterval);
+    }
+
+    /**
+     * @return true if no reliable or segmented message in flight
+     */
+    public boolean isSendingIdle() {
+        synchronized (RELIABLE_SEGMENTED_LOCK) {
+            return !segmentedBusy && mReliableTransactions.size() == 0;
+        }
+    }
+
     /**
      * This method calculates and returns the segment access length based on the destination address and opcode.
      * If the GATT connection MTU is less than UNSEGMENTED_ACCESS_PAYLOAD_MAX_LENGTH_LONG,
@@ -479,7 +592,9 @@ public class NetworkingController {
      * @param seqAuth The sequence authentication value to be saved.
      */
     private synchronized void saveCompletedSeqAuth(int src, long seqAuth) {
-        log(String.format(Locale.getDefault(), "save complete seqAuth src: 0x%04X -- seqAuth: 0x%014X", src, seqAuth));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format(Locale.getDefault(), "save complete seqAuth src: 0x%04X -- seqAuth: 0x%014X", src, seqAuth));
+        }
         this.completedSeqAuthBuffer.put(src, seqAuth);
         /*if (this.completedSeqAuthBuffer.size() > SEQ_AUTH_BUF_CAPACITY) {
             log("remove buffer");
@@ -506,7 +621,9 @@ public class NetworkingController {
      * @param seqAuth seqAuth
      */
     private synchronized void saveBusySeqAuth(int src, long seqAuth) {
-        log(String.format(Locale.getDefault(), "save busy seqAuth src: 0x%04X -- seqAuth: 0x%014X", src, seqAuth));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format(Locale.getDefault(), "save busy seqAuth src: 0x%04X -- seqAuth: 0x%014X", src, seqAuth));
+        }
         this.busySeqAuthBuffer.put(src, seqAuth);
     }
 
@@ -562,9 +679,11 @@ public class NetworkingController {
      */
     private void onIvUpdated(long newIvIndex) {
         if (newIvIndex > initIvIndex || this.initIvIndex == MeshUtils.IV_MISSING) {
-            log(String.format(" iv updated to %08X", newIvIndex));
+            if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                log(String.format(" iv updated to %08X", newIvIndex));
+            }
             this.initIvIndex = (int) newIvIndex;
-            this.deviceSequenceNumberMap.clear();
+            this.mReplayProtectionList.clear();
             this.mSequenceNumber.set(0);
             if (mNetworkingBridge != null) {
                 mNetworkingBridge.onNetworkInfoUpdate(mSequenceNumber.get(), (int) newIvIndex);
@@ -591,11 +710,13 @@ public class NetworkingController {
      * @param updating      is updating
      */
     private void onIvIndexReceived(long remoteIvIndex, boolean updating) {
-        log(String.format("iv index received iv: %08X -- updating: %b -- localIv: %08X -- updating: %b ",
-                remoteIvIndex,
-                updating,
-                this.ivIndex,
-                this.isIvUpdating));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format("iv index received iv: %08X -- updating: %b -- localIv: %08X -- updating: %b ",
+                    remoteIvIndex,
+                    updating,
+                    this.ivIndex,
+                    this.isIvUpdating));
+        }
         if (this.ivIndex == MeshUtils.IV_MISSING) {
             this.isIvUpdating = updating;
             this.ivIndex = remoteIvIndex;
@@ -690,7 +811,7 @@ public class NetworkingController {
     /**
      * This method is used to post a mesh message. It takes a MeshMessage object and a boolean value indicating whether to retry sending the message.
      * <p>
-     * The method retrieves the destination address, source address, SZMIC value, opcode, AKF value, and AID value from the MeshMessage object. If the access type is application, it calculates the AID value using the Encipher.k4() method. Otherwise, it sets the AID value to 0x00.
+     * The method retrieves the destination address, source address, SZMIC value, opcode, AKF value, and AID value from the MeshMessage object. If the access type is application, it gets the AID value precomputed in the app key ring. Otherwise, it sets the AID value to 0x00.
      * <p>
      * The method also retrieves the sequence number and parameters from the MeshMessage object. If the parameters exist and the TID position is valid, it updates the TID value based on the retry flag.
      * <p>
@@ -720,7 +841,7 @@ public class NetworkingController {
         byte akf = meshMessage.getAccessType().akf;
         byte aid;
         if (meshMessage.getAccessType() == AccessType.APPLICATION) {
-            aid = Encipher.k4(meshMessage.getAccessKey());
+            aid = mAppKeyRing.getAid(meshMessage.getAccessKey());
         } else {
             aid = 0x00;
         }
@@ -729,8 +850,9 @@ public class NetworkingController {
 
         final byte[] params = meshMessage.getParams();
         final int tidPos = meshMessage.getTidPosition();
-        if (params != null && tidPos >= 0 && params.length > tidPos) {
-            params[tidPos] = retry ? (byte) this.tid.get() : (byte) this.tid.incrementAndGet();
+        // retried message keeps the tid assigned when first sent, other messages may be sent in the meantime
+        if (!retry && params != null && tidPos >= 0 && params.length > tidPos) {
+            params[tidPos] = (byte) this.tid.incrementAndGet();
         }
 
         AccessLayerPDU accessPDU = new AccessLayerPDU(meshMessage.getOpcode(), params);
@@ -750,7 +872,9 @@ public class NetworkingController {
             }
         }
 
-        log("post access pdu: " + Arrays.bytesToHexString(accessPDU.toByteArray(), ""));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log("post access pdu: " + Arrays.bytesToHexString(accessPDU.toByteArray(), ""));
+        }
 
         int ivIndex = getTransmitIvIndex();
 
@@ -765,7 +889,9 @@ public class NetworkingController {
             log("create upper transport pdu err: encrypt err", MeshLogger.LEVEL_WARN);
             return false;
         }
-        log("upper transport pdu: " + Arrays.bytesToHexString(upperPDU.getEncryptedPayload(), ""));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log("upper transport pdu: " + Arrays.bytesToHexString(upperPDU.getEncryptedPayload(), ""));
+        }
 
         // check message reliable
         final boolean reliable = meshMessage.isReliable();
@@ -780,13 +906,12 @@ public class NetworkingController {
             log("send unsegmented access message");
 
             if (reliable) {
-                if (reliableBusy) {
+                ReliableTransaction transaction = startReliableTransaction(meshMessage);
+                if (transaction == null) {
                     log("unsegmented reliable message send err: busy", MeshLogger.LEVEL_WARN);
                     return false;
                 }
-                reliableBusy = true;
-                mSendingReliableMessage = meshMessage;
-                restartReliableMessageTimeoutTask();
+                restartReliableMessageTimeoutTask(transaction);
             }
 
             UnsegmentedAccessMessagePDU unsegmentedMessagePDU = createUnsegmentedAccessMessage(upperPDU.getEncryptedPayload(), akf, aid);
@@ -795,17 +920,21 @@ public class NetworkingController {
             sendNetworkPdu(networkPDU);
         } else {
             synchronized (RELIABLE_SEGMENTED_LOCK) {
+                ReliableTransaction transaction = null;
                 if (reliable) {
-                    if (reliableBusy) {
+                    transaction = startReliableTransaction(meshMessage);
+                    if (transaction == null) {
                         log("segmented reliable message send err: busy", MeshLogger.LEVEL_WARN);
                         return false;
                     }
-                    reliableBusy = true;
-                    mSendingReliableMessage = meshMessage;
-//                    restartReliableMessageTimeoutTask(); //
                 }
                 SparseArray<SegmentedAccessMessagePDU> segmentedAccessMessages = createSegmentedAccessMessage(upperPDU.getEncryptedPayload(), akf, aid, aszmic, sequenceNumber, segmentLen);
-                if (segmentedAccessMessages.size() == 0) return false;
+                if (segmentedAccessMessages.size() == 0) {
+                    if (transaction != null) {
+                        mReliableTransactions.remove(transaction.key);
+                    }
+                    return false;
+                }
 
                 log("send segmented access message");
                 List<NetworkLayerPDU> networkLayerPduList = new ArrayList<>();
@@ -817,10 +946,11 @@ public class NetworkingController {
                 }
                 if (MeshUtils.validUnicastAddress(dst)) {
                     this.sentSegmentedMessageBuffer = segmentedAccessMessages.clone();
+                    this.mSegmentedReliableTransaction = transaction;
                     startSegmentedMessageTimeoutCheck();
                     startSegmentedBlockAckWaiting(meshMessage.getCtl(), meshMessage.getTtl(), src, dst);
-                } else if (reliable) {
-                    restartReliableMessageTimeoutTask();
+                } else if (transaction != null) {
+                    restartReliableMessageTimeoutTask(transaction);
                 }
                 sendNetworkPduList(networkLayerPduList);
             }
@@ -882,6 +1012,32 @@ public class NetworkingController {
         return this.appKeyMap.get(appKeyIndex);
     }
 
+    /**
+     * add or replace app key, for example: app key added or updated in key refresh
+     *
+     * @param appKeyIndex app key index
+     * @param appKey      app key
+     */
+    public void putAppKey(int appKeyIndex, byte[] appKey) {
+        if (this.appKeyMap == null) {
+            this.appKeyMap = new SparseArray<>();
+        }
+        this.appKeyMap.put(appKeyIndex, appKey);
+        this.mAppKeyRing.putKey(appKeyIndex, appKey);
+    }
+
+    /**
+     * remove app key
+     *
+     * @param appKeyIndex app key index
+     */
+    public void removeAppKey(int appKeyIndex) {
+        if (this.appKeyMap != null) {
+            this.appKeyMap.remove(appKeyIndex);
+        }
+        this.mAppKeyRing.removeKey(appKeyIndex);
+    }
+
 
     /**
      * get device key for config model message when akf==0
@@ -917,6 +1073,7 @@ public class NetworkingController {
     private void startSegmentedBlockAckWaiting(int ctl, int ttl, int src, int dst) {
         mDelayHandler.removeCallbacks(mSegmentBlockWaitingTask);
         mSegmentBlockWaitingTask.resetParams(ctl, ttl, src, dst);
+        segmentSentTime = System.currentTimeMillis();
         mDelayHandler.postDelayed(mSegmentBlockWaitingTask, getSegmentedTimeout(ttl, true));
     }
 
@@ -928,7 +1085,9 @@ public class NetworkingController {
      *                 false: when checking block ack
      */
     private void stopSegmentedBlockAckWaiting(boolean complete, boolean success) {
-        log(String.format("stop segmented block waiting, complete - %B success - %B", complete, success));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format("stop segmented block waiting, complete - %B success - %B", complete, success));
+        }
         mDelayHandler.removeCallbacks(mSegmentBlockWaitingTask);
         if (complete) {
             onSegmentedMessageComplete(success);
@@ -947,16 +1106,21 @@ public class NetworkingController {
         clearSegmentSendingState(success);
 
         // check reliable state
-        if (reliableBusy) {
+        final ReliableTransaction transaction;
+        synchronized (RELIABLE_SEGMENTED_LOCK) {
+            transaction = mSegmentedReliableTransaction;
+            mSegmentedReliableTransaction = null;
+        }
+        if (transaction != null) {
             /*
             if segmented message sent success, check response after #@link{RELIABLE_MESSAGE_TIMEOUT}
             else if segmented message timeout, retry immediately
              */
             if (success) {
-                restartReliableMessageTimeoutTask();
+                restartReliableMessageTimeoutTask(transaction);
             } else {
                 // if segment timeout , no need to resend reliable message
-                onReliableMessageComplete(false);
+                onReliableMessageComplete(transaction, false);
             }
         }
     }
@@ -1007,7 +1171,7 @@ public class NetworkingController {
             synchronized (mNetworkingQueue) {
                 queueSize = mNetworkingQueue.size();
             }
-            timeout = relayTimeout + segmentAckTimeout + queueSize * netPktSendInterval;
+            timeout = relayTimeout + segmentAckTimeout + queueSize * getNetworkInterval();
         } else {
             // receive
             timeout = relayTimeout + segmentAckTimeout;
@@ -1019,9 +1183,10 @@ public class NetworkingController {
     /**
      * calculates the timeout duration for a reliable message in a networking queue.
      *
+     * @param meshMessage sending reliable message
      * @return timeout
      */
-    private long getReliableMessageTimeout() {
+    private long getReliableMessageTimeout(MeshMessage meshMessage) {
         int queueSize;
         synchronized (mNetworkingQueue) {
             queueSize = mNetworkingQueue.size();
@@ -1032,8 +1197,7 @@ public class NetworkingController {
 
         // for test
 //        long timeout = (dleEnabled ? 5120 : 2560) + queueSize * NETWORKING_INTERVAL;
-        long timeout = queueSize * netPktSendInterval;
-        final MeshMessage meshMessage = mSendingReliableMessage;
+        long timeout = queueSize * getNetworkInterval();
         if (meshMessage != null) {
             timeout += meshMessage.getRetryInterval();
         } else {
@@ -1061,7 +1225,9 @@ public class NetworkingController {
         if (mNetworkingBridge != null) {
             for (NetworkLayerPDU networkLayerPDU : networkPduList) {
                 byte[] networkPduPayload = networkLayerPDU.generateEncryptedPayload();
-                log("multi network pdu: " + Arrays.bytesToHexString(networkPduPayload, ":"));
+                if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                    log("multi network pdu: " + Arrays.bytesToHexString(networkPduPayload, ":"));
+                }
                 onNetworkingPduPrepared(networkPduPayload, networkLayerPDU.getDst());
             }
         }
@@ -1075,7 +1241,9 @@ public class NetworkingController {
     private void sendNetworkPdu(NetworkLayerPDU networkPdu) {
         if (mNetworkingBridge != null) {
             byte[] networkPduPayload = networkPdu.generateEncryptedPayload();
-            log("single network pdu: " + Arrays.bytesToHexString(networkPduPayload, ":"));
+            if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                log("single network pdu: " + Arrays.bytesToHexString(networkPduPayload, ":"));
+            }
             onNetworkingPduPrepared(networkPduPayload, networkPdu.getDst());
         }
     }
@@ -1088,7 +1256,9 @@ public class NetworkingController {
     private void sendProxyNetworkPdu(ProxyConfigurationPDU networkPdu) {
         if (mNetworkingBridge != null) {
             byte[] networkPduPayload = networkPdu.generateEncryptedPayload();
-            log("proxy network pdu: " + Arrays.bytesToHexString(networkPduPayload, ":"));
+            if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                log("proxy network pdu: " + Arrays.bytesToHexString(networkPduPayload, ":"));
+            }
             mNetworkingBridge.onCommandPrepared(ProxyPDU.TYPE_PROXY_CONFIGURATION, networkPduPayload);
         }
     }
@@ -1109,7 +1279,9 @@ public class NetworkingController {
      * to start sending the networking PDUs from the queue.
      */
     private void onNetworkingPduPrepared(byte[] payload, int dstAddress) {
-        log("networking pdu prepared: " + Arrays.bytesToHexString(payload, ":") + " busy?-" + networkingBusy);
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log("networking pdu prepared: " + Arrays.bytesToHexString(payload, ":") + " busy?-" + networkingBusy);
+        }
 
         synchronized (mNetworkBusyLock) {
             if (!networkingBusy) {
@@ -1140,7 +1312,7 @@ public class NetworkingController {
      * This method is responsible for polling the networking queue and retrieving the next payload to be sent.
      * If there is no payload in the queue, it sets the networkingBusy flag to false.
      * If there is a payload, it logs the payload and sends it to the networking bridge for processing.
-     * It also removes any previously scheduled networking sending tasks and schedules a new one with a delay of netPktSendInterval.
+     * It also removes any previously scheduled networking sending tasks and schedules a new one with a delay of {@link #getNetworkInterval()}.
      */
     private void pollNetworkingQueue() {
         byte[] payload;
@@ -1153,12 +1325,14 @@ public class NetworkingController {
                 networkingBusy = false;
             }
         } else {
-            log("networking pdu poll: " + Arrays.bytesToHexString(payload, ":"));
+            if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                log("networking pdu poll: " + Arrays.bytesToHexString(payload, ":"));
+            }
             if (mNetworkingBridge != null) {
                 mNetworkingBridge.onCommandPrepared(ProxyPDU.TYPE_NETWORK_PDU, payload);
             }
             mDelayHandler.removeCallbacks(networkingSendingTask);
-            mDelayHandler.postDelayed(networkingSendingTask, netPktSendInterval);
+            mDelayHandler.postDelayed(networkingSendingTask, getNetworkInterval());
         }
     }
 
@@ -1231,7 +1405,9 @@ public class NetworkingController {
      * @return ivIndex
      */
     private int getAcceptedIvIndex(int ivi) {
-        log(String.format("getAcceptedIvIndex : %08X", ivIndex) + " ivi: " + ivi);
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format("getAcceptedIvIndex : %08X", ivIndex) + " ivi: " + ivi);
+        }
         boolean ivChecked = (ivIndex & 0b01) == ivi;
         return ivChecked ? (int) ivIndex : (int) (ivIndex - 1);
     }
@@ -1245,7 +1421,9 @@ public class NetworkingController {
      */
     private int getTransmitIvIndex() {
         int re = (int) (!isIvUpdating ? ivIndex : ivIndex - 1);
-        log(String.format("getTransmitIvIndex : %08X", re));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format("getTransmitIvIndex : %08X", re));
+        }
         return re;
     }
 
@@ -1269,10 +1447,8 @@ public class NetworkingController {
 
         int ivi = (payload[0] & 0xFF) >> 7;
         int ivIndex = getAcceptedIvIndex(ivi);
-        NetworkLayerPDU networkLayerPDU = new NetworkLayerPDU(
-                new NetworkLayerPDU.NetworkEncryptionSuite(ivIndex, this.encryptionKey, this.privacyKey, this.nid)
-        );
-        if (networkLayerPDU.parse(payload)) {
+        NetworkLayerPDU networkLayerPDU = new NetworkLayerPDU(getRxNetworkSuite(ivIndex));
+        if (networkLayerPDU.parse(payload, ParseContext.get())) {
             log("network pdu: " + networkLayerPDU.toString());
             if (!validateSequenceNumber(networkLayerPDU, ivIndex)) {
                 log("network pdu sequence number check err", MeshLogger.LEVEL_WARN);
@@ -1300,16 +1476,16 @@ public class NetworkingController {
 
         // Get the accepted IVI from the extracted IVI
         int ivIndex = getAcceptedIvIndex(ivi);
-        ProxyConfigurationPDU proxyNetworkPdu = new ProxyConfigurationPDU(
-                new NetworkLayerPDU.NetworkEncryptionSuite(ivIndex, this.encryptionKey, this.privacyKey, this.nid)
-        );
-        if (proxyNetworkPdu.parse(payload)) {
+        ProxyConfigurationPDU proxyNetworkPdu = new ProxyConfigurationPDU(getRxNetworkSuite(ivIndex));
+        if (proxyNetworkPdu.parse(payload, ParseContext.get())) {
             log("proxy pdu: " + proxyNetworkPdu.toString());
             if (!validateSequenceNumber(proxyNetworkPdu, ivIndex)) {
                 log("proxy config pdu sequence number check err", MeshLogger.LEVEL_WARN);
                 return;
             }
-            log(String.format("proxy network pdu src: %04X dst: %04X", proxyNetworkPdu.getSrc(), proxyNetworkPdu.getDst()));
+            if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                log(String.format("proxy network pdu src: %04X dst: %04X", proxyNetworkPdu.getSrc(), proxyNetworkPdu.getDst()));
+            }
             onProxyConfigurationNotify(proxyNetworkPdu.getTransportPDU(), proxyNetworkPdu.getSrc());
         }
 
@@ -1323,8 +1499,10 @@ public class NetworkingController {
      * @param src                source address
      */
     private void onProxyConfigurationNotify(byte[] proxyConfigMessage, int src) {
-        log("onProxyConfigurationNotify: "
-                + Arrays.bytesToHexString(proxyConfigMessage, ":"));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log("onProxyConfigurationNotify: "
+                    + Arrays.bytesToHexString(proxyConfigMessage, ":"));
+        }
         ProxyFilterStatusMessage proxyFilterStatusMessage = ProxyFilterStatusMessage.fromBytes(proxyConfigMessage);
         if (proxyFilterStatusMessage != null) {
 
@@ -1334,7 +1512,9 @@ public class NetworkingController {
                     log("filter init action not started!", MeshLogger.LEVEL_WARN);
                     return;
                 }
-                log(String.format("reset direct address: %04X", src));
+                if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                    log(String.format("reset direct address: %04X", src));
+                }
                 this.directAddress = src;
                 proxyFilterInitStep++;
                 if (proxyFilterInitStep == PROXY_FILTER_INIT_STEP_SET_TYPE) {
@@ -1384,64 +1564,40 @@ public class NetworkingController {
     private boolean validateSequenceNumber(NetworkLayerPDU networkLayerPDU, int pduIvIndex) {
         int src = networkLayerPDU.getSrc();
         int pduSequenceNumber = networkLayerPDU.getSeq();
-        long valueInCache = this.deviceSequenceNumberMap.get(src, -1);
-        long deviceSequenceNumber = getSequenceNumberInCache(valueInCache);
-        boolean pass = true;
-//        log(String.format("sequence in cache: src--%04X | value--%016X", src, valueInCache));
-        if (valueInCache == -1) {
-            log("put init sequence number");
-            saveSequenceCache(src, pduSequenceNumber, pduIvIndex);
-        } else {
-            int deviceIvIndex = getIvIndexInCache(valueInCache);
-            if (pduIvIndex > deviceIvIndex) {
+        int result = mReplayProtectionList.validate(src, pduSequenceNumber, pduIvIndex);
+        switch (result) {
+            case ReplayProtectionList.RESULT_NEW:
+                log("put init sequence number");
+                break;
+            case ReplayProtectionList.RESULT_IV_UPDATED:
                 log("network pdu - larger ivIndex received, save the new ivIndex");
-                saveSequenceCache(src, pduSequenceNumber, pduIvIndex);
-            } else if (pduIvIndex == deviceIvIndex) {
-                if (pduSequenceNumber > deviceSequenceNumber) {
-                    saveSequenceCache(src, pduSequenceNumber, pduIvIndex);
-                } else {
-                    log(String.format("validate sequence number error  src: %04X -- pdu-sno: %06X -- dev-sno: %06X", src, pduSequenceNumber, deviceSequenceNumber));
-                    pass = false;
+                break;
+            case ReplayProtectionList.RESULT_REPLAY:
+                if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                    long valueInCache = mReplayProtectionList.get(src);
+                    log(String.format("validate sequence number error  src: %04X -- pdu-sno: %06X -- dev-sno: %06X",
+                            src, pduSequenceNumber, ReplayProtectionList.getSequenceNumber(valueInCache)));
                 }
-            } else {
+                return false;
+            case ReplayProtectionList.RESULT_IV_LESS:
                 log("network pdu error: less ivIndex pdu received");
-                pass = false;
-            }
-
+                return false;
         }
-        return pass;
-    }
-
-    /**
-     * save sequence number and ivIndex misc value
-     */
-    private void saveSequenceCache(int src, int sequenceNumber, int ivIndex) {
-        long value = ((ivIndex & 0xFFFFFFFFL) << 32) | (sequenceNumber & 0x00FFFFFFL);
-//        log(String.format("save sequence in cache src: %04X -- value: %016X", src, value));
-//        log(String.format("save sequence detail src: %04X -- ivIndex: %08X -- ivIndex: %08X", src, ivIndex, sequenceNumber));
-        this.deviceSequenceNumberMap.put(src, value);
-    }
-
-    /**
-     * This method extracts the sequence number from a value stored in the cache.
-     * The sequence number is represented by the lower 24 bits of the value.
-     *
-     * @param valInCache the value stored in the cache
-     * @return the extracted sequence number
-     */
-    private long getSequenceNumberInCache(long valInCache) {
-        return valInCache & 0xFFFFFF;
+        onReplayProtectionListUpdate();
+        return true;
     }
 
     /**
-     * This method extracts the IV index from a value stored in the cache.
-     * The IV index is represented by bits 32 to 63 of the value.
-     *
-     * @param valInCache the value stored in the cache
-     * @return the extracted IV index
+     * replay protection list update by step
+     * {@link #mSnoUpdateStep}
      */
-    private int getIvIndexInCache(long valInCache) {
-        return (int) ((valInCache >> 32) & 0xFFFFFFFFL);
+    private void onReplayProtectionListUpdate() {
+        rplUpdateCount++;
+        if (mNetworkingBridge != null) {
+            if (mSnoUpdateStep == 0 || rplUpdateCount % mSnoUpdateStep == 0) {
+                mNetworkingBridge.onReplayProtectionListUpdate(mReplayProtectionList);
+            }
+        }
     }
 
     /**
@@ -1480,7 +1636,9 @@ public class NetworkingController {
      * @param transportPdu The transport PDU containing the heartbeat message.
      */
     private void onHeartbeatNotify(int src, int dst, byte[] transportPdu) {
-        log("on heart beat notify: " + Arrays.bytesToHexString(transportPdu, ":"));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log("on heart beat notify: " + Arrays.bytesToHexString(transportPdu, ":"));
+        }
         if (mNetworkingBridge != null) {
             mNetworkingBridge.onHeartbeatMessageReceived(src, dst, transportPdu);
         }
@@ -1517,6 +1675,7 @@ public class NetworkingController {
             if (seqZero != -1) {
                 if (seqZero == messageSeqZero) {
                     stopSegmentedBlockAckWaiting(false, false);
+                    mNetworkPacer.onSegmentAckLatency(System.currentTimeMillis() - segmentSentTime);
                 } else {
                     return;
                 }
@@ -1552,8 +1711,11 @@ public class NetworkingController {
 
             if (networkLayerPduList.size() == 0) {
                 // all received
+                mNetworkPacer.onSuccess(NetworkPacer.REASON_SEGMENT_COMPLETE, netPktSendInterval);
                 stopSegmentedBlockAckWaiting(true, true);
             } else {
+                mNetworkPacer.onCongestion(seqZero == -1 ? NetworkPacer.REASON_SEGMENT_TIMEOUT : NetworkPacer.REASON_SEGMENT_GAP,
+                        netPktSendInterval);
                 startSegmentedBlockAckWaiting(ctl, ttl, src, dst);
                 sendNetworkPduList(networkLayerPduList);
             }
@@ -1611,8 +1773,10 @@ public class NetworkingController {
      */
     private void onAccessPduReceived(int src, int dst, AccessLayerPDU accessPDU) {
 
-        log(String.format("access pdu received at 0x%04X: opcode -- 0x%04X", src, accessPDU.opcode)
-                + " params -- " + Arrays.bytesToHexString(accessPDU.params, ""));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format("access pdu received at 0x%04X: opcode -- 0x%04X", src, accessPDU.opcode)
+                    + " params -- " + Arrays.bytesToHexString(accessPDU.params, ""));
+        }
         // check reliable message state
         updateReliableMessage(src, accessPDU);
         if (mNetworkingBridge != null) {
@@ -1622,114 +1786,230 @@ public class NetworkingController {
 
     /**
      * This method is used to update the reliable message status when a response is received from a device.
+     * The response is matched by source address and opcode against the reliable transactions in flight,
+     * responses to group or broadcast messages are matched by opcode.
      *
      * @param src            source address
      * @param accessLayerPDU access pdu
      */
     private void updateReliableMessage(int src, AccessLayerPDU accessLayerPDU) {
-        if (!reliableBusy) return;
-        MeshMessage sendingMessage = mSendingReliableMessage;
-        if (sendingMessage != null && sendingMessage.getResponseOpcode() == accessLayerPDU.opcode) {
-            int sendingDst = sendingMessage.getDestinationAddress();
-            if (MeshUtils.validUnicastAddress(sendingDst) && sendingDst != src) {
-                log(String.format("not expected response : %04X - %04X", sendingDst, src));
-                return;
+        ReliableTransaction transaction = null;
+        boolean complete;
+        synchronized (RELIABLE_SEGMENTED_LOCK) {
+            if (mReliableTransactions.size() == 0) return;
+            transaction = mReliableTransactions.get(getReliableKey(src, accessLayerPDU.opcode));
+            if (transaction == null) {
+                ReliableTransaction target;
+                for (int i = 0; i < mReliableTransactions.size(); i++) {
+                    target = mReliableTransactions.valueAt(i);
+                    if (target.meshMessage.getResponseOpcode() == accessLayerPDU.opcode
+                            && !MeshUtils.validUnicastAddress(target.meshMessage.getDestinationAddress())) {
+                        transaction = target;
+                        break;
+                    }
+                }
             }
-            mResponseMessageBuffer.add(src);
-            if (mResponseMessageBuffer.size() >= sendingMessage.getResponseMax()) {
-                onReliableMessageComplete(true);
+            if (transaction == null) {
+                return;
             }
+            transaction.responses.add(src);
+            complete = transaction.responses.size() >= transaction.meshMessage.getResponseMax();
+        }
+        if (complete) {
+            onReliableMessageComplete(transaction, true);
         }
     }
 
     /**
-     * reliable command complete
+     * generate reliable transaction key by destination address and response opcode
      *
-     * @param success if command response received
+     * @param dst            destination address
+     * @param responseOpcode response opcode
+     * @return key in {@link #mReliableTransactions}
      */
-    private void onReliableMessageComplete(boolean success) {
+    private static long getReliableKey(int dst, int responseOpcode) {
+        return ((dst & 0xFFFFL) << 24) | (responseOpcode & 0xFFFFFFL);
+    }
 
-        // clear networking packet sending queue
-        log("clear network buffer");
-        synchronized (mNetworkingQueue) {
-            mDelayHandler.removeCallbacks(networkingSendingTask);
-            networkingBusy = false;
-            mNetworkingQueue.clear();
+    /**
+     * add the reliable message into transaction table
+     * a retried message reuses its transaction
+     *
+     * @param meshMessage reliable message
+     * @return transaction, or null if the transaction table is full
+     * or a message with the same response is in flight
+     */
+    private ReliableTransaction startReliableTransaction(MeshMessage meshMessage) {
+        final int dst = meshMessage.getDestinationAddress();
+        final int rspOpcode = meshMessage.getResponseOpcode();
+        final long key = getReliableKey(dst, rspOpcode);
+        synchronized (RELIABLE_SEGMENTED_LOCK) {
+            ReliableTransaction transaction = mReliableTransactions.get(key);
+            if (transaction != null) {
+                return transaction.meshMessage == meshMessage ? transaction : null;
+            }
+            if (mReliableTransactions.size() >= reliableMessageLimit) {
+                return null;
+            }
+            // response to a group message can not be distinguished from the response to a unicast message
+            final boolean unicast = MeshUtils.validUnicastAddress(dst);
+            MeshMessage sending;
+            for (int i = 0; i < mReliableTransactions.size(); i++) {
+                sending = mReliableTransactions.valueAt(i).meshMessage;
+                if (sending.getResponseOpcode() == rspOpcode
+                        && (!unicast || !MeshUtils.validUnicastAddress(sending.getDestinationAddress()))) {
+                    if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                        log(String.format("reliable message conflict: dst-%04X opcode-%06X", sending.getDestinationAddress(), rspOpcode));
+                    }
+                    return null;
+                }
+            }
+            transaction = new ReliableTransaction(key, meshMessage);
+            mReliableTransactions.put(key, transaction);
+            return transaction;
         }
+    }
 
-        mDelayHandler.removeCallbacks(reliableMessageTimeoutTask);
-        int opcode = mSendingReliableMessage.getOpcode();
-        int rspMax = mSendingReliableMessage.getResponseMax();
-        int rspCount = mResponseMessageBuffer.size();
-        log(String.format("Reliable Message Complete: %06X success?: %b", opcode, success));
-        mResponseMessageBuffer.clear();
+    /**
+     * reliable command complete
+     *
+     * @param transaction reliable transaction
+     * @param success     if command response received
+     */
+    private void onReliableMessageComplete(ReliableTransaction transaction, boolean success) {
+        mDelayHandler.removeCallbacks(transaction);
+        final boolean idle;
+        boolean segmentComplete = false;
         synchronized (RELIABLE_SEGMENTED_LOCK) {
-            reliableBusy = false;
-            if (success) {
-                if (segmentedBusy && mSendingReliableMessage.isSegmented()) {
+            if (mReliableTransactions.get(transaction.key) != transaction) {
+                // already completed
+                return;
+            }
+            mReliableTransactions.remove(transaction.key);
+            idle = mReliableTransactions.size() == 0;
+            if (mSegmentedReliableTransaction == transaction) {
+                mSegmentedReliableTransaction = null;
+                if (success && segmentedBusy) {
                     segmentedBusy = false;
-                    stopSegmentedBlockAckWaiting(true, true);
-//                    mDelayHandler.removeCallbacks(mSegmentBlockWaitingTask);
+                    segmentComplete = true;
                 }
             }
         }
 
+        // clear networking packet sending queue
+        if (idle) {
+            log("clear network buffer");
+            synchronized (mNetworkingQueue) {
+                mDelayHandler.removeCallbacks(networkingSendingTask);
+                networkingBusy = false;
+                mNetworkingQueue.clear();
+            }
+        }
+
+        final MeshMessage meshMessage = transaction.meshMessage;
+        int opcode = meshMessage.getOpcode();
+        int rspMax = meshMessage.getResponseMax();
+        int rspCount = transaction.responses.size();
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format("Reliable Message Complete: %06X success?: %b", opcode, success));
+        }
+        if (success) {
+            mNetworkPacer.onSuccess(NetworkPacer.REASON_RELIABLE_SUCCESS, netPktSendInterval);
+        } else {
+            mNetworkPacer.onCongestion(NetworkPacer.REASON_RELIABLE_TIMEOUT, netPktSendInterval);
+        }
+        if (segmentComplete) {
+            stopSegmentedBlockAckWaiting(true, true);
+        }
 
         if (mNetworkingBridge != null) {
-            mNetworkingBridge.onReliableMessageComplete(success, opcode, rspMax, rspCount);
+            mNetworkingBridge.onReliableMessageComplete(meshMessage, success, opcode, rspMax, rspCount);
         }
     }
 
     /**
      * start or refresh tick
+     *
+     * @param transaction reliable transaction
      */
-    private void restartReliableMessageTimeoutTask() {
+    private void restartReliableMessageTimeoutTask(ReliableTransaction transaction) {
         log("restart reliable message timeout task, immediate");
-        mDelayHandler.removeCallbacks(reliableMessageTimeoutTask);
-        mDelayHandler.postDelayed(reliableMessageTimeoutTask, getReliableMessageTimeout());
+        mDelayHandler.removeCallbacks(transaction);
+        mDelayHandler.postDelayed(transaction, getReliableMessageTimeout(transaction.meshMessage));
     }
 
-    private Runnable reliableMessageTimeoutTask = new Runnable() {
-        @Override
-        public void run() {
-            final MeshMessage meshMessage = mSendingReliableMessage;
-            if (meshMessage != null) {
-                log(String.format(Locale.getDefault(), "reliable message retry segmentRxComplete? %B retryCnt: %d %s opcode: %06X", lastSegComplete, meshMessage.getRetryCnt(), meshMessage.getClass().getSimpleName(), meshMessage.getOpcode()));
-                if (lastSegComplete) {
-                    if (meshMessage.getRetryCnt() <= 0) {
-                        onReliableMessageComplete(false);
-                    } else {
-                        // resend mesh message
-                        meshMessage.setRetryCnt(meshMessage.getRetryCnt() - 1);
-                        synchronized (RELIABLE_SEGMENTED_LOCK) {
-                            reliableBusy = false;
-                            if (segmentedBusy && meshMessage.isSegmented()) {
-                                stopSegmentedBlockAckWaiting(true, false);
-                            }
+    /**
+     * reliable message response timeout, retry or complete the transaction
+     *
+     * @param transaction reliable transaction
+     */
+    private void onReliableMessageTimeout(ReliableTransaction transaction) {
+        final MeshMessage meshMessage = transaction.meshMessage;
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format(Locale.getDefault(), "reliable message retry segmentRxComplete? %B retryCnt: %d %s opcode: %06X", isSegmentedRxIdle(), meshMessage.getRetryCnt(), meshMessage.getClass().getSimpleName(), meshMessage.getOpcode()));
+        }
+        if (isSegmentedRxIdle()) {
+            if (meshMessage.getRetryCnt() <= 0) {
+                onReliableMessageComplete(transaction, false);
+            } else {
+                // resend mesh message
+                meshMessage.setRetryCnt(meshMessage.getRetryCnt() - 1);
+                mNetworkPacer.onCongestion(NetworkPacer.REASON_RELIABLE_RETRY, netPktSendInterval);
+                synchronized (RELIABLE_SEGMENTED_LOCK) {
+                    if (mSegmentedReliableTransaction == transaction) {
+                        mSegmentedReliableTransaction = null;
+                        if (segmentedBusy) {
+                            stopSegmentedBlockAckWaiting(true, false);
                         }
-                        postMeshMessage(meshMessage, true);
                     }
-                } else {
-                    // receiving rx segment packet
-                    restartReliableMessageTimeoutTask();
+                }
+                if (!postMeshMessage(meshMessage, true)) {
+                    onReliableMessageComplete(transaction, false);
                 }
             }
+        } else {
+            // receiving rx segment packet
+            restartReliableMessageTimeoutTask(transaction);
         }
-    };
+    }
+
+    /**
+     * sending reliable message with received responses
+     * also used as the response timeout task
+     */
+    private class ReliableTransaction implements Runnable {
+        /**
+         * {@link #getReliableKey(int, int)}
+         */
+        private final long key;
+
+        private final MeshMessage meshMessage;
+
+        /**
+         * response source addresses
+         */
+        private final Set<Integer> responses = new LinkedHashSet<>();
 
+        ReliableTransaction(long key, MeshMessage meshMessage) {
+            this.key = key;
+            this.meshMessage = meshMessage;
+        }
+
+        @Override
+        public void run() {
+            onReliableMessageTimeout(this);
+        }
+    }
 
     // parse unsegmented access message lower transport PDU
 
     /**
      * This method is used to parse an unsegmented access message from a network layer PDU.
      * It first retrieves the lower transport data from the network layer PDU and extracts the header.
-     * The Access Key Flag (AKF) and the IV Index are then extracted from the header.
-     * An instance of the UnsegmentedAccessMessagePDU is created and the network layer PDU is parsed using it.
-     * If the parsing is successful, an UpperTransportAccessPDU.UpperTransportEncryptionSuite is created based on the AKF value.
+     * The Access Key Flag (AKF) and AID are then extracted from the header.
      * If AKF is equal to the AKF value of the Access Type DEVICE, the device key is used along with the IV Index.
-     * Otherwise, a list of application keys is retrieved and used along with the IV Index.
-     * An instance of UpperTransportAccessPDU is created with the encryption suite.
-     * The unsegmented access message is then parsed and decrypted using the UpperTransportAccessPDU.
+     * Otherwise, the cached suite of application keys with precomputed AID is used.
+     * The upper transport pdu is decrypted in place into the parse context of current thread.
      * If the decryption is successful, the decrypted payload is parsed as an AccessLayerPDU and returned.
      * If any errors occur during the parsing or decryption process, null is returned.
      *
@@ -1740,121 +2020,96 @@ public class NetworkingController {
         byte[] lowerTransportData = networkLayerPDU.getTransportPDU();
         byte header = lowerTransportData[0]; //Lower transport pdu starts here
         int akf = (header >> 6) & 0x01;
+        byte aid = (byte) (header & 0x3F);
 
         int ivIndex = networkLayerPDU.encryptionSuite.ivIndex;
 
-        UnsegmentedAccessMessagePDU unsegmentedAccessMessagePDU = new UnsegmentedAccessMessagePDU();
-        if (unsegmentedAccessMessagePDU.parse(networkLayerPDU)) {
-
-            UpperTransportAccessPDU.UpperTransportEncryptionSuite upperTransportEncryptionSuite;
-            if (AccessType.DEVICE.akf == akf) {
-                upperTransportEncryptionSuite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(getDeviceKey(networkLayerPDU.getSrc()), ivIndex);
-            } else {
-                List<byte[]> appKeyList = getAppKeyList();
-                upperTransportEncryptionSuite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(appKeyList, ivIndex);
-            }
+        UpperTransportAccessPDU.UpperTransportEncryptionSuite upperTransportEncryptionSuite;
+        if (AccessType.DEVICE.akf == akf) {
+            upperTransportEncryptionSuite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(getDeviceKey(networkLayerPDU.getSrc()), ivIndex);
+        } else {
+            upperTransportEncryptionSuite = getRxAppSuite(ivIndex);
+        }
 
-            UpperTransportAccessPDU upperTransportAccessPDU = new UpperTransportAccessPDU(upperTransportEncryptionSuite);
-            boolean decRe = upperTransportAccessPDU.parseAndDecryptUnsegmentedMessage(unsegmentedAccessMessagePDU, networkLayerPDU.getSeq(), networkLayerPDU.getSrc(), networkLayerPDU.getDst());
-            if (decRe) {
-                return AccessLayerPDU.parse(upperTransportAccessPDU.getDecryptedPayload());
-            } else {
-                log("unsegmented access message parse err", MeshLogger.LEVEL_WARN);
-            }
+        // decrypt the upper transport pdu following the lower transport header, without copying
+        ParseContext context = ParseContext.get();
+        int len = UpperTransportAccessPDU.decrypt(upperTransportEncryptionSuite, lowerTransportData, 1, lowerTransportData.length - 1,
+                akf, aid, 0, networkLayerPDU.getSeq(), networkLayerPDU.getSrc(), networkLayerPDU.getDst(), context);
+        if (len > 0) {
+            return AccessLayerPDU.parse(context.getUpperPayload(len), 0, len);
+        } else {
+            log("unsegmented access message parse err", MeshLogger.LEVEL_WARN);
         }
         return null;
     }
 
     /**
-     * retrieves a list of app keys stored in the appKeyMap.
+     * get cached network encryption suite for receiving
      *
-     * @return app key list
+     * @param ivIndex accepted IV index
+     * @return suite
      */
-    private List<byte[]> getAppKeyList() {
-        if (this.appKeyMap != null && this.appKeyMap.size() != 0) {
-            List<byte[]> appKeyList = new ArrayList<>();
-            for (int i = 0; i < appKeyMap.size(); i++) {
-                appKeyList.add(appKeyMap.get(appKeyMap.keyAt(i)));
-            }
-            return appKeyList;
+    private NetworkLayerPDU.NetworkEncryptionSuite getRxNetworkSuite(int ivIndex) {
+        final int ivi = ivIndex & 0b01;
+        NetworkLayerPDU.NetworkEncryptionSuite suite = rxNetworkSuites[ivi];
+        if (suite == null || suite.ivIndex != ivIndex || suite.encryptionKey != this.encryptionKey
+                || suite.privacyKey != this.privacyKey || suite.nid != this.nid) {
+            suite = new NetworkLayerPDU.NetworkEncryptionSuite(ivIndex, this.encryptionKey, this.privacyKey, this.nid);
+            rxNetworkSuites[ivi] = suite;
         }
-        return null;
+        return suite;
     }
 
     /**
-     * This is a method that checks whether a segment block needs to be stopped or restarted based on the parameters passed.
-     * If the parameter "immediate" is true, it stops the segment timeout task, otherwise, it restarts it.
-     * The method also removes any pending callbacks for the "mAccessSegCheckTask" task and sets a new timeout based on the "ttl" parameter.
-     * Finally, it posts a delayed task to the "mDelayHandler" with the "mAccessSegCheckTask" and the calculated timeout.
+     * get cached app key encryption suite for receiving
      *
-     * @param immediate immediate
-     * @param ttl       ttl
-     * @param src       src
+     * @param ivIndex IV index of received network pdu
+     * @return suite
      */
-    private void checkSegmentBlock(boolean immediate, int ttl, int src) {
-        if (immediate) {
-            stopSegmentTimeoutTask();
-        } else {
-            restartSegmentTimeoutTask();
-        }
-        mDelayHandler.removeCallbacks(mAccessSegCheckTask);
-        long timeout = immediate ? 0 : getSegmentedTimeout(ttl, false);
-        mAccessSegCheckTask.src = src;
-        mAccessSegCheckTask.ttl = ttl;
-        log("check segment block: immediate-" + immediate + " ttl-" + ttl + " src-" + src + " timeout-" + timeout);
-        mDelayHandler.postDelayed(mAccessSegCheckTask, timeout);
-    }
-
-    /**
-     * Stop a task that checks for segment block acknowledgments.
-     * It removes any pending callbacks from the delay handler associated with the task.
-     */
-    private void stopSegmentBlockAckTask() {
-        mDelayHandler.removeCallbacks(mAccessSegCheckTask);
-    }
-
-    /**
-     * This method is used to send a segment block acknowledgment message to a specific source with a given time-to-live (TTL) value.
-     * It first clones the received segmented message buffer and checks if there are any messages in it.
-     * If there are, it calculates the sequence number (seqZero) and block acknowledgment value (blockAck) for each message and creates a SegmentAcknowledgmentMessage object.
-     * It then sends this message to the source using the sendSegmentAckMessage() method.
-     * If all the segments have not been received yet, it sets a delay for checking the status of the segmented message transmission using the mAccessSegCheckTask.
-     * This method is used in a communication protocol to ensure that all segments of a message are received correctly.
-     *
-     * @param src source
-     * @param ttl ttl
-     */
-    private void sendSegmentBlockAck(int src, int ttl) {
-        log("send segment block ack:" + src);
-        final SparseArray<SegmentedAccessMessagePDU> messages = receivedSegmentedMessageBuffer.clone();
-        if (messages.size() > 0) {
-//            int segN = -1;
-            int seqZero = -1;
-            int blockAck = 0;
-            int segO;
-            int segN = -1;
-            SegmentedAccessMessagePDU message;
-            for (int i = 0; i < messages.size(); i++) {
-                segO = messages.keyAt(i);
-                message = messages.get(segO);
-                if (segN == -1) {
-                    segN = message.getSegN();
-                }
-                if (seqZero == -1) {
-                    seqZero = message.getSeqZero();
-                }
-                blockAck |= (1 << segO);
-            }
+    private UpperTransportAccessPDU.UpperTransportEncryptionSuite getRxAppSuite(int ivIndex) {
+        final int ivi = ivIndex & 0b01;
+        AppKeyRing keyRing = getAppKeyRing();
+        UpperTransportAccessPDU.UpperTransportEncryptionSuite suite = rxAppSuites[ivi];
+        if (suite == null || suite.getIvIndex() != ivIndex || suite.getAppKeyRing() != keyRing) {
+            suite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(keyRing, ivIndex);
+            rxAppSuites[ivi] = suite;
+        }
+        return suite;
+    }
 
-            SegmentAcknowledgmentMessage segmentAckMessage = new SegmentAcknowledgmentMessage(seqZero, blockAck);
-            sendSegmentAckMessage(segmentAckMessage, src);
+    /**
+     * get app key ring for decryption,
+     * rebuilt if {@link #appKeyMap} is modified outside by reference, keys added, removed or replaced
+     *
+     * @return app key ring
+     */
+    private AppKeyRing getAppKeyRing() {
+        final SparseArray<byte[]> keyMap = this.appKeyMap;
+        if (keyMap != null && !mAppKeyRing.contentEquals(keyMap)) {
+            mAppKeyRing.setup(keyMap);
+        }
+        return mAppKeyRing;
+    }
 
-            boolean complete = messages.size() == (segN + 1);
-            if (!complete) {
-                mDelayHandler.removeCallbacks(mAccessSegCheckTask);
-                long timeout = getSegmentedTimeout(ttl, false);
-                mDelayHandler.postDelayed(mAccessSegCheckTask, timeout);
-            }
+    /**
+     * send segment block ack of received segments,
+     * if not all segments received, send again after segmented timeout
+     *
+     * @param context receiving context
+     */
+    private void sendSegmentBlockAck(SegmentedRxContext context) {
+        log("send segment block ack:" + context.src);
+        final int blockAck;
+        final boolean receiving;
+        synchronized (segmentedRxContexts) {
+            blockAck = context.getBlockAck();
+            receiving = segmentedRxContexts.contains(context);
+        }
+        SegmentAcknowledgmentMessage segmentAckMessage = new SegmentAcknowledgmentMessage(context.seqZero, blockAck);
+        sendSegmentAckMessage(segmentAckMessage, context.src);
+        if (receiving) {
+            mDelayHandler.removeCallbacks(context.ackTask);
+            mDelayHandler.postDelayed(context.ackTask, getSegmentedTimeout(context.ttl, false));
         }
     }
 
@@ -1893,7 +2148,9 @@ public class NetworkingController {
      */
     private void sendUnsegmentedControlMessage(UnsegmentedControlMessagePDU controlMessagePDU, int dst) {
         byte[] data = controlMessagePDU.toByteArray();
-        log("send control message: " + Arrays.bytesToHexString(data, ""));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log("send control message: " + Arrays.bytesToHexString(data, ""));
+        }
         int ctl = MeshMessage.CTL_CONTROL;
         int ttl = 5;
         int src = localAddress;
@@ -1906,32 +2163,14 @@ public class NetworkingController {
      * not receive any segment with current segAuth
      */
     private static final long SEG_TIMEOUT = 10 * 1000;
-    private Runnable segmentTimeoutTask = new Runnable() {
-        @Override
-        public void run() {
-            stopSegmentBlockAckTask();
-            log(String.format(Locale.getDefault(), "segment timeout : lastSeqAuth: 0x%014X -- src: %02d",
-                    lastSeqAuth,
-                    lastSegSrc));
-            lastSegComplete = true;
-            lastSegSrc = 0;
-            lastSeqAuth = 0;
-        }
-    };
-
-    /**
-     * restart segment timer
-     */
-    private void restartSegmentTimeoutTask() {
-        mDelayHandler.removeCallbacks(segmentTimeoutTask);
-        mDelayHandler.postDelayed(segmentTimeoutTask, SEG_TIMEOUT);
-    }
 
     /**
-     * stop segment timer
+     * remove context from receiving table and stop its timers
      */
-    private void stopSegmentTimeoutTask() {
-        mDelayHandler.removeCallbacks(segmentTimeoutTask);
+    private void removeSegmentedRxContext(SegmentedRxContext context) {
+        segmentedRxContexts.remove(context);
+        mDelayHandler.removeCallbacks(context.ackTask);
+        mDelayHandler.removeCallbacks(context.timeoutTask);
     }
 
     /**
@@ -1997,14 +2236,13 @@ public class NetworkingController {
         int segO = message.getSegO();
         int segN = message.getSegN();
 
-        log(String.format(Locale.getDefault(), "lastComplete? :%B -- seqAuth: 0x%014X -- lastSeqAuth: 0x%014X -- src: 0x%04X -- lastSrc: 0x%04X -- seg0: %02d -- segN: %02d",
-                lastSegComplete,
-                seqAuth,
-                lastSeqAuth,
-                src,
-                lastSegSrc,
-                segO,
-                segN));
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format(Locale.getDefault(), "seqAuth: 0x%014X -- src: 0x%04X -- seg0: %02d -- segN: %02d",
+                    seqAuth,
+                    src,
+                    segO,
+                    segN));
+        }
 
         if (isBusyAuthExists(src, seqAuth)) {
             log("busy auth exists");
@@ -2018,83 +2256,78 @@ public class NetworkingController {
             return null;
         }
 
-        AccessLayerPDU accessPDU = null;
-
-        // Check if the current seqAuth and source values are different from the last ones
-        if (seqAuth != lastSeqAuth || lastSegSrc != src) {
-            if (lastSegComplete) {
-                log("last segment complete");
-                // save last seqAuth
-                saveCompletedSeqAuth(lastSegSrc, lastSeqAuth);
-                lastSegComplete = false;
-                // new segment message
-                lastSeqAuth = seqAuth;
-                lastSegSrc = src;
-                receivedSegmentedMessageBuffer.clear();
-            } else {
-                sendSegmentBlockBusyAck(src, seqZero, seqAuth);
-                return null;
+        SegmentedRxContext context;
+        int messageCnt = 0;
+        boolean complete = false;
+        synchronized (segmentedRxContexts) {
+            context = segmentedRxContexts.get(src);
+            if (context != null && context.seqAuth != seqAuth) {
+                if (seqAuth < context.seqAuth) {
+                    log("segment of older seqAuth ignored");
+                    return null;
+                }
+                // newer message from the same src cancels the incomplete one
+                log("incomplete segmented message replaced by newer seqAuth", MeshLogger.LEVEL_WARN);
+                removeSegmentedRxContext(context);
+                context = null;
+            }
+            if (context == null) {
+                final int estimatedMemory = (segN + 1) * message.getSegmentM().length;
+                context = new SegmentedRxContext(src, seqAuth, seqZero, ttl, segN);
+                if (!segmentedRxContexts.add(context, estimatedMemory)) {
+                    context = null;
+                }
+            }
+            if (context != null) {
+                complete = segmentedRxContexts.putSegment(context, message);
+                messageCnt = context.getCount();
             }
         }
 
-       /* if (seqAuth != lastSeqAuth || lastSegSrc != src) {
-            if (lastSegComplete) {
-                log("last segment complete");
-                // save last seqAuth
-                saveCompletedSeqAuth(lastSegSrc, lastSeqAuth);
-                lastSegComplete = false;
-                // new segment message
-                lastSeqAuth = seqAuth;
-                lastSegSrc = src;
-                receivedSegmentedMessageBuffer.clear();
-                receivedSegmentedMessageBuffer.put(segO, message);
-                checkSegmentBlock(false, ttl, src);
-            } else {
-                sendSegmentBlockBusyAck(src, seqZero, seqAuth);
-            }
-        } else*/
-        {
-            receivedSegmentedMessageBuffer.put(segO, message);
+        if (context == null) {
+            // concurrency or memory limit reached
+            sendSegmentBlockBusyAck(src, seqZero, seqAuth);
+            return null;
+        }
+        log("received segment message count: " + messageCnt);
+        if (!complete) {
+            mDelayHandler.removeCallbacks(context.timeoutTask);
+            mDelayHandler.postDelayed(context.timeoutTask, SEG_TIMEOUT);
+            mDelayHandler.removeCallbacks(context.ackTask);
+            mDelayHandler.postDelayed(context.ackTask, getSegmentedTimeout(ttl, false));
+            return null;
+        }
 
-            int messageCnt = receivedSegmentedMessageBuffer.size();
-            log("received segment message count: " + messageCnt);
+        removeSegmentedRxContext(context);
+        mDelayHandler.post(context.ackTask);
+        saveCompletedSeqAuth(src, seqAuth);
 
-            if (messageCnt != segN + 1) {
-                lastSeqAuth = seqAuth;
-                checkSegmentBlock(false, ttl, src);
-            } else {
-                lastSegComplete = true;
-                checkSegmentBlock(true, ttl, src);
-                if (isCompleteAuthExists(src, seqAuth)) {
-                    log(" seqAuth already received: " + seqAuth);
-                    lastSeqAuth = 0;
-                    return null;
-                }
-                UpperTransportAccessPDU.UpperTransportEncryptionSuite encryptionSuite;
-                int akf = message.getAkf();
-                if (akf == AccessType.APPLICATION.akf) {
-                    encryptionSuite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(getAppKeyList(), ivIndex);
-                } else {
-                    byte[] deviceKey = getDeviceKey(src);
-                    if (deviceKey == null) {
-                        log("Device key not found when decrypt segmented access message", MeshLogger.LEVEL_WARN);
-                        return null;
-                    }
-                    encryptionSuite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(deviceKey, ivIndex);
-                }
+        UpperTransportAccessPDU.UpperTransportEncryptionSuite encryptionSuite;
+        int akf = message.getAkf();
+        if (akf == AccessType.APPLICATION.akf) {
+            encryptionSuite = getRxAppSuite(ivIndex);
+        } else {
+            byte[] deviceKey = getDeviceKey(src);
+            if (deviceKey == null) {
+                log("Device key not found when decrypt segmented access message", MeshLogger.LEVEL_WARN);
+                return null;
+            }
+            encryptionSuite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(deviceKey, ivIndex);
+        }
 
-                UpperTransportAccessPDU upperTransportAccessPDU = new UpperTransportAccessPDU(encryptionSuite);
-                upperTransportAccessPDU.parseAndDecryptSegmentedMessage(receivedSegmentedMessageBuffer.clone(), transportSeqNo, src, networkLayerPDU.getDst());
+        UpperTransportAccessPDU upperTransportAccessPDU = new UpperTransportAccessPDU(encryptionSuite);
+        upperTransportAccessPDU.parseAndDecryptSegmentedMessage(context.getSegments(), transportSeqNo, src, networkLayerPDU.getDst());
 
-                byte[] completeTransportPdu = upperTransportAccessPDU.getDecryptedPayload();
+        byte[] completeTransportPdu = upperTransportAccessPDU.getDecryptedPayload();
 
-                log("decrypted upper: " + Arrays.bytesToHexString(completeTransportPdu, ""));
-                if (completeTransportPdu != null) {
-                    accessPDU = AccessLayerPDU.parse(completeTransportPdu);
-                } else {
-                    log("upper pdu decryption error: ", MeshLogger.LEVEL_WARN);
-                }
-            }
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log("decrypted upper: " + Arrays.bytesToHexString(completeTransportPdu, ""));
+        }
+        AccessLayerPDU accessPDU = null;
+        if (completeTransportPdu != null) {
+            accessPDU = AccessLayerPDU.parse(completeTransportPdu);
+        } else {
+            log("upper pdu decryption error: ", MeshLogger.LEVEL_WARN);
         }
         return accessPDU;
     }
@@ -2118,9 +2351,7 @@ public class NetworkingController {
 
 
         if (accessType == AccessType.APPLICATION) {
-            List<byte[]> appKeyList = new ArrayList<>();
-            appKeyList.add(key);
-            encryptionSuite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(appKeyList, ivIndex);
+            encryptionSuite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(Collections.singletonList(key), ivIndex);
         } else {
             encryptionSuite = new UpperTransportAccessPDU.UpperTransportEncryptionSuite(key, ivIndex);
         }
@@ -2264,15 +2495,29 @@ public class NetworkingController {
     }
 
     /**
-     * Segment ack message task
+     * segmented message receiving context, with its own block ack and timeout timers
      */
-    private class SegmentAckMessageSentTask implements Runnable {
-        private int src;
-        private int ttl;
+    private class SegmentedRxContext extends SegmentedRxTable.Reception {
 
-        @Override
-        public void run() {
-            sendSegmentBlockAck(src, ttl);
+        private final Runnable ackTask = new Runnable() {
+            @Override
+            public void run() {
+                sendSegmentBlockAck(SegmentedRxContext.this);
+            }
+        };
+
+        private final Runnable timeoutTask = new Runnable() {
+            @Override
+            public void run() {
+                if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                    log(String.format(Locale.getDefault(), "segment timeout : seqAuth: 0x%014X -- src: 0x%04X", seqAuth, src));
+                }
+                removeSegmentedRxContext(SegmentedRxContext.this);
+            }
+        };
+
+        SegmentedRxContext(int src, long seqAuth, int seqZero, int ttl, int segN) {
+            super(src, seqAuth, seqZero, ttl, segN);
         }
     }
 
@@ -2283,6 +2528,7 @@ public class NetworkingController {
         @Override
         public void run() {
             log("segmented message timeout");
+            mNetworkPacer.onCongestion(NetworkPacer.REASON_SEGMENT_TIMEOUT, netPktSendInterval);
             stopSegmentedBlockAckWaiting(true, false);
         }
     }
@@ -2339,4 +2585,14 @@ public class NetworkingController {
     private void log(String logMessage, int level) {
         MeshLogger.log(logMessage, LOG_TAG, level);
     }
+
+    /**
+     * check before building log message with hex string or format
+     *
+     * @param level log level
+     * @return if log enabled
+     */
+    private boolean isLoggable(int level) {
+        return MeshLogger.isLoggable(LOG_TAG, level);
+    }
 }
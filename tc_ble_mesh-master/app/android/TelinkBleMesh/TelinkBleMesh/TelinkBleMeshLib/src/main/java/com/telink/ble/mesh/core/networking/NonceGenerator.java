@@ -105,6 +105,56 @@ public class NonceGenerator {
         return nonceBuffer.array();
     }
 
+    /**
+     * write network nonce into buffer, used on receive path
+     *
+     * @param out 13 bytes nonce buffer
+     */
+    public static void writeNetworkNonce(byte[] out, byte ctlTTL, int sequenceNumber, int src, int ivIndex) {
+        out[0] = NONCE_TYPE_NETWORK;
+        out[1] = ctlTTL;
+        writeHeader(out, sequenceNumber, src, 0, ivIndex);
+    }
+
+    /**
+     * write application or device nonce into buffer, used on receive path
+     *
+     * @param out 13 bytes nonce buffer
+     */
+    public static void writeAccessNonce(byte[] out, byte aszmic, int sequenceNumber, int src, int dst, int ivIndex, AccessType accessType) {
+        out[0] = accessType == AccessType.APPLICATION ? NONCE_TYPE_APPLICATION : NONCE_TYPE_DEVICE;
+        out[1] = (byte) ((aszmic << 7) | NONCE_PADDING);
+        writeHeader(out, sequenceNumber, src, dst, ivIndex);
+    }
+
+    /**
+     * write proxy nonce into buffer, used on receive path
+     *
+     * @param out 13 bytes nonce buffer
+     */
+    public static void writeProxyNonce(byte[] out, int sequenceNumber, int src, int ivIndex) {
+        out[0] = NONCE_TYPE_PROXY;
+        out[1] = NONCE_PADDING;
+        writeHeader(out, sequenceNumber, src, 0, ivIndex);
+    }
+
+    /**
+     * seq(3) src(2) dst or padding(2) ivIndex(4), big endian
+     */
+    private static void writeHeader(byte[] out, int sequenceNumber, int src, int dst, int ivIndex) {
+        out[2] = (byte) (sequenceNumber >> 16);
+        out[3] = (byte) (sequenceNumber >> 8);
+        out[4] = (byte) sequenceNumber;
+        out[5] = (byte) (src >> 8);
+        out[6] = (byte) src;
+        out[7] = (byte) (dst >> 8);
+        out[8] = (byte) dst;
+        out[9] = (byte) (ivIndex >> 24);
+        out[10] = (byte) (ivIndex >> 16);
+        out[11] = (byte) (ivIndex >> 8);
+        out[12] = (byte) ivIndex;
+    }
+
     /**
      * output proxy nonce
      */
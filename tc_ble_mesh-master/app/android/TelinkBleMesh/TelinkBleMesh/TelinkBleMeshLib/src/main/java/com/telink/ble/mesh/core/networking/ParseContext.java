@@ -0,0 +1,114 @@
+/********************************************************************************************************
+ * @file ParseContext.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.networking;
+
+/**
+ * reusable work buffers of one receiving thread
+ * <p>
+ * network header de-obfuscation, nonce generation and decryption on receive path are done in these buffers,
+ * only the parsed results escaping the parser, such as the lower transport pdu and the access params, are allocated.
+ * Buffers are overwritten by the next parse, so the content should be copied before that.
+ */
+public final class ParseContext {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private static final int NONCE_LENGTH = 13;
+
+    /**
+     * max upper transport access pdu length, 32 segments of 12 bytes
+     */
+    private static final int UPPER_PDU_LENGTH = 384;
+
+    private static final ThreadLocal<ParseContext> CONTEXT = new ThreadLocal<ParseContext>() {
+        @Override
+        protected ParseContext initialValue() {
+            return new ParseContext();
+        }
+    };
+
+    /**
+     * privacy plaintext: 0x0000000000 || IV Index || Privacy Random
+     */
+    final byte[] pecbInput = new byte[BLOCK_SIZE];
+
+    final byte[] pecb = new byte[BLOCK_SIZE];
+
+    final byte[] networkNonce = new byte[NONCE_LENGTH];
+
+    /**
+     * decrypted DST || TransportPDU
+     */
+    private byte[] networkPayload = new byte[32];
+
+    private final byte[] accessNonce = new byte[NONCE_LENGTH];
+
+    private byte[] upperPayload = new byte[UPPER_PDU_LENGTH];
+
+    private byte[][] candidateKeys = new byte[4][];
+
+    /**
+     * get context of current thread
+     *
+     * @return context
+     */
+    public static ParseContext get() {
+        return CONTEXT.get();
+    }
+
+    byte[] getNetworkPayload(int capacity) {
+        if (networkPayload.length < capacity) {
+            networkPayload = new byte[capacity];
+        }
+        return networkPayload;
+    }
+
+    /**
+     * @return nonce buffer for upper transport decryption
+     */
+    public byte[] getAccessNonce() {
+        return accessNonce;
+    }
+
+    /**
+     * @param capacity min length
+     * @return buffer for decrypted upper transport pdu
+     */
+    public byte[] getUpperPayload(int capacity) {
+        if (upperPayload.length < capacity) {
+            upperPayload = new byte[capacity];
+        }
+        return upperPayload;
+    }
+
+    /**
+     * @param capacity min length
+     * @return buffer for app key candidates
+     */
+    public byte[][] getCandidateKeys(int capacity) {
+        if (candidateKeys.length < capacity) {
+            candidateKeys = new byte[capacity][];
+        }
+        return candidateKeys;
+    }
+}
@@ -0,0 +1,292 @@
+/********************************************************************************************************
+ * @file ReplayProtectionList.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.networking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * replay protection list (RPL)
+ * <p>
+ * saves the latest ivIndex and sequence number of each source address,
+ * network pdu with ivIndex less than or sequence number not larger than the saved one is rejected.
+ * Entries are kept in an open addressed table (int address -> long value), sized for the whole unicast range.
+ * <p>
+ * value format: ivIndex(higher 32 bits) + sequenceNumber(lower 24 bits), 0x1122334400AABBCC
+ */
+public class ReplayProtectionList {
+
+    /**
+     * first pdu from the source
+     */
+    public static final int RESULT_NEW = 0;
+
+    /**
+     * larger sequence number at the same ivIndex
+     */
+    public static final int RESULT_UPDATED = 1;
+
+    /**
+     * larger ivIndex
+     */
+    public static final int RESULT_IV_UPDATED = 2;
+
+    /**
+     * sequence number not larger than the saved one, replayed pdu
+     */
+    public static final int RESULT_REPLAY = 3;
+
+    /**
+     * ivIndex less than the saved one
+     */
+    public static final int RESULT_IV_LESS = 4;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * 2 * unicast address count, load factor is kept at most 0.5
+     */
+    private static final int MAX_CAPACITY = 0x10000;
+
+    /**
+     * snapshot entry: address(2 bytes) + ivIndex(4 bytes) + sequenceNumber(3 bytes)
+     */
+    private static final int SNAPSHOT_ENTRY_LEN = 9;
+
+    private static final byte SNAPSHOT_VERSION = 1;
+
+    /**
+     * address 0 is unassigned, used as empty slot
+     */
+    private int[] keys = new int[INITIAL_CAPACITY];
+
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    private int replayCount = 0;
+
+    private int ivLessCount = 0;
+
+    /**
+     * @param src            source address
+     * @param sequenceNumber sequence number in pdu
+     * @param ivIndex        ivIndex used by pdu
+     * @return {@link #RESULT_NEW} ... , pdu should be dropped if {@link #RESULT_REPLAY} or {@link #RESULT_IV_LESS}
+     */
+    public synchronized int validate(int src, int sequenceNumber, int ivIndex) {
+        int slot = findSlot(src);
+        if (keys[slot] == 0) {
+            insert(slot, src, pack(sequenceNumber, ivIndex));
+            return RESULT_NEW;
+        }
+        long value = values[slot];
+        int savedIvIndex = getIvIndex(value);
+        if (ivIndex > savedIvIndex) {
+            values[slot] = pack(sequenceNumber, ivIndex);
+            return RESULT_IV_UPDATED;
+        } else if (ivIndex == savedIvIndex) {
+            if (sequenceNumber > getSequenceNumber(value)) {
+                values[slot] = pack(sequenceNumber, ivIndex);
+                return RESULT_UPDATED;
+            }
+            replayCount++;
+            return RESULT_REPLAY;
+        }
+        ivLessCount++;
+        return RESULT_IV_LESS;
+    }
+
+    /**
+     * @return saved value, -1 if not found
+     */
+    public synchronized long get(int src) {
+        int slot = findSlot(src);
+        return keys[slot] == 0 ? -1 : values[slot];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return count of pdu rejected by not larger sequence number
+     */
+    public synchronized int getReplayCount() {
+        return replayCount;
+    }
+
+    /**
+     * @return count of pdu rejected by less ivIndex
+     */
+    public synchronized int getIvLessCount() {
+        return ivLessCount;
+    }
+
+    /**
+     * remove entry, the next pdu from src is accepted as new
+     *
+     * @return true if removed
+     */
+    public synchronized boolean remove(int src) {
+        int slot = findSlot(src);
+        if (keys[slot] == 0) return false;
+        // backward shift deletion, keeps probe sequences of following entries unbroken
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != 0) {
+            int home = (keys[next] * 0x9E3779B9) >>> 16 & mask;
+            // move the entry if its home slot is not in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        values[hole] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * remove entries of all elements in a node,
+     * called when the node is removed or its address is assigned to a new node
+     *
+     * @param address      primary element address
+     * @param elementCount element count of node
+     * @return count of removed entries
+     */
+    public synchronized int remove(int address, int elementCount) {
+        int removed = 0;
+        for (int i = 0; i < Math.max(1, elementCount); i++) {
+            if (remove(address + i)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized void clear() {
+        keys = new int[INITIAL_CAPACITY];
+        values = new long[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * @return compact snapshot: version(1 byte) + entries
+     * @see #restore(byte[])
+     */
+    public synchronized byte[] snapshot() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + size * SNAPSHOT_ENTRY_LEN);
+        buffer.put(SNAPSHOT_VERSION);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                buffer.putShort((short) keys[i])
+                        .putInt(getIvIndex(values[i]))
+                        .put((byte) (values[i] >> 16))
+                        .putShort((short) values[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * merge snapshot into list, the larger ivIndex and sequence number are kept
+     *
+     * @param snapshot created by {@link #snapshot()}
+     * @return false if snapshot format error
+     */
+    public synchronized boolean restore(byte[] snapshot) {
+        if (snapshot == null || snapshot.length == 0 || snapshot[0] != SNAPSHOT_VERSION
+                || (snapshot.length - 1) % SNAPSHOT_ENTRY_LEN != 0) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(snapshot, 1, snapshot.length - 1);
+        while (buffer.hasRemaining()) {
+            int src = buffer.getShort() & 0xFFFF;
+            int ivIndex = buffer.getInt();
+            int sequenceNumber = (buffer.get() & 0xFF) << 16 | (buffer.getShort() & 0xFFFF);
+            if (src == 0) continue;
+            int slot = findSlot(src);
+            if (keys[slot] == 0) {
+                insert(slot, src, pack(sequenceNumber, ivIndex));
+            } else {
+                long value = values[slot];
+                int savedIvIndex = getIvIndex(value);
+                if (ivIndex > savedIvIndex || (ivIndex == savedIvIndex && sequenceNumber > getSequenceNumber(value))) {
+                    values[slot] = pack(sequenceNumber, ivIndex);
+                }
+            }
+        }
+        return true;
+    }
+
+    public static int getIvIndex(long value) {
+        return (int) (value >>> 32);
+    }
+
+    public static int getSequenceNumber(long value) {
+        return (int) (value & 0xFFFFFF);
+    }
+
+    private static long pack(int sequenceNumber, int ivIndex) {
+        return ((ivIndex & 0xFFFFFFFFL) << 32) | (sequenceNumber & 0x00FFFFFFL);
+    }
+
+    /**
+     * @return slot holding src, or the empty slot where src should be inserted
+     */
+    private int findSlot(int src) {
+        int mask = keys.length - 1;
+        int slot = (src * 0x9E3779B9) >>> 16 & mask;
+        while (keys[slot] != 0 && keys[slot] != src) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, int src, long value) {
+        keys[slot] = src;
+        values[slot] = value;
+        size++;
+        if (size * 2 > keys.length && keys.length < MAX_CAPACITY) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[capacity];
+        values = new long[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/********************************************************************************************************
+ * @file SegmentedRxTable.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.networking;
+
+import com.telink.ble.mesh.core.networking.transport.lower.SegmentedAccessMessagePDU;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * segmented access messages being received, one message from each src at the same time
+ * <p>
+ * messages from different sources are received interleaved, each with its own segments and block ack.
+ * A new message is accepted only if less than {@link #concurrency} messages are being received
+ * and the buffered segments stay within {@link #memoryBudget}, otherwise the sender should be answered with busy ack.
+ * Lock the table when a get, add and put sequence should be atomic.
+ *
+ * @param <T> reception type, for example with ack and timeout timers
+ */
+public class SegmentedRxTable<T extends SegmentedRxTable.Reception> {
+
+    /**
+     * key: src
+     */
+    private final Map<Integer, T> receptions = new HashMap<>();
+
+    private int concurrency = NetworkingController.DEFAULT_SEGMENTED_RX_CONCURRENCY;
+
+    private int memoryBudget = NetworkingController.DEFAULT_SEGMENTED_RX_MEMORY_BUDGET;
+
+    /**
+     * bytes of segments buffered
+     */
+    private int memory = 0;
+
+    /**
+     * @param concurrency  max count of messages received at the same time
+     * @param memoryBudget max bytes of received segments buffered
+     */
+    public synchronized void setLimits(int concurrency, int memoryBudget) {
+        this.concurrency = Math.max(1, concurrency);
+        this.memoryBudget = Math.max(0, memoryBudget);
+    }
+
+    /**
+     * @return message being received from src, null if none
+     */
+    public synchronized T get(int src) {
+        return receptions.get(src);
+    }
+
+    /**
+     * @param reception       new message, replaces nothing, remove the former one of the same src first
+     * @param estimatedMemory bytes of all segments, estimated by the first received segment
+     * @return false if concurrency or memory limit reached
+     */
+    public synchronized boolean add(T reception, int estimatedMemory) {
+        if (receptions.size() >= concurrency || memory + estimatedMemory > memoryBudget) {
+            return false;
+        }
+        receptions.put(reception.src, reception);
+        return true;
+    }
+
+    /**
+     * @return false if reception not in table, for example already replaced or completed
+     */
+    public synchronized boolean remove(T reception) {
+        if (receptions.get(reception.src) != reception) {
+            return false;
+        }
+        receptions.remove(reception.src);
+        final Reception r = reception;
+        memory -= r.memory;
+        return true;
+    }
+
+    /**
+     * @param reception message the segment belongs to
+     * @param segment   received segment, repeated segment is ignored
+     * @return true if all segments received
+     */
+    public synchronized boolean putSegment(T reception, SegmentedAccessMessagePDU segment) {
+        final Reception r = reception;
+        final int segO = segment.getSegO();
+        if (segO < r.segments.length && r.segments[segO] == null) {
+            final int length = segment.getSegmentM().length;
+            r.segments[segO] = segment;
+            r.blockAck |= (1 << segO);
+            r.count++;
+            r.memory += length;
+            memory += length;
+        }
+        return r.count == r.segments.length;
+    }
+
+    /**
+     * @return true if containing the reception
+     */
+    public synchronized boolean contains(T reception) {
+        return receptions.get(reception.src) == reception;
+    }
+
+    /**
+     * @return count of messages being received
+     */
+    public synchronized int size() {
+        return receptions.size();
+    }
+
+    /**
+     * @return bytes of segments buffered
+     */
+    public synchronized int getMemory() {
+        return memory;
+    }
+
+    public synchronized void clear() {
+        receptions.clear();
+        memory = 0;
+    }
+
+    /**
+     * segmented message being received
+     */
+    public static class Reception {
+        public final int src;
+        public final long seqAuth;
+        public final int seqZero;
+        public final int ttl;
+
+        /**
+         * index by segO
+         */
+        private final SegmentedAccessMessagePDU[] segments;
+
+        private int blockAck = 0;
+
+        private int count = 0;
+
+        /**
+         * bytes of received segments
+         */
+        private int memory = 0;
+
+        public Reception(int src, long seqAuth, int seqZero, int ttl, int segN) {
+            this.src = src;
+            this.seqAuth = seqAuth;
+            this.seqZero = seqZero;
+            this.ttl = ttl;
+            this.segments = new SegmentedAccessMessagePDU[segN + 1];
+        }
+
+        /**
+         * read with table locked
+         */
+        public int getBlockAck() {
+            return blockAck;
+        }
+
+        /**
+         * @return received segment count
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return segments index by segO, complete if {@link #getCount()} equals length
+         */
+        public SegmentedAccessMessagePDU[] getSegments() {
+            return segments;
+        }
+    }
+}
@@ -27,7 +27,9 @@ import android.util.SparseArray;
 import com.telink.ble.mesh.core.Encipher;
 import com.telink.ble.mesh.core.MeshUtils;
 import com.telink.ble.mesh.core.networking.AccessType;
+import com.telink.ble.mesh.core.networking.AppKeyRing;
 import com.telink.ble.mesh.core.networking.NonceGenerator;
+import com.telink.ble.mesh.core.networking.ParseContext;
 import com.telink.ble.mesh.core.networking.transport.lower.SegmentedAccessMessagePDU;
 import com.telink.ble.mesh.core.networking.transport.lower.UnsegmentedAccessMessagePDU;
 import com.telink.ble.mesh.util.MeshLogger;
@@ -98,17 +100,34 @@ public class UpperTransportAccessPDU {
      * @return True if the decryption is successful, false otherwise.
      */
     public boolean parseAndDecryptSegmentedMessage(SparseArray<SegmentedAccessMessagePDU> messageBuffer, int sequenceNumber, int src, int dst) {
+        SegmentedAccessMessagePDU[] segments = new SegmentedAccessMessagePDU[messageBuffer.size()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = messageBuffer.get(i);
+        }
+        return parseAndDecryptSegmentedMessage(segments, sequenceNumber, src, dst);
+    }
+
+    /**
+     * Parses and decrypts a segmented message from all received segments.
+     *
+     * @param segments       segments index by segO
+     * @param sequenceNumber The sequence number of the message.
+     * @param src            The source address of the message.
+     * @param dst            The destination address of the message.
+     * @return True if the decryption is successful, false otherwise.
+     */
+    public boolean parseAndDecryptSegmentedMessage(SegmentedAccessMessagePDU[] segments, int sequenceNumber, int src, int dst) {
         int len = 0;
-        for (int i = 0; i < messageBuffer.size(); i++) {
-            len += messageBuffer.get(i).getSegmentM().length;
+        for (SegmentedAccessMessagePDU segment : segments) {
+            len += segment.getSegmentM().length;
         }
 
         byte[] upperTransportPdu = new byte[len];
         int idx = 0;
         int tmpLen;
-        for (int i = 0; i < messageBuffer.size(); i++) {
-            tmpLen = messageBuffer.get(i).getSegmentM().length;
-            System.arraycopy(messageBuffer.get(i).getSegmentM(), 0, upperTransportPdu, idx, tmpLen);
+        for (SegmentedAccessMessagePDU segment : segments) {
+            tmpLen = segment.getSegmentM().length;
+            System.arraycopy(segment.getSegmentM(), 0, upperTransportPdu, idx, tmpLen);
             idx += tmpLen;
         }
 
@@ -117,7 +136,7 @@ public class UpperTransportAccessPDU {
         this.encryptedPayload = upperTransportPdu;
 
         // Decrypt the first segment of the message to obtain the decrypted payload
-        SegmentedAccessMessagePDU message0 = messageBuffer.get(0);
+        SegmentedAccessMessagePDU message0 = segments[0];
         this.decryptedPayload = decrypt(message0.getAkf(), message0.getAid(), message0.getSzmic(), sequenceNumber, src, dst);
 
         return this.decryptedPayload != null;
@@ -188,67 +207,81 @@ public class UpperTransportAccessPDU {
             int sequenceNumber,
             int src,
             int dst) {
-        byte[] key;
-        // device key or application key
-        byte[] nonce = null;
-        byte[] seqNo = MeshUtils.sequenceNumber2Buffer(sequenceNumber);
+        ParseContext context = ParseContext.get();
+        int len = decrypt(this.mEncryptionSuite, this.encryptedPayload, 0, this.encryptedPayload.length,
+                akf, aid, aszmic, sequenceNumber, src, dst, context);
+        if (len < 0) {
+            return null;
+        }
+        byte[] decrypted = new byte[len];
+        System.arraycopy(context.getUpperPayload(len), 0, decrypted, 0, len);
+        return decrypted;
+    }
+
+    /**
+     * Decrypts the upper transport pdu in place of the received data,
+     * nonce and decrypted payload are written to the work buffers of context.
+     *
+     * @param encryptionSuite cached encryption suite
+     * @param payload         data containing the encrypted upper transport pdu
+     * @param offset          upper transport pdu offset
+     * @param length          upper transport pdu length, including transMIC
+     * @param akf             application key flag
+     * @param aid             application key identifier
+     * @param aszmic          The size of the message integrity check (MIC).
+     * @param sequenceNumber  The sequence number of the message.
+     * @param src             The source address of the message.
+     * @param dst             The destination address of the message.
+     * @param context         parse context of current thread
+     * @return decrypted length, the payload is in {@link ParseContext#getUpperPayload(int)}; -1 if decryption failed
+     */
+    public static int decrypt(UpperTransportEncryptionSuite encryptionSuite, byte[] payload, int offset, int length,
+                              int akf, byte aid, int aszmic, int sequenceNumber, int src, int dst, ParseContext context) {
+        final int micSize = aszmic == 1 ? 8 : 4;
+        final byte[] nonce = context.getAccessNonce();
+        final byte[] out = context.getUpperPayload(length);
         if (AccessType.DEVICE.akf == akf) {
-            nonce = NonceGenerator.generateAccessNonce((byte) aszmic, seqNo, src, dst, this.mEncryptionSuite.ivIndex, AccessType.DEVICE);
-            key = this.mEncryptionSuite.deviceKey;
+            byte[] key = encryptionSuite.deviceKey;
             if (key == null) {
                 MeshLogger.e("decrypt err: device key null");
-                return null;
+                return -1;
             }
-            return decryptPayload(this.encryptedPayload, key, nonce, aszmic);
-        } else {
-
-            if (mEncryptionSuite.appKeyList != null) {
-                byte decAid;
-                byte[] decResult;
-                for (byte[] appKey :
-                        mEncryptionSuite.appKeyList) {
-                    decAid = MeshUtils.generateAid(appKey);
-                    if (decAid == aid) {
-                        if (nonce == null) {
-                            nonce = NonceGenerator.generateAccessNonce((byte) aszmic, seqNo, src, dst, this.mEncryptionSuite.ivIndex, AccessType.APPLICATION);
-                        }
+            NonceGenerator.writeAccessNonce(nonce, (byte) aszmic, sequenceNumber, src, dst, encryptionSuite.ivIndex, AccessType.DEVICE);
+            return Encipher.ccm(payload, offset, length, key, nonce, micSize, false, out, 0);
+        }
 
-                        decResult = decryptPayload(this.encryptedPayload, appKey, nonce, aszmic);
-                        if (decResult != null) {
-                            return decResult;
-                        }
+        NonceGenerator.writeAccessNonce(nonce, (byte) aszmic, sequenceNumber, src, dst, encryptionSuite.ivIndex, AccessType.APPLICATION);
+        int len;
+        if (encryptionSuite.appKeyRing != null) {
+            AppKeyRing keyRing = encryptionSuite.appKeyRing;
+            int count = keyRing.getCandidateKeys(aid, src, context);
+            byte[][] keys = context.getCandidateKeys(count);
+            for (int i = 0; i < count; i++) {
+                len = Encipher.ccm(payload, offset, length, keys[i], nonce, micSize, false, out, 0);
+                if (len >= 0) {
+                    keyRing.onKeyUsed(src, keys[i]);
+                    return len;
+                }
+            }
+        } else if (encryptionSuite.appKeyList != null) {
+            for (byte[] appKey : encryptionSuite.appKeyList) {
+                if (MeshUtils.generateAid(appKey) == aid) {
+                    len = Encipher.ccm(payload, offset, length, appKey, nonce, micSize, false, out, 0);
+                    if (len >= 0) {
+                        return len;
                     }
                 }
             }
-
         }
-
-        return null;
+        return -1;
     }
 
-    /**
-     * Decrypts the payload data using CCM mode.
-     *
-     * @param payload The payload data to be decrypted.
-     * @param key     The encryption key.
-     * @param nonce   The nonce for encryption.
-     * @param aszmic  The size of the message integrity check (MIC).
-     * @return The decrypted payload data if the decryption is successful, null otherwise.
-     */
-    private byte[] decryptPayload(byte[] payload, byte[] key, byte[] nonce, int aszmic) {
-        if (aszmic == 1) {
-            return Encipher.ccm(payload, key, nonce, 8, false);
-        } else {
-            return Encipher.ccm(payload, key, nonce, 4, false);
-        }
-    }
-
-
     /**
      * This class represents the encryption suite used for encrypting and decrypting the payload.
      */
     public static class UpperTransportEncryptionSuite {
         private List<byte[]> appKeyList;
+        private AppKeyRing appKeyRing;
         private byte[] deviceKey;
         private int ivIndex;
 
@@ -273,6 +306,25 @@ public class UpperTransportAccessPDU {
             this.appKeyList = appKeyList;
             this.ivIndex = ivIndex;
         }
+
+        /**
+         * Constructor for the UpperTransportEncryptionSuite class with an app key ring, used for decryption.
+         *
+         * @param appKeyRing The app keys with precomputed AID.
+         * @param ivIndex    The IV index.
+         */
+        public UpperTransportEncryptionSuite(AppKeyRing appKeyRing, int ivIndex) {
+            this.appKeyRing = appKeyRing;
+            this.ivIndex = ivIndex;
+        }
+
+        public AppKeyRing getAppKeyRing() {
+            return appKeyRing;
+        }
+
+        public int getIvIndex() {
+            return ivIndex;
+        }
     }
 }
 
@@ -0,0 +1,228 @@
+/********************************************************************************************************
+ * @file ProvisionerKeyPairPool.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.provisioning;
+
+import com.telink.ble.mesh.core.Encipher;
+import com.telink.ble.mesh.util.MeshLogger;
+
+import java.security.KeyPair;
+import java.util.LinkedList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * pregenerated provisioner ECDH key pairs (P-256)
+ * <p>
+ * key pairs are generated on a background thread and taken by {@link ProvisioningController} when sending public key,
+ * if the pool is empty, the key pair is generated on the caller thread.
+ * <p>
+ * a fresh key pair is used for each provisioning by default,
+ * reusing is only allowed for No OOB authentication, as there is no auth value that could be exposed by reusing it.
+ */
+public class ProvisionerKeyPairPool {
+
+    private static final String LOG_TAG = "KeyPairPool";
+
+    public static final int DEFAULT_POOL_SIZE = 2;
+
+    public static final int MAX_POOL_SIZE = 16;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final LinkedList<KeyPair> keyPairs = new LinkedList<>();
+
+    private int poolSize = DEFAULT_POOL_SIZE;
+
+    /**
+     * scheduled generating count
+     */
+    private int pendingCount = 0;
+
+    private boolean reuseEnabled = false;
+
+    private KeyPair reusableKeyPair;
+
+    private ThreadPoolExecutor executor;
+
+    private int hitCount = 0;
+
+    private int missCount = 0;
+
+    private int generateCount = 0;
+
+    private long generateTime = 0;
+
+    /**
+     * @param poolSize pregenerated key pair count, 0 means generating when required
+     */
+    public synchronized void setPoolSize(int poolSize) {
+        this.poolSize = Math.max(0, Math.min(MAX_POOL_SIZE, poolSize));
+        while (keyPairs.size() > this.poolSize) {
+            keyPairs.removeLast();
+        }
+        refill();
+    }
+
+    public synchronized int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @param reuseEnabled reuse one key pair for provisioning with No OOB authentication
+     */
+    public synchronized void setReuseEnabled(boolean reuseEnabled) {
+        this.reuseEnabled = reuseEnabled;
+        if (!reuseEnabled) {
+            reusableKeyPair = null;
+        }
+    }
+
+    public synchronized boolean isReuseEnabled() {
+        return reuseEnabled;
+    }
+
+    /**
+     * generate key pairs in background until the pool is full
+     */
+    public synchronized void refill() {
+        while (keyPairs.size() + pendingCount < poolSize) {
+            pendingCount++;
+            getExecutor().execute(generatingTask);
+        }
+    }
+
+    /**
+     * @param reuseAllowed if the key pair can be reused by current provisioning, true for No OOB authentication
+     * @return key pair, null if generate error
+     */
+    public KeyPair take(boolean reuseAllowed) {
+        KeyPair keyPair;
+        synchronized (this) {
+            if (reuseEnabled && reuseAllowed && reusableKeyPair != null) {
+                hitCount++;
+                return reusableKeyPair;
+            }
+            keyPair = keyPairs.poll();
+            if (keyPair != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+        if (keyPair == null) {
+            keyPair = generate();
+        }
+        synchronized (this) {
+            if (reuseEnabled && reuseAllowed) {
+                reusableKeyPair = keyPair;
+            }
+            refill();
+        }
+        return keyPair;
+    }
+
+    /**
+     * drop pregenerated and reusable key pairs
+     */
+    public synchronized void clear() {
+        keyPairs.clear();
+        reusableKeyPair = null;
+    }
+
+    public synchronized int getAvailableCount() {
+        return keyPairs.size();
+    }
+
+    /**
+     * @return count of key pairs taken from pool or reused
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return count of key pairs generated on caller thread
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return average generating time in milliseconds
+     */
+    public synchronized long getAverageGenerateTime() {
+        return generateCount == 0 ? 0 : generateTime / generateCount;
+    }
+
+    /**
+     * @return P-256 key pair, null if generate error
+     */
+    protected KeyPair generateKeyPair() {
+        return Encipher.generateKeyPair();
+    }
+
+    private KeyPair generate() {
+        long start = System.currentTimeMillis();
+        KeyPair keyPair = generateKeyPair();
+        long during = System.currentTimeMillis() - start;
+        synchronized (this) {
+            generateCount++;
+            generateTime += during;
+        }
+        return keyPair;
+    }
+
+    private final Runnable generatingTask = new Runnable() {
+        @Override
+        public void run() {
+            KeyPair keyPair = generate();
+            synchronized (ProvisionerKeyPairPool.this) {
+                pendingCount--;
+                if (keyPair == null) {
+                    MeshLogger.log("key pair generate error", LOG_TAG, MeshLogger.LEVEL_WARN);
+                } else if (keyPairs.size() < poolSize) {
+                    keyPairs.add(keyPair);
+                }
+            }
+        }
+    };
+
+    private ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "key-pair-pool");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            // no idle thread kept between provisioning batches
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
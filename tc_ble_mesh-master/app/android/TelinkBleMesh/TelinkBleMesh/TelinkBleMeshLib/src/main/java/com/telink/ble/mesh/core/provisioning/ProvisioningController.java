@@ -281,6 +281,16 @@ public class ProvisioningController {
      */
     private KeyPair provisionerKeyPair;
 
+    /**
+     * pregenerated provisioner key pairs
+     */
+    private final ProvisionerKeyPairPool keyPairPool;
+
+    /**
+     * time spent in each provisioning phase
+     */
+    private final ProvisioningMetrics metrics = new ProvisioningMetrics();
+
     /**
      * This variable stores the secret key generated by the device using Elliptic Curve Diffie-Hellman (ECDH) algorithm.
      */
@@ -334,7 +344,16 @@ public class ProvisioningController {
      * @param handlerThread The handler thread to use for delayed operations.
      */
     public ProvisioningController(HandlerThread handlerThread) {
+        this(handlerThread, new ProvisionerKeyPairPool());
+    }
+
+    /**
+     * @param handlerThread The handler thread to use for delayed operations.
+     * @param keyPairPool   key pair pool shared by several controllers
+     */
+    public ProvisioningController(HandlerThread handlerThread, ProvisionerKeyPairPool keyPairPool) {
         this.delayHandler = new Handler(handlerThread.getLooper());
+        this.keyPairPool = keyPairPool;
     }
 
     /**
@@ -355,6 +374,20 @@ public class ProvisioningController {
         return mProvisioningDevice;
     }
 
+    /**
+     * @return provisioner key pair pool, pool size and reusing can be set
+     */
+    public ProvisionerKeyPairPool getKeyPairPool() {
+        return keyPairPool;
+    }
+
+    /**
+     * @return time spent in each provisioning phase
+     */
+    public ProvisioningMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * starts the provisioning process by setting up necessary configurations and initiating a provisioning request.
      *
@@ -370,6 +403,8 @@ public class ProvisioningController {
         }
         delayHandler.removeCallbacks(provisioningTimeoutTask);
         delayHandler.postDelayed(provisioningTimeoutTask, TIMEOUT_PROVISIONING);
+        // key pair is generated in background while waiting for capabilities
+        keyPairPool.refill();
 
         final int oobInfo = device.getOobInfo();
         if (MeshUtils.isCertSupported(oobInfo) && MeshUtils.isPvRecordSupported(oobInfo)) {
@@ -503,6 +538,7 @@ public class ProvisioningController {
     private void updateProvisioningState(int state, String desc) {
         log("provisioning state update: state -- " + state + " desc -- " + desc);
         this.state = state;
+        metrics.onStateChanged(state, System.currentTimeMillis());
         if (mProvisioningBridge != null) {
             mProvisioningBridge.onProvisionStateChanged(state, desc);
         }
@@ -578,7 +614,11 @@ public class ProvisioningController {
      * It retrieves the public key PDU and sends it to the device.
      */
     private void provisionSendPubKey() {
+        long start = System.currentTimeMillis();
         ProvisioningPubKeyPDU pubKeyPDU = getPublicKey();
+        long during = System.currentTimeMillis() - start;
+        metrics.onKeyPairReady(during);
+        log("public key ready: " + during + "ms");
         updateProvisioningState(STATE_PUB_KEY_SENT, "Send Public Key");
         sendProvisionPDU(pubKeyPDU);
     }
@@ -1021,7 +1061,7 @@ ConfirmationInputs = ProvisioningInvitePDUValue || ProvisioningCapabilitiesPDUVa
 
     /**
      * This method generates a public key for provisioning.
-     * It first generates a key pair using the Encipher class.
+     * It first takes a key pair from the pregenerated pool, the key pair is generated on the current thread if the pool is empty.
      * If the key pair is successfully generated, it retrieves the public key from the pair and extracts the x and y coordinates of the public key.
      * It then creates a ProvisioningPubKeyPDU object and sets the x and y values of the public key coordinates.
      * Finally, it logs the x and y values and returns the ProvisioningPubKeyPDU object. If the key pair generation fails, it throws a RuntimeException with an error message.
@@ -1029,8 +1069,8 @@ ConfirmationInputs = ProvisioningInvitePDUValue || ProvisioningCapabilitiesPDUVa
      * @return public key pdu
      */
     private ProvisioningPubKeyPDU getPublicKey() {
-
-        provisionerKeyPair = Encipher.generateKeyPair();
+        boolean reuseAllowed = startPDU.authenticationMethod == AuthenticationMethod.NoOOB.value;
+        provisionerKeyPair = keyPairPool.take(reuseAllowed);
         if (provisionerKeyPair != null) {
             BCECPublicKey publicKey = (BCECPublicKey) provisionerKeyPair.getPublic();
             byte[] x = publicKey.getQ().getXCoord().getEncoded();
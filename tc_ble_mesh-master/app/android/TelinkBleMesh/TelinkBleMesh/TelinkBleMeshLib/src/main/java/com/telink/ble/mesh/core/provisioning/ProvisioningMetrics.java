@@ -0,0 +1,201 @@
+/********************************************************************************************************
+ * @file ProvisioningMetrics.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.provisioning;
+
+import java.util.Arrays;
+
+/**
+ * time spent in each provisioning phase, in milliseconds
+ * <p>
+ * a phase starts when the provisioner sends its pdu, and ends when the next phase starts:
+ * invite -> capabilities -> public key (including key pair and ECDH secret) -> confirm -> random -> data
+ */
+public class ProvisioningMetrics {
+
+    /**
+     * invite sent, waiting for capabilities
+     */
+    public static final int PHASE_INVITE = 0;
+
+    /**
+     * capabilities received, waiting for start, including waiting for {@link ProvisioningController#continueProvision(int)}
+     */
+    public static final int PHASE_CAPABILITY = 1;
+
+    /**
+     * start and public key sent, waiting for device public key
+     */
+    public static final int PHASE_PUB_KEY = 2;
+
+    /**
+     * confirm sent, waiting for device confirm
+     */
+    public static final int PHASE_CONFIRM = 3;
+
+    /**
+     * random sent, waiting for device random
+     */
+    public static final int PHASE_RANDOM = 4;
+
+    /**
+     * provisioning data sent, waiting for complete
+     */
+    public static final int PHASE_DATA = 5;
+
+    public static final int PHASE_COUNT = 6;
+
+    private static final String[] PHASE_NAMES = {"invite", "capabilities", "pubkey", "confirm", "random", "data"};
+
+    /**
+     * durations of last provisioning, -1 if phase not reached
+     */
+    private final long[] lastDurations = new long[PHASE_COUNT];
+
+    private final long[] totalDurations = new long[PHASE_COUNT];
+
+    private final int[] phaseCounts = new int[PHASE_COUNT];
+
+    private int phase = -1;
+
+    private long phaseStart;
+
+    private long lastKeyPairTime = -1;
+
+    private int successCount = 0;
+
+    private int failCount = 0;
+
+    ProvisioningMetrics() {
+        Arrays.fill(lastDurations, -1);
+    }
+
+    /**
+     * @param state  {@link ProvisioningController#STATE_INVITE} ...
+     * @param millis time of state changed
+     */
+    synchronized void onStateChanged(int state, long millis) {
+        switch (state) {
+            case ProvisioningController.STATE_INVITE:
+                Arrays.fill(lastDurations, -1);
+                lastKeyPairTime = -1;
+                phase = -1;
+                startPhase(PHASE_INVITE, millis);
+                break;
+            case ProvisioningController.STATE_CAPABILITY:
+                startPhase(PHASE_CAPABILITY, millis);
+                break;
+            case ProvisioningController.STATE_START:
+                startPhase(PHASE_PUB_KEY, millis);
+                break;
+            case ProvisioningController.STATE_CONFIRM_SENT:
+                startPhase(PHASE_CONFIRM, millis);
+                break;
+            case ProvisioningController.STATE_RANDOM_SENT:
+                startPhase(PHASE_RANDOM, millis);
+                break;
+            case ProvisioningController.STATE_DATA:
+                startPhase(PHASE_DATA, millis);
+                break;
+            case ProvisioningController.STATE_COMPLETE:
+                if (phase != -1) successCount++;
+                startPhase(-1, millis);
+                break;
+            case ProvisioningController.STATE_FAILED:
+                if (phase != -1) failCount++;
+                startPhase(-1, millis);
+                break;
+        }
+    }
+
+    /**
+     * @param during milliseconds spent getting provisioner key pair
+     */
+    synchronized void onKeyPairReady(long during) {
+        lastKeyPairTime = during;
+    }
+
+    private void startPhase(int newPhase, long millis) {
+        if (phase != -1) {
+            long during = millis - phaseStart;
+            lastDurations[phase] = during;
+            totalDurations[phase] += during;
+            phaseCounts[phase]++;
+        }
+        phase = newPhase;
+        phaseStart = millis;
+    }
+
+    /**
+     * @param phase {@link #PHASE_INVITE} ...
+     * @return duration in last provisioning, -1 if not reached
+     */
+    public synchronized long getLastDuration(int phase) {
+        return lastDurations[phase];
+    }
+
+    /**
+     * @param phase {@link #PHASE_INVITE} ...
+     * @return average duration of all provisioning
+     */
+    public synchronized long getAverageDuration(int phase) {
+        return phaseCounts[phase] == 0 ? 0 : totalDurations[phase] / phaseCounts[phase];
+    }
+
+    /**
+     * @return milliseconds spent getting key pair in last provisioning, -1 if not reached
+     */
+    public synchronized long getLastKeyPairTime() {
+        return lastKeyPairTime;
+    }
+
+    public synchronized int getSuccessCount() {
+        return successCount;
+    }
+
+    public synchronized int getFailCount() {
+        return failCount;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(lastDurations, -1);
+        Arrays.fill(totalDurations, 0);
+        Arrays.fill(phaseCounts, 0);
+        phase = -1;
+        lastKeyPairTime = -1;
+        successCount = 0;
+        failCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("ProvisioningMetrics{");
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            sb.append(PHASE_NAMES[i]).append('=').append(lastDurations[i])
+                    .append('/').append(getAverageDuration(i)).append(", ");
+        }
+        return sb.append("keyPair=").append(lastKeyPairTime)
+                .append(", success=").append(successCount)
+                .append(", fail=").append(failCount)
+                .append('}').toString();
+    }
+}
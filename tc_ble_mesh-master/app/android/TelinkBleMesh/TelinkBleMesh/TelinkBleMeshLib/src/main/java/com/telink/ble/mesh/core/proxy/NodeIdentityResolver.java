@@ -0,0 +1,263 @@
+/********************************************************************************************************
+ * @file NodeIdentityResolver.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.proxy;
+
+import com.telink.ble.mesh.core.Encipher;
+import com.telink.ble.mesh.util.MeshLogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * resolves the unicast address of proxy node advertising node identity or private node identity
+ * <p>
+ * Hash = e(IdentityKey, Padding || Random || Address) mod 2^64, or
+ * Hash = e(IdentityKey, Padding || 0x03 || Random || Address) mod 2^64 for private node identity,
+ * the hash input is built once for each advertisement and only the address bytes are changed for each candidate.
+ * Results are cached by advertiser mac and random, as the random is not changed in one advertising period.
+ * Candidates can be split into shards and resolved by worker threads.
+ */
+public class NodeIdentityResolver {
+
+    public static final int ADDRESS_NOT_FOUND = 0;
+
+    private static final int CACHE_CAPACITY = 64;
+
+    /**
+     * min candidate count in one shard, fewer candidates are resolved on caller thread
+     */
+    private static final int MIN_SHARD_SIZE = 256;
+
+    private static final int HASH_LEN = 8;
+
+    private byte[] identityKey;
+
+    private int[] addresses = new int[0];
+
+    private final Map<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    private ExecutorService workers;
+
+    private int parallelism = 1;
+
+    private int hitCount = 0;
+
+    private int missCount = 0;
+
+    /**
+     * @param identityKey identity key generated by network key
+     * @param addresses   candidate node addresses
+     */
+    public synchronized void setup(byte[] identityKey, int[] addresses) {
+        this.identityKey = identityKey;
+        this.addresses = addresses.clone();
+        this.cache.clear();
+    }
+
+    /**
+     * @return candidate count
+     */
+    public synchronized int size() {
+        return addresses.length;
+    }
+
+    /**
+     * @param parallelism worker thread count, 1 means resolving on caller thread
+     */
+    public synchronized void setParallelism(int parallelism) {
+        parallelism = Math.max(1, parallelism);
+        if (parallelism == this.parallelism) return;
+        if (workers != null) {
+            workers.shutdown();
+            workers = null;
+        }
+        this.parallelism = parallelism;
+        if (parallelism > 1) {
+            workers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "identity-resolver");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @param mac                 advertiser mac address
+     * @param privateNodeIdentity true if private node identity
+     * @param hash                hash in advertising data, 8 bytes
+     * @param random              random in advertising data, 8 bytes
+     * @return node address, or {@link #ADDRESS_NOT_FOUND}
+     */
+    public synchronized int resolve(String mac, boolean privateNodeIdentity, byte[] hash, byte[] random) {
+        if (identityKey == null || hash.length != HASH_LEN || random.length != HASH_LEN) {
+            return ADDRESS_NOT_FOUND;
+        }
+        CacheEntry entry = cache.get(mac);
+        if (entry != null && entry.privateNodeIdentity == privateNodeIdentity
+                && Arrays.equals(entry.hash, hash) && Arrays.equals(entry.random, random)) {
+            hitCount++;
+            return entry.address;
+        }
+        missCount++;
+        byte[] template = createTemplate(privateNodeIdentity, random);
+        int address;
+        int shardCount = Math.min(parallelism, addresses.length / MIN_SHARD_SIZE);
+        if (workers == null || shardCount <= 1) {
+            address = resolveRange(template, hash, 0, addresses.length, null);
+        } else {
+            address = resolveParallel(template, hash, shardCount);
+        }
+        cache.put(mac, new CacheEntry(privateNodeIdentity, hash.clone(), random.clone(), address));
+        return address;
+    }
+
+    public synchronized void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * stop worker threads
+     */
+    public synchronized void release() {
+        setParallelism(1);
+    }
+
+    private byte[] createTemplate(boolean privateNodeIdentity, byte[] random) {
+        // padding is 0
+        byte[] template = new byte[16];
+        if (privateNodeIdentity) {
+            template[5] = 0x03;
+        }
+        System.arraycopy(random, 0, template, 6, HASH_LEN);
+        return template;
+    }
+
+    /**
+     * @param found set when address found by another shard, nullable
+     */
+    private int resolveRange(byte[] template, byte[] hash, int from, int to, AtomicBoolean found) {
+        final byte[] input = template.clone();
+        final byte[] output = new byte[16];
+        final int[] addresses = this.addresses;
+        for (int i = from; i < to; i++) {
+            if (found != null && (i & 0x3F) == 0 && found.get()) {
+                return ADDRESS_NOT_FOUND;
+            }
+            int address = addresses[i];
+            input[14] = (byte) (address >> 8);
+            input[15] = (byte) address;
+            Encipher.aes(input, 0, identityKey, output, 0);
+            if (matches(output, hash)) {
+                if (found != null) {
+                    found.set(true);
+                }
+                return address;
+            }
+        }
+        return ADDRESS_NOT_FOUND;
+    }
+
+    private int resolveParallel(final byte[] template, final byte[] hash, int shardCount) {
+        final AtomicBoolean found = new AtomicBoolean(false);
+        final int shardSize = (addresses.length + shardCount - 1) / shardCount;
+        List<Future<Integer>> futures = new ArrayList<>(shardCount);
+        for (int from = 0; from < addresses.length; from += shardSize) {
+            final int start = from;
+            final int end = Math.min(addresses.length, from + shardSize);
+            futures.add(workers.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return resolveRange(template, hash, start, end, found);
+                }
+            }));
+        }
+        int result = ADDRESS_NOT_FOUND;
+        for (Future<Integer> future : futures) {
+            try {
+                int address = future.get();
+                if (address != ADDRESS_NOT_FOUND) {
+                    result = address;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                // a failed shard may hold the address, resolve all on caller thread
+                MeshLogger.w("node identity resolve shard failed, resolve serially: " + e);
+                found.set(true);
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                return resolveRange(template, hash, 0, addresses.length, null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * compare hash with lower 8 bytes of aes output
+     */
+    private static boolean matches(byte[] output, byte[] hash) {
+        for (int i = 0; i < HASH_LEN; i++) {
+            if (output[HASH_LEN + i] != hash[i]) return false;
+        }
+        return true;
+    }
+
+    private static class CacheEntry {
+        private final boolean privateNodeIdentity;
+        private final byte[] hash;
+        private final byte[] random;
+        private final int address;
+
+        CacheEntry(boolean privateNodeIdentity, byte[] hash, byte[] random, int address) {
+            this.privateNodeIdentity = privateNodeIdentity;
+            this.hash = hash;
+            this.random = random;
+            this.address = address;
+        }
+    }
+}
@@ -66,4 +66,9 @@ public class ProxyConfigurationPDU extends NetworkLayerPDU {
         byte[] seqNo = MeshUtils.integer2Bytes(getSeq(), 3, ByteOrder.BIG_ENDIAN);
         return NonceGenerator.generateProxyNonce(seqNo, getSrc(), this.encryptionSuite.ivIndex);
     }
+
+    @Override
+    protected void generateNonce(byte[] out) {
+        NonceGenerator.writeProxyNonce(out, getSeq(), getSrc(), this.encryptionSuite.ivIndex);
+    }
 }
@@ -0,0 +1,197 @@
+/********************************************************************************************************
+ * @file ProxySarReassembler.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.core.proxy;
+
+/**
+ * reassembles segmented proxy pdu by proxy pdu type
+ * <p>
+ * segments are appended to a growable buffer of the pdu type, and copied once when the last segment received.
+ * A segmented pdu not completed within {@link #DEFAULT_TIMEOUT} is dropped when the next segment of the same type arrives.
+ * Complete pdu: 1 byte header (SAR cleared) and the joined segment payload.
+ */
+public class ProxySarReassembler {
+
+    /**
+     * proxy SAR timeout in milliseconds
+     */
+    public static final long DEFAULT_TIMEOUT = 20 * 1000;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * reassembly buffer, index by pdu type
+     */
+    private final Reassembly[] reassemblies = new Reassembly[ProxyPDU.MASK_TYPE + 1];
+
+    /**
+     * type of the pdu last segment received for
+     */
+    private int lastSegmentType = -1;
+
+    private int completeCount = 0;
+
+    /**
+     * dropped fragments, including continuation segments without first segment,
+     * first segments replaced by another first segment, timeout segmented pdus
+     */
+    private int droppedCount = 0;
+
+    /**
+     * segments of one type received while another type reassembling
+     */
+    private int interleavedCount = 0;
+
+    private int timeoutCount = 0;
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param data proxy pdu received by notification
+     * @return complete pdu, or null if waiting for more segments or segment dropped
+     */
+    public synchronized byte[] onSegmentReceived(byte[] data) {
+        final byte sar = (byte) (data[0] & ProxyPDU.MASK_SAR);
+        if (sar == ProxyPDU.SAR_COMPLETE) {
+            return data;
+        }
+        final int type = data[0] & ProxyPDU.MASK_TYPE;
+        final long now = System.currentTimeMillis();
+        Reassembly reassembly = reassemblies[type];
+
+        if (lastSegmentType != -1 && lastSegmentType != type) {
+            Reassembly last = reassemblies[lastSegmentType];
+            if (last != null && last.started) {
+                interleavedCount++;
+            }
+        }
+        lastSegmentType = type;
+
+        if (reassembly != null && reassembly.started && now - reassembly.startTime > timeout) {
+            timeoutCount++;
+            droppedCount++;
+            reassembly.reset();
+        }
+
+        if (sar == ProxyPDU.SAR_SEG_FIRST) {
+            if (reassembly == null) {
+                reassembly = new Reassembly();
+                reassemblies[type] = reassembly;
+            } else if (reassembly.started) {
+                // former pdu not completed
+                droppedCount++;
+            }
+            reassembly.start((byte) type, now);
+            reassembly.append(data);
+            return null;
+        }
+
+        // continue or last
+        if (reassembly == null || !reassembly.started || data.length <= 1) {
+            droppedCount++;
+            return null;
+        }
+        reassembly.append(data);
+        if (sar == ProxyPDU.SAR_SEG_CONTINUE) {
+            return null;
+        }
+        completeCount++;
+        byte[] complete = reassembly.toByteArray();
+        reassembly.reset();
+        return complete;
+    }
+
+    /**
+     * drop all segments, for example: when disconnected
+     */
+    public synchronized void clear() {
+        for (Reassembly reassembly : reassemblies) {
+            if (reassembly != null && reassembly.started) {
+                droppedCount++;
+                reassembly.reset();
+            }
+        }
+        lastSegmentType = -1;
+    }
+
+    public int getCompleteCount() {
+        return completeCount;
+    }
+
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    public int getInterleavedCount() {
+        return interleavedCount;
+    }
+
+    public int getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    private static class Reassembly {
+        private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+        private int length = 0;
+
+        private boolean started = false;
+
+        private long startTime;
+
+        void start(byte header, long time) {
+            buffer[0] = header;
+            length = 1;
+            started = true;
+            startTime = time;
+        }
+
+        /**
+         * append segment payload without header
+         */
+        void append(byte[] segment) {
+            int payloadLen = segment.length - 1;
+            if (length + payloadLen > buffer.length) {
+                byte[] newBuffer = new byte[Math.max(buffer.length * 2, length + payloadLen)];
+                System.arraycopy(buffer, 0, newBuffer, 0, length);
+                buffer = newBuffer;
+            }
+            System.arraycopy(segment, 1, buffer, length, payloadLen);
+            length += payloadLen;
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[length];
+            System.arraycopy(buffer, 0, result, 0, length);
+            return result;
+        }
+
+        void reset() {
+            length = 0;
+            started = false;
+        }
+    }
+}
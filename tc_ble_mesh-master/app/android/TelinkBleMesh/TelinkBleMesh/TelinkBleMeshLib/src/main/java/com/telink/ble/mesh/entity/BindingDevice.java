@@ -81,6 +81,16 @@ public class BindingDevice implements Parcelable {
      */
     private CompositionData compositionData;
 
+    /**
+     * company id, product id and version id of the device, -1 if unknown,
+     * used to find composition data in cache when composition data is not valued
+     */
+    private int cid = -1;
+
+    private int pid = -1;
+
+    private int vid = -1;
+
     /**
      * Default constructor.
      */
@@ -132,6 +142,9 @@ public class BindingDevice implements Parcelable {
         models = in.createIntArray();
         defaultBound = in.readByte() != 0;
         compositionData = in.readParcelable(CompositionData.class.getClassLoader());
+        cid = in.readInt();
+        pid = in.readInt();
+        vid = in.readInt();
     }
 
     /**
@@ -293,6 +306,51 @@ public class BindingDevice implements Parcelable {
         this.compositionData = compositionData;
     }
 
+    public int getCid() {
+        return cid;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public int getVid() {
+        return vid;
+    }
+
+    /**
+     * Setter for product info without version,
+     * composition data is always got from device as firmware version is unknown.
+     *
+     * @param cid company id
+     * @param pid product id
+     * @see #setProduct(int, int, int)
+     */
+    public void setProduct(int cid, int pid) {
+        setProduct(cid, pid, -1);
+    }
+
+    /**
+     * Setter for product info, composition data get is skipped
+     * if composition data of the same cid, pid and vid is cached.
+     *
+     * @param cid company id
+     * @param pid product id
+     * @param vid version id, as in composition data
+     */
+    public void setProduct(int cid, int pid, int vid) {
+        this.cid = cid;
+        this.pid = pid;
+        this.vid = vid;
+    }
+
+    /**
+     * @return true if company id, product id and version id are valued
+     */
+    public boolean isProductKnown() {
+        return cid != -1 && pid != -1 && vid != -1;
+    }
+
     /**
      * Implementation of describeContents() method of Parcelable interface.
      *
@@ -318,5 +376,8 @@ public class BindingDevice implements Parcelable {
         dest.writeIntArray(models);
         dest.writeByte((byte) (defaultBound ? 1 : 0));
         dest.writeParcelable(compositionData, flags);
+        dest.writeInt(cid);
+        dest.writeInt(pid);
+        dest.writeInt(vid);
     }
 }
\ No newline at end of file
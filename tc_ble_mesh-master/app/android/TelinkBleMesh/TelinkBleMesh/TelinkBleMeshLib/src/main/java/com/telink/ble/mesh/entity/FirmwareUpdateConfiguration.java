@@ -28,6 +28,7 @@ import com.telink.ble.mesh.core.access.fu.FUCallback;
 import com.telink.ble.mesh.core.access.fu.FUState;
 import com.telink.ble.mesh.core.access.fu.UpdatePolicy;
 import com.telink.ble.mesh.core.networking.ExtendBearerMode;
+import com.telink.ble.mesh.util.FirmwareSource;
 
 import java.util.Arrays;
 import java.util.List;
@@ -45,9 +46,9 @@ public class FirmwareUpdateConfiguration {
     private List<MeshUpdatingDevice> updatingDevices;
 
     /**
-     * firmware data, will be null if isContinue is true
+     * firmware source, will be null if isContinue is true
      */
-    private byte[] firmwareData;
+    private FirmwareSource firmwareSource;
 
 
     /**
@@ -128,8 +129,27 @@ public class FirmwareUpdateConfiguration {
                                        byte[] metadata,
                                        int appKeyIndex,
                                        int groupAddress) {
+        this(updatingDevices, firmwareData == null ? null : FirmwareSource.wrap(firmwareData),
+                metadata, appKeyIndex, groupAddress);
+    }
+
+    /**
+     * Constructs a new FirmwareUpdateConfiguration object with firmware read from source,
+     * blocks and chunks are read from source while transferring.
+     *
+     * @param updatingDevices The list of target devices that will be updated.
+     * @param firmwareSource  The firmware source, such as a mapped firmware file.
+     * @param metadata        The metadata associated with the firmware.
+     * @param appKeyIndex     The index of the application key to be used for the update.
+     * @param groupAddress    The group address for the subscription message.
+     */
+    public FirmwareUpdateConfiguration(List<MeshUpdatingDevice> updatingDevices,
+                                       FirmwareSource firmwareSource,
+                                       byte[] metadata,
+                                       int appKeyIndex,
+                                       int groupAddress) {
         this.updatingDevices = updatingDevices;
-        this.firmwareData = firmwareData;
+        this.firmwareSource = firmwareSource;
         this.metadata = metadata;
         this.appKeyIndex = appKeyIndex;
         this.groupAddress = groupAddress;
@@ -139,8 +159,16 @@ public class FirmwareUpdateConfiguration {
         return updatingDevices;
     }
 
+    /**
+     * @deprecated copies the whole image, use {@link #getFirmwareSource()}
+     */
+    @Deprecated
     public byte[] getFirmwareData() {
-        return firmwareData;
+        return firmwareSource == null ? null : firmwareSource.read(0, firmwareSource.size());
+    }
+
+    public FirmwareSource getFirmwareSource() {
+        return firmwareSource;
     }
 
     public int getAppKeyIndex() {
@@ -259,7 +287,7 @@ public class FirmwareUpdateConfiguration {
     public String toString() {
         return "FirmwareUpdateConfiguration{" +
                 "updatingDevices=" + updatingDevices.size() +
-                ", firmwareData=" + (firmwareData == null ? 0 : firmwareData.length) +
+                ", firmwareData=" + (firmwareSource == null ? 0 : firmwareSource.size()) +
                 ", metadata=" + Arrays.toString(metadata) +
                 ", appKeyIndex=" + appKeyIndex +
                 ", groupAddress=" + groupAddress +
@@ -286,7 +314,7 @@ public class FirmwareUpdateConfiguration {
 
         return "FU Params{" +
                 "updatingDevices=" + updatingDevices.size() +
-                ", firmwareData=" + (firmwareData == null ? 0 : firmwareData.length) +
+                ", firmwareData=" + (firmwareSource == null ? 0 : firmwareSource.size()) +
                 ", metadata=" + Arrays.toString(metadata) +
                 ", appKeyIndex=" + appKeyIndex +
                 ", groupAddress=" + String.format("%04x", groupAddress) +
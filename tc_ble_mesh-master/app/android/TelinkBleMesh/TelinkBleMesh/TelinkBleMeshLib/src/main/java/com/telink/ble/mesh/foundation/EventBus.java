@@ -26,14 +26,16 @@ package com.telink.ble.mesh.foundation;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.telink.ble.mesh.util.MeshLogger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -41,44 +43,31 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * The code above is a generic implementation of an event bus in Java. An event bus is a mechanism for communication between different components in a software system. It allows components to publish events and subscribe to events they are interested in.
- * <p>
- * The EventBus class has the following properties and methods:
- * <p>
- * <p>
- * - processing:
- * - task:
+ * event bus dispatching events to the listeners registered by event type
  * <p>
- * The EventBus class also has the following methods:
- * <p>
- * - removeEventListeners:
- * - dispatchEvent:
- * - processOnThread:
- * - processEvent:
- * - processEventCompleted:
- * <p>
- * The code also includes a nested class DefaultThreadFactory, which is a
- * <p>
- * Please let me know if you have any further questions.
+ * Events of the same type are delivered in order through one lane,
+ * lanes of different types are processed independently, so a slow listener only delays the events of its own type.
+ * Each lane has a bounded queue, events are dropped by {@link OverflowPolicy} when it is full.
+ * Listeners are kept in an immutable map replaced on each modification, so no lock is taken when dispatching.
  *
- * @param <T>
+ * @param <T> event type
  */
 public class EventBus<T> {
 
     /**
-     * a constant representing the number of available processors in the system.
+     * default queue capacity of each lane
      */
-    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_LANE_CAPACITY = 256;
 
     /**
-     * a constant representing the core pool size for the thread pool executor.
+     * a constant representing the number of available processors in the system.
      */
-    private static final int CORE_POOL_SIZE = CPU_COUNT + 1;
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
 
     /**
-     * a constant representing the maximum pool size for the thread pool executor.
+     * a constant representing the pool size for background events.
      */
-    private static final int MAXIMUM_POOL_SIZE = CPU_COUNT * 2 + 1;
+    private static final int POOL_SIZE = CPU_COUNT + 1;
 
     /**
      * a constant representing the keep alive time for idle threads in the thread pool executor.
@@ -86,80 +75,89 @@ public class EventBus<T> {
     private static final int KEEP_ALIVE = 1;
 
     /**
-     * a blocking queue used to hold the tasks to be executed by the thread pool executor.
+     * max events processed by one lane task before the thread is yielded to other lanes
      */
-    private static final BlockingQueue<Runnable> sPoolWorkQueue =
-            new LinkedBlockingQueue<>(128);
+    private static final int DRAIN_BATCH = 16;
 
     /**
-     * a thread factory used to create new threads for the thread pool executor.
+     * executor for background events,
+     * each lane has at most one task in it, so the unbounded work queue is limited by lane count
      */
-    private static final ThreadFactory sThreadFactory = new DefaultThreadFactory();
+    private static final ThreadPoolExecutor EXECUTOR_SERVICE = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DefaultThreadFactory());
 
-    /**
-     * an executor service that manages the thread pool for executing tasks.
-     */
-    private static final ExecutorService EXECUTOR_SERVICE = new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE,
-            TimeUnit.SECONDS, sPoolWorkQueue, sThreadFactory); //Executors.newCachedThreadPool(new DefaultThreadFactory());
+    static {
+        EXECUTOR_SERVICE.allowCoreThreadTimeOut(true);
+    }
 
     /**
-     * a map that holds the event listeners for each event type.
+     * action when an event is dispatched to a full lane
      */
-    protected final Map<T, List<EventListener<T>>> mEventListeners = new ConcurrentHashMap<>();
+    public enum OverflowPolicy {
+        /**
+         * drop the oldest queued event, suitable for status events as the latest one is the most useful
+         */
+        DROP_OLDEST,
+
+        /**
+         * drop the dispatching event
+         */
+        DROP_NEWEST,
+    }
 
     /**
-     * a queue that holds the events to be processed.
+     * listeners of each event type, replaced as a whole when modified
      */
-    protected final Queue<Event<T>> mEventQueue = new ConcurrentLinkedQueue<>();
+    private volatile Map<T, List<EventListener<T>>> mEventListeners = Collections.emptyMap();
 
-    /**
-     * a handler associated with the current thread.
-     */
-    protected final Handler mCurrentThreadHandler = new Handler(Looper.myLooper());
+    private final Object mListenerLock = new Object();
 
-    /**
-     * a handler associated with the main thread.
-     */
-    protected final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+    private final ConcurrentHashMap<T, Lane> mLanes = new ConcurrentHashMap<>();
 
-    /**
-     * an object used for synchronization.
-     */
-    private final Object mLock = new Object();
+    private final Executor mDefaultExecutor;
+
+    private final Executor mMainExecutor;
+
+    private final Executor mBackgroundExecutor;
+
+    private volatile int defaultLaneCapacity = DEFAULT_LANE_CAPACITY;
+
+    private volatile OverflowPolicy defaultOverflowPolicy = OverflowPolicy.DROP_OLDEST;
 
     /**
-     * a boolean flag indicating whether the event bus is currently processing events.
+     * events in {@link Event.ThreadMode#Default} are processed on the looper of current thread
      */
-    protected boolean processing = false;
+    public EventBus() {
+        this(new HandlerExecutor(new Handler(Looper.myLooper())),
+                new HandlerExecutor(new Handler(Looper.getMainLooper())),
+                EXECUTOR_SERVICE);
+    }
 
     /**
-     * a runnable that represents the task to be executed by the thread pool executor.
+     * @param defaultExecutor    executor for {@link Event.ThreadMode#Default}
+     * @param mainExecutor       executor for {@link Event.ThreadMode#Main}
+     * @param backgroundExecutor executor for {@link Event.ThreadMode#Background}
      */
-    private final Runnable task = new Runnable() {
-        @Override
-        public void run() {
-            processEvent();
-        }
-    };
+    public EventBus(Executor defaultExecutor, Executor mainExecutor, Executor backgroundExecutor) {
+        this.mDefaultExecutor = defaultExecutor;
+        this.mMainExecutor = mainExecutor;
+        this.mBackgroundExecutor = backgroundExecutor;
+    }
 
     /**
      * adds an event listener for a specific event type.
      */
     public void addEventListener(T eventType, EventListener<T> listener) {
-
-        synchronized (this.mEventListeners) {
-            List<EventListener<T>> listeners;
-
-            if (this.mEventListeners.containsKey(eventType)) {
-                listeners = this.mEventListeners.get(eventType);
-            } else {
-                listeners = new CopyOnWriteArrayList<>();
-                this.mEventListeners.put(eventType, listeners);
-            }
-
-            if (!listeners.contains(listener)) {
-                listeners.add(listener);
+        synchronized (mListenerLock) {
+            List<EventListener<T>> listeners = mEventListeners.get(eventType);
+            if (listeners != null && listeners.contains(listener)) {
+                return;
             }
+            List<EventListener<T>> newListeners = listeners == null ? new ArrayList<EventListener<T>>(1) : new ArrayList<>(listeners);
+            newListeners.add(listener);
+            Map<T, List<EventListener<T>>> newMap = new HashMap<>(mEventListeners);
+            newMap.put(eventType, Collections.unmodifiableList(newListeners));
+            mEventListeners = Collections.unmodifiableMap(newMap);
         }
     }
 
@@ -167,8 +165,8 @@ public class EventBus<T> {
      * removes an event listener.
      */
     public void removeEventListener(EventListener<T> listener) {
-        synchronized (this.mEventListeners) {
-            for (T eventType : this.mEventListeners.keySet()) {
+        synchronized (mListenerLock) {
+            for (T eventType : mEventListeners.keySet()) {
                 this.removeEventListener(eventType, listener);
             }
         }
@@ -178,11 +176,20 @@ public class EventBus<T> {
      * removes an event listener with specified type.
      */
     public void removeEventListener(T eventType, EventListener<T> listener) {
-        synchronized (this.mEventListeners) {
-            if (this.mEventListeners.containsKey(eventType)) {
-                List<EventListener<T>> listeners = this.mEventListeners.get(eventType);
-                listeners.remove(listener);
+        synchronized (mListenerLock) {
+            List<EventListener<T>> listeners = mEventListeners.get(eventType);
+            if (listeners == null || !listeners.contains(listener)) {
+                return;
+            }
+            Map<T, List<EventListener<T>>> newMap = new HashMap<>(mEventListeners);
+            if (listeners.size() == 1) {
+                newMap.remove(eventType);
+            } else {
+                List<EventListener<T>> newListeners = new ArrayList<>(listeners);
+                newListeners.remove(listener);
+                newMap.put(eventType, Collections.unmodifiableList(newListeners));
             }
+            mEventListeners = Collections.unmodifiableMap(newMap);
         }
     }
 
@@ -190,109 +197,332 @@ public class EventBus<T> {
      * removes all event listeners.
      */
     public void removeEventListeners() {
-        synchronized (this.mEventListeners) {
-            for (T eventType : this.mEventListeners.keySet()) {
-                List<EventListener<T>> listeners = this.mEventListeners.get(eventType);
-                listeners.clear();
-                this.mEventListeners.remove(eventType);
-            }
+        synchronized (mListenerLock) {
+            mEventListeners = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * set capacity and overflow policy of lanes created later
+     */
+    public void setDefaultLaneCapacity(int capacity, OverflowPolicy policy) {
+        this.defaultLaneCapacity = Math.max(1, capacity);
+        this.defaultOverflowPolicy = policy;
+    }
+
+    /**
+     * set capacity and overflow policy of the lane of event type
+     */
+    public void setLaneCapacity(T eventType, int capacity, OverflowPolicy policy) {
+        Lane lane = getLane(eventType);
+        synchronized (lane) {
+            lane.capacity = Math.max(1, capacity);
+            lane.policy = policy;
         }
     }
 
     /**
      * dispatches an event to be processed.
+     * The event is skipped if no listener registered for its type.
      *
-     * @param event
+     * @param event event
      */
     public void dispatchEvent(final Event<T> event) {
-//        MeshLogger.log("event looper : " + event.getThreadMode());
-
-        this.mEventQueue.add(event);
+        if (!mEventListeners.containsKey(event.getType())) {
+            return;
+        }
+        getLane(event.getType()).offer(event);
+    }
 
-//        MeshLogger.log("post event : " + event.getType() + "--" + event.getClass().getSimpleName());
+    /**
+     * @return queued event count of the event type
+     */
+    public int getQueueDepth(T eventType) {
+        Lane lane = mLanes.get(eventType);
+        if (lane == null) return 0;
+        synchronized (lane) {
+            return lane.queue.size();
+        }
+    }
 
-        synchronized (this.mLock) {
-            if (!this.processing)
-                this.processOnThread();
+    /**
+     * @return queued event count of all lanes
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (T eventType : mLanes.keySet()) {
+            depth += getQueueDepth(eventType);
         }
+        return depth;
     }
 
     /**
-     * processes an event on a separate thread based on its thread mode.
+     * @return metrics of the event type, null if no event of the type dispatched
      */
-    private void processOnThread() {
+    public LaneMetrics getLaneMetrics(T eventType) {
+        Lane lane = mLanes.get(eventType);
+        return lane == null ? null : lane.getMetrics();
+    }
 
-        final Event<T> event;
+    /**
+     * @return metrics of all lanes by event type
+     */
+    public Map<T, LaneMetrics> getLaneMetrics() {
+        Map<T, LaneMetrics> metrics = new HashMap<>();
+        for (Map.Entry<T, Lane> entry : mLanes.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().getMetrics());
+        }
+        return metrics;
+    }
 
-        synchronized (mEventQueue) {
-            event = this.mEventQueue.peek();
-            if (event == null)
-                return;
+    /**
+     * clear metrics of all lanes, queued events are kept
+     */
+    public void resetMetrics() {
+        for (Lane lane : mLanes.values()) {
+            lane.resetMetrics();
+        }
+    }
+
+    private Lane getLane(T eventType) {
+        Lane lane = mLanes.get(eventType);
+        if (lane == null) {
+            Lane created = new Lane(eventType, defaultLaneCapacity, defaultOverflowPolicy);
+            lane = mLanes.putIfAbsent(eventType, created);
+            if (lane == null) {
+                lane = created;
+            }
         }
+        return lane;
+    }
 
-        switch (event.getThreadMode()) {
+    private Executor getExecutor(Event.ThreadMode threadMode) {
+        switch (threadMode) {
             case Background:
-                EXECUTOR_SERVICE.execute(task);
-                break;
+                return mBackgroundExecutor;
             case Main:
-                mMainThreadHandler.post(task);
-                break;
+                return mMainExecutor;
             case Default:
-                mCurrentThreadHandler.post(task);
-                break;
-
+            default:
+                return mDefaultExecutor;
         }
     }
 
     /**
-     * processes an event by invoking the event listeners.
+     * ordered queue of one event type, scheduled on the executor of the head event's thread mode
      */
-    private void processEvent() {
-//        MeshLogger.log("process on thread : " + Thread.currentThread().getName());
+    private final class Lane implements Runnable {
 
-        final Event<T> event;
+        private final T eventType;
 
-        synchronized (mEventQueue) {
-            event = mEventQueue.poll();
-            if (event == null)
-                return;
-        }
+        private final ArrayDeque<Event<T>> queue = new ArrayDeque<>();
+
+        private int capacity;
+
+        private OverflowPolicy policy;
+
+        /**
+         * true if lane task is pending or running
+         */
+        private boolean scheduled = false;
+
+        /**
+         * thread mode of the scheduled task
+         */
+        private Event.ThreadMode threadMode;
+
+        // metrics
+        private int maxQueueDepth = 0;
+
+        private long droppedCount = 0;
 
-//        MeshLogger.log("process event : " + event.getType() + "--" + event.getClass().getName());
+        private long dispatchedCount = 0;
 
-        T eventType = event.getType();
-        List<EventListener<T>> listeners = null;
+        private long listenerNanos = 0;
 
-        synchronized (this.mEventListeners) {
-            if (this.mEventListeners.containsKey(eventType)) {
-                listeners = this.mEventListeners.get(eventType);
+        private long maxListenerNanos = 0;
+
+        Lane(T eventType, int capacity, OverflowPolicy policy) {
+            this.eventType = eventType;
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+
+        void offer(Event<T> event) {
+            Event.ThreadMode mode;
+            synchronized (this) {
+                if (queue.size() >= capacity) {
+                    droppedCount++;
+                    if ((droppedCount & 0xFF) == 1) {
+                        MeshLogger.w("event lane full: " + eventType + " dropped: " + droppedCount);
+                    }
+                    if (policy == OverflowPolicy.DROP_NEWEST) {
+                        return;
+                    }
+                    queue.poll();
+                }
+                queue.add(event);
+                maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+                mode = threadMode = event.getThreadMode();
+            }
+            getExecutor(mode).execute(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < DRAIN_BATCH; i++) {
+                    Event<T> event;
+                    synchronized (this) {
+                        event = queue.peek();
+                        if (event == null || event.getThreadMode() != threadMode) {
+                            break;
+                        }
+                        queue.poll();
+                    }
+                    deliver(event);
+                }
+            } finally {
+                scheduleNext();
             }
         }
 
-        if (listeners != null && !listeners.isEmpty()) {
-            synchronized (this.mLock) {
-                this.processing = true;
+        /**
+         * continue on the executor of the next event, so lanes on the same thread take turns
+         */
+        private void scheduleNext() {
+            Event.ThreadMode mode;
+            synchronized (this) {
+                Event<T> next = queue.peek();
+                if (next == null) {
+                    scheduled = false;
+                    return;
+                }
+                mode = threadMode = next.getThreadMode();
             }
+            getExecutor(mode).execute(this);
+        }
 
-            for (EventListener<T> listener : listeners) {
-                if (listener != null)
+        private void deliver(Event<T> event) {
+            List<EventListener<T>> listeners = mEventListeners.get(eventType);
+            if (listeners != null) {
+                for (EventListener<T> listener : listeners) {
+                    long start = System.nanoTime();
                     listener.performed(event);
+                    long cost = System.nanoTime() - start;
+                    synchronized (this) {
+                        listenerNanos += cost;
+                        maxListenerNanos = Math.max(maxListenerNanos, cost);
+                    }
+                }
             }
+            synchronized (this) {
+                dispatchedCount++;
+            }
+        }
+
+        synchronized LaneMetrics getMetrics() {
+            return new LaneMetrics(queue.size(), maxQueueDepth, droppedCount, dispatchedCount,
+                    dispatchedCount == 0 ? 0 : listenerNanos / dispatchedCount, maxListenerNanos);
+        }
+
+        synchronized void resetMetrics() {
+            maxQueueDepth = queue.size();
+            droppedCount = 0;
+            dispatchedCount = 0;
+            listenerNanos = 0;
+            maxListenerNanos = 0;
+        }
+    }
+
+    /**
+     * metrics snapshot of one lane
+     */
+    public static class LaneMetrics {
+
+        private final int queueDepth;
+
+        private final int maxQueueDepth;
+
+        private final long droppedCount;
+
+        private final long dispatchedCount;
+
+        private final long averageListenerNanos;
+
+        private final long maxListenerNanos;
+
+        LaneMetrics(int queueDepth, int maxQueueDepth, long droppedCount, long dispatchedCount,
+                    long averageListenerNanos, long maxListenerNanos) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.droppedCount = droppedCount;
+            this.dispatchedCount = dispatchedCount;
+            this.averageListenerNanos = averageListenerNanos;
+            this.maxListenerNanos = maxListenerNanos;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getDroppedCount() {
+            return droppedCount;
+        }
+
+        public long getDispatchedCount() {
+            return dispatchedCount;
+        }
+
+        /**
+         * @return average time of all listeners handling one event
+         */
+        public long getAverageListenerNanos() {
+            return averageListenerNanos;
+        }
+
+        /**
+         * @return max time of one listener handling one event
+         */
+        public long getMaxListenerNanos() {
+            return maxListenerNanos;
         }
 
-        this.processEventCompleted();
+        @Override
+        public String toString() {
+            return "LaneMetrics{" +
+                    "queueDepth=" + queueDepth +
+                    ", maxQueueDepth=" + maxQueueDepth +
+                    ", droppedCount=" + droppedCount +
+                    ", dispatchedCount=" + dispatchedCount +
+                    ", averageListenerNanos=" + averageListenerNanos +
+                    ", maxListenerNanos=" + maxListenerNanos +
+                    '}';
+        }
     }
 
     /**
-     * marks the event processing as completed and continues processing any remaining events.
+     * posts tasks to handler
      */
-    private void processEventCompleted() {
-        synchronized (this.mLock) {
-            this.processing = false;
+    private static class HandlerExecutor implements Executor {
+        private final Handler handler;
+
+        HandlerExecutor(Handler handler) {
+            this.handler = handler;
         }
 
-        if (!this.mEventQueue.isEmpty())
-            this.processOnThread();
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
     }
 
     /**
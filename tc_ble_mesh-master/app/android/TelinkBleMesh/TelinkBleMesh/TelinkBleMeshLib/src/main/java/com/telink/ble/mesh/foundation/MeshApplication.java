@@ -142,4 +142,14 @@ public abstract class MeshApplication extends Application implements EventHandle
         this.mEventBus.dispatchEvent(event);
     }
 
+    /**
+     * event bus for lane capacity setting and dispatch metrics
+     *
+     * @see EventBus#setLaneCapacity(Object, int, EventBus.OverflowPolicy)
+     * @see EventBus#getLaneMetrics(Object)
+     */
+    public EventBus<String> getEventBus() {
+        return mEventBus;
+    }
+
 }
@@ -31,7 +31,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Handler;
 import android.os.HandlerThread;
-import android.os.ParcelUuid;
 import android.text.TextUtils;
 import android.util.SparseArray;
 
@@ -40,8 +39,11 @@ import com.telink.ble.mesh.core.MeshUtils;
 import com.telink.ble.mesh.core.access.AccessBridge;
 import com.telink.ble.mesh.core.access.BindingBearer;
 import com.telink.ble.mesh.core.access.BindingController;
+import com.telink.ble.mesh.core.access.BindingScheduler;
+import com.telink.ble.mesh.core.access.CompositionDataCache;
 import com.telink.ble.mesh.core.access.FastProvisioningController;
 import com.telink.ble.mesh.core.access.RemoteProvisioningController;
+import com.telink.ble.mesh.core.access.RemoteProvisioningScheduler;
 import com.telink.ble.mesh.core.access.fu.DistributorType;
 import com.telink.ble.mesh.core.access.fu.FUController;
 import com.telink.ble.mesh.core.access.fu.FUState;
@@ -52,22 +54,30 @@ import com.telink.ble.mesh.core.ble.GattRequest;
 import com.telink.ble.mesh.core.ble.LeScanFilter;
 import com.telink.ble.mesh.core.ble.LeScanSetting;
 import com.telink.ble.mesh.core.ble.MeshScanRecord;
+import com.telink.ble.mesh.core.ble.ProxySelector;
 import com.telink.ble.mesh.core.ble.UUIDInfo;
 import com.telink.ble.mesh.core.message.MeshMessage;
 import com.telink.ble.mesh.core.message.MessageResponder;
 import com.telink.ble.mesh.core.message.NotificationMessage;
 import com.telink.ble.mesh.core.message.Opcode;
 import com.telink.ble.mesh.core.message.StatusMessage;
+import com.telink.ble.mesh.core.message.aggregator.AggregatorItem;
+import com.telink.ble.mesh.core.message.aggregator.OpcodeAggregatorStatusMessage;
 import com.telink.ble.mesh.core.message.config.ConfigStatus;
 import com.telink.ble.mesh.core.message.config.NodeIdentity;
 import com.telink.ble.mesh.core.message.config.NodeIdentitySetMessage;
 import com.telink.ble.mesh.core.message.config.NodeIdentityStatusMessage;
 import com.telink.ble.mesh.core.networking.ExtendBearerMode;
+import com.telink.ble.mesh.core.networking.NetworkPacer;
 import com.telink.ble.mesh.core.networking.NetworkingBridge;
 import com.telink.ble.mesh.core.networking.NetworkingController;
+import com.telink.ble.mesh.core.networking.ReplayProtectionList;
 import com.telink.ble.mesh.core.networking.beacon.SecureNetworkBeacon;
+import com.telink.ble.mesh.core.provisioning.ProvisionerKeyPairPool;
 import com.telink.ble.mesh.core.provisioning.ProvisioningBridge;
 import com.telink.ble.mesh.core.provisioning.ProvisioningController;
+import com.telink.ble.mesh.core.provisioning.ProvisioningMetrics;
+import com.telink.ble.mesh.core.proxy.NodeIdentityResolver;
 import com.telink.ble.mesh.core.proxy.ProxyPDU;
 import com.telink.ble.mesh.entity.AdvertisingDevice;
 import com.telink.ble.mesh.entity.BindingDevice;
@@ -105,8 +115,11 @@ import com.telink.ble.mesh.foundation.parameter.ProvisioningParameters;
 import com.telink.ble.mesh.foundation.parameter.ScanParameters;
 import com.telink.ble.mesh.util.Arrays;
 import com.telink.ble.mesh.util.ContextUtil;
+import com.telink.ble.mesh.util.FileSystem;
+import com.telink.ble.mesh.util.FirmwareSource;
 import com.telink.ble.mesh.util.MeshLogger;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -168,6 +181,28 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
 
     private Handler mDelayHandler;
 
+    /**
+     * on the same thread as mDelayHandler, only for message queue timers
+     */
+    private Handler mQueueHandler;
+
+    /**
+     * replay protection list snapshot file in app file dir, named by network id
+     */
+    private String rplFileName;
+
+    /**
+     * resolves node address of node identity advertising, candidates are nodes in device key map
+     */
+    private final NodeIdentityResolver mNodeIdentityResolver = new NodeIdentityResolver();
+
+    private final ProxySelector mProxySelector = new ProxySelector();
+
+    /**
+     * device key map changed, resolver candidates should be rebuilt
+     */
+    private boolean nodeIdentityCandidatesDirty = true;
+
 
     /*
      * controllers
@@ -180,6 +215,18 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
     // key binding
     private BindingController mBindingController;
 
+    /**
+     * key binding for several devices concurrently
+     */
+    private BindingScheduler mBindingScheduler;
+
+    private static final String CPS_CACHE_FILE_NAME = "cps_cache.bin";
+
+    /**
+     * composition data of known products, shared by binding controller and scheduler
+     */
+    private final CompositionDataCache mCompositionDataCache = new CompositionDataCache();
+
     // mesh ota
 //    private MeshUpdatingController mMeshUpdatingController;
 
@@ -192,6 +239,11 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      */
     private RemoteProvisioningController mRemoteProvisioningController;
 
+    /**
+     * remote provisioning for several devices concurrently
+     */
+    private RemoteProvisioningScheduler mRemoteProvisioningScheduler;
+
     /**
      * fast-provision
      * telink private protocol
@@ -303,6 +355,29 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      */
     private long bindingStartTick = 0;
 
+    /**
+     * outbound messages waiting for networking sending slot
+     */
+    private final MeshMessageQueue mMessageQueue = new MeshMessageQueue(new MeshMessageQueue.Sender() {
+        @Override
+        public boolean send(MeshMessage meshMessage) {
+            return sendMeshMessage(meshMessage, false);
+        }
+
+        @Override
+        public boolean isIdle() {
+            final NetworkingController networkingController = mNetworkingController;
+            return networkingController == null || networkingController.isSendingIdle();
+        }
+
+        @Override
+        public boolean postDelayed(Runnable task, long delay) {
+            // not mDelayHandler, its callbacks are removed on each action start
+            final Handler handler = mQueueHandler;
+            return handler != null && handler.postDelayed(task, delay);
+        }
+    });
+
     /**
      * In this method, the following steps are performed:
      * 1. Create and start A new HandlerThread named "Mesh-Controller".
@@ -325,6 +400,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         handlerThread = new HandlerThread("Mesh-Controller");
         handlerThread.start();
         mDelayHandler = new Handler(handlerThread.getLooper());
+        mQueueHandler = new Handler(handlerThread.getLooper());
 
         mContext = context.getApplicationContext();
         initScanningController(handlerThread);
@@ -346,6 +422,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         if (mNetworkingController != null) {
             mNetworkingController.clear();
         }
+        mMessageQueue.onNetworkCleared();
     }
 
 
@@ -389,6 +466,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         this.actionMode = Mode.IDLE;
         this.directDeviceAddress = 0;
         this.isLogin = false;
+        mMessageQueue.clear();
         stopScan();
         if (advDevices != null) {
             advDevices.clear();
@@ -405,7 +483,10 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
             mProvisioningController = null;
         }
 
+        mNodeIdentityResolver.release();
+
         if (mNetworkingController != null) {
+            saveReplayProtectionList();
             mNetworkingController.clear();
             mNetworkingController.resetDirectAddress();
             mNetworkingController = null;
@@ -416,6 +497,12 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
             mBindingController = null;
         }
 
+        if (mBindingScheduler != null) {
+            mBindingScheduler.clear();
+            mBindingScheduler = null;
+        }
+        saveCompositionDataCache();
+
         /*if (mFirmwareUpdatingController != null) {
             mFirmwareUpdatingController.clear();
             mFirmwareUpdatingController = null;
@@ -426,6 +513,11 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
             mDelayHandler = null;
         }
 
+        if (mQueueHandler != null) {
+            mQueueHandler.removeCallbacksAndMessages(null);
+            mQueueHandler = null;
+        }
+
         if (handlerThread != null) {
             handlerThread.quitSafely();
             handlerThread = null;
@@ -491,10 +583,74 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         this.networkIdentityKey = Encipher.generateIdentityKey(configuration.networkKey);
         this.networkBeaconKey = Encipher.generateBeaconKey(configuration.networkKey);
         this.privateBeaconKey = Encipher.generatePrivateBeaconKey(configuration.networkKey);
+        this.nodeIdentityCandidatesDirty = true;
         mNetworkingController.setup(configuration);
+        restoreReplayProtectionList();
 //        mNetworkingController.proxyFilterInit(); //  for test
     }
 
+    /**
+     * restore replay protection list saved by {@link #saveReplayProtectionList()}
+     */
+    private void restoreReplayProtectionList() {
+        if (mContext == null) return;
+        rplFileName = "rpl_" + Arrays.bytesToHexString(networkId) + ".bin";
+        byte[] snapshot = FileSystem.readByteArray(new File(mContext.getFilesDir(), rplFileName));
+        if (snapshot != null) {
+            boolean restored = mNetworkingController.getReplayProtectionList().restore(snapshot);
+            log("replay protection list restored: " + restored + " size: " + mNetworkingController.getReplayProtectionList().size());
+        }
+    }
+
+    /**
+     * write snapshot to temp file and rename, so the saved file is always complete
+     */
+    private void saveReplayProtectionList() {
+        if (mContext == null || rplFileName == null || mNetworkingController == null) return;
+        byte[] snapshot = mNetworkingController.getReplayProtectionList().snapshot();
+        File dir = mContext.getFilesDir();
+        File tmp = FileSystem.writeByteArray(dir, rplFileName + "_tmp", snapshot);
+        if (tmp == null || !tmp.renameTo(new File(dir, rplFileName))) {
+            log("replay protection list save fail", MeshLogger.LEVEL_WARN);
+        }
+    }
+
+    private void restoreCompositionDataCache() {
+        if (mContext == null) return;
+        byte[] snapshot = FileSystem.readByteArray(new File(mContext.getFilesDir(), CPS_CACHE_FILE_NAME));
+        if (snapshot != null) {
+            boolean restored = mCompositionDataCache.restore(snapshot);
+            log("composition data cache restored: " + restored + " size: " + mCompositionDataCache.size());
+        }
+    }
+
+    /**
+     * save composition data cache if changed
+     */
+    private void saveCompositionDataCache() {
+        if (mContext == null || !mCompositionDataCache.isDirty()) return;
+        File dir = mContext.getFilesDir();
+        File tmp = FileSystem.writeByteArray(dir, CPS_CACHE_FILE_NAME + "_tmp", mCompositionDataCache.snapshot());
+        if (tmp == null || !tmp.renameTo(new File(dir, CPS_CACHE_FILE_NAME))) {
+            log("composition data cache save fail", MeshLogger.LEVEL_WARN);
+        }
+    }
+
+    /**
+     * @return composition data of known products, binding skips composition data get if device product found in it
+     * @see BindingDevice#setProduct(int, int, int)
+     */
+    public CompositionDataCache getCompositionDataCache() {
+        return mCompositionDataCache;
+    }
+
+    private final Runnable RPL_SAVING_TASK = new Runnable() {
+        @Override
+        public void run() {
+            saveReplayProtectionList();
+        }
+    };
+
     /**
      * This method removes a device from the mesh network configuration. First, it removes the device key associated with the given mesh address from the device key map in the mesh configuration. Then, it calls the networking controller to remove the device key as well.
      * <p>
@@ -503,10 +659,24 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      * Overall, this method is responsible for removing a device from the mesh network and updating the necessary components accordingly.
      *
      * @param meshAddress target mesh address of the device
+     * @see #removeDevice(int, int)
      */
     void removeDevice(int meshAddress) {
+        removeDevice(meshAddress, 1);
+    }
+
+    /**
+     * remove device and the replay protection entries of all its elements,
+     * so that a node provisioned later at the same address is not rejected as replay
+     *
+     * @param meshAddress  target mesh address of the device
+     * @param elementCount element count of the device
+     */
+    void removeDevice(int meshAddress, int elementCount) {
         this.meshConfiguration.deviceKeyMap.remove(meshAddress);
+        this.nodeIdentityCandidatesDirty = true;
         mNetworkingController.removeDeviceKey(meshAddress);
+        removeReplayProtection(meshAddress, elementCount);
         if (this.actionMode == Mode.AUTO_CONNECT) {
             validateAutoConnectTargets();
         }
@@ -573,6 +743,13 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         mBindingController = new BindingController(handlerThread);
         mBindingController.register(this);
 
+        mBindingScheduler = new BindingScheduler(handlerThread);
+        mBindingScheduler.register(this);
+
+        restoreCompositionDataCache();
+        mBindingController.setCompositionDataCache(mCompositionDataCache);
+        mBindingScheduler.setCompositionDataCache(mCompositionDataCache);
+
         fuController = new FUController(handlerThread);
         fuController.register(this);
 //        mFirmwareUpdatingController = new FirmwareUpdatingController(handlerThread);
@@ -581,6 +758,9 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         mRemoteProvisioningController = new RemoteProvisioningController(handlerThread);
         mRemoteProvisioningController.register(this);
 
+        mRemoteProvisioningScheduler = new RemoteProvisioningScheduler(handlerThread, mProvisioningController.getKeyPairPool());
+        mRemoteProvisioningScheduler.register(this);
+
         mFastProvisioningController = new FastProvisioningController(handlerThread);
         mFastProvisioningController.register(this);
     }
@@ -706,6 +886,8 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      */
     private void startScan() {
         log("start scan: " + actionMode);
+        mDelayHandler.removeCallbacks(PROXY_SELECTION_TASK);
+        mProxySelector.reset();
         LeScanFilter filter = (LeScanFilter) mActionParams.get(Parameters.SCAN_FILTERS);
         long timeout = mActionParams.getLong(Parameters.COMMON_SCAN_TIMEOUT, 10 * 1000);
         long spacing = mActionParams.getLong(Parameters.COMMON_SCAN_MIN_SPACING, 500);
@@ -758,6 +940,17 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         return true;
     }
 
+    /**
+     * continue a device in {@link #startRemoteProvision(List)} waiting after capability received
+     */
+    boolean continueRemoteProvision(RemoteProvisioningDevice device, int address) {
+        if (actionMode != Mode.REMOTE_PROVISION_BATCH) {
+            return false;
+        }
+        this.mRemoteProvisioningScheduler.continueProvision(device, address);
+        return true;
+    }
+
     /**
      * Used to rebuild the provisioning device by setting various parameters.
      * <p>
@@ -817,6 +1010,56 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         }
     }
 
+    /**
+     * Starts binding for several devices over the current proxy connection,
+     * devices are bound concurrently without reconnecting.
+     * A device event is posted when each device complete, followed by a progress event,
+     * and a complete event is posted when all devices complete.
+     *
+     * @param bindingDevices target devices
+     */
+    void startBinding(List<BindingDevice> bindingDevices) {
+        if (!validateActionMode(Mode.MODE_BIND_BATCH)) {
+            log("binding currently");
+            return;
+        }
+        mDelayHandler.removeCallbacksAndMessages(null);
+        this.reconnectTarget = null;
+        resetAction();
+        if (!mGattConnection.isProxyNodeConnected()) {
+            for (BindingDevice device : bindingDevices) {
+                onBindingEvent(BindingEvent.EVENT_TYPE_BIND_FAIL, device, "proxy node not connected");
+            }
+            idle(false);
+            // progress of this request, scheduler may hold the progress of last batch
+            int count = bindingDevices.size();
+            BindingScheduler.Progress progress = new BindingScheduler.Progress(count, 0, count, 0, 0, 0);
+            onBindingProgress(BindingEvent.EVENT_TYPE_BIND_ALL_COMPLETE, progress, "proxy node not connected");
+            return;
+        }
+        this.actionMode = Mode.MODE_BIND_BATCH;
+        for (BindingDevice device : bindingDevices) {
+            if (device.getNetKeyIndex() == -1) {
+                device.setNetKeyIndex(meshConfiguration.netKeyIndex);
+            }
+        }
+        mBindingScheduler.begin(bindingDevices, meshConfiguration.appKeyMap);
+    }
+
+    /**
+     * @param concurrency max count of devices bound at the same time in {@link #startBinding(List)}
+     */
+    public void setBindingConcurrency(int concurrency) {
+        mBindingScheduler.setConcurrency(concurrency);
+    }
+
+    /**
+     * @return progress of {@link #startBinding(List)}
+     */
+    public BindingScheduler.Progress getBindingProgress() {
+        return mBindingScheduler.getProgress();
+    }
+
     /**
      * Starts the remote provisioning process for a given remote provisioning device.
      * If the proxy node is not connected, it calls the onRemoteProvisioningComplete method with a fail event type and an error message stating that the proxy node is not connected.
@@ -840,6 +1083,50 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         mRemoteProvisioningController.begin(this.mProvisioningController, remoteProvisioningDevice);
     }
 
+    /**
+     * Starts remote provisioning for several devices,
+     * links through different remote provisioning servers run concurrently.
+     * A device event is posted when each device complete, followed by a progress event,
+     * and a complete event is posted when all devices complete.
+     *
+     * @param remoteProvisioningDevices target devices
+     */
+    void startRemoteProvision(List<RemoteProvisioningDevice> remoteProvisioningDevices) {
+        if (!validateActionMode(Mode.REMOTE_PROVISION_BATCH)) {
+            log("remote provisioning currently");
+            return;
+        }
+        mDelayHandler.removeCallbacksAndMessages(null);
+        if (!mGattConnection.isProxyNodeConnected()) {
+            for (RemoteProvisioningDevice device : remoteProvisioningDevices) {
+                onRemoteProvisioningEvent(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_FAIL,
+                        device, "proxy node not connected");
+            }
+            onRemoteProvisioningComplete(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_ALL_COMPLETE,
+                    null, "proxy node not connected");
+            return;
+        }
+        this.actionMode = Mode.REMOTE_PROVISION_BATCH;
+        for (RemoteProvisioningDevice device : remoteProvisioningDevices) {
+            rebuildProvisioningDevice(device);
+        }
+        mRemoteProvisioningScheduler.begin(remoteProvisioningDevices);
+    }
+
+    /**
+     * @param concurrency max count of concurrent remote provisioning links in {@link #startRemoteProvision(List)}
+     */
+    public void setRemoteProvisioningConcurrency(int concurrency) {
+        mRemoteProvisioningScheduler.setConcurrency(concurrency);
+    }
+
+    /**
+     * @return progress of {@link #startRemoteProvision(List)}
+     */
+    public RemoteProvisioningScheduler.Progress getRemoteProvisioningProgress() {
+        return mRemoteProvisioningScheduler.getProgress();
+    }
+
     /**
      * Starts the fast provisioning process with the given parameters.
      * If the proxy node is already connected, it calls the onConnectSuccess() method.
@@ -1073,10 +1360,14 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         } else {
             if (actionMode == Mode.REMOTE_PROVISION) {
                 mRemoteProvisioningController.clear();
+            } else if (actionMode == Mode.REMOTE_PROVISION_BATCH) {
+                mRemoteProvisioningScheduler.clear();
             } else if (actionMode == Mode.PROVISION) {
                 mProvisioningController.clear();
             } else if (actionMode == Mode.MODE_BIND) {
                 mBindingController.clear();
+            } else if (actionMode == Mode.MODE_BIND_BATCH) {
+                mBindingScheduler.clear();
             } else if (actionMode == Mode.MESH_OTA) {
                 fuController.clear();
 //                mFirmwareUpdatingController.clear();
@@ -1098,12 +1389,12 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      * Otherwise, it calls the onActionStart method and begins the GATT OTA process using the firmware data.
      */
     private void startGattOta() {
-        byte[] otaFirmware = (byte[]) mActionParams.get(Parameters.ACTION_OTA_FIRMWARE);
+        FirmwareSource otaFirmware = (FirmwareSource) mActionParams.get(Parameters.ACTION_OTA_FIRMWARE);
         if (otaFirmware == null) {
             onOtaComplete(false, "firmware not found");
         } else {
             onActionStart();
-            mGattOtaController.begin(otaFirmware);
+            mGattOtaController.begin(otaFirmware, mActionParams.getBool(Parameters.ACTION_OTA_EXTEND_ENABLE, false));
         }
     }
 
@@ -1255,21 +1546,172 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         }
     }
 
+    /**
+     * Sets the max count of reliable messages which can be sent at one time.
+     *
+     * @param limit reliable message limit
+     * @see NetworkingController#setReliableMessageLimit(int)
+     */
+    public void setReliableMessageLimit(int limit) {
+        if (mNetworkingController != null) {
+            mNetworkingController.setReliableMessageLimit(limit);
+        }
+    }
+
+    /**
+     * Adds or replaces an app key used for message encryption and decryption.
+     *
+     * @param appKeyIndex app key index
+     * @param appKey      app key
+     * @see NetworkingController#putAppKey(int, byte[])
+     */
+    public void putAppKey(int appKeyIndex, byte[] appKey) {
+        if (mNetworkingController != null) {
+            mNetworkingController.putAppKey(appKeyIndex, appKey);
+        }
+    }
+
+    /**
+     * Removes an app key.
+     *
+     * @param appKeyIndex app key index
+     * @see NetworkingController#removeAppKey(int)
+     */
+    public void removeAppKey(int appKeyIndex) {
+        if (mNetworkingController != null) {
+            mNetworkingController.removeAppKey(appKeyIndex);
+        }
+    }
+
+    /**
+     * Sets limits of segmented messages received at the same time.
+     *
+     * @see NetworkingController#setSegmentedRxLimits(int, int)
+     */
+    public void setSegmentedRxLimits(int concurrency, int memoryBudget) {
+        if (mNetworkingController != null) {
+            mNetworkingController.setSegmentedRxLimits(concurrency, memoryBudget);
+        }
+    }
+
+    /**
+     * Enables or disables adaptive network pdu pacing.
+     *
+     * @param enabled adaptive pacing enabled
+     * @see NetworkingController#setAdaptivePacingEnabled(boolean)
+     */
+    public void setAdaptivePacingEnabled(boolean enabled) {
+        if (mNetworkingController != null) {
+            mNetworkingController.setAdaptivePacingEnabled(enabled);
+        }
+    }
+
+    /**
+     * @return network pacer, null if not started
+     */
+    public NetworkPacer getNetworkPacer() {
+        return mNetworkingController == null ? null : mNetworkingController.getNetworkPacer();
+    }
+
+    /**
+     * @return resolver of node identity advertising
+     */
+    public NodeIdentityResolver getNodeIdentityResolver() {
+        return mNodeIdentityResolver;
+    }
+
+    /**
+     * @return provisioner key pair pool, null if not started
+     */
+    public ProvisionerKeyPairPool getProvisionerKeyPairPool() {
+        return mProvisioningController == null ? null : mProvisioningController.getKeyPairPool();
+    }
+
+    /**
+     * @return provisioning phase metrics, null if not started
+     */
+    public ProvisioningMetrics getProvisioningMetrics() {
+        return mProvisioningController == null ? null : mProvisioningController.getMetrics();
+    }
+
+    /**
+     * @return proxy selector used by auto connect
+     */
+    public ProxySelector getProxySelector() {
+        return mProxySelector;
+    }
+
+    /**
+     * @return replay protection list, null if not started
+     */
+    public ReplayProtectionList getReplayProtectionList() {
+        return mNetworkingController == null ? null : mNetworkingController.getReplayProtectionList();
+    }
+
 
     /**
      * send mesh message
      * include config message and common message
      */
     public boolean sendMeshMessage(MeshMessage meshMessage) {
+        return sendMeshMessage(meshMessage, true);
+    }
+
+    /**
+     * put mesh message into outbound queue, message will be sent when networking sending slot is free
+     *
+     * @param meshMessage message
+     * @param priority    {@link MeshMessageQueue#PRIORITY_HIGH} or {@link MeshMessageQueue#PRIORITY_NORMAL}
+     * @param callback    complete callback
+     * @return false if queue is full
+     */
+    public boolean enqueueMeshMessage(MeshMessage meshMessage, int priority, MeshMessageQueue.Callback callback) {
+        return mMessageQueue.enqueue(meshMessage, priority, callback);
+    }
+
+    /**
+     * @param capacity       max count of waiting messages
+     * @param overflowPolicy {@link MeshMessageQueue#OVERFLOW_REJECT} or {@link MeshMessageQueue#OVERFLOW_DROP_OLDEST}
+     */
+    public void setMessageQueueCapacity(int capacity, int overflowPolicy) {
+        mMessageQueue.setCapacity(capacity, overflowPolicy);
+    }
+
+    /**
+     * @param support opcodes aggregator support of nodes, null to disable aggregation
+     * @param window  time a queued message waits for other messages to aggregate with
+     */
+    public void setOpcodeAggregation(MeshMessageQueue.AggregatorSupport support, long window) {
+        mMessageQueue.setAggregation(support, window);
+    }
+
+    /**
+     * cancel all waiting messages in outbound queue
+     */
+    public void clearMessageQueue() {
+        mMessageQueue.clear();
+    }
+
+    /**
+     * send mesh message
+     *
+     * @param meshMessage message
+     * @param busyReport  if report error event when networking is busy,
+     *                    queued messages will be resent when networking is free
+     * @return if message sent
+     */
+    private boolean sendMeshMessage(MeshMessage meshMessage, boolean busyReport) {
         if (!isLogin) {
             log("not login when sending message");
             return false;
         }
-        log("send mesh message: " + meshMessage.getClass().getSimpleName()
-                + String.format(" opcode: 0x%04X -- dst: 0x%04X", meshMessage.getOpcode(), meshMessage.getDestinationAddress())
-                + " isReliable: " + meshMessage.isReliable()
-                + " retryCnt: " + meshMessage.getRetryCnt()
-                + " rspMax: " + meshMessage.getResponseMax());
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log("send mesh message: " + meshMessage.getClass().getSimpleName()
+                    + String.format(" opcode: 0x%04X -- dst: 0x%04X", meshMessage.getOpcode(), meshMessage.getDestinationAddress())
+                    + " isReliable: " + meshMessage.isReliable()
+                    + " retryCnt: " + meshMessage.getRetryCnt()
+                    + " rspMax: " + meshMessage.getResponseMax());
+        }
         final boolean sent = mNetworkingController.sendMeshMessage(meshMessage);
         if (meshMessage.isReliable()) {
             if (sent) {
@@ -1280,7 +1722,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
                         meshMessage.getResponseMax(),
                         0,
                         "mesh message processing");
-            } else {
+            } else if (busyReport) {
                 // busy
                 onReliableMessageProcessEvent(ReliableMessageProcessEvent.EVENT_TYPE_MSG_PROCESS_ERROR,
                         false,
@@ -1665,6 +2107,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         onMeshEvent(MeshEvent.EVENT_TYPE_DISCONNECTED, "disconnected when: " + actionMode);
         mNetworkingController.clear();
         mNetworkingController.resetDirectAddress();
+        mMessageQueue.onNetworkCleared();
         if (isDisconnectWaiting) {
             isDisconnectWaiting = false;
             connectRetry = -1;
@@ -1697,6 +2140,14 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
                     RemoteProvisioningDevice device = mRemoteProvisioningController.getProvisioningDevice();
                     mRemoteProvisioningController.clear();
                     onRemoteProvisioningComplete(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_FAIL, device, "connection interrupt");
+                } else if (actionMode == Mode.REMOTE_PROVISION_BATCH) {
+                    mRemoteProvisioningScheduler.clear();
+                    onRemoteProvisioningComplete(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_ALL_COMPLETE, null, "connection interrupt");
+                } else if (actionMode == Mode.MODE_BIND_BATCH) {
+                    BindingScheduler.Progress progress = mBindingScheduler.getProgress();
+                    mBindingScheduler.clear();
+                    idle(false);
+                    onBindingProgress(BindingEvent.EVENT_TYPE_BIND_ALL_COMPLETE, progress, "connection interrupt");
                 } else if (actionMode == Mode.MESH_OTA) {
                     dispatchFUState(false, "device disconnected");
                 } else if (actionMode == Mode.PROVISION
@@ -1862,13 +2313,19 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         @Override
         public void onNotify(UUID serviceUUID, UUID charUUID, byte[] data) {
             if (charUUID.equals(UUIDInfo.CHARACTERISTIC_ONLINE_STATUS)) {
-                log("online status encrypted data: " + Arrays.bytesToHexString(data, ":"));
-                MeshLogger.d("online data: " + Arrays.bytesToHexString(data));
-                MeshLogger.d("online key: " + Arrays.bytesToHexString(networkBeaconKey));
+                if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                    log("online status encrypted data: " + Arrays.bytesToHexString(data, ":"));
+                    MeshLogger.d("online data: " + Arrays.bytesToHexString(data));
+                    MeshLogger.d("online key: " + Arrays.bytesToHexString(networkBeaconKey));
+                }
                 byte[] decrypted = Encipher.decryptOnlineStatus(data, networkBeaconKey);
-                MeshLogger.d("online dec: " + Arrays.bytesToHexString(decrypted));
+                if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                    MeshLogger.d("online dec: " + Arrays.bytesToHexString(decrypted));
+                }
                 if (decrypted != null) {
-                    log("online status decrypted data: " + Arrays.bytesToHexString(decrypted, ":"));
+                    if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                        log("online status decrypted data: " + Arrays.bytesToHexString(decrypted, ":"));
+                    }
                     onOnlineStatusNotify(decrypted);
                 } else {
                     log("online status decrypt err");
@@ -2016,33 +2473,42 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
     /**
      * validate advertising device when auto connect {@link Mode#AUTO_CONNECT}
      *
-     * @param scanRecord scan record
+     * @param serviceData proxy service data
      * @return is validate ok
      */
-    private boolean validateProxyAdv(byte[] scanRecord) {
-        MeshScanRecord sr = MeshScanRecord.parseFromBytes(scanRecord);
-        if (sr == null) return false;
-        byte[] serviceData = sr.getServiceData(ParcelUuid.fromString(UUIDInfo.SERVICE_PROXY.toString()));
+    private boolean validateProxyAdv(String mac, byte[] serviceData) {
+        int proxyAddress = resolveProxyAdv(mac, serviceData);
+        if (proxyAddress > 0) {
+            directDeviceAddress = proxyAddress;
+            log("reset direct device address");
+        }
+        return proxyAddress != ProxySelector.ADDRESS_INVALID;
+    }
+
+    /**
+     * @param serviceData proxy service data
+     * @return {@link ProxySelector#ADDRESS_INVALID}, {@link ProxySelector#ADDRESS_UNKNOWN} if network id matches,
+     * or node address if node identity matches
+     */
+    private int resolveProxyAdv(String mac, byte[] serviceData) {
         if (serviceData != null && serviceData.length >= 9) {
             int type = serviceData[0];
             if (type == PROXY_ADV_TYPE_NETWORK_ID || type == PROXY_ADV_TYPE_PRIVATE_NETWORK_ID) {
                 // validate network id matches
-                return validateNetworkId(scanRecord);
+                return validateNetworkId(serviceData) ? ProxySelector.ADDRESS_UNKNOWN : ProxySelector.ADDRESS_INVALID;
             } else if (type == PROXY_ADV_TYPE_NODE_IDENTITY || type == PROXY_ADV_TYPE_PRIVATE_NODE_IDENTITY) {
-                boolean nodeIdentityCheck = validateNodeIdentity(serviceData);
-                log("check node identity pass? " + nodeIdentityCheck);
-                return nodeIdentityCheck;
+                int nodeAddress = validateNodeIdentity(mac, serviceData);
+                log("check node identity pass? " + (nodeAddress != NodeIdentityResolver.ADDRESS_NOT_FOUND));
+                return nodeAddress == NodeIdentityResolver.ADDRESS_NOT_FOUND ? ProxySelector.ADDRESS_INVALID : nodeAddress;
             }
         }
-        return false;
+        return ProxySelector.ADDRESS_INVALID;
     }
 
     /**
-     * This method is used to validate the network ID in a given scan record.
+     * This method is used to validate the network ID in the given proxy service data.
      * <p>
-     * The method takes in a byte array called "scanRecord" as a parameter. It first attempts to parse the scan record using the MeshScanRecord class. If the scan record cannot be parsed, the method returns false.
-     * <p>
-     * Next, the method retrieves the service data from the scan record using the UUID "SERVICE_PROXY". If the service data is not null and its length is greater than or equal to 9, the method proceeds to validate the network ID.
+     * If the service data is not null and its length is greater than or equal to 9, the method proceeds to validate the network ID.
      * <p>
      * If the type of the service data is "PROXY_ADV_TYPE_NETWORK_ID", the method extracts the advertising network ID from the service data and compares it with the given network ID. If they match, the method returns true.
      * <p>
@@ -2054,13 +2520,10 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      * <p>
      * Overall, this method checks if the network ID in the scan record matches the given network ID and returns true if it does. Otherwise, it returns false.
      *
-     * @param scanRecord given scan record
+     * @param serviceData proxy service data
      * @return is validate ok
      */
-    private boolean validateNetworkId(byte[] scanRecord) {
-        MeshScanRecord sr = MeshScanRecord.parseFromBytes(scanRecord);
-        if (sr == null) return false;
-        byte[] serviceData = sr.getServiceData(ParcelUuid.fromString(UUIDInfo.SERVICE_PROXY.toString()));
+    private boolean validateNetworkId(byte[] serviceData) {
         if (serviceData != null && serviceData.length >= 9) {
             int type = serviceData[0];
             if (type == PROXY_ADV_TYPE_NETWORK_ID) {
@@ -2099,24 +2562,27 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      * <p>
      *
      * @param serviceData service data
-     * @return is validate ok
+     * @return node address, {@link NodeIdentityResolver#ADDRESS_NOT_FOUND} if not matched
      */
-    private boolean validateNodeIdentity(byte[] serviceData) {
+    private int validateNodeIdentity(String mac, byte[] serviceData) {
         if (this.networkIdentityKey == null || meshConfiguration.deviceKeyMap.size() == 0 || serviceData.length < 17)
-            return false;
-
-        SparseArray<byte[]> deviceKeyMap = meshConfiguration.deviceKeyMap;
-        int nodeAddress;
-        for (int i = 0; i < deviceKeyMap.size(); i++) {
-            nodeAddress = deviceKeyMap.keyAt(i);
-            if (validateTargetNodeIdentity(serviceData, nodeAddress)) {
-                directDeviceAddress = nodeAddress;
-                log("reset direct device address");
-                return true;
+            return NodeIdentityResolver.ADDRESS_NOT_FOUND;
+
+        if (nodeIdentityCandidatesDirty) {
+            nodeIdentityCandidatesDirty = false;
+            SparseArray<byte[]> deviceKeyMap = meshConfiguration.deviceKeyMap;
+            int[] addresses = new int[deviceKeyMap.size()];
+            for (int i = 0; i < addresses.length; i++) {
+                addresses[i] = deviceKeyMap.keyAt(i);
             }
+            mNodeIdentityResolver.setup(networkIdentityKey, addresses);
         }
-
-        return false;
+        final int dataLen = 8;
+        byte[] advHash = new byte[dataLen];
+        System.arraycopy(serviceData, 1, advHash, 0, dataLen);
+        byte[] random = new byte[dataLen];
+        System.arraycopy(serviceData, 1 + dataLen, random, 0, dataLen);
+        return mNodeIdentityResolver.resolve(mac, serviceData[0] == PROXY_ADV_TYPE_PRIVATE_NODE_IDENTITY, advHash, random);
     }
 
     /**
@@ -2198,9 +2664,12 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         synchronized (SCAN_LOCK) {
             if (!isScanning) return;
             boolean connectIntent = false;
-            MeshScanRecord sr = MeshScanRecord.parseFromBytes(scanRecord);
+            // parsed once for all modes except scan
+            final byte[] proxyServiceData = actionMode == Mode.SCAN ? null
+                    : MeshScanRecord.findServiceData(scanRecord, MeshScanRecord.SERVICE_UUID_16_PROXY);
             if (actionMode == Mode.AUTO_CONNECT) {
-                connectIntent = validateProxyAdv(scanRecord);
+                onProxyAdvertising(device, rssi, proxyServiceData);
+                return;
             } else if (actionMode == Mode.GATT_OTA || actionMode == Mode.GATT_CONNECTION) {
                 final ConnectionFilter filter = (ConnectionFilter) mActionParams.get(Parameters.ACTION_CONNECTION_FILTER);
                 if (filter == null) {
@@ -2210,17 +2679,17 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
                     case ConnectionFilter.TYPE_MESH_ADDRESS:
                         int nodeAddress = (int) filter.target;
                         if (filter.advFilter == MeshAdvFilter.NODE_ID_ONLY) {
-                            connectIntent = validateTargetNodeIdentity(sr.getProxyServiceData(), nodeAddress);
+                            connectIntent = validateTargetNodeIdentity(proxyServiceData, nodeAddress);
                             break;
                         } else if (filter.advFilter == MeshAdvFilter.NETWORK_ID_ONLY) {
-                            connectIntent = validateNetworkId(scanRecord);
+                            connectIntent = validateNetworkId(proxyServiceData);
                         } else {
                             // any
                             long during = System.currentTimeMillis() - lastNodeSetTimestamp;
                             if (isProxyReconnect && during < TARGET_PROXY_CONNECT_TIMEOUT) {
-                                connectIntent = validateTargetNodeIdentity(sr.getProxyServiceData(), nodeAddress);
+                                connectIntent = validateTargetNodeIdentity(proxyServiceData, nodeAddress);
                             } else {
-                                connectIntent = validateProxyAdv(scanRecord);
+                                connectIntent = validateProxyAdv(device.getAddress(), proxyServiceData);
                             }
                             if (connectIntent && directDeviceAddress == nodeAddress) {
                                 reconnectTarget = device;
@@ -2253,16 +2722,16 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
                 BindingDevice bindingDevice = (BindingDevice) mActionParams.get(Parameters.ACTION_BINDING_TARGET);
 
                 if (bindingDevice.getBearer() == BindingBearer.GattOnly) {
-                    connectIntent = validateTargetNodeIdentity(sr.getProxyServiceData(), bindingDevice.getMeshAddress());
+                    connectIntent = validateTargetNodeIdentity(proxyServiceData, bindingDevice.getMeshAddress());
                     log("bind check node identity pass? " + connectIntent);
                 } else if (bindingDevice.getBearer() == BindingBearer.Flex) {
                     if (System.currentTimeMillis() - bindingStartTick > BINDING_NODE_IDENTITY_SCAN_PERIOD) {
-                        connectIntent = validateProxyAdv(scanRecord);
+                        connectIntent = validateProxyAdv(device.getAddress(), proxyServiceData);
                     } else {
-                        connectIntent = validateTargetNodeIdentity(sr.getProxyServiceData(), bindingDevice.getMeshAddress());
+                        connectIntent = validateTargetNodeIdentity(proxyServiceData, bindingDevice.getMeshAddress());
                     }
                 } else {
-                    connectIntent = validateProxyAdv(scanRecord);
+                    connectIntent = validateProxyAdv(device.getAddress(), proxyServiceData);
                 }
                 if (connectIntent && directDeviceAddress == bindingDevice.getMeshAddress()) {
                     reconnectTarget = device;
@@ -2272,7 +2741,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
                     connectIntent = validateTargetNodeIdentity(scanRecord, bindingDevice.getMeshAddress());
                     log("bind check node identity pass? " + connectIntent);
                 } else {
-                    connectIntent = validateProxyAdv(scanRecord);
+                    connectIntent = validateProxyAdv(device.getAddress(), proxyServiceData);
                 }*/
             } else if (actionMode == Mode.FAST_PROVISION) {
                 connectIntent = true;
@@ -2290,13 +2759,13 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
                     log("reconnect proxy device when mesh ota - " + lastAddress);
                     long during = System.currentTimeMillis() - lastNodeSetTimestamp;
                     if (isProxyReconnect && during < TARGET_PROXY_CONNECT_TIMEOUT) {
-                        connectIntent = validateTargetNodeIdentity(sr.getProxyServiceData(), lastAddress);
+                        connectIntent = validateTargetNodeIdentity(proxyServiceData, lastAddress);
                     } else {
-                        connectIntent = validateProxyAdv(scanRecord);
+                        connectIntent = validateProxyAdv(device.getAddress(), proxyServiceData);
                     }
 
                 } else {
-                    connectIntent = validateProxyAdv(scanRecord);
+                    connectIntent = validateProxyAdv(device.getAddress(), proxyServiceData);
                 }
             }
 
@@ -2308,6 +2777,51 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
     }
 
 
+    /**
+     * proxy advertising when auto connect,
+     * validation is skipped for repeated advertisements,
+     * the best proxy is connected when selecting window finished.
+     */
+    private void onProxyAdvertising(BluetoothDevice device, int rssi, byte[] proxyServiceData) {
+        if (proxyServiceData == null) return;
+        final String mac = device.getAddress();
+        ProxySelector.Advertiser advertiser = mProxySelector.find(mac, proxyServiceData);
+        if (advertiser == null) {
+            advertiser = mProxySelector.put(mac, device, proxyServiceData, resolveProxyAdv(mac, proxyServiceData));
+        }
+        if (!mProxySelector.onRssi(advertiser, rssi)) return;
+        long window = mActionParams.getLong(Parameters.ACTION_AUTO_CONNECT_SELECT_WINDOW, ProxySelector.DEFAULT_WINDOW);
+        if (window <= 0) {
+            connectProxy(advertiser);
+        } else {
+            log("proxy selecting window start: " + window);
+            mDelayHandler.postDelayed(PROXY_SELECTION_TASK, window);
+        }
+    }
+
+    private final Runnable PROXY_SELECTION_TASK = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (SCAN_LOCK) {
+                if (!isScanning || actionMode != Mode.AUTO_CONNECT) return;
+                ProxySelector.Advertiser advertiser = mProxySelector.select();
+                if (advertiser != null) {
+                    connectProxy(advertiser);
+                }
+            }
+        }
+    };
+
+    private void connectProxy(ProxySelector.Advertiser advertiser) {
+        log("proxy selected: " + advertiser);
+        if (advertiser.getProxyAddress() > 0) {
+            directDeviceAddress = advertiser.getProxyAddress();
+            log("reset direct device address");
+        }
+        isScanning = false;
+        connect(advertiser.getDevice());
+    }
+
     /**
      * Implementation of the BleScanner.ScannerCallback interface.
      * It provides callback methods for handling Bluetooth Low Energy (BLE) scanning events.
@@ -2325,7 +2839,9 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
     private BleScanner.ScannerCallback scanCallback = new BleScanner.ScannerCallback() {
         @Override
         public void onLeScan(BluetoothDevice device, int rssi, byte[] scanRecord) {
-            log("scan:" + device.getName() + " --mac: " + device.getAddress() + " --record: " + Arrays.bytesToHexString(scanRecord, ":"));
+            if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+                log("scan:" + device.getName() + " --mac: " + device.getAddress() + " --record: " + Arrays.bytesToHexString(scanRecord, ":"));
+            }
 //            if (!device.getAddress().contains("FF:FF:BB:CC:DD:81")) return;
             onScanFilter(device, rssi, scanRecord);
         }
@@ -2454,7 +2970,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         switch (state) {
             case ProvisioningController.STATE_COMPLETE:
                 ProvisioningDevice device = mProvisioningController.getProvisioningDevice();
-                updateDeviceKeyMap(device.getUnicastAddress(), device.getDeviceKey());
+                updateDeviceKeyMap(device.getUnicastAddress(), device.getDeviceKey(), getElementCount(device));
                 onProvisionSuccess(device, desc);
                 log("provision success");
                 break;
@@ -2503,6 +3019,17 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         handleNetworkInfoUpdate(sequenceNumber, this.meshConfiguration.ivIndex);
     }
 
+    /**
+     * save replay protection list on handler thread, pending saving is merged
+     */
+    @Override
+    public void onReplayProtectionListUpdate(ReplayProtectionList replayProtectionList) {
+        if (mDelayHandler != null) {
+            mDelayHandler.removeCallbacks(RPL_SAVING_TASK);
+            mDelayHandler.post(RPL_SAVING_TASK);
+        }
+    }
+
     /**
      * This method handles the update of network information with the given sequence number and IV index.
      * Creates a NetworkInfoUpdateEvent object with the provided sequence number and IV index.
@@ -2531,10 +3058,23 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      */
     @Override
     public void onMeshMessageReceived(int src, int dst, int opcode, byte[] params) {
-        log(String.format("mesh model message received: src -- 0x%04X | dst -- 0x%04X | opcode -- 0x%04X | params -- ", src, dst, opcode)
-                + Arrays.bytesToHexString(params, "") + " | action mode -- " + actionMode);
+        if (isLoggable(MeshLogger.LEVEL_DEBUG)) {
+            log(String.format("mesh model message received: src -- 0x%04X | dst -- 0x%04X | opcode -- 0x%04X | params -- ", src, dst, opcode)
+                    + Arrays.bytesToHexString(params, "") + " | action mode -- " + actionMode);
+        }
         NotificationMessage notificationMessage = new NotificationMessage(src, dst, opcode, params);
         this.onMeshMessageNotification(notificationMessage);
+        if (opcode == Opcode.CFG_OP_AGG_STATUS.value
+                && notificationMessage.getStatusMessage() instanceof OpcodeAggregatorStatusMessage) {
+            OpcodeAggregatorStatusMessage aggregatorStatus = (OpcodeAggregatorStatusMessage) notificationMessage.getStatusMessage();
+            if (mMessageQueue.onAggregatorStatus(src, aggregatorStatus) && aggregatorStatus.statusItems != null) {
+                // notify status of aggregated messages as received separately
+                for (AggregatorItem item : aggregatorStatus.statusItems) {
+                    // from the element in status, not the aggregator server element
+                    onMeshMessageNotification(new NotificationMessage(aggregatorStatus.elementAddress, dst, item.opcode, item.parameters));
+                }
+            }
+        }
     }
 
 
@@ -2576,13 +3116,14 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      * If the message was not successful, the onInnerMessageFailed() method is called. Finally, a reliable message process event is triggered with the relevant information.
      * <p>
      *
-     * @param success  if response received
-     * @param opcode   command opcode
-     * @param rspMax   expect response max
-     * @param rspCount received response count
+     * @param meshMessage completed message
+     * @param success     if response received
+     * @param opcode      command opcode
+     * @param rspMax      expect response max
+     * @param rspCount    received response count
      */
     @Override
-    public void onReliableMessageComplete(boolean success, int opcode, int rspMax, int rspCount) {
+    public void onReliableMessageComplete(MeshMessage meshMessage, boolean success, int opcode, int rspMax, int rspCount) {
         if (actionMode == Mode.MODE_BIND) {
             mBindingController.onBindingCommandComplete(success, opcode, rspMax, rspCount);
         } else if (actionMode == Mode.MESH_OTA) {
@@ -2598,6 +3139,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         }
         onReliableMessageProcessEvent(ReliableMessageProcessEvent.EVENT_TYPE_MSG_PROCESS_COMPLETE,
                 success, opcode, rspMax, rspCount, "mesh message send complete");
+        mMessageQueue.onReliableMessageComplete(meshMessage, success, rspCount);
     }
 
     /**
@@ -2614,6 +3156,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
 //            mFirmwareUpdatingController.onSegmentComplete(success);
             fuController.onSegmentComplete(success);
         }
+        mMessageQueue.onSegmentMessageComplete(success);
     }
 
     /**
@@ -2747,18 +3290,23 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
 //            mFirmwareUpdatingController.onMessageNotification(notificationMessage);
         } else if (actionMode == Mode.REMOTE_PROVISION) {
             mRemoteProvisioningController.onMessageNotification(notificationMessage);
+        } else if (actionMode == Mode.REMOTE_PROVISION_BATCH) {
+            mRemoteProvisioningScheduler.onMessageNotification(notificationMessage);
+        } else if (actionMode == Mode.MODE_BIND_BATCH) {
+            mBindingScheduler.onMessageNotification(notificationMessage);
         } else if (actionMode == Mode.FAST_PROVISION) {
             mFastProvisioningController.onMessageNotification(notificationMessage);
         }
 
         String eventType;
-        StatusMessage statusMessage = notificationMessage.getStatusMessage();
+        // event type by registered message class, message is not parsed here if lazy parse enabled
+        Class<? extends StatusMessage> statusMessageClass = notificationMessage.getStatusMessageClass();
 
         // if message can be parsed
-        if (statusMessage == null) {
+        if (statusMessageClass == null) {
             eventType = StatusNotificationEvent.EVENT_TYPE_NOTIFICATION_MESSAGE_UNKNOWN;
         } else {
-            eventType = statusMessage.getClass().getName();
+            eventType = statusMessageClass.getName();
         }
 
         log("mesh message notification: " + eventType);
@@ -2796,9 +3344,31 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
 
             // skip unreliable local message
         }
+        if (actionMode == Mode.REMOTE_PROVISION_BATCH && mode == AccessBridge.MODE_REMOTE_PROVISIONING) {
+            // messages of concurrent links wait for sending slot
+            return mMessageQueue.enqueue(meshMessage, MeshMessageQueue.PRIORITY_HIGH, remoteProvisioningMessageCallback);
+        }
+        if (actionMode == Mode.MODE_BIND_BATCH && mode == AccessBridge.MODE_BINDING) {
+            // messages of concurrent bindings wait for sending slot
+            return mMessageQueue.enqueue(meshMessage, MeshMessageQueue.PRIORITY_HIGH, bindingMessageCallback);
+        }
         return this.sendMeshMessage(meshMessage);
     }
 
+    private final MeshMessageQueue.Callback remoteProvisioningMessageCallback = new MeshMessageQueue.Callback() {
+        @Override
+        public void onMessageComplete(MeshMessage meshMessage, int result, int rspCount) {
+            mRemoteProvisioningScheduler.onCommandComplete(meshMessage, result == MeshMessageQueue.RESULT_SUCCESS, rspCount);
+        }
+    };
+
+    private final MeshMessageQueue.Callback bindingMessageCallback = new MeshMessageQueue.Callback() {
+        @Override
+        public void onMessageComplete(MeshMessage meshMessage, int result, int rspCount) {
+            mBindingScheduler.onCommandComplete(meshMessage, result == MeshMessageQueue.RESULT_SUCCESS, rspCount);
+        }
+    };
+
     /********************************************************
      * binding event
      ********************************************************/
@@ -2827,12 +3397,24 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         onEventPrepared(bindingEvent);
     }
 
+    private void onBindingEvent(String eventType, BindingDevice device, String desc) {
+        onEventPrepared(new BindingEvent(this, eventType, device, desc));
+    }
+
+    private void onBindingProgress(String eventType, BindingScheduler.Progress progress, String desc) {
+        BindingEvent event = new BindingEvent(this, eventType);
+        event.setProgress(progress);
+        event.setDesc(desc);
+        onEventPrepared(event);
+    }
+
     /**
      * This method is called when the binding process is complete.
      * It clears the networking controller, sets the isActionStarted flag to false,
      * and calls the idle method with a parameter of false to indicate that the app is no longer idle.
      */
     private void onBindingComplete() {
+        saveCompositionDataCache();
         mNetworkingController.clear();
         isActionStarted = false;
         idle(false);
@@ -2862,6 +3444,10 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      */
     private void onRemoteProvisioningComplete(String eventType, RemoteProvisioningDevice device, String desc) {
         idle(false);
+        onRemoteProvisioningEvent(eventType, device, desc);
+    }
+
+    private void onRemoteProvisioningEvent(String eventType, RemoteProvisioningDevice device, String desc) {
         RemoteProvisioningEvent event = new RemoteProvisioningEvent(this, eventType);
         event.setRemoteProvisioningDevice(device);
         event.setDesc(desc);
@@ -2869,6 +3455,13 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
     }
 
 
+    private void onRemoteProvisioningProgress(String eventType, RemoteProvisioningScheduler.Progress progress, String desc) {
+        RemoteProvisioningEvent event = new RemoteProvisioningEvent(this, eventType);
+        event.setProgress(progress);
+        event.setDesc(desc);
+        onEventPrepared(event);
+    }
+
     private void onRemoteCapabilityReceived(RemoteProvisioningDevice device, String desc) {
         RemoteProvisioningEvent event = new RemoteProvisioningEvent(this, RemoteProvisioningEvent.EVENT_TYPE_REMOTE_CAPABILITY_RECEIVED);
         event.setRemoteProvisioningDevice(device);
@@ -2880,12 +3473,32 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      * This method updates the device key map with the given address and device key.
      * It adds the device key to the networking controller and also to the mesh configuration's device key map.
      *
-     * @param address   node address
-     * @param deviceKey device key
+     * The replay protection entries of the new node addresses are removed,
+     * as they may be left by a node previously assigned the same addresses.
+     *
+     * @param address      node address
+     * @param deviceKey    device key
+     * @param elementCount element count of node
      */
-    private void updateDeviceKeyMap(int address, byte[] deviceKey) {
+    private void updateDeviceKeyMap(int address, byte[] deviceKey, int elementCount) {
         this.mNetworkingController.addDeviceKey(address, deviceKey);
         this.meshConfiguration.deviceKeyMap.put(address, deviceKey);
+        this.nodeIdentityCandidatesDirty = true;
+        removeReplayProtection(address, elementCount);
+    }
+
+    private int getElementCount(ProvisioningDevice device) {
+        return device.getDeviceCapability() == null ? 1 : device.getDeviceCapability().eleNum & 0xFF;
+    }
+
+    /**
+     * remove replay protection entries of node elements and save the list if changed
+     */
+    private void removeReplayProtection(int address, int elementCount) {
+        ReplayProtectionList replayProtectionList = mNetworkingController.getReplayProtectionList();
+        if (replayProtectionList.remove(address, elementCount) != 0) {
+            onReplayProtectionListUpdate(replayProtectionList);
+        }
     }
 
     /**
@@ -2905,6 +3518,18 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
             } else if (state == BindingController.STATE_SUCCESS) {
                 onBindingSuccess(desc);
             }
+        } else if (actionMode == Mode.MODE_BIND_BATCH && mode == AccessBridge.MODE_BINDING) {
+            if (state == BindingController.STATE_FAIL) {
+                onBindingEvent(BindingEvent.EVENT_TYPE_BIND_FAIL, (BindingDevice) obj, desc);
+            } else if (state == BindingController.STATE_SUCCESS) {
+                onBindingEvent(BindingEvent.EVENT_TYPE_BIND_SUCCESS, (BindingDevice) obj, desc);
+            } else if (state == BindingScheduler.STATE_PROGRESS) {
+                onBindingProgress(BindingEvent.EVENT_TYPE_BIND_PROGRESS, (BindingScheduler.Progress) obj, desc);
+            } else if (state == BindingScheduler.STATE_COMPLETE) {
+                saveCompositionDataCache();
+                idle(false);
+                onBindingProgress(BindingEvent.EVENT_TYPE_BIND_ALL_COMPLETE, (BindingScheduler.Progress) obj, desc);
+            }
         } else if (actionMode == Mode.MESH_OTA && mode == AccessBridge.MODE_FIRMWARE_UPDATING) {
             if (state == FUState.UPDATE_COMPLETE.value || state == FUState.UPDATE_FAIL.value) {
                 isActionStarted = false;
@@ -2915,12 +3540,27 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
                 onRemoteProvisioningComplete(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_FAIL, (RemoteProvisioningDevice) obj, "remote provisioning fail");
             } else if (state == RemoteProvisioningController.STATE_PROVISION_SUCCESS) {
                 RemoteProvisioningDevice device = (RemoteProvisioningDevice) obj;
-                updateDeviceKeyMap(device.getUnicastAddress(), device.getDeviceKey());
+                updateDeviceKeyMap(device.getUnicastAddress(), device.getDeviceKey(), getElementCount(device));
                 onRemoteProvisioningComplete(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_SUCCESS, device, "remote provisioning success");
             } else if (state == RemoteProvisioningController.STATE_CAPABILITY_RECEIVED) {
                 RemoteProvisioningDevice device = (RemoteProvisioningDevice) obj;
                 onRemoteCapabilityReceived(device, "remote provisioning success");
             }
+        } else if (actionMode == Mode.REMOTE_PROVISION_BATCH && mode == AccessBridge.MODE_REMOTE_PROVISIONING) {
+            if (state == RemoteProvisioningController.STATE_PROVISION_FAIL) {
+                onRemoteProvisioningEvent(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_FAIL, (RemoteProvisioningDevice) obj, desc);
+            } else if (state == RemoteProvisioningController.STATE_PROVISION_SUCCESS) {
+                RemoteProvisioningDevice device = (RemoteProvisioningDevice) obj;
+                updateDeviceKeyMap(device.getUnicastAddress(), device.getDeviceKey(), getElementCount(device));
+                onRemoteProvisioningEvent(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_SUCCESS, device, desc);
+            } else if (state == RemoteProvisioningController.STATE_CAPABILITY_RECEIVED) {
+                onRemoteCapabilityReceived((RemoteProvisioningDevice) obj, desc);
+            } else if (state == RemoteProvisioningScheduler.STATE_PROGRESS) {
+                onRemoteProvisioningProgress(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_PROGRESS, (RemoteProvisioningScheduler.Progress) obj, desc);
+            } else if (state == RemoteProvisioningScheduler.STATE_COMPLETE) {
+                idle(false);
+                onRemoteProvisioningProgress(RemoteProvisioningEvent.EVENT_TYPE_REMOTE_PROVISIONING_ALL_COMPLETE, (RemoteProvisioningScheduler.Progress) obj, desc);
+            }
         } else if (actionMode == Mode.FAST_PROVISION && mode == AccessBridge.MODE_FAST_PROVISION) {
             if (state == FastProvisioningController.STATE_RESET_NETWORK) {
                 switchNetworking(false);
@@ -2933,7 +3573,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
                 /*
                  * add device key into map
                  */
-                updateDeviceKeyMap(device.getNewAddress(), device.getDeviceKey());
+                updateDeviceKeyMap(device.getNewAddress(), device.getDeviceKey(), device.getElementCount());
 
 
                 /**
@@ -3041,6 +3681,7 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
      * - AUTO_CONNECT: Represents the mode where the device automatically scans, connects, and retrieves the state of a device.
      * - GATT_OTA: Represents the mode where the device automatically scans, connects, and starts over-the-air (OTA) firmware updates.
      * - MODE_BIND: Represents the mode where the device binds an application key to a target device without scanning.
+     * - MODE_BIND_BATCH: Represents the mode for binding several devices over the current proxy connection.
      * - REMOTE_PROVISION: Represents the mode for remote provisioning of a device.
      * - REMOTE_BIND: Represents the mode for remote binding of a device.
      * - FAST_PROVISION: Represents the mode for fast provisioning, a private feature specific to the Telink platform.
@@ -3083,11 +3724,21 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
          */
         MODE_BIND,
 
+        /**
+         * bind app key for several devices over the current proxy connection
+         */
+        MODE_BIND_BATCH,
+
         /**
          * remote provision
          */
         REMOTE_PROVISION,
 
+        /**
+         * remote provision for several devices concurrently
+         */
+        REMOTE_PROVISION_BATCH,
+
         /**
          * remote bind
          */
@@ -3130,4 +3781,14 @@ public final class MeshController implements ProvisioningBridge, NetworkingBridg
         MeshLogger.log(logMessage, LOG_TAG, level);
     }
 
+    /**
+     * check before building log message with hex string or format
+     *
+     * @param level log level
+     * @return if log enabled
+     */
+    private boolean isLoggable(int level) {
+        return MeshLogger.isLoggable(LOG_TAG, level);
+    }
+
 }
@@ -0,0 +1,662 @@
+/********************************************************************************************************
+ * @file MeshMessageQueue.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.foundation;
+
+import com.telink.ble.mesh.core.MeshUtils;
+import com.telink.ble.mesh.core.message.MeshMessage;
+import com.telink.ble.mesh.core.message.aggregator.AggregatorItem;
+import com.telink.ble.mesh.core.message.aggregator.OpcodeAggregatorSequenceMessage;
+import com.telink.ble.mesh.core.message.aggregator.OpcodeAggregatorStatusMessage;
+import com.telink.ble.mesh.core.networking.AccessType;
+import com.telink.ble.mesh.util.MeshLogger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * bounded outbound mesh message queue
+ * <p>
+ * {@link MeshService#sendMeshMessage(MeshMessage)} fails when a reliable or segmented message is in flight,
+ * messages in this queue are held until the sending slot is freed by
+ * {@link com.telink.ble.mesh.core.networking.NetworkingBridge#onReliableMessageComplete} or
+ * {@link com.telink.ble.mesh.core.networking.NetworkingBridge#onSegmentMessageComplete(boolean)}.
+ * <p>
+ * messages in {@link #PRIORITY_HIGH} lane are sent ahead of {@link #PRIORITY_NORMAL} lane,
+ * for example config messages ahead of bulk lighting commands.
+ * Callbacks are invoked on the thread which completes the message.
+ * <p>
+ * When {@link AggregatorSupport} is set, waiting messages to the same element with the same access key
+ * are sent in one {@link OpcodeAggregatorSequenceMessage}, and completed by the items in
+ * {@link OpcodeAggregatorStatusMessage}, see {@link #setAggregation(AggregatorSupport, long)}.
+ */
+public final class MeshMessageQueue {
+
+    private static final String LOG_TAG = "MessageQueue";
+
+    /**
+     * control traffic, such as config messages
+     */
+    public static final int PRIORITY_HIGH = 0;
+
+    /**
+     * common traffic, such as lighting commands
+     */
+    public static final int PRIORITY_NORMAL = 1;
+
+    /**
+     * reject the new message when the queue is full
+     */
+    public static final int OVERFLOW_REJECT = 0;
+
+    /**
+     * drop the oldest normal priority message when the queue is full,
+     * high priority messages are dropped only for another high priority message
+     */
+    public static final int OVERFLOW_DROP_OLDEST = 1;
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * time a message waits in queue for other messages to aggregate with
+     */
+    public static final long DEFAULT_AGGREGATION_WINDOW = 20;
+
+    /**
+     * max params length of aggregator sequence message, element address and items:
+     * 384 bytes upper transport pdu of 32 segments, minus 4 bytes TransMIC and 2 bytes opcode
+     */
+    private static final int MAX_AGGREGATOR_PARAMS_LENGTH = 378;
+
+    /**
+     * max aggregated messages waiting for status after sequence message complete
+     */
+    private static final int MAX_AWAITING_AGGREGATES = 8;
+
+    /**
+     * reliable message: response received
+     * unreliable message: message sent
+     */
+    public static final int RESULT_SUCCESS = 0;
+
+    /**
+     * reliable message: retry max without enough responses
+     * segmented message: segments not acknowledged
+     */
+    public static final int RESULT_FAIL = 1;
+
+    /**
+     * message refused by networking layer, for example: not login or access key not found
+     */
+    public static final int RESULT_SEND_ERROR = 2;
+
+    /**
+     * queue full with {@link #OVERFLOW_REJECT}
+     */
+    public static final int RESULT_REJECTED = 3;
+
+    /**
+     * queue full with {@link #OVERFLOW_DROP_OLDEST}
+     */
+    public static final int RESULT_DROPPED = 4;
+
+    /**
+     * queue cleared
+     */
+    public static final int RESULT_CANCELED = 5;
+
+    /**
+     * queued message complete callback
+     */
+    public interface Callback {
+        /**
+         * @param meshMessage queued message
+         * @param result      {@link #RESULT_SUCCESS} ...
+         * @param rspCount    received response count, only for reliable message
+         */
+        void onMessageComplete(MeshMessage meshMessage, int result, int rspCount);
+    }
+
+    /**
+     * provides opcodes aggregator support of destination node
+     */
+    public interface AggregatorSupport {
+        /**
+         * @param elementAddress destination element of queued message
+         * @return address of the element with opcodes aggregator server in the same node, 0 if not supported
+         */
+        int getAggregatorServerAddress(int elementAddress);
+    }
+
+    /**
+     * sends message by networking layer
+     */
+    interface Sender {
+        /**
+         * @return if message sent
+         */
+        boolean send(MeshMessage meshMessage);
+
+        /**
+         * @return true if no reliable or segmented message in flight
+         */
+        boolean isIdle();
+
+        /**
+         * run task on sending thread after delay,
+         * the task should not be removed by others, otherwise the aggregation window is closed only by next dispatch
+         *
+         * @return false if not posted
+         */
+        boolean postDelayed(Runnable task, long delay);
+    }
+
+    private final Sender sender;
+
+    private final Object LOCK = new Object();
+
+    /**
+     * waiting messages, index by priority
+     */
+    private final List<LinkedList<QueuedMessage>> lanes = new ArrayList<>(2);
+
+    /**
+     * sent reliable messages waiting for response
+     */
+    private final List<QueuedMessage> reliableMessages = new ArrayList<>();
+
+    /**
+     * sent unreliable segmented message waiting for block ack
+     */
+    private QueuedMessage segmentedMessage;
+
+    private int capacity = DEFAULT_CAPACITY;
+
+    private int overflowPolicy = OVERFLOW_REJECT;
+
+    /**
+     * increased when any message complete, used to check if sending slot changed during sending
+     */
+    private int completeGeneration = 0;
+
+    private boolean dispatching = false;
+
+    private boolean dispatchRequested = false;
+
+    private AggregatorSupport aggregatorSupport;
+
+    private long aggregationWindow = DEFAULT_AGGREGATION_WINDOW;
+
+    private boolean aggregationScheduled = false;
+
+    /**
+     * time the scheduled aggregation task should run at
+     */
+    private long aggregationDueTime = 0;
+
+    /**
+     * aggregated messages with sequence message complete, waiting for status items
+     */
+    private final LinkedList<QueuedMessage> awaitingAggregates = new LinkedList<>();
+
+    private final Runnable aggregationTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (LOCK) {
+                aggregationScheduled = false;
+            }
+            dispatch();
+        }
+    };
+
+    MeshMessageQueue(Sender sender) {
+        this.sender = sender;
+        // PRIORITY_HIGH, PRIORITY_NORMAL
+        this.lanes.add(new LinkedList<QueuedMessage>());
+        this.lanes.add(new LinkedList<QueuedMessage>());
+    }
+
+    /**
+     * @param capacity       max count of waiting messages
+     * @param overflowPolicy {@link #OVERFLOW_REJECT} or {@link #OVERFLOW_DROP_OLDEST}
+     */
+    void setCapacity(int capacity, int overflowPolicy) {
+        synchronized (LOCK) {
+            this.capacity = Math.max(1, capacity);
+            this.overflowPolicy = overflowPolicy;
+        }
+    }
+
+    /**
+     * @param support opcodes aggregator support of nodes, null to disable aggregation
+     * @param window  time a message waits for other messages to aggregate with, in milliseconds
+     */
+    void setAggregation(AggregatorSupport support, long window) {
+        synchronized (LOCK) {
+            this.aggregatorSupport = support;
+            this.aggregationWindow = Math.max(0, window);
+        }
+    }
+
+    /**
+     * @return count of waiting messages
+     */
+    int size() {
+        synchronized (LOCK) {
+            return lanes.get(PRIORITY_HIGH).size() + lanes.get(PRIORITY_NORMAL).size();
+        }
+    }
+
+    /**
+     * @param meshMessage message
+     * @param priority    {@link #PRIORITY_HIGH} or {@link #PRIORITY_NORMAL}
+     * @param callback    complete callback, nullable
+     * @return false if rejected
+     */
+    boolean enqueue(MeshMessage meshMessage, int priority, Callback callback) {
+        final QueuedMessage queued = new QueuedMessage(meshMessage, callback);
+        QueuedMessage dropped = null;
+        boolean accepted = true;
+        synchronized (LOCK) {
+            LinkedList<QueuedMessage> lane = priority == PRIORITY_HIGH ? lanes.get(PRIORITY_HIGH) : lanes.get(PRIORITY_NORMAL);
+            if (lanes.get(PRIORITY_HIGH).size() + lanes.get(PRIORITY_NORMAL).size() >= capacity) {
+                if (overflowPolicy == OVERFLOW_DROP_OLDEST) {
+                    if (lanes.get(PRIORITY_NORMAL).size() != 0) {
+                        dropped = lanes.get(PRIORITY_NORMAL).poll();
+                    } else if (lane == lanes.get(PRIORITY_HIGH)) {
+                        dropped = lanes.get(PRIORITY_HIGH).poll();
+                    }
+                }
+                accepted = dropped != null;
+            }
+            if (accepted) {
+                lane.add(queued);
+            }
+        }
+        if (dropped != null) {
+            log(String.format("message dropped: opcode-%06X", dropped.meshMessage.getOpcode()));
+            dropped.complete(RESULT_DROPPED, 0);
+        }
+        if (!accepted) {
+            log(String.format("message rejected: opcode-%06X", meshMessage.getOpcode()), MeshLogger.LEVEL_WARN);
+            queued.complete(RESULT_REJECTED, 0);
+            return false;
+        }
+        dispatch();
+        return true;
+    }
+
+    /**
+     * called when reliable message complete, then send next message
+     */
+    void onReliableMessageComplete(MeshMessage meshMessage, boolean success, int rspCount) {
+        QueuedMessage target = null;
+        synchronized (LOCK) {
+            completeGeneration++;
+            Iterator<QueuedMessage> iterator = reliableMessages.iterator();
+            while (iterator.hasNext()) {
+                QueuedMessage queued = iterator.next();
+                if (queued.meshMessage == meshMessage) {
+                    iterator.remove();
+                    target = queued;
+                    break;
+                }
+            }
+        }
+        if (target != null) {
+            if (success && target.parts != null) {
+                // status items are notified after the sequence message complete
+                QueuedMessage expired = null;
+                synchronized (LOCK) {
+                    awaitingAggregates.add(target);
+                    if (awaitingAggregates.size() > MAX_AWAITING_AGGREGATES) {
+                        expired = awaitingAggregates.poll();
+                    }
+                }
+                if (expired != null) {
+                    expired.complete(RESULT_FAIL, 0);
+                }
+            } else {
+                target.complete(success ? RESULT_SUCCESS : RESULT_FAIL, rspCount);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * called when opcodes aggregator status received,
+     * completes the aggregated messages by status items
+     *
+     * @param src           status source address
+     * @param statusMessage aggregator status
+     * @return true if status is for aggregated messages in this queue,
+     * the status items should be notified as received messages
+     */
+    boolean onAggregatorStatus(int src, OpcodeAggregatorStatusMessage statusMessage) {
+        QueuedMessage target = null;
+        synchronized (LOCK) {
+            for (Iterator<QueuedMessage> iterator = awaitingAggregates.iterator(); iterator.hasNext(); ) {
+                QueuedMessage queued = iterator.next();
+                if (queued.meshMessage.getDestinationAddress() == src
+                        && queued.parts.get(0).meshMessage.getDestinationAddress() == statusMessage.elementAddress) {
+                    iterator.remove();
+                    target = queued;
+                    break;
+                }
+            }
+        }
+        if (target == null) {
+            return false;
+        }
+        final List<AggregatorItem> items = statusMessage.statusItems;
+        final boolean[] used = new boolean[items == null ? 0 : items.size()];
+        for (QueuedMessage part : target.parts) {
+            MeshMessage meshMessage = part.meshMessage;
+            if (statusMessage.status != 0) {
+                part.complete(RESULT_FAIL, 0);
+            } else if (!meshMessage.isReliable()) {
+                part.complete(RESULT_SUCCESS, 0);
+            } else {
+                int rspCount = 0;
+                for (int i = 0; i < used.length; i++) {
+                    if (!used[i] && items.get(i).opcode == meshMessage.getResponseOpcode()) {
+                        used[i] = true;
+                        rspCount = 1;
+                        break;
+                    }
+                }
+                part.complete(rspCount == 0 ? RESULT_FAIL : RESULT_SUCCESS, rspCount);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * called when segmented message complete, then send next message
+     */
+    void onSegmentMessageComplete(boolean success) {
+        QueuedMessage target;
+        synchronized (LOCK) {
+            completeGeneration++;
+            target = segmentedMessage;
+            segmentedMessage = null;
+        }
+        if (target != null) {
+            target.complete(success ? RESULT_SUCCESS : RESULT_FAIL, 0);
+        }
+        dispatch();
+    }
+
+    /**
+     * called when networking cache cleared, for example: disconnected,
+     * messages in flight will not be completed by networking layer
+     */
+    void onNetworkCleared() {
+        List<QueuedMessage> sentMessages;
+        synchronized (LOCK) {
+            completeGeneration++;
+            sentMessages = new ArrayList<>(reliableMessages);
+            reliableMessages.clear();
+            sentMessages.addAll(awaitingAggregates);
+            awaitingAggregates.clear();
+            if (segmentedMessage != null) {
+                sentMessages.add(segmentedMessage);
+                segmentedMessage = null;
+            }
+        }
+        for (QueuedMessage queued : sentMessages) {
+            queued.complete(RESULT_FAIL, 0);
+        }
+        dispatch();
+    }
+
+    /**
+     * cancel all waiting messages
+     */
+    void clear() {
+        List<QueuedMessage> canceled = new ArrayList<>();
+        synchronized (LOCK) {
+            canceled.addAll(lanes.get(PRIORITY_HIGH));
+            canceled.addAll(lanes.get(PRIORITY_NORMAL));
+            lanes.get(PRIORITY_HIGH).clear();
+            lanes.get(PRIORITY_NORMAL).clear();
+        }
+        for (QueuedMessage queued : canceled) {
+            queued.complete(RESULT_CANCELED, 0);
+        }
+    }
+
+    /**
+     * send waiting messages until networking layer is busy,
+     * only one thread dispatches at one time, requests from other threads are merged
+     */
+    private void dispatch() {
+        synchronized (LOCK) {
+            if (dispatching) {
+                dispatchRequested = true;
+                return;
+            }
+            dispatching = true;
+        }
+        while (true) {
+            QueuedMessage queued;
+            LinkedList<QueuedMessage> lane;
+            final int generation;
+            synchronized (LOCK) {
+                dispatchRequested = false;
+                lane = lanes.get(PRIORITY_HIGH);
+                queued = pollMessage(lane);
+                if (queued == null) {
+                    // high lane empty or its head waiting for aggregation
+                    lane = lanes.get(PRIORITY_NORMAL);
+                    queued = pollMessage(lane);
+                }
+                if (queued == null) {
+                    dispatching = false;
+                    return;
+                }
+                generation = completeGeneration;
+                // message may complete before send returns
+                if (queued.meshMessage.isReliable()) {
+                    reliableMessages.add(queued);
+                }
+            }
+
+            final MeshMessage meshMessage = queued.meshMessage;
+            final boolean sent = sender.send(meshMessage);
+            boolean sendComplete = false;
+            boolean sendError = false;
+            synchronized (LOCK) {
+                if (sent) {
+                    if (!meshMessage.isReliable()) {
+                        if (meshMessage.isSegmented() && MeshUtils.validUnicastAddress(meshMessage.getDestinationAddress())) {
+                            segmentedMessage = queued;
+                        } else {
+                            sendComplete = true;
+                        }
+                    }
+                } else {
+                    reliableMessages.remove(queued);
+                    if (generation == completeGeneration && sender.isIdle()) {
+                        // not caused by busy
+                        sendError = true;
+                    } else {
+                        if (queued.parts != null) {
+                            // packed again when sent, with messages enqueued meanwhile
+                            for (int i = queued.parts.size() - 1; i >= 0; i--) {
+                                lane.addFirst(queued.parts.get(i));
+                            }
+                        } else {
+                            lane.addFirst(queued);
+                        }
+                        if (generation == completeGeneration && !dispatchRequested) {
+                            // waiting for message complete
+                            dispatching = false;
+                            return;
+                        }
+                    }
+                }
+            }
+            if (sendComplete) {
+                queued.complete(RESULT_SUCCESS, 0);
+            } else if (sendError) {
+                log(String.format("message send error: opcode-%06X", meshMessage.getOpcode()), MeshLogger.LEVEL_WARN);
+                queued.complete(RESULT_SEND_ERROR, 0);
+            }
+        }
+    }
+
+    /**
+     * poll the head message, or an aggregated message of the head and the following messages to the same element,
+     * packing stops at the first message can not be packed, so the order of messages in lane is kept.
+     * A lone head waits in lane until the aggregation window passed.
+     *
+     * @return null if lane is empty or the head is waiting for aggregation
+     */
+    private QueuedMessage pollMessage(LinkedList<QueuedMessage> lane) {
+        final QueuedMessage head = lane.poll();
+        if (head == null || aggregatorSupport == null || !isAggregatable(head.meshMessage)) {
+            return head;
+        }
+        final MeshMessage headMessage = head.meshMessage;
+        final int serverAddress = aggregatorSupport.getAggregatorServerAddress(headMessage.getDestinationAddress());
+        if (serverAddress == 0) {
+            return head;
+        }
+
+        List<QueuedMessage> parts = new ArrayList<>();
+        parts.add(head);
+        int length = 2 + getAggregatorItemLength(headMessage);
+        for (Iterator<QueuedMessage> iterator = lane.iterator(); iterator.hasNext(); ) {
+            QueuedMessage queued = iterator.next();
+            MeshMessage meshMessage = queued.meshMessage;
+            // only successive messages are packed, keeps order of messages in lane
+            if (meshMessage.getDestinationAddress() != headMessage.getDestinationAddress()
+                    || !isAggregatable(meshMessage) || meshMessage.getAccessType() != headMessage.getAccessType()
+                    || (meshMessage.getAccessType() == AccessType.APPLICATION && meshMessage.getAppKeyIndex() != headMessage.getAppKeyIndex())) {
+                break;
+            }
+            int itemLength = getAggregatorItemLength(meshMessage);
+            if (length + itemLength > MAX_AGGREGATOR_PARAMS_LENGTH) {
+                break;
+            }
+            length += itemLength;
+            parts.add(queued);
+            iterator.remove();
+        }
+
+        if (parts.size() == 1) {
+            final long now = System.currentTimeMillis();
+            final long wait = head.enqueueTime + aggregationWindow - now;
+            // following message can not be packed, no need to wait
+            if (wait <= 0 || lane.size() != 0) {
+                return head;
+            }
+            if (aggregationScheduled && now > aggregationDueTime + aggregationWindow) {
+                // task removed by the owner of sending thread
+                log("aggregation task lost", MeshLogger.LEVEL_WARN);
+                aggregationScheduled = false;
+            }
+            if (!aggregationScheduled) {
+                if (!sender.postDelayed(aggregationTask, wait)) {
+                    return head;
+                }
+                aggregationScheduled = true;
+                aggregationDueTime = now + wait;
+            }
+            lane.addFirst(head);
+            return null;
+        }
+
+        List<MeshMessage> meshMessages = new ArrayList<>(parts.size());
+        for (QueuedMessage part : parts) {
+            meshMessages.add(part.meshMessage);
+        }
+        byte[] params = MeshUtils.aggregateMessages(headMessage.getDestinationAddress(), meshMessages);
+        OpcodeAggregatorSequenceMessage sequenceMessage = new OpcodeAggregatorSequenceMessage(serverAddress,
+                headMessage.getAccessType(), headMessage.getAppKeyIndex(), params);
+        log(String.format("aggregate %d messages to element %04X", parts.size(), headMessage.getDestinationAddress()));
+        return new QueuedMessage(sequenceMessage, null, parts);
+    }
+
+    /**
+     * unicast access messages without TID, TID is managed by networking layer only for unaggregated message
+     */
+    private static boolean isAggregatable(MeshMessage meshMessage) {
+        return !(meshMessage instanceof OpcodeAggregatorSequenceMessage)
+                && meshMessage.getCtl() == MeshMessage.CTL_ACCESS
+                && meshMessage.getTidPosition() < 0
+                && MeshUtils.validUnicastAddress(meshMessage.getDestinationAddress());
+    }
+
+    /**
+     * @return length field, opcode and params
+     */
+    private static int getAggregatorItemLength(MeshMessage meshMessage) {
+        int length = new AggregatorItem(meshMessage.getOpcode(), meshMessage.getParams()).getLength();
+        return (length > 127 ? 2 : 1) + length;
+    }
+
+    private void log(String logMessage) {
+        log(logMessage, MeshLogger.LEVEL_DEBUG);
+    }
+
+    private void log(String logMessage, int level) {
+        MeshLogger.log(logMessage, LOG_TAG, level);
+    }
+
+    private static class QueuedMessage {
+        private final MeshMessage meshMessage;
+
+        private final Callback callback;
+
+        private final long enqueueTime = System.currentTimeMillis();
+
+        /**
+         * aggregated messages, not null if {@link #meshMessage} is an aggregator sequence message
+         */
+        private final List<QueuedMessage> parts;
+
+        QueuedMessage(MeshMessage meshMessage, Callback callback) {
+            this(meshMessage, callback, null);
+        }
+
+        QueuedMessage(MeshMessage meshMessage, Callback callback, List<QueuedMessage> parts) {
+            this.meshMessage = meshMessage;
+            this.callback = callback;
+            this.parts = parts;
+        }
+
+        void complete(int result, int rspCount) {
+            if (parts != null) {
+                for (QueuedMessage part : parts) {
+                    part.complete(result, 0);
+                }
+            }
+            if (callback != null) {
+                callback.onMessageComplete(meshMessage, result, rspCount);
+            }
+        }
+    }
+}
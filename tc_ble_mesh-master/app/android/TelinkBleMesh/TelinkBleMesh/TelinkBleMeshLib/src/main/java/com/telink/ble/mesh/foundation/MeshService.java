@@ -26,10 +26,20 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 
+import com.telink.ble.mesh.core.access.BindingScheduler;
+import com.telink.ble.mesh.core.access.CompositionDataCache;
+import com.telink.ble.mesh.core.access.RemoteProvisioningScheduler;
 import com.telink.ble.mesh.core.ble.GattConnection;
 import com.telink.ble.mesh.core.ble.GattRequest;
+import com.telink.ble.mesh.core.ble.ProxySelector;
 import com.telink.ble.mesh.core.message.MeshMessage;
 import com.telink.ble.mesh.core.networking.ExtendBearerMode;
+import com.telink.ble.mesh.core.networking.NetworkPacer;
+import com.telink.ble.mesh.core.networking.ReplayProtectionList;
+import com.telink.ble.mesh.core.provisioning.ProvisionerKeyPairPool;
+import com.telink.ble.mesh.core.provisioning.ProvisioningMetrics;
+import com.telink.ble.mesh.core.proxy.NodeIdentityResolver;
+import com.telink.ble.mesh.entity.BindingDevice;
 import com.telink.ble.mesh.entity.RemoteProvisioningDevice;
 import com.telink.ble.mesh.foundation.parameter.AutoConnectParameters;
 import com.telink.ble.mesh.foundation.parameter.BindingParameters;
@@ -42,6 +52,7 @@ import com.telink.ble.mesh.foundation.parameter.ScanParameters;
 import com.telink.ble.mesh.util.MeshLogger;
 
 import java.security.Security;
+import java.util.List;
 
 /**
  * Created by kee on 2019/8/26.
@@ -151,6 +162,16 @@ public class MeshService implements MeshController.EventCallback {
         mController.removeDevice(meshAddress);
     }
 
+    /**
+     * remove device in mesh configuration, and the replay protection entries of all its elements
+     *
+     * @param meshAddress  target device address
+     * @param elementCount element count of the device
+     */
+    public void removeDevice(int meshAddress, int elementCount) {
+        mController.removeDevice(meshAddress, elementCount);
+    }
+
     /**
      * get current action mode
      *
@@ -199,6 +220,32 @@ public class MeshService implements MeshController.EventCallback {
         mController.startBinding(bindingParameters);
     }
 
+    /**
+     * binding for several provisioned devices over the current proxy connection, devices are bound concurrently
+     * progress is posted by {@link com.telink.ble.mesh.foundation.event.BindingEvent#EVENT_TYPE_BIND_PROGRESS}
+     */
+    public void startBinding(List<BindingDevice> bindingDevices) {
+        mController.startBinding(bindingDevices);
+    }
+
+    /**
+     * @param concurrency max count of devices bound at the same time, default {@link BindingScheduler#DEFAULT_CONCURRENCY}
+     */
+    public void setBindingConcurrency(int concurrency) {
+        mController.setBindingConcurrency(concurrency);
+    }
+
+    public BindingScheduler.Progress getBindingProgress() {
+        return mController.getBindingProgress();
+    }
+
+    /**
+     * composition data of known products, updated after composition data get when binding
+     */
+    public CompositionDataCache getCompositionDataCache() {
+        return mController.getCompositionDataCache();
+    }
+
     /**
      * scanning an connecting proxy node for mesh control
      */
@@ -239,6 +286,32 @@ public class MeshService implements MeshController.EventCallback {
         return mController.continueRemoteProvision(address);
     }
 
+    /**
+     * remote provisioning for several devices, links through different servers run concurrently
+     * progress is posted by {@link com.telink.ble.mesh.foundation.event.RemoteProvisioningEvent#EVENT_TYPE_REMOTE_PROVISIONING_PROGRESS}
+     */
+    public void startRemoteProvisioning(List<RemoteProvisioningDevice> remoteProvisioningDevices) {
+        mController.startRemoteProvision(remoteProvisioningDevices);
+    }
+
+    /**
+     * continue a device in {@link #startRemoteProvisioning(List)} waiting after capability received
+     */
+    public boolean continueRemoteProvision(RemoteProvisioningDevice device, int address) {
+        return mController.continueRemoteProvision(device, address);
+    }
+
+    /**
+     * @param concurrency max count of concurrent links, default {@link RemoteProvisioningScheduler#DEFAULT_CONCURRENCY}
+     */
+    public void setRemoteProvisioningConcurrency(int concurrency) {
+        mController.setRemoteProvisioningConcurrency(concurrency);
+    }
+
+    public RemoteProvisioningScheduler.Progress getRemoteProvisioningProgress() {
+        return mController.getRemoteProvisioningProgress();
+    }
+
     /**
      * fast provision, [telink private]
      */
@@ -297,6 +370,48 @@ public class MeshService implements MeshController.EventCallback {
         return mController.sendMeshMessage(meshMessage);
     }
 
+    /**
+     * queue mesh message instead of failing when a reliable or segmented message is sending,
+     * queued message is sent when the sending slot is free, see {@link #sendMeshMessage(MeshMessage)}
+     *
+     * @param meshMessage message
+     * @param priority    {@link MeshMessageQueue#PRIORITY_HIGH} for control traffic such as config messages,
+     *                    {@link MeshMessageQueue#PRIORITY_NORMAL} for others
+     * @param callback    invoked when message complete, sent or dropped, nullable
+     * @return false if queue is full and message rejected
+     */
+    public boolean enqueueMeshMessage(MeshMessage meshMessage, int priority, MeshMessageQueue.Callback callback) {
+        if (meshMessage == null) return false;
+        return mController.enqueueMeshMessage(meshMessage, priority, callback);
+    }
+
+    /**
+     * @param capacity       max count of waiting messages, default {@link MeshMessageQueue#DEFAULT_CAPACITY}
+     * @param overflowPolicy {@link MeshMessageQueue#OVERFLOW_REJECT} or {@link MeshMessageQueue#OVERFLOW_DROP_OLDEST}
+     */
+    public void setMessageQueueCapacity(int capacity, int overflowPolicy) {
+        mController.setMessageQueueCapacity(capacity, overflowPolicy);
+    }
+
+    /**
+     * aggregate queued messages to the same element into opcodes aggregator sequence messages,
+     * responses are notified as separate status messages and complete the callback of each queued message
+     *
+     * @param support opcodes aggregator support of nodes, null to disable aggregation
+     * @param window  time a queued message waits for other messages to aggregate with,
+     *                {@link MeshMessageQueue#DEFAULT_AGGREGATION_WINDOW} suggested
+     */
+    public void setOpcodeAggregation(MeshMessageQueue.AggregatorSupport support, long window) {
+        mController.setOpcodeAggregation(support, window);
+    }
+
+    /**
+     * cancel all waiting messages in queue
+     */
+    public void clearMessageQueue() {
+        mController.clearMessageQueue();
+    }
+
     /**
      * Telink-private protocol.
      * get all devices status by send command to OnlineStatus handle
@@ -316,6 +431,108 @@ public class MeshService implements MeshController.EventCallback {
         mController.resetExtendBearerMode(extendBearerMode);
     }
 
+    /**
+     * pipeline reliable messages to different nodes,
+     * messages in flight should have different destination address or response opcode
+     *
+     * @param limit max count of reliable messages sent at one time,
+     *              default is {@link com.telink.ble.mesh.core.networking.NetworkingController#DEFAULT_RELIABLE_MESSAGE_LIMIT}
+     */
+    public void setReliableMessageLimit(int limit) {
+        mController.setReliableMessageLimit(limit);
+    }
+
+    /**
+     * add or replace app key after {@link #setupMeshNetwork(MeshConfiguration)},
+     * the AID of the key is computed once and used to select keys when decrypting
+     *
+     * @param appKeyIndex app key index
+     * @param appKey      app key
+     */
+    public void putAppKey(int appKeyIndex, byte[] appKey) {
+        mController.putAppKey(appKeyIndex, appKey);
+    }
+
+    /**
+     * @param appKeyIndex app key index
+     */
+    public void removeAppKey(int appKeyIndex) {
+        mController.removeAppKey(appKeyIndex);
+    }
+
+    /**
+     * adapt network pdu sending interval to observed congestion:
+     * decreased on response or block ack received, increased on retry, timeout or segments missing,
+     * bounded by {@link com.telink.ble.mesh.core.networking.NetworkingController#netPktSendInterval}
+     *
+     * @param enabled default is false
+     */
+    public void setAdaptivePacingEnabled(boolean enabled) {
+        mController.setAdaptivePacingEnabled(enabled);
+    }
+
+    /**
+     * segmented messages from different nodes, such as composition data or blob block status, are received in parallel,
+     * segment busy ack is sent when either limit is reached
+     *
+     * @param concurrency  max count of segmented messages received at the same time,
+     *                     default is {@link com.telink.ble.mesh.core.networking.NetworkingController#DEFAULT_SEGMENTED_RX_CONCURRENCY}
+     * @param memoryBudget max bytes of received segments buffered,
+     *                     default is {@link com.telink.ble.mesh.core.networking.NetworkingController#DEFAULT_SEGMENTED_RX_MEMORY_BUDGET}
+     */
+    public void setSegmentedRxLimits(int concurrency, int memoryBudget) {
+        mController.setSegmentedRxLimits(concurrency, memoryBudget);
+    }
+
+    /**
+     * @return pacer with current sending interval and decision history, null if not started
+     */
+    public NetworkPacer getNetworkPacer() {
+        return mController.getNetworkPacer();
+    }
+
+    /**
+     * used in auto connect, parallelism and cache hit count can be set and read
+     *
+     * @return resolver of node identity advertising
+     */
+    public NodeIdentityResolver getNodeIdentityResolver() {
+        return mController.getNodeIdentityResolver();
+    }
+
+    /**
+     * pregenerated key pairs are used for back-to-back provisioning,
+     * pool size and key pair reusing for No OOB provisioning can be set
+     *
+     * @return provisioner key pair pool, null if not started
+     */
+    public ProvisionerKeyPairPool getProvisionerKeyPairPool() {
+        return mController.getProvisionerKeyPairPool();
+    }
+
+    /**
+     * @return time spent in each phase of last and all provisioning, null if not started
+     */
+    public ProvisioningMetrics getProvisioningMetrics() {
+        return mController.getProvisioningMetrics();
+    }
+
+    /**
+     * used in auto connect, validation and duplicate advertisement count can be read
+     *
+     * @return proxy selector
+     */
+    public ProxySelector getProxySelector() {
+        return mController.getProxySelector();
+    }
+
+    /**
+     * @return replay protection list with rejected pdu count, null if not started
+     */
+    public ReplayProtectionList getReplayProtectionList() {
+        return mController.getReplayProtectionList();
+    }
+
     /********************************************************************************
      * bluetooth api
      ********************************************************************************/
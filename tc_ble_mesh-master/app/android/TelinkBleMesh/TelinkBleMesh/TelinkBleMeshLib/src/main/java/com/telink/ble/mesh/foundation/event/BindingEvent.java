@@ -24,6 +24,7 @@ package com.telink.ble.mesh.foundation.event;
 
 import android.os.Parcel;
 
+import com.telink.ble.mesh.core.access.BindingScheduler;
 import com.telink.ble.mesh.entity.BindingDevice;
 import com.telink.ble.mesh.foundation.Event;
 
@@ -36,8 +37,19 @@ public class BindingEvent extends Event<String> {
     public static final String EVENT_TYPE_BIND_SUCCESS = "com.telink.ble.mesh.EVENT_TYPE_BIND_SUCCESS";
     public static final String EVENT_TYPE_BIND_FAIL = "com.telink.ble.mesh.EVENT_TYPE_BIND_FAIL";
 
+    /**
+     * a device complete when binding several devices, with {@link #getProgress()}
+     */
+    public static final String EVENT_TYPE_BIND_PROGRESS = "com.telink.ble.mesh.EVENT_TYPE_BIND_PROGRESS";
+
+    /**
+     * all devices complete when binding several devices, with {@link #getProgress()}
+     */
+    public static final String EVENT_TYPE_BIND_ALL_COMPLETE = "com.telink.ble.mesh.EVENT_TYPE_BIND_ALL_COMPLETE";
+
     private BindingDevice bindingDevice; // The device being bound
     private String desc; // Description of the event
+    private BindingScheduler.Progress progress;
 
     /**
      * Constructor for the BindingEvent class.
@@ -61,6 +73,10 @@ public class BindingEvent extends Event<String> {
     protected BindingEvent(Parcel in) {
         bindingDevice = in.readParcelable(BindingDevice.class.getClassLoader());
         desc = in.readString();
+        if (in.readByte() != 0) {
+            progress = new BindingScheduler.Progress(in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt(), in.readInt(), in.readLong());
+        }
     }
 
     /**
@@ -124,5 +140,25 @@ public class BindingEvent extends Event<String> {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeParcelable(bindingDevice, flags);
         dest.writeString(desc);
+        dest.writeByte((byte) (progress == null ? 0 : 1));
+        if (progress != null) {
+            dest.writeInt(progress.total);
+            dest.writeInt(progress.success);
+            dest.writeInt(progress.fail);
+            dest.writeInt(progress.active);
+            dest.writeInt(progress.waiting);
+            dest.writeLong(progress.elapsed);
+        }
+    }
+
+    /**
+     * @return progress of all devices, null if not binding several devices
+     */
+    public BindingScheduler.Progress getProgress() {
+        return progress;
+    }
+
+    public void setProgress(BindingScheduler.Progress progress) {
+        this.progress = progress;
     }
 }
\ No newline at end of file
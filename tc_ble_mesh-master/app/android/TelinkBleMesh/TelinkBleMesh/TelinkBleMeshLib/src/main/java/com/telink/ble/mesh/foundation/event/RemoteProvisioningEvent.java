@@ -24,6 +24,7 @@ package com.telink.ble.mesh.foundation.event;
 
 import android.os.Parcel;
 
+import com.telink.ble.mesh.core.access.RemoteProvisioningScheduler;
 import com.telink.ble.mesh.entity.RemoteProvisioningDevice;
 import com.telink.ble.mesh.foundation.Event;
 
@@ -45,8 +46,19 @@ public class RemoteProvisioningEvent extends Event<String> {
 
     public static final String EVENT_TYPE_REMOTE_CAPABILITY_RECEIVED = "com.telink.sig.mesh.EVENT_TYPE_REMOTE_CAPABILITY_RECEIVED";
 
+    /**
+     * a device complete when provisioning several devices, with {@link #getProgress()}
+     */
+    public static final String EVENT_TYPE_REMOTE_PROVISIONING_PROGRESS = "com.telink.sig.mesh.EVENT_TYPE_REMOTE_PROVISIONING_PROGRESS";
+
+    /**
+     * all devices complete when provisioning several devices, with {@link #getProgress()}
+     */
+    public static final String EVENT_TYPE_REMOTE_PROVISIONING_ALL_COMPLETE = "com.telink.sig.mesh.EVENT_TYPE_REMOTE_PROVISIONING_ALL_COMPLETE";
+
     private RemoteProvisioningDevice remoteProvisioningDevice;
     private String desc;
+    private RemoteProvisioningScheduler.Progress progress;
 
     /**
      * Constructor for the RemoteProvisioningEvent class.
@@ -66,6 +78,10 @@ public class RemoteProvisioningEvent extends Event<String> {
     protected RemoteProvisioningEvent(Parcel in) {
         remoteProvisioningDevice = in.readParcelable(RemoteProvisioningDevice.class.getClassLoader());
         desc = in.readString();
+        if (in.readByte() != 0) {
+            progress = new RemoteProvisioningScheduler.Progress(in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt(), in.readInt(), in.readLong());
+        }
     }
 
     /**
@@ -98,6 +114,15 @@ public class RemoteProvisioningEvent extends Event<String> {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeParcelable(remoteProvisioningDevice, flags);
         dest.writeString(desc);
+        dest.writeByte((byte) (progress == null ? 0 : 1));
+        if (progress != null) {
+            dest.writeInt(progress.total);
+            dest.writeInt(progress.success);
+            dest.writeInt(progress.fail);
+            dest.writeInt(progress.active);
+            dest.writeInt(progress.waiting);
+            dest.writeLong(progress.elapsed);
+        }
     }
 
     /**
@@ -135,4 +160,15 @@ public class RemoteProvisioningEvent extends Event<String> {
     public void setDesc(String desc) {
         this.desc = desc;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return progress of all devices, null if not provisioning several devices
+     */
+    public RemoteProvisioningScheduler.Progress getProgress() {
+        return progress;
+    }
+
+    public void setProgress(RemoteProvisioningScheduler.Progress progress) {
+        this.progress = progress;
+    }
+}
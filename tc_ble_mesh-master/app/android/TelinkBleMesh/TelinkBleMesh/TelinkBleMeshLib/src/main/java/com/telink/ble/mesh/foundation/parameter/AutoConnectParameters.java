@@ -22,6 +22,7 @@
  *******************************************************************************************************/
 package com.telink.ble.mesh.foundation.parameter;
 
+import com.telink.ble.mesh.core.ble.ProxySelector;
 import com.telink.ble.mesh.core.ble.UUIDInfo;
 
 /**
@@ -33,4 +34,12 @@ public class AutoConnectParameters extends Parameters {
     public AutoConnectParameters() {
         this.setScanFilter(createScanFilter(UUIDInfo.SERVICE_PROXY));
     }
+
+    /**
+     * @param window proxy selecting window in milliseconds, default {@link ProxySelector#DEFAULT_WINDOW},
+     *               the proxy with the best rssi in the window is connected, 0 means connect the first matched proxy
+     */
+    public void setProxySelectWindow(long window) {
+        this.set(ACTION_AUTO_CONNECT_SELECT_WINDOW, window);
+    }
 }
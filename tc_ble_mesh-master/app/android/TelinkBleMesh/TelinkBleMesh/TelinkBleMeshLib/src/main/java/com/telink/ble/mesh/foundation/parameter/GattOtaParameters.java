@@ -23,6 +23,7 @@
 package com.telink.ble.mesh.foundation.parameter;
 
 import com.telink.ble.mesh.entity.ConnectionFilter;
+import com.telink.ble.mesh.util.FirmwareSource;
 
 /**
  * This class represents the parameters for GATT OTA (Over-The-Air) functionality.
@@ -42,12 +43,41 @@ public class GattOtaParameters extends Parameters {
         this.setFirmware(firmware);
     }
 
+    /**
+     * Constructs a new GattOtaParameters object with firmware read from source.
+     *
+     * @param filter   The connection filter to be used.
+     * @param firmware The firmware source, such as a mapped firmware file.
+     */
+    public GattOtaParameters(ConnectionFilter filter, FirmwareSource firmware) {
+        this.set(COMMON_PROXY_FILTER_INIT_NEEDED, true);
+        this.set(ACTION_CONNECTION_FILTER, filter);
+        this.setFirmware(firmware);
+    }
+
     /**
      * Sets the firmware for OTA.
      *
      * @param firmware The firmware to be used for OTA.
      */
     public void setFirmware(byte[] firmware) {
+        this.setFirmware(firmware == null ? null : FirmwareSource.wrap(firmware));
+    }
+
+    /**
+     * Sets the firmware source for OTA.
+     *
+     * @param firmware The firmware source to be used for OTA.
+     */
+    public void setFirmware(FirmwareSource firmware) {
         this.set(ACTION_OTA_FIRMWARE, firmware);
     }
-}
\ No newline at end of file
+
+    /**
+     * @param extendEnabled if true, firmware is sent in packets as large as MTU allows,
+     *                      the device should support ota start extend command
+     */
+    public void setExtendEnabled(boolean extendEnabled) {
+        this.set(ACTION_OTA_EXTEND_ENABLE, extendEnabled);
+    }
+}
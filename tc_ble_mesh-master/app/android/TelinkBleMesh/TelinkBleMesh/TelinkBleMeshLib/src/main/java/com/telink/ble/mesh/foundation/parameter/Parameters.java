@@ -92,11 +92,19 @@ public class Parameters {
 
     public static final String ACTION_AUTO_CONNECT_NETWORK_KEY = "com.telink.ble.mesh.light.ACTION_AUTO_CONNECT_NETWORK_KEY";
 
+    // long: proxy selecting window in milliseconds, 0 means connect the first matched proxy
+    public static final String ACTION_AUTO_CONNECT_SELECT_WINDOW = "com.telink.ble.mesh.light.ACTION_AUTO_CONNECT_SELECT_WINDOW";
+
     /**
      * OTA firmware
      */
     public static final String ACTION_OTA_FIRMWARE = "com.telink.ble.mesh.light.ACTION_OTA_FIRMWARE";
 
+    /**
+     * OTA with extend packet length chosen by MTU, boolean
+     */
+    public static final String ACTION_OTA_EXTEND_ENABLE = "com.telink.ble.mesh.light.ACTION_OTA_EXTEND_ENABLE";
+
     /**
      * target filter for direct mesh connection
      */
@@ -0,0 +1,163 @@
+/********************************************************************************************************
+ * @file FirmwareSource.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.util;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * firmware image read by offset, used by gatt ota and mesh ota (blob transfer)
+ * <p>
+ * File images are memory mapped, so blocks and chunks are read directly from the page cache
+ * into the packet or chunk buffer, without keeping a copy of the whole image on the heap.
+ */
+public abstract class FirmwareSource implements Closeable {
+
+    /**
+     * scratch length used when computing checksum
+     */
+    private static final int CHECKSUM_BUFFER_LEN = 1024;
+
+    private byte[] checksumBuffer;
+
+    /**
+     * @return image size in bytes
+     */
+    public abstract int size();
+
+    /**
+     * copy image bytes at offset into dst, range should be inside the image
+     */
+    public abstract void read(int offset, byte[] dst, int dstOffset, int length);
+
+    /**
+     * @return image bytes in range
+     */
+    public byte[] read(int offset, int length) {
+        byte[] data = new byte[length];
+        read(offset, data, 0, length);
+        return data;
+    }
+
+    /**
+     * update checksum with image bytes in range, data is read through a reused scratch buffer
+     */
+    public synchronized void update(CRC32 crc32, int offset, int length) {
+        if (checksumBuffer == null) {
+            checksumBuffer = new byte[CHECKSUM_BUFFER_LEN];
+        }
+        int end = offset + length;
+        while (offset < end) {
+            int len = Math.min(CHECKSUM_BUFFER_LEN, end - offset);
+            read(offset, checksumBuffer, 0, len);
+            crc32.update(checksumBuffer, 0, len);
+            offset += len;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * source backed by byte array, the array is not copied
+     */
+    public static FirmwareSource wrap(byte[] data) {
+        return new ArraySource(data);
+    }
+
+    /**
+     * map firmware file as read only
+     */
+    public static FirmwareSource open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return map(raf.getChannel());
+        } finally {
+            // mapping is still valid after channel closed
+            raf.close();
+        }
+    }
+
+    /**
+     * map firmware from file descriptor, such as the one opened by ContentResolver for a document uri,
+     * the descriptor is still owned by caller
+     */
+    public static FirmwareSource open(ParcelFileDescriptor descriptor) throws IOException {
+        FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+        return map(channel);
+    }
+
+    private static FirmwareSource map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("firmware too large: " + size);
+        }
+        return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+
+    private static class ArraySource extends FirmwareSource {
+        private final byte[] data;
+
+        ArraySource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int size() {
+            return data.length;
+        }
+
+        @Override
+        public void read(int offset, byte[] dst, int dstOffset, int length) {
+            System.arraycopy(data, offset, dst, dstOffset, length);
+        }
+    }
+
+    private static class MappedSource extends FirmwareSource {
+        private final ByteBuffer buffer;
+
+        MappedSource(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int size() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public synchronized void read(int offset, byte[] dst, int dstOffset, int length) {
+            buffer.position(offset);
+            buffer.get(dst, dstOffset, length);
+        }
+    }
+}
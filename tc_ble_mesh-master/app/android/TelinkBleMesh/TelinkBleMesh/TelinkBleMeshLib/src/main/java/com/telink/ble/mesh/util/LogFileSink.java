@@ -0,0 +1,153 @@
+/********************************************************************************************************
+ * @file LogFileSink.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * append logs to file in a background thread,
+ * logs are dropped when the queue is full, so logging never blocks the caller
+ */
+public class LogFileSink {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final File file;
+
+    private final BlockingQueue<LogInfo> queue;
+
+    private volatile boolean running = false;
+
+    /**
+     * logs may be offered by several threads at once
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private Thread writerThread;
+
+    /**
+     * @param file target file, logs are appended
+     */
+    public LogFileSink(File file) {
+        this(file, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param file          target file, logs are appended
+     * @param queueCapacity max count of logs waiting for writing
+     */
+    public LogFileSink(File file, int queueCapacity) {
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "MeshLogFileSink");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * stop writing, waiting logs are flushed
+     */
+    public synchronized void stop() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            writerThread = null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return count of logs dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return false if dropped
+     */
+    boolean offer(LogInfo logInfo) {
+        if (!running) return false;
+        if (!queue.offer(logInfo)) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault());
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(file, true));
+            LogInfo logInfo;
+            while (running || !queue.isEmpty()) {
+                try {
+                    logInfo = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    logInfo = queue.poll();
+                }
+                if (logInfo == null) {
+                    writer.flush();
+                    continue;
+                }
+                writer.append(dateFormat.format(logInfo.millis)).append("/").append(logInfo.tag).append(":")
+                        .append(logInfo.logMessage).append("\n");
+            }
+            writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+            running = false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
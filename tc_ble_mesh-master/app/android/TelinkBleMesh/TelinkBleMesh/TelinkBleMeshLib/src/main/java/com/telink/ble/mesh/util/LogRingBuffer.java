@@ -0,0 +1,95 @@
+/********************************************************************************************************
+ * @file LogRingBuffer.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date Sep. 30, 2017
+ *
+ * @par Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * bounded lock-free log record, the oldest log is overwritten when full
+ */
+public class LogRingBuffer {
+
+    private final AtomicReferenceArray<LogInfo> slots;
+
+    private final int mask;
+
+    /**
+     * total count of added logs
+     */
+    private final AtomicLong writeIndex = new AtomicLong(0);
+
+    /**
+     * logs before this index are cleared
+     */
+    private volatile long clearIndex = 0;
+
+    /**
+     * @param capacity max log count, rounded up to power of 2
+     */
+    public LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public void add(LogInfo logInfo) {
+        long index = writeIndex.getAndIncrement();
+        slots.set((int) (index & mask), logInfo);
+    }
+
+    /**
+     * @return count of logs overwritten since created
+     */
+    public long getOverwrittenCount() {
+        return Math.max(0, writeIndex.get() - slots.length());
+    }
+
+    /**
+     * @return logs, oldest first
+     */
+    public List<LogInfo> snapshot() {
+        final long end = writeIndex.get();
+        final long start = Math.max(clearIndex, end - slots.length());
+        List<LogInfo> logs = new ArrayList<>((int) (end - start));
+        LogInfo logInfo;
+        for (long i = start; i < end; i++) {
+            logInfo = slots.get((int) (i & mask));
+            // null if writing is not finished
+            if (logInfo != null) {
+                logs.add(logInfo);
+            }
+        }
+        return logs;
+    }
+
+    public void clear() {
+        clearIndex = writeIndex.get();
+    }
+}
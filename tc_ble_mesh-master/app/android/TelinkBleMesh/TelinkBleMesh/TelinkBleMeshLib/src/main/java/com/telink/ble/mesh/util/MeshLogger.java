@@ -24,8 +24,10 @@ package com.telink.ble.mesh.util;
 
 import android.util.Log;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * used to output and cache log information
@@ -57,10 +59,24 @@ public class MeshLogger {
      */
     public static final int LEVEL_ERROR = 4;
 
+    public static final int DEFAULT_RECORD_CAPACITY = 8 * 1024;
+
+    /**
+     * used to cache recent logs
+     */
+    private static volatile LogRingBuffer recorder = new LogRingBuffer(DEFAULT_RECORD_CAPACITY);
+
+    /**
+     * min level of logs to output, cache and write, verbose logs are dropped by default
+     */
+    private static volatile int minLevel = LEVEL_DEBUG;
+
     /**
-     * used to cache log info list
+     * min level by tag, such as "Networking" or "GATT", overrides {@link #minLevel}
      */
-    public static List<LogInfo> logInfoList = new ArrayList<>();
+    private static final Map<String, Integer> tagLevels = new ConcurrentHashMap<>();
+
+    private static volatile LogFileSink fileSink;
 
     /**
      * default log tag
@@ -99,6 +115,81 @@ public class MeshLogger {
         print = enable;
     }
 
+    /**
+     * @param level logs below this level are ignored, default is {@link #LEVEL_DEBUG}
+     */
+    public static void setLevel(int level) {
+        minLevel = level;
+    }
+
+    /**
+     * @param tag   log tag of subsystem, for example: "Networking", "GATT"
+     * @param level logs with this tag below this level are ignored
+     */
+    public static void setLevel(String tag, int level) {
+        tagLevels.put(tag, level);
+    }
+
+    /**
+     * @param tag log tag, use global level instead
+     */
+    public static void resetLevel(String tag) {
+        tagLevels.remove(tag);
+    }
+
+    /**
+     * check before building expensive log message, such as hex string of payload
+     *
+     * @return true if log with the tag and level will be output, cached or written
+     */
+    public static boolean isLoggable(String tag, int level) {
+        if (!print && !record && fileSink == null) {
+            return false;
+        }
+        Integer tagLevel = tagLevels.isEmpty() ? null : tagLevels.get(tag);
+        return level >= (tagLevel == null ? minLevel : tagLevel);
+    }
+
+    /**
+     * @param capacity max count of cached logs, the oldest log is overwritten when full
+     */
+    public static void setRecordCapacity(int capacity) {
+        recorder = new LogRingBuffer(capacity);
+    }
+
+    /**
+     * @return cached logs, oldest first
+     */
+    public static List<LogInfo> getLogInfoList() {
+        return recorder.snapshot();
+    }
+
+    public static void clearLogInfo() {
+        recorder.clear();
+    }
+
+    /**
+     * @param sink started file sink, or null to stop writing file
+     */
+    public static void setFileSink(LogFileSink sink) {
+        LogFileSink former = fileSink;
+        fileSink = sink;
+        if (former != null && former != sink) {
+            former.stop();
+        }
+    }
+
+    /**
+     * message formatted only if loggable
+     *
+     * @see String#format(Locale, String, Object...)
+     */
+    public static void log(String tag, int level, String format, Object... args) {
+        if (isLoggable(tag, level)) {
+            log(String.format(Locale.getDefault(), format, args), tag, level);
+        }
+    }
+
     public static void log(String logMessage) {
         log(logMessage, DEFAULT_TAG);
     }
@@ -134,6 +225,9 @@ public class MeshLogger {
 
 
     public static void log(String logMessage, String tag, int level) {
+        if (!isLoggable(tag, level)) {
+            return;
+        }
         if (print) {
             switch (level) {
                 case LEVEL_VERBOSE:
@@ -157,8 +251,15 @@ public class MeshLogger {
             }
         }
 
-        if (record) {
-            logInfoList.add(new LogInfo(tag, logMessage, level));
+        final LogFileSink sink = fileSink;
+        if (record || sink != null) {
+            LogInfo logInfo = new LogInfo(tag, logMessage, level);
+            if (record) {
+                recorder.add(logInfo);
+            }
+            if (sink != null) {
+                sink.offer(logInfo);
+            }
         }
     }
 }
@@ -29,9 +29,37 @@ package com.telink.ble.mesh.util;
  * The class keeps track of the progress and index of the packets.
  */
 public class OtaPacketParser {
+
+    /**
+     * data length in legacy ota packet
+     */
+    public static final int UNIT_SIZE = 16;
+
+    /**
+     * max data length in extend ota packet, limited by device
+     */
+    public static final int MAX_PDU_LENGTH = 240;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
     private int total;
+
+    /**
+     * data length in each packet, multiple of {@link #UNIT_SIZE}
+     */
+    private int pduLength = UNIT_SIZE;
     private int index = -1;
-    private byte[] data;
+    private FirmwareSource source;
     private int progress;
 
     /**
@@ -44,15 +72,35 @@ public class OtaPacketParser {
      * @param data The byte array representing the data to be parsed.
      */
     public void set(byte[] data) {
+        set(data, UNIT_SIZE);
+    }
+
+    /**
+     * set data with extend packet length,
+     * packet format: index(2 bytes) + data(pduLength bytes, filled with 0xFF) + crc16(2 bytes)
+     *
+     * @param pduLength data length in each packet, multiple of {@link #UNIT_SIZE}, max {@link #MAX_PDU_LENGTH}
+     */
+    public void set(byte[] data, int pduLength) {
+        set(FirmwareSource.wrap(data), pduLength);
+    }
+
+    /**
+     * set firmware source, packet data is read from source directly into each packet
+     */
+    public void set(FirmwareSource source, int pduLength) {
         this.clear();
-        this.data = data;
-        int length = this.data.length;
-        int size = 16;
-        if (length % size == 0) {
-            total = length / size;
-        } else {
-            total = (int) Math.floor(length / size + 1);
-        }
+        this.source = source;
+        this.pduLength = Math.max(UNIT_SIZE, Math.min(MAX_PDU_LENGTH, pduLength / UNIT_SIZE * UNIT_SIZE));
+        int length = source.size();
+        total = (length + this.pduLength - 1) / this.pduLength;
+    }
+
+    /**
+     * @return data length in each packet
+     */
+    public int getPduLength() {
+        return pduLength;
     }
 
     /**
@@ -64,7 +112,8 @@ public class OtaPacketParser {
         this.progress = 0;
         this.total = 0;
         this.index = -1;
-        this.data = null;
+        this.source = null;
+        this.pduLength = UNIT_SIZE;
     }
 
     /**
@@ -114,28 +163,17 @@ public class OtaPacketParser {
      * @return The byte array representing the packet.
      */
     public byte[] getPacket(int index) {
-        int length = this.data.length;
-        int size = 16;
-        int packetSize;
-        if (length > size) {
-            if ((index + 1) == this.total) {
-                packetSize = length - index * size;
-            } else {
-                packetSize = size;
-            }
-        } else {
-            packetSize = length;
-        }
-        packetSize = packetSize + 4;
-        byte[] packet = new byte[20];
-        for (int i = 0; i < 20; i++) {
-            packet[i] = (byte) 0xFF;
-        }
-        System.arraycopy(this.data, index * size, packet, 2, packetSize - 4);
+        int offset = index * pduLength;
+        int dataSize = Math.min(pduLength, this.source.size() - offset);
+        byte[] packet = new byte[pduLength + 4];
+        this.source.read(offset, packet, 2, dataSize);
+        java.util.Arrays.fill(packet, 2 + dataSize, pduLength + 2, (byte) 0xFF);
         this.fillIndex(packet, index);
         int crc = this.crc16(packet);
         this.fillCrc(packet, crc);
-        MeshLogger.log("ota packet ---> index : " + index + " total : " + this.total + " crc : " + crc + " content : " + Arrays.bytesToHexString(packet, ":"));
+        if (MeshLogger.isLoggable(MeshLogger.DEFAULT_TAG, MeshLogger.DEFAULT_LEVEL)) {
+            MeshLogger.log("ota packet ---> index : " + index + " total : " + this.total + " crc : " + crc + " content : " + Arrays.bytesToHexString(packet, ":"));
+        }
         return packet;
     }
 
@@ -153,7 +191,9 @@ public class OtaPacketParser {
         this.fillIndex(packet, index);
         int crc = this.crc16(packet);
         this.fillCrc(packet, crc);
-        MeshLogger.log("ota check packet ---> index : " + index + " crc : " + crc + " content : " + Arrays.bytesToHexString(packet, ":"));
+        if (MeshLogger.isLoggable(MeshLogger.DEFAULT_TAG, MeshLogger.DEFAULT_LEVEL)) {
+            MeshLogger.log("ota check packet ---> index : " + index + " crc : " + crc + " content : " + Arrays.bytesToHexString(packet, ":"));
+        }
         return packet;
     }
 
@@ -188,16 +228,21 @@ public class OtaPacketParser {
      * @return The CRC value.
      */
     public int crc16(byte[] packet) {
-        int length = packet.length - 2;
-        short[] poly = new short[]{0, (short) 0xA001};
+        return crc16(packet, 0, packet.length - 2);
+    }
+
+    /**
+     * CRC-16/MODBUS, table driven
+     *
+     * @param data   source
+     * @param offset start offset
+     * @param length byte count
+     * @return The CRC value.
+     */
+    public static int crc16(byte[] data, int offset, int length) {
         int crc = 0xFFFF;
-        int ds;
-        for (int j = 0; j < length; j++) {
-            ds = packet[j];
-            for (int i = 0; i < 8; i++) {
-                crc = (crc >> 1) ^ poly[(crc ^ ds) & 1] & 0xFFFF;
-                ds = ds >> 1;
-            }
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = (crc >>> 8) ^ CRC_TABLE[(crc ^ data[i]) & 0xFF];
         }
         return crc;
     }
@@ -24,22 +24,61 @@ package com.telink.ble.mesh;
 
 import com.telink.ble.mesh.core.Encipher;
 import com.telink.ble.mesh.core.MeshUtils;
+import com.telink.ble.mesh.core.access.CompositionDataCache;
 import com.telink.ble.mesh.core.access.MeshFirmwareParser;
-import com.telink.ble.mesh.core.message.aggregator.AggregatorItem;
+import com.telink.ble.mesh.core.ble.MeshScanRecord;
+import com.telink.ble.mesh.core.ble.ProxySelector;
+import com.telink.ble.mesh.core.message.MeshMessage;
+import com.telink.ble.mesh.core.message.Opcode;
+import com.telink.ble.mesh.core.message.aggregator.OpcodeAggregatorStatusMessage;
+import com.telink.ble.mesh.core.networking.NetworkLayerPDU;
+import com.telink.ble.mesh.core.networking.ParseContext;
+import com.telink.ble.mesh.core.networking.ReplayProtectionList;
+import com.telink.ble.mesh.core.networking.SegmentedRxTable;
 import com.telink.ble.mesh.core.networking.beacon.MeshPrivateBeacon;
+import com.telink.ble.mesh.core.networking.transport.lower.SegmentedAccessMessagePDU;
+import com.telink.ble.mesh.core.provisioning.ProvisionerKeyPairPool;
+import com.telink.ble.mesh.core.proxy.NodeIdentityResolver;
+import com.telink.ble.mesh.core.proxy.ProxySarReassembler;
+import com.telink.ble.mesh.entity.BindingDevice;
 import com.telink.ble.mesh.entity.CompositionData;
+import com.telink.ble.mesh.foundation.Event;
+import com.telink.ble.mesh.foundation.EventBus;
+import com.telink.ble.mesh.foundation.EventListener;
+import com.telink.ble.mesh.foundation.event.MeshEvent;
 import com.telink.ble.mesh.util.Arrays;
+import com.telink.ble.mesh.util.FirmwareSource;
 import com.telink.ble.mesh.util.MeshLogger;
+import com.telink.ble.mesh.util.OtaPacketParser;
 
 import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Ignore;
 import org.junit.Test;
+import org.spongycastle.crypto.engines.AESEngine;
+import org.spongycastle.crypto.modes.CCMBlockCipher;
+import org.spongycastle.crypto.params.AEADParameters;
+import org.spongycastle.crypto.params.KeyParameter;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.Signature;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.CRC32;
 
 /**
@@ -280,8 +319,93 @@ public class MeshTest {
     }
 
 
-    public void testOpAggSequence(){
-//        AggregatorItem
+    /**
+     * cache composition data by product, replace when version changed, and restore from snapshot
+     */
+    @Test
+    public void testCompositionDataCache() {
+        byte[] v1 = Arrays.hexToBytes("11020305030069000200000004040000020003000010710100FE710100FF7101040011020000");
+        byte[] v2 = v1.clone();
+        v2[4] = 0x04;
+        CompositionDataCache cache = new CompositionDataCache();
+        Assert.assertNull(cache.get(0x0211, 0x0503));
+        Assert.assertTrue(cache.put(CompositionData.from(v1)));
+        Assert.assertFalse(cache.put(CompositionData.from(v1)));
+        // truncated element
+        CompositionData truncated = new CompositionData();
+        truncated.raw = java.util.Arrays.copyOf(v1, v1.length - 1);
+        Assert.assertFalse(cache.put(truncated));
+
+        CompositionData cached = cache.get(0x0211, 0x0503);
+        Assert.assertNotNull(cached);
+        Assert.assertArrayEquals(v1, cached.raw);
+        Assert.assertNotNull(cache.get(0x0211, 0x0503, 0x0300));
+        Assert.assertNull(cache.get(0x0211, 0x0503, 0x0400));
+
+        // cache is only looked up for device with known version
+        BindingDevice device = new BindingDevice();
+        device.setProduct(0x0211, 0x0503);
+        Assert.assertFalse(device.isProductKnown());
+        device.setProduct(0x0211, 0x0503, 0x0300);
+        Assert.assertTrue(device.isProductKnown());
+
+        // firmware updated
+        Assert.assertTrue(cache.put(CompositionData.from(v2)));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNull(cache.get(0x0211, 0x0503, 0x0300));
+        Assert.assertEquals(0x0400, cache.get(0x0211, 0x0503).vid);
+
+        Assert.assertTrue(cache.isDirty());
+        byte[] snapshot = cache.snapshot();
+        Assert.assertFalse(cache.isDirty());
+        CompositionDataCache restored = new CompositionDataCache();
+        Assert.assertTrue(restored.restore(snapshot));
+        Assert.assertArrayEquals(v2, restored.get(0x0211, 0x0503).raw);
+        Assert.assertFalse(restored.restore(java.util.Arrays.copyOf(snapshot, snapshot.length - 1)));
+
+        Assert.assertTrue(cache.remove(0x0211, 0x0503));
+        Assert.assertNull(cache.get(0x0211, 0x0503));
+    }
+
+    /**
+     * aggregate short and long items, then parse them back as aggregator status
+     */
+    @Test
+    public void testOpAggSequence() {
+        MeshLogger.enablePrint(false);
+        MeshMessage bind = new MeshMessage();
+        bind.setOpcode(Opcode.MODE_APP_BIND.value);
+        bind.setParams(Arrays.hexToBytes("020000000010"));
+        MeshMessage large = new MeshMessage();
+        large.setOpcode(Opcode.VD_MESH_ADDR_GET.value);
+        large.setParams(new byte[200]);
+        List<MeshMessage> messages = new ArrayList<>();
+        messages.add(bind);
+        messages.add(large);
+
+        byte[] sequence = MeshUtils.aggregateMessages(0x0102, messages);
+        Assert.assertEquals(0x02, sequence[0]);
+        Assert.assertEquals(0x01, sequence[1]);
+        // short item: length 2 + 6, format bit 0
+        Assert.assertEquals((8 << 1), sequence[2] & 0xFF);
+        // long item: length 3 + 200, format bit 1
+        int longIndex = 3 + 8;
+        int longLen = (sequence[longIndex] & 0xFF) | ((sequence[longIndex + 1] & 0xFF) << 8);
+        Assert.assertEquals(1, longLen & 0x01);
+        Assert.assertEquals(203, longLen >> 1);
+        Assert.assertEquals(longIndex + 2 + 203, sequence.length);
+
+        byte[] statusParams = new byte[sequence.length + 1];
+        System.arraycopy(sequence, 0, statusParams, 1, sequence.length);
+        OpcodeAggregatorStatusMessage status = new OpcodeAggregatorStatusMessage();
+        status.parse(statusParams);
+        Assert.assertEquals(0, status.status);
+        Assert.assertEquals(0x0102, status.elementAddress);
+        Assert.assertEquals(2, status.statusItems.size());
+        Assert.assertEquals(Opcode.MODE_APP_BIND.value, status.statusItems.get(0).opcode);
+        Assert.assertArrayEquals(bind.getParams(), status.statusItems.get(0).parameters);
+        Assert.assertEquals(Opcode.VD_MESH_ADDR_GET.value, status.statusItems.get(1).opcode);
+        Assert.assertEquals(200, status.statusItems.get(1).parameters.length);
     }
 
     @Test
@@ -360,6 +484,515 @@ public class MeshTest {
     }
 
 
+    /**
+     * cached ccm context should produce the same result as spongycastle CCMBlockCipher
+     */
+    @Test
+    public void testCcm() throws Exception {
+        byte[] key = Arrays.hexToBytes("0953fa93e7caac9638f58820220a398e");
+        byte[] nonce = Arrays.hexToBytes("00800000011201000012345678");
+        for (int micSize = 4; micSize <= 8; micSize += 4) {
+            for (int len = 0; len <= 40; len++) {
+                byte[] data = new byte[len];
+                for (int i = 0; i < len; i++) {
+                    data[i] = (byte) (i * 7 + len);
+                }
+                CCMBlockCipher cipher = new CCMBlockCipher(new AESEngine());
+                cipher.init(true, new AEADParameters(new KeyParameter(key), micSize * 8, nonce));
+                byte[] expected = new byte[len + micSize];
+                cipher.doFinal(expected, cipher.processBytes(data, 0, len, expected, 0));
+
+                byte[] encrypted = Encipher.ccm(data, key, nonce, micSize, true);
+                Assert.assertArrayEquals(expected, encrypted);
+
+                // decrypt in place
+                byte[] buffer = encrypted.clone();
+                Assert.assertEquals(len, Encipher.ccm(buffer, 0, buffer.length, key, nonce, micSize, false, buffer, 0));
+                Assert.assertArrayEquals(data, java.util.Arrays.copyOf(buffer, len));
+
+                encrypted[encrypted.length - 1] ^= 1;
+                Assert.assertNull(Encipher.ccm(encrypted, key, nonce, micSize, false));
+            }
+        }
+    }
+
+    /**
+     * mesh spec sample message #1, parsed in place and work buffers reused
+     */
+    @Test
+    public void testNetworkPduParse() {
+        MeshLogger.enablePrint(false);
+        byte[] encryptionKey = Arrays.hexToBytes("0953fa93e7caac9638f58820220a398e");
+        byte[] privacyKey = Arrays.hexToBytes("8b84eedec100067d670971dd2aa700cf");
+        byte[] pdu = Arrays.hexToBytes("68eca487516765b5e5bfdacbaf6cb7fb6bff871f035444ce83a670df");
+        NetworkLayerPDU.NetworkEncryptionSuite suite = new NetworkLayerPDU.NetworkEncryptionSuite(0x12345678, encryptionKey, privacyKey, 0x68);
+        ParseContext context = ParseContext.get();
+
+        NetworkLayerPDU networkLayerPDU = new NetworkLayerPDU(suite);
+        Assert.assertTrue(networkLayerPDU.parse(pdu, context));
+        Assert.assertEquals(1, networkLayerPDU.getCtl());
+        Assert.assertEquals(0, networkLayerPDU.getTtl());
+        Assert.assertEquals(1, networkLayerPDU.getSeq());
+        Assert.assertEquals(0x1201, networkLayerPDU.getSrc());
+        Assert.assertEquals(0xFFFD, networkLayerPDU.getDst());
+        Assert.assertArrayEquals(Arrays.hexToBytes("034b50057e400000010000"), networkLayerPDU.getTransportPDU());
+
+        // round trip
+        Assert.assertArrayEquals(pdu, networkLayerPDU.generateEncryptedPayload());
+
+        byte[] tampered = pdu.clone();
+        tampered[pdu.length - 1] ^= 1;
+        Assert.assertFalse(new NetworkLayerPDU(suite).parse(tampered, context));
+        Assert.assertFalse(new NetworkLayerPDU(suite).parse(java.util.Arrays.copyOf(pdu, 10), context));
+
+        // buffers of the thread context are reused by following parses
+        Assert.assertSame(context, ParseContext.get());
+        byte[] upperPayload = context.getUpperPayload(0);
+        byte[] accessNonce = context.getAccessNonce();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(new NetworkLayerPDU(suite).parse(pdu, context));
+        }
+        Assert.assertSame(upperPayload, context.getUpperPayload(0));
+        Assert.assertSame(accessNonce, context.getAccessNonce());
+        // grown only if capacity exceeded
+        Assert.assertNotSame(upperPayload, context.getUpperPayload(upperPayload.length + 1));
+    }
+
+    /**
+     * allocation per network pdu parse, depends on jvm and jit state, run manually
+     */
+    @Ignore("benchmark")
+    @Test
+    public void benchmarkNetworkPduParseAllocation() {
+        MeshLogger.enablePrint(false);
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+        byte[] encryptionKey = Arrays.hexToBytes("0953fa93e7caac9638f58820220a398e");
+        byte[] privacyKey = Arrays.hexToBytes("8b84eedec100067d670971dd2aa700cf");
+        byte[] pdu = Arrays.hexToBytes("68eca487516765b5e5bfdacbaf6cb7fb6bff871f035444ce83a670df");
+        NetworkLayerPDU.NetworkEncryptionSuite suite = new NetworkLayerPDU.NetworkEncryptionSuite(0x12345678, encryptionKey, privacyKey, 0x68);
+        ParseContext context = ParseContext.get();
+
+        final int count = 100000;
+        // warm up
+        for (int i = 0; i < count; i++) {
+            new NetworkLayerPDU(suite).parse(pdu, context);
+        }
+        long threadId = Thread.currentThread().getId();
+        long start = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < count; i++) {
+            new NetworkLayerPDU(suite).parse(pdu, context);
+        }
+        long perPdu = (allocationBean.getThreadAllocatedBytes(threadId) - start) / count;
+        System.out.println("allocated bytes per network pdu: " + perPdu);
+        // pdu and lower transport pdu objects, bound left for jvm differences
+        Assert.assertTrue("allocated bytes per network pdu: " + perPdu, perPdu <= 512);
+    }
+
+    @Test
+    public void testEventBusLanes() throws InterruptedException {
+        MeshLogger.enablePrint(false);
+        final List<Runnable> pending = new ArrayList<>();
+        Executor manual = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending.add(command);
+            }
+        };
+        ExecutorService background = Executors.newFixedThreadPool(2);
+        EventBus<String> bus = new EventBus<>(manual, manual, background);
+
+        // ordered delivery and overflow
+        final List<String> received = new ArrayList<>();
+        bus.addEventListener("status", new EventListener<String>() {
+            @Override
+            public void performed(Event<String> event) {
+                received.add(((MeshEvent) event).getDesc());
+            }
+        });
+        bus.setLaneCapacity("status", 3, EventBus.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            bus.dispatchEvent(new MeshEvent(this, "status", "" + i));
+        }
+        Assert.assertEquals(1, pending.size());
+        Assert.assertEquals(3, bus.getQueueDepth("status"));
+        pending.remove(0).run();
+        Assert.assertEquals(java.util.Arrays.asList("2", "3", "4"), received);
+        EventBus.LaneMetrics metrics = bus.getLaneMetrics("status");
+        Assert.assertEquals(2, metrics.getDroppedCount());
+        Assert.assertEquals(3, metrics.getDispatchedCount());
+        Assert.assertEquals(0, metrics.getQueueDepth());
+        Assert.assertTrue(pending.isEmpty());
+
+        received.clear();
+        bus.setLaneCapacity("status", 2, EventBus.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 4; i++) {
+            bus.dispatchEvent(new MeshEvent(this, "status", "" + i));
+        }
+        pending.remove(0).run();
+        Assert.assertEquals(java.util.Arrays.asList("0", "1"), received);
+
+        // no listener
+        bus.dispatchEvent(new MeshEvent(this, "none", ""));
+        Assert.assertNull(bus.getLaneMetrics("none"));
+
+        // slow listener only blocks its own lane
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastReceived = new CountDownLatch(3);
+        bus.addEventListener("slow", new EventListener<String>() {
+            @Override
+            public void performed(Event<String> event) {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        bus.addEventListener("fast", new EventListener<String>() {
+            @Override
+            public void performed(Event<String> event) {
+                fastReceived.countDown();
+            }
+        });
+        MeshEvent slowEvent = new MeshEvent(this, "slow", "");
+        slowEvent.setThreadMode(Event.ThreadMode.Background);
+        bus.dispatchEvent(slowEvent);
+        for (int i = 0; i < 3; i++) {
+            MeshEvent fastEvent = new MeshEvent(this, "fast", "" + i);
+            fastEvent.setThreadMode(Event.ThreadMode.Background);
+            bus.dispatchEvent(fastEvent);
+        }
+        Assert.assertTrue(fastReceived.await(2, TimeUnit.SECONDS));
+        release.countDown();
+        background.shutdown();
+        Assert.assertTrue(background.awaitTermination(2, TimeUnit.SECONDS));
+        Assert.assertTrue(bus.getLaneMetrics("slow").getMaxListenerNanos() > 0);
+    }
+
+    @Test
+    public void testProxySarReassembly() {
+        ProxySarReassembler reassembler = new ProxySarReassembler();
+        Assert.assertNull(reassembler.onSegmentReceived(new byte[]{0x41, 1, 2}));
+        Assert.assertNull(reassembler.onSegmentReceived(new byte[]{(byte) 0x81, 3}));
+        Assert.assertArrayEquals(new byte[]{0x01, 1, 2, 3, 4},
+                reassembler.onSegmentReceived(new byte[]{(byte) 0xC1, 4}));
+
+        // last segment without first segment
+        Assert.assertNull(reassembler.onSegmentReceived(new byte[]{(byte) 0xC1, 4}));
+        Assert.assertEquals(1, reassembler.getDroppedCount());
+    }
+
+    /**
+     * segments of two sources interleaved, a further source is busy while both are receiving
+     */
+    @Test
+    public void testSegmentedRxInterleaved() {
+        SegmentedRxTable<SegmentedRxTable.Reception> table = new SegmentedRxTable<>();
+        table.setLimits(2, 1024);
+        SegmentedRxTable.Reception first = new SegmentedRxTable.Reception(0x0002, 0x100, 0x100, 5, 2);
+        SegmentedRxTable.Reception second = new SegmentedRxTable.Reception(0x0003, 0x200, 0x200, 5, 1);
+        Assert.assertTrue(table.add(first, 3 * 12));
+        Assert.assertTrue(table.add(second, 2 * 12));
+
+        // concurrency limit reached
+        SegmentedRxTable.Reception third = new SegmentedRxTable.Reception(0x0004, 0x300, 0x300, 5, 1);
+        Assert.assertFalse(table.add(third, 2 * 12));
+        Assert.assertNull(table.get(0x0004));
+
+        Assert.assertFalse(table.putSegment(first, createSegment(0, 2, 0x11)));
+        Assert.assertFalse(table.putSegment(second, createSegment(1, 1, 0x22)));
+        Assert.assertFalse(table.putSegment(first, createSegment(2, 2, 0x11)));
+        // repeated segment
+        Assert.assertFalse(table.putSegment(first, createSegment(2, 2, 0x11)));
+        Assert.assertTrue(table.putSegment(second, createSegment(0, 1, 0x22)));
+        Assert.assertEquals(0b101, first.getBlockAck());
+        Assert.assertEquals(0b11, second.getBlockAck());
+        Assert.assertEquals(4 * 12, table.getMemory());
+        for (SegmentedAccessMessagePDU segment : second.getSegments()) {
+            Assert.assertEquals(0x22, segment.getSegmentM()[0]);
+        }
+
+        // completed message removed, further source accepted
+        Assert.assertTrue(table.remove(second));
+        Assert.assertFalse(table.remove(second));
+        Assert.assertEquals(2 * 12, table.getMemory());
+        Assert.assertTrue(table.add(third, 2 * 12));
+        Assert.assertTrue(table.putSegment(first, createSegment(1, 2, 0x11)));
+        Assert.assertEquals(3, first.getCount());
+
+        // memory budget
+        table.remove(first);
+        table.setLimits(8, 4 * 12);
+        Assert.assertFalse(table.add(new SegmentedRxTable.Reception(0x0005, 0x400, 0x400, 5, 4), 5 * 12));
+        Assert.assertTrue(table.add(new SegmentedRxTable.Reception(0x0005, 0x400, 0x400, 5, 3), 4 * 12));
+        Assert.assertEquals(2, table.size());
+    }
+
+    private static SegmentedAccessMessagePDU createSegment(int segO, int segN, int fill) {
+        SegmentedAccessMessagePDU segment = new SegmentedAccessMessagePDU();
+        segment.setSegO(segO);
+        segment.setSegN(segN);
+        byte[] segmentM = new byte[12];
+        java.util.Arrays.fill(segmentM, (byte) fill);
+        segment.setSegmentM(segmentM);
+        return segment;
+    }
+
+    @Test
+    public void testNodeIdentityResolver() {
+        byte[] identityKey = Encipher.generateIdentityKey(Arrays.hexToBytes("7dd7364cd842ad18c17c2b820c84c3d6"));
+        byte[] random = Arrays.hexToBytes("34ae608fbbc1f2c6");
+        NodeIdentityResolver resolver = new NodeIdentityResolver();
+        for (int nodeCount : new int[]{100, 1000, 4000}) {
+            int[] addresses = new int[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                addresses[i] = i + 1;
+            }
+            resolver.setup(identityKey, addresses);
+            // last candidate, worst case
+            byte[] hash = Encipher.generateNodeIdentityHash(identityKey, random, nodeCount);
+            byte[] privateHash = Encipher.generatePrivateNodeIdentityHash(identityKey, random, nodeCount);
+            // first candidate, found in first shard
+            byte[] firstHash = Encipher.generateNodeIdentityHash(identityKey, random, 1);
+            for (int parallelism : new int[]{1, 4}) {
+                resolver.setParallelism(parallelism);
+                resolver.clearCache();
+                int hitCount = resolver.getHitCount();
+                int missCount = resolver.getMissCount();
+                Assert.assertEquals(nodeCount, resolver.resolve("mac-" + parallelism, false, hash, random));
+                Assert.assertEquals(nodeCount, resolver.resolve("mac-p" + parallelism, true, privateHash, random));
+                Assert.assertEquals(1, resolver.resolve("mac-f" + parallelism, false, firstHash, random));
+                // node identity hash does not match private node identity
+                Assert.assertEquals(NodeIdentityResolver.ADDRESS_NOT_FOUND, resolver.resolve("mac-x" + parallelism, true, hash, random));
+                Assert.assertEquals(missCount + 4, resolver.getMissCount());
+                Assert.assertEquals(nodeCount, resolver.resolve("mac-" + parallelism, false, hash, random));
+                Assert.assertEquals(hitCount + 1, resolver.getHitCount());
+            }
+            Assert.assertEquals(NodeIdentityResolver.ADDRESS_NOT_FOUND,
+                    resolver.resolve("mac", false, Encipher.generateNodeIdentityHash(identityKey, random, nodeCount + 1), random));
+        }
+        resolver.release();
+    }
+
+    /**
+     * worst case resolve latency, last candidate matched and cache cleared, run manually
+     */
+    @Ignore("benchmark")
+    @Test
+    public void benchmarkNodeIdentityResolver() {
+        MeshLogger.enablePrint(false);
+        byte[] identityKey = Encipher.generateIdentityKey(Arrays.hexToBytes("7dd7364cd842ad18c17c2b820c84c3d6"));
+        byte[] random = Arrays.hexToBytes("34ae608fbbc1f2c6");
+        NodeIdentityResolver resolver = new NodeIdentityResolver();
+        final int rounds = 20;
+        for (int nodeCount : new int[]{100, 1000, 5000}) {
+            int[] addresses = new int[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                addresses[i] = i + 1;
+            }
+            resolver.setup(identityKey, addresses);
+            byte[] hash = Encipher.generateNodeIdentityHash(identityKey, random, nodeCount);
+            for (int parallelism : new int[]{1, 4}) {
+                resolver.setParallelism(parallelism);
+                // warm up
+                for (int i = 0; i < rounds; i++) {
+                    resolver.clearCache();
+                    resolver.resolve("mac", false, hash, random);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    resolver.clearCache();
+                    Assert.assertEquals(nodeCount, resolver.resolve("mac", false, hash, random));
+                }
+                long latency = (System.nanoTime() - start) / rounds;
+                System.out.println(String.format("node identity resolve: nodes %d, parallelism %d, latency %.3f ms",
+                        nodeCount, parallelism, latency / 1000000f));
+            }
+        }
+        resolver.release();
+    }
+
+    @Test
+    public void testProxySelector() {
+        // flags, proxy service uuid, proxy service data: network id
+        byte[] scanRecord = Arrays.hexToBytes("020106" + "03032818" + "0C16281800" + "0102030405060708");
+        byte[] serviceData = MeshScanRecord.findServiceData(scanRecord, MeshScanRecord.SERVICE_UUID_16_PROXY);
+        Assert.assertArrayEquals(Arrays.hexToBytes("000102030405060708"), serviceData);
+        Assert.assertNull(MeshScanRecord.findServiceData(scanRecord, 0x1827));
+        Assert.assertNull(MeshScanRecord.findServiceData(Arrays.hexToBytes("020106" + "0C162818"), MeshScanRecord.SERVICE_UUID_16_PROXY));
+
+        ProxySelector selector = new ProxySelector();
+        ProxySelector.Advertiser near = selector.put("near", null, serviceData, ProxySelector.ADDRESS_UNKNOWN);
+        Assert.assertTrue(selector.onRssi(near, -55));
+        ProxySelector.Advertiser unstable = selector.put("unstable", null, serviceData, 2);
+        ProxySelector.Advertiser other = selector.put("other", null, new byte[9], ProxySelector.ADDRESS_INVALID);
+        for (int i = 0; i < 8; i++) {
+            Assert.assertSame(near, selector.find("near", serviceData));
+            Assert.assertFalse(selector.onRssi(near, -60));
+            Assert.assertFalse(selector.onRssi(unstable, i % 2 == 0 ? -40 : -80));
+            Assert.assertFalse(selector.onRssi(other, -30));
+        }
+        Assert.assertNull(selector.find("near", new byte[9]));
+        Assert.assertSame(near, selector.select());
+        Assert.assertEquals(3, selector.getValidationCount());
+        Assert.assertEquals(8, selector.getDuplicateCount());
+        selector.reset();
+        Assert.assertNull(selector.select());
+    }
+
+    @Test
+    public void testProvisionerKeyPairPool() throws Exception {
+        ProvisionerKeyPairPool pool = new ProvisionerKeyPairPool() {
+            @Override
+            protected KeyPair generateKeyPair() {
+                try {
+                    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                    generator.initialize(new ECGenParameterSpec("secp256r1"));
+                    return generator.generateKeyPair();
+                } catch (Exception e) {
+                    return null;
+                }
+            }
+        };
+        pool.setPoolSize(2);
+        for (int i = 0; i < 200 && pool.getAvailableCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, pool.getAvailableCount());
+
+        KeyPair first = pool.take(true);
+        Assert.assertNotNull(first);
+        Assert.assertEquals(1, pool.getHitCount());
+        // fresh key pair for each provisioning by default
+        Assert.assertNotSame(first, pool.take(true));
+
+        pool.setReuseEnabled(true);
+        KeyPair reusable = pool.take(true);
+        Assert.assertSame(reusable, pool.take(true));
+        Assert.assertNotSame(reusable, pool.take(false));
+
+        pool.setPoolSize(0);
+        pool.clear();
+        int missCount = pool.getMissCount();
+        Assert.assertNotNull(pool.take(false));
+        Assert.assertEquals(missCount + 1, pool.getMissCount());
+    }
+
+    @Test
+    public void testReplayProtectionList() {
+        ReplayProtectionList rpl = new ReplayProtectionList();
+        for (int src = 1; src <= 0x7FFF; src++) {
+            Assert.assertEquals(ReplayProtectionList.RESULT_NEW, rpl.validate(src, 10, 0));
+        }
+        Assert.assertEquals(ReplayProtectionList.RESULT_UPDATED, rpl.validate(0x0002, 11, 0));
+        Assert.assertEquals(ReplayProtectionList.RESULT_REPLAY, rpl.validate(0x0002, 11, 0));
+        Assert.assertEquals(ReplayProtectionList.RESULT_IV_UPDATED, rpl.validate(0x0003, 1, 1));
+        Assert.assertEquals(ReplayProtectionList.RESULT_IV_LESS, rpl.validate(0x0003, 20, 0));
+        Assert.assertEquals(1, rpl.getReplayCount());
+        Assert.assertEquals(1, rpl.getIvLessCount());
+
+        ReplayProtectionList restored = new ReplayProtectionList();
+        Assert.assertTrue(restored.restore(rpl.snapshot()));
+        Assert.assertEquals(0x7FFF, restored.size());
+        Assert.assertEquals(ReplayProtectionList.RESULT_REPLAY, restored.validate(0x0002, 11, 0));
+        Assert.assertEquals(ReplayProtectionList.RESULT_IV_LESS, restored.validate(0x0003, 2, 0));
+        Assert.assertEquals(ReplayProtectionList.RESULT_UPDATED, restored.validate(0x7FFF, 0xFFFFFF, 0));
+
+        // node at 0x0100 with 4 elements removed, a new node provisioned at the same address starts from sequence 0
+        Assert.assertEquals(4, restored.remove(0x0100, 4));
+        Assert.assertEquals(0, restored.remove(0x0100, 4));
+        Assert.assertEquals(0x7FFF - 4, restored.size());
+        for (int src = 0x0100; src < 0x0104; src++) {
+            Assert.assertEquals(-1, restored.get(src));
+            Assert.assertEquals(ReplayProtectionList.RESULT_NEW, restored.validate(src, 0, 0));
+        }
+        Assert.assertEquals(ReplayProtectionList.RESULT_REPLAY, restored.validate(0x0100, 0, 0));
+        for (int src = 0x1000; src < 0x3000; src += 3) {
+            Assert.assertTrue(restored.remove(src));
+        }
+        for (int src = 1; src <= 0x7FFF; src++) {
+            boolean removed = src >= 0x1000 && src < 0x3000 && (src - 0x1000) % 3 == 0;
+            Assert.assertEquals(removed, restored.get(src) == -1);
+        }
+    }
+
+    @Test
+    public void testOtaPacket() {
+        byte[] firmware = new byte[100];
+        for (int i = 0; i < firmware.length; i++) {
+            firmware[i] = (byte) (i * 7);
+        }
+        OtaPacketParser parser = new OtaPacketParser();
+        parser.set(firmware, 64);
+        // android log not available in unit test
+        MeshLogger.enablePrint(false);
+        byte[] packet = parser.getNextPacket();
+        Assert.assertEquals(68, packet.length);
+        packet = parser.getNextPacket();
+        MeshLogger.enablePrint(true);
+        Assert.assertTrue(parser.isLast());
+        Assert.assertEquals(1, packet[0]);
+        Assert.assertEquals((byte) 0xFF, packet[2 + 36]);
+
+        // bitwise CRC-16/MODBUS
+        int crc = 0xFFFF;
+        for (int j = 0; j < packet.length - 2; j++) {
+            crc ^= packet[j] & 0xFF;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+        }
+        Assert.assertEquals(crc, (packet[66] & 0xFF) | (packet[67] & 0xFF) << 8);
+    }
+
+    @Test
+    public void testFirmwareSource() throws IOException {
+        byte[] firmware = new byte[10000];
+        for (int i = 0; i < firmware.length; i++) {
+            firmware[i] = (byte) (i * 13);
+        }
+        File file = File.createTempFile("firmware", ".bin");
+        file.deleteOnExit();
+        FileOutputStream stream = new FileOutputStream(file);
+        stream.write(firmware);
+        stream.close();
+
+        FirmwareSource source = FirmwareSource.open(file);
+        Assert.assertEquals(firmware.length, source.size());
+
+        MeshLogger.enablePrint(false);
+        MeshFirmwareParser mapped = new MeshFirmwareParser();
+        MeshFirmwareParser array = new MeshFirmwareParser();
+        mapped.reset(source, 4096, 208);
+        array.reset(firmware, 4096, 208);
+        while (mapped.hasNextBlock()) {
+            mapped.nextBlock();
+            array.nextBlock();
+            CRC32 crc32 = new CRC32();
+            crc32.update(firmware, mapped.currentBlockIndex() * 4096, mapped.getCurBlockSize());
+            Assert.assertEquals((int) crc32.getValue(), mapped.getBlockChecksum());
+            Assert.assertEquals(array.getBlockChecksum(), mapped.getBlockChecksum());
+            byte[] chunk;
+            while ((chunk = mapped.nextChunk()) != null) {
+                Assert.assertArrayEquals(array.nextChunk(), chunk);
+            }
+            Assert.assertNull(array.nextChunk());
+            Assert.assertArrayEquals(array.chunkAt(1), mapped.chunkAt(1));
+        }
+
+        OtaPacketParser mappedOta = new OtaPacketParser();
+        OtaPacketParser arrayOta = new OtaPacketParser();
+        mappedOta.set(source, 64);
+        arrayOta.set(firmware, 64);
+        while (arrayOta.hasNextPacket()) {
+            Assert.assertArrayEquals(arrayOta.getNextPacket(), mappedOta.getNextPacket());
+        }
+        Assert.assertFalse(mappedOta.hasNextPacket());
+        MeshLogger.enablePrint(true);
+        source.close();
+    }
+
     public void testNetworkId() {
         MeshLogger.d("start testNetworkId");
         byte[] netKey = Arrays.hexToBytes("7dd7364cd842ad18c17c2b820c84c3d6");
@@ -0,0 +1,237 @@
+/********************************************************************************************************
+ * @file MeshMessageQueueTest.java
+ *
+ * @brief for TLSR chips
+ *
+ * @author telink
+ * @date     Sep. 30, 2017
+ *
+ * @par     Copyright (c) 2017, Telink Semiconductor (Shanghai) Co., Ltd. ("TELINK")
+ *
+ *          Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *
+ *              http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *******************************************************************************************************/
+package com.telink.ble.mesh.foundation;
+
+import com.telink.ble.mesh.core.message.MeshMessage;
+import com.telink.ble.mesh.core.message.Opcode;
+import com.telink.ble.mesh.core.message.aggregator.AggregatorItem;
+import com.telink.ble.mesh.core.message.aggregator.OpcodeAggregatorSequenceMessage;
+import com.telink.ble.mesh.core.message.aggregator.OpcodeAggregatorStatusMessage;
+import com.telink.ble.mesh.util.MeshLogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * message queue with a fake sender, a reliable message keeps the sender busy until completed
+ */
+public class MeshMessageQueueTest {
+
+    private static final int SERVER_ADDRESS = 0x0100;
+
+    /**
+     * longer than default, not passed by class loading on first dispatch
+     */
+    private static final long WINDOW = 200;
+
+    private static class FakeSender implements MeshMessageQueue.Sender {
+        final List<MeshMessage> sent = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+        boolean busy = false;
+
+        @Override
+        public boolean send(MeshMessage meshMessage) {
+            if (busy) return false;
+            sent.add(meshMessage);
+            busy = meshMessage.isReliable();
+            return true;
+        }
+
+        @Override
+        public boolean isIdle() {
+            return !busy;
+        }
+
+        @Override
+        public boolean postDelayed(Runnable task, long delay) {
+            tasks.add(task);
+            return true;
+        }
+
+        MeshMessage last() {
+            return sent.get(sent.size() - 1);
+        }
+    }
+
+    private final Map<MeshMessage, Integer> results = new IdentityHashMap<>();
+
+    private final MeshMessageQueue.Callback callback = new MeshMessageQueue.Callback() {
+        @Override
+        public void onMessageComplete(MeshMessage meshMessage, int result, int rspCount) {
+            results.put(meshMessage, result);
+        }
+    };
+
+    private static MeshMessage bind(int dst, int paramsLen) {
+        MeshMessage meshMessage = new MeshMessage();
+        meshMessage.setDestinationAddress(dst);
+        meshMessage.setOpcode(Opcode.MODE_APP_BIND.value);
+        meshMessage.setResponseOpcode(Opcode.MODE_APP_STATUS.value);
+        meshMessage.setParams(new byte[paramsLen]);
+        return meshMessage;
+    }
+
+    private MeshMessageQueue createQueue(FakeSender sender) {
+        MeshLogger.enablePrint(false);
+        MeshMessageQueue queue = new MeshMessageQueue(sender);
+        queue.setAggregation(new MeshMessageQueue.AggregatorSupport() {
+            @Override
+            public int getAggregatorServerAddress(int elementAddress) {
+                return (elementAddress & 0xFF00) == SERVER_ADDRESS ? SERVER_ADDRESS : 0;
+            }
+        }, WINDOW);
+        return queue;
+    }
+
+    /**
+     * complete the message in flight and send next
+     */
+    private static void complete(MeshMessageQueue queue, FakeSender sender, boolean success) {
+        sender.busy = false;
+        queue.onReliableMessageComplete(sender.last(), success, success ? 1 : 0);
+    }
+
+    @Test
+    public void testPackingAndFanOut() {
+        FakeSender sender = new FakeSender();
+        MeshMessageQueue queue = createQueue(sender);
+        sender.busy = true;
+        MeshMessage m1 = bind(0x0101, 6);
+        MeshMessage m2 = bind(0x0101, 6);
+        MeshMessage m3 = bind(0x0102, 6);
+        MeshMessage m4 = bind(0x0101, 6);
+        for (MeshMessage meshMessage : new MeshMessage[]{m1, m2, m3, m4}) {
+            Assert.assertTrue(queue.enqueue(meshMessage, MeshMessageQueue.PRIORITY_HIGH, callback));
+        }
+        Assert.assertEquals(0, sender.sent.size());
+
+        // m1 and m2 packed, m4 not pulled ahead of m3
+        sender.busy = false;
+        queue.onNetworkCleared();
+        Assert.assertEquals(1, sender.sent.size());
+        MeshMessage sequence = sender.last();
+        Assert.assertTrue(sequence instanceof OpcodeAggregatorSequenceMessage);
+        Assert.assertEquals(SERVER_ADDRESS, sequence.getDestinationAddress());
+        Assert.assertEquals(2 + 2 * (1 + 2 + 6), sequence.getParams().length);
+        Assert.assertEquals(2, queue.size());
+
+        // m3 sent alone as the following m4 is to another element
+        complete(queue, sender, true);
+        Assert.assertSame(m3, sender.last());
+        Assert.assertTrue(results.isEmpty());
+
+        // status of element 0x0101 completes each part
+        OpcodeAggregatorStatusMessage status = new OpcodeAggregatorStatusMessage();
+        status.status = 0;
+        status.elementAddress = 0x0101;
+        status.statusItems = new ArrayList<>();
+        status.statusItems.add(new AggregatorItem(Opcode.MODE_APP_STATUS.value, new byte[7]));
+        Assert.assertFalse(queue.onAggregatorStatus(0x0200, status));
+        Assert.assertTrue(queue.onAggregatorStatus(SERVER_ADDRESS, status));
+        Assert.assertEquals(MeshMessageQueue.RESULT_SUCCESS, (int) results.get(m1));
+        // one status item for two reliable parts
+        Assert.assertEquals(MeshMessageQueue.RESULT_FAIL, (int) results.get(m2));
+        Assert.assertFalse(queue.onAggregatorStatus(SERVER_ADDRESS, status));
+
+        complete(queue, sender, true);
+        Assert.assertEquals(MeshMessageQueue.RESULT_SUCCESS, (int) results.get(m3));
+    }
+
+    @Test
+    public void testSizeLimit() {
+        FakeSender sender = new FakeSender();
+        MeshMessageQueue queue = createQueue(sender);
+        sender.busy = true;
+        // item length 1 + 2 + 100, three items fit in 378 bytes
+        List<MeshMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            MeshMessage meshMessage = bind(0x0101, 100);
+            messages.add(meshMessage);
+            queue.enqueue(meshMessage, MeshMessageQueue.PRIORITY_HIGH, callback);
+        }
+        sender.busy = false;
+        queue.onNetworkCleared();
+        Assert.assertEquals(2 + 3 * 103, sender.last().getParams().length);
+        complete(queue, sender, true);
+        Assert.assertEquals(2 + 2 * 103, sender.last().getParams().length);
+        Assert.assertEquals(0, queue.size());
+
+        // sequence message failed, parts failed
+        complete(queue, sender, false);
+        Assert.assertEquals(MeshMessageQueue.RESULT_FAIL, (int) results.get(messages.get(4)));
+    }
+
+    @Test
+    public void testAggregationWindow() throws InterruptedException {
+        FakeSender sender = new FakeSender();
+        MeshMessageQueue queue = createQueue(sender);
+        MeshMessage lone = bind(0x0101, 6);
+        queue.enqueue(lone, MeshMessageQueue.PRIORITY_HIGH, callback);
+        Assert.assertEquals(0, sender.sent.size());
+        Assert.assertEquals(1, sender.tasks.size());
+
+        // normal lane is not blocked by the waiting head
+        MeshMessage other = bind(0x0200, 6);
+        other.setResponseOpcode(MeshMessage.OPCODE_INVALID);
+        queue.enqueue(other, MeshMessageQueue.PRIORITY_NORMAL, callback);
+        Assert.assertSame(other, sender.last());
+        Assert.assertEquals(MeshMessageQueue.RESULT_SUCCESS, (int) results.get(other));
+        // window task posted once
+        Assert.assertEquals(1, sender.tasks.size());
+
+        Thread.sleep(WINDOW + 5);
+        sender.tasks.remove(0).run();
+        Assert.assertSame(lone, sender.last());
+    }
+
+    @Test
+    public void testAggregationTaskLost() throws InterruptedException {
+        FakeSender sender = new FakeSender();
+        MeshMessageQueue queue = createQueue(sender);
+        MeshMessage first = bind(0x0101, 6);
+        queue.enqueue(first, MeshMessageQueue.PRIORITY_HIGH, callback);
+        Assert.assertEquals(1, sender.tasks.size());
+        // removed by the owner of sending thread
+        sender.tasks.clear();
+
+        // window passed, sent by next dispatch
+        Thread.sleep(2 * WINDOW + 5);
+        MeshMessage next = bind(0x0102, 6);
+        queue.enqueue(next, MeshMessageQueue.PRIORITY_NORMAL, callback);
+        Assert.assertEquals(1, sender.sent.size());
+        Assert.assertSame(first, sender.last());
+
+        // lost task detected, next lone head gets its own window task
+        complete(queue, sender, true);
+        Assert.assertEquals(1, sender.sent.size());
+        Assert.assertEquals(1, sender.tasks.size());
+        Thread.sleep(WINDOW + 5);
+        sender.tasks.remove(0).run();
+        Assert.assertSame(next, sender.last());
+    }
+}
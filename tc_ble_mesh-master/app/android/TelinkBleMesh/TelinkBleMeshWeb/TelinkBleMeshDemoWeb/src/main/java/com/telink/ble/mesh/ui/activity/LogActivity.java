@@ -43,6 +43,8 @@ import com.telink.ble.mesh.util.MeshLogger;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -52,6 +54,7 @@ import java.util.Locale;
 public class LogActivity extends BaseActivity {
     private AlertDialog dialog;
     private LogInfoAdapter adapter;
+    private List<LogInfo> logInfoList = new ArrayList<>();
     private Handler mHandler = new Handler();
     private static final String LOG_FILE_PATH = "TelinkBleMesh";
 
@@ -63,7 +66,8 @@ public class LogActivity extends BaseActivity {
         }
         setContentView(R.layout.activity_log_info);
         RecyclerView recyclerView = findViewById(R.id.rv_log);
-        adapter = new LogInfoAdapter(this, MeshLogger.logInfoList);
+        logInfoList.addAll(MeshLogger.getLogInfoList());
+        adapter = new LogInfoAdapter(this, logInfoList);
         enableBackNav(true);
         setTitle("Log");
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
@@ -71,11 +75,14 @@ public class LogActivity extends BaseActivity {
     }
 
     public void clear(View view) {
-        MeshLogger.logInfoList.clear();
+        MeshLogger.clearLogInfo();
+        logInfoList.clear();
         adapter.notifyDataSetChanged();
     }
 
     public void refresh(View view) {
+        logInfoList.clear();
+        logInfoList.addAll(MeshLogger.getLogInfoList());
         adapter.notifyDataSetChanged();
     }
 
@@ -112,8 +119,8 @@ public class LogActivity extends BaseActivity {
         new Thread(() -> {
             SimpleDateFormat mDateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault());
             final StringBuilder sb = new StringBuilder("TelinkLog\n");
-            final LogInfo[] logs = MeshLogger.logInfoList.toArray(new LogInfo[]{});
-            System.out.println("logs: " + logs.length);
+            final List<LogInfo> logs = MeshLogger.getLogInfoList();
+            System.out.println("logs: " + logs.size());
             for (LogInfo logInfo : logs) {
                 if (logInfo != null) {
                     sb.append(mDateFormat.format(logInfo.millis)).append("/").append(logInfo.tag).append(":")